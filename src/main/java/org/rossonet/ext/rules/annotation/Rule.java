@@ -53,6 +53,14 @@ public @interface Rule {
 	 */
 	String name() default org.rossonet.ext.rules.api.Rule.DEFAULT_NAME;
 
+	/**
+	 * Whether the rule condition can be evaluated in parallel with other
+	 * conditions. Set to false when the condition has side effects.
+	 * 
+	 * @return true if the rule condition can be evaluated in parallel
+	 */
+	boolean parallelizable() default true;
+
 	/**
 	 * The rule priority.
 	 * 
@@ -0,0 +1,65 @@
+package org.rossonet.ext.rules.api;
+
+import java.util.Objects;
+
+/**
+ * An activation is a rule whose condition has been matched and which is waiting
+ * in the agenda of a rules engine to be executed.
+ *
+ * @see ConflictResolutionStrategy
+ */
+public final class Activation {
+
+	private final Rule rule;
+	private final long sequence;
+	private final long recency;
+
+	/**
+	 * Create a new {@link Activation}.
+	 *
+	 * @param rule     matched rule, must not be null
+	 * @param sequence order in which the activation has been created
+	 * @param recency  creation time of the most recent fact read by the condition
+	 *                 of the rule, in milliseconds
+	 */
+	public Activation(final Rule rule, final long sequence, final long recency) {
+		this.rule = Objects.requireNonNull(rule, "rule must not be null");
+		this.sequence = sequence;
+		this.recency = recency;
+	}
+
+	/**
+	 * Get the creation time of the most recent fact read by the condition of the
+	 * rule.
+	 *
+	 * @return creation time in milliseconds, or 0 if the condition read no facts
+	 */
+	public long getRecency() {
+		return recency;
+	}
+
+	/**
+	 * Get the matched rule.
+	 *
+	 * @return the rule
+	 */
+	public Rule getRule() {
+		return rule;
+	}
+
+	/**
+	 * Get the order in which the activation has been created. Activations created
+	 * later have a greater sequence.
+	 *
+	 * @return the sequence of the activation
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public String toString() {
+		return "Activation{rule=" + rule.getName() + ", sequence=" + sequence + ", recency=" + recency + '}';
+	}
+
+}
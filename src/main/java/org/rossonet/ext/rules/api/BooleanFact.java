@@ -0,0 +1,42 @@
+package org.rossonet.ext.rules.api;
+
+/**
+ * A fact holding a <code>boolean</code> value without boxing it. Boxed values
+ * returned by {@link #getValue()} are the shared {@link Boolean} constants.
+ */
+public class BooleanFact extends Fact<Boolean> {
+
+	private final boolean value;
+
+	/**
+	 * Create a new fact.
+	 *
+	 * @param name  of the fact
+	 * @param value of the fact
+	 */
+	public BooleanFact(final String name, final boolean value) {
+		this(name, value, getClock().getAsLong());
+	}
+
+	/**
+	 * Create a new fact with the given creation time.
+	 *
+	 * @param name      of the fact
+	 * @param value     of the fact
+	 * @param createdAt creation time in milliseconds since the epoch
+	 */
+	public BooleanFact(final String name, final boolean value, final long createdAt) {
+		super(name, Boolean.class, createdAt);
+		this.value = value;
+	}
+
+	public boolean getBooleanValue() {
+		return value;
+	}
+
+	@Override
+	public Boolean getValue() {
+		return Boolean.valueOf(value);
+	}
+
+}
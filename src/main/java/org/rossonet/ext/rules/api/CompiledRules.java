@@ -0,0 +1,186 @@
+package org.rossonet.ext.rules.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of a {@link Rules} instance, compiled to be fired many
+ * times.
+ *
+ * Rules are sorted once in an array, and the name, description and priority of
+ * each rule are read once and cached: iterating compiled rules calls neither
+ * {@link Rule#compareTo(Rule)} nor the getters of the rules, which are
+ * reflective calls for annotated rules. The engines of this library iterate
+ * compiled rules by index, without allocating. Rules can be looked up by name in
+ * constant time.
+ *
+ * Compiled rules do not follow the changes of the source rules: compile them
+ * again after registering or unregistering rules, or after changing the name or
+ * the priority of a rule. All the methods changing the rules throw an
+ * {@link UnsupportedOperationException}.
+ */
+public final class CompiledRules extends Rules {
+
+	/**
+	 * Compile the given rules, unless they are already compiled.
+	 *
+	 * @param rules to compile, must not be null
+	 * @return the compiled rules
+	 */
+	public static CompiledRules compile(final Rules rules) {
+		return rules instanceof CompiledRules ? (CompiledRules) rules : new CompiledRules(rules);
+	}
+
+	private final Rule[] rules;
+	private final String[] names;
+	private final String[] descriptions;
+	private final int[] priorities;
+	private volatile Map<String, Integer> indexes;
+
+	/**
+	 * Create a new {@link CompiledRules} snapshot of the given rules.
+	 *
+	 * @param rules to compile, must not be null
+	 */
+	public CompiledRules(final Rules rules) {
+		Objects.requireNonNull(rules, "rules must not be null");
+		final int size = rules.size();
+		this.rules = new Rule[size];
+		this.names = new String[size];
+		this.descriptions = new String[size];
+		this.priorities = new int[size];
+		int index = 0;
+		for (final Rule rule : rules) {
+			this.rules[index] = rule;
+			names[index] = rule.getName();
+			descriptions[index] = rule.getDescription();
+			priorities[index] = rule.getPriority();
+			index++;
+		}
+		super.setTraceEnable(rules.isTraceEnable());
+	}
+
+	/**
+	 * Not supported, compiled rules are immutable.
+	 */
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("Compiled rules are immutable");
+	}
+
+	/**
+	 * Get the rule at the given index.
+	 *
+	 * @param index of the rule, in the order of the rules
+	 * @return the rule
+	 */
+	public Rule get(final int index) {
+		return rules[index];
+	}
+
+	/**
+	 * Get the rule with the given name, ignoring case as
+	 * {@link Rules#unregister(String)} does.
+	 *
+	 * @param ruleName name of the rule
+	 * @return the rule or null if no rule has this name
+	 */
+	public Rule get(final String ruleName) {
+		final int index = indexOf(ruleName);
+		return index >= 0 ? rules[index] : null;
+	}
+
+	/**
+	 * Get the cached description of the rule at the given index.
+	 *
+	 * @param index of the rule
+	 * @return the description of the rule
+	 */
+	public String getDescription(final int index) {
+		return descriptions[index];
+	}
+
+	/**
+	 * Get the cached name of the rule at the given index.
+	 *
+	 * @param index of the rule
+	 * @return the name of the rule
+	 */
+	public String getName(final int index) {
+		return names[index];
+	}
+
+	/**
+	 * Get the cached priority of the rule at the given index.
+	 *
+	 * @param index of the rule
+	 * @return the priority of the rule
+	 */
+	public int getPriority(final int index) {
+		return priorities[index];
+	}
+
+	/**
+	 * Get the index of the rule with the given name, ignoring case.
+	 *
+	 * @param ruleName name of the rule
+	 * @return the index of the rule or -1 if no rule has this name
+	 */
+	public int indexOf(final String ruleName) {
+		Map<String, Integer> indexes = this.indexes;
+		if (indexes == null) {
+			indexes = new HashMap<>();
+			for (int i = names.length - 1; i >= 0; i--) {
+				indexes.put(names[i].toLowerCase(Locale.ROOT), i);
+			}
+			this.indexes = indexes;
+		}
+		final Integer index = indexes.get(ruleName.toLowerCase(Locale.ROOT));
+		return index != null ? index : -1;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return rules.length == 0;
+	}
+
+	@Override
+	public Iterator<Rule> iterator() {
+		return Collections.unmodifiableList(Arrays.asList(rules)).iterator();
+	}
+
+	/**
+	 * Not supported, compiled rules are immutable.
+	 */
+	@Override
+	public void register(final Object... rules) {
+		throw new UnsupportedOperationException("Compiled rules are immutable");
+	}
+
+	@Override
+	public int size() {
+		return rules.length;
+	}
+
+	/**
+	 * Not supported, compiled rules are immutable.
+	 */
+	@Override
+	public void unregister(final Object... rules) {
+		throw new UnsupportedOperationException("Compiled rules are immutable");
+	}
+
+	/**
+	 * Not supported, compiled rules are immutable.
+	 */
+	@Override
+	public void unregister(final String ruleName) {
+		throw new UnsupportedOperationException("Compiled rules are immutable");
+	}
+
+}
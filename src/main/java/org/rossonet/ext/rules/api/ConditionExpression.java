@@ -0,0 +1,31 @@
+package org.rossonet.ext.rules.api;
+
+/**
+ * Implemented by rules and conditions written in an expression language, so
+ * that engines can analyze the source of the condition before evaluating it.
+ *
+ * Evaluating the rule or the condition must be equivalent to evaluating the
+ * returned expression on the facts.
+ */
+public interface ConditionExpression {
+
+	/**
+	 * Get the source of the condition.
+	 *
+	 * @return the expression, or null if it is not known
+	 */
+	String getConditionExpression();
+
+	/**
+	 * Get the condition expression of the given object.
+	 *
+	 * @param object a rule or a condition
+	 * @return the expression declared by the object, or null if the object is not
+	 *         a {@link ConditionExpression} or its expression is not known
+	 */
+	static String of(final Object object) {
+		return object instanceof ConditionExpression ? ((ConditionExpression) object).getConditionExpression()
+				: null;
+	}
+
+}
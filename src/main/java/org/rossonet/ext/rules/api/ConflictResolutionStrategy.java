@@ -0,0 +1,38 @@
+package org.rossonet.ext.rules.api;
+
+import java.util.Comparator;
+
+/**
+ * Strategy used by inference rules engines to order the activations of their
+ * agenda. Activations are executed from the smallest to the greatest according
+ * to the strategy.
+ *
+ * @see RulesEngineParameters#conflictResolutionStrategy(ConflictResolutionStrategy)
+ */
+@FunctionalInterface
+public interface ConflictResolutionStrategy extends Comparator<Activation> {
+
+	/**
+	 * Natural order of the rules: priority (salience) first, then name.
+	 */
+	ConflictResolutionStrategy PRIORITY = (activation1, activation2) -> activation1.getRule()
+			.compareTo(activation2.getRule());
+
+	/**
+	 * Activations matching the most recent facts first, then natural order of the
+	 * rules.
+	 */
+	ConflictResolutionStrategy RECENCY = (activation1, activation2) -> {
+		final int result = Long.compare(activation2.getRecency(), activation1.getRecency());
+		return result != 0 ? result : PRIORITY.compare(activation1, activation2);
+	};
+
+	/**
+	 * Last created activations first, then natural order of the rules.
+	 */
+	ConflictResolutionStrategy LIFO = (activation1, activation2) -> {
+		final int result = Long.compare(activation2.getSequence(), activation1.getSequence());
+		return result != 0 ? result : PRIORITY.compare(activation1, activation2);
+	};
+
+}
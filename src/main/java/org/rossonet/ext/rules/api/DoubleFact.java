@@ -0,0 +1,49 @@
+package org.rossonet.ext.rules.api;
+
+/**
+ * A fact holding a <code>double</code> value without boxing it. The value is
+ * boxed at the first call of {@link #getValue()}, for the expression languages
+ * reading facts as objects, and the box is then reused.
+ */
+public class DoubleFact extends Fact<Double> {
+
+	private final double value;
+	private Double boxedValue;
+
+	/**
+	 * Create a new fact.
+	 *
+	 * @param name  of the fact
+	 * @param value of the fact
+	 */
+	public DoubleFact(final String name, final double value) {
+		this(name, value, getClock().getAsLong());
+	}
+
+	/**
+	 * Create a new fact with the given creation time.
+	 *
+	 * @param name      of the fact
+	 * @param value     of the fact
+	 * @param createdAt creation time in milliseconds since the epoch
+	 */
+	public DoubleFact(final String name, final double value, final long createdAt) {
+		super(name, Double.class, createdAt);
+		this.value = value;
+	}
+
+	public double getDoubleValue() {
+		return value;
+	}
+
+	@Override
+	public Double getValue() {
+		Double boxed = boxedValue;
+		if (boxed == null) {
+			boxed = value;
+			boxedValue = boxed;
+		}
+		return boxed;
+	}
+
+}
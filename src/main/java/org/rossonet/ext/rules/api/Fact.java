@@ -29,32 +29,44 @@ import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.util.Base64;
 import java.util.Objects;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.function.LongSupplier;
 
 /**
  * A class representing a named fact. Facts have unique names within a
  * {@link Facts} instance.
+ *
+ * The creation time of a fact is read from a {@link #setClock(LongSupplier)
+ * pluggable clock}, so that facts created in bulk can share a coarse or cached
+ * time. Numeric and boolean values can be kept unboxed with {@link LongFact},
+ * {@link DoubleFact} and {@link BooleanFact}.
  * 
  * @param <T> type of the fact
  * @author Mahmoud Ben Hassine
  * @author Andrea Ambrosini
  */
 public class Fact<T> {
-	private static final Logger LOGGER = LoggerFactory.getLogger(Fact.class);
 	private static int maxCharsInValueToString = 80;
 	private static boolean humanDateInToString = true;
 	private static final String DIGEST_ALGHORITM = "SHA-256";
 
-	private static MessageDigest digest;
-
-	static {
+	// MessageDigest is not thread-safe
+	private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
 		try {
-			digest = MessageDigest.getInstance(DIGEST_ALGHORITM);
+			return MessageDigest.getInstance(DIGEST_ALGHORITM);
 		} catch (final NoSuchAlgorithmException e) {
-			LOGGER.error("");
+			throw new IllegalStateException(DIGEST_ALGHORITM + " is not available", e);
 		}
+	});
+
+	private static volatile LongSupplier clock = System::currentTimeMillis;
+
+	/**
+	 * Return the clock giving the creation time of the facts.
+	 *
+	 * @return the clock, in milliseconds since the epoch
+	 */
+	public static LongSupplier getClock() {
+		return clock;
 	}
 
 	public static int getMaxCharsInValueToString() {
@@ -65,6 +77,18 @@ public class Fact<T> {
 		return humanDateInToString;
 	}
 
+	/**
+	 * Replace the clock giving the creation time of the facts, for instance with
+	 * a coarse clock or with the time of the current tick, cached once for all
+	 * the facts created in the tick.
+	 *
+	 * @param clock returning the time in milliseconds since the epoch, must not
+	 *              be null
+	 */
+	public static void setClock(final LongSupplier clock) {
+		Fact.clock = Objects.requireNonNull(clock, "clock must not be null");
+	}
+
 	public static void setHumanDateInToString(final boolean humanDateInToString) {
 		Fact.humanDateInToString = humanDateInToString;
 	}
@@ -75,8 +99,25 @@ public class Fact<T> {
 
 	private final String name;
 	private final T value;
+	private final Class<T> type;
 	private final long createdAt;
 
+	/**
+	 * Create a fact whose value is kept by the subclass, which must override
+	 * {@link #getValue()}.
+	 *
+	 * @param name      of the fact
+	 * @param type      of the value of the fact
+	 * @param createdAt creation time in milliseconds since the epoch
+	 */
+	protected Fact(final String name, final Class<T> type, final long createdAt) {
+		Objects.requireNonNull(name, "name must not be null");
+		this.name = name;
+		this.value = null;
+		this.type = Objects.requireNonNull(type, "type must not be null");
+		this.createdAt = createdAt;
+	}
+
 	/**
 	 * Create a new fact.
 	 * 
@@ -84,11 +125,23 @@ public class Fact<T> {
 	 * @param value of the fact
 	 */
 	public Fact(final String name, final T value) {
+		this(name, value, clock.getAsLong());
+	}
+
+	/**
+	 * Create a new fact with the given creation time.
+	 *
+	 * @param name      of the fact
+	 * @param value     of the fact
+	 * @param createdAt creation time in milliseconds since the epoch
+	 */
+	public Fact(final String name, final T value, final long createdAt) {
 		Objects.requireNonNull(name, "name must not be null");
 		Objects.requireNonNull(value, "value must not be null");
 		this.name = name;
 		this.value = value;
-		this.createdAt = Instant.now().toEpochMilli();
+		this.type = null;
+		this.createdAt = createdAt;
 	}
 
 	@Override
@@ -96,7 +149,7 @@ public class Fact<T> {
 		if (this == o) {
 			return true;
 		}
-		if (o == null || getClass() != o.getClass()) {
+		if (!(o instanceof Fact)) {
 			return false;
 		}
 		final Fact<?> fact = (Fact<?>) o;
@@ -122,6 +175,16 @@ public class Fact<T> {
 		return name;
 	}
 
+	/**
+	 * Get the type of the fact value, without boxing primitive values.
+	 *
+	 * @return type of the fact value
+	 */
+	@SuppressWarnings("unchecked")
+	public Class<T> getType() {
+		return type != null ? type : (Class<T>) value.getClass();
+	}
+
 	/**
 	 * Get the fact value.
 	 * 
@@ -139,14 +202,15 @@ public class Fact<T> {
 	@Override
 	public String toString() {
 		String valueString = "";
-		if (value != null) {
-			final String valueCache = value.toString();
+		final T factValue = getValue();
+		if (factValue != null) {
+			final String valueCache = factValue.toString();
 			if (valueCache.length() <= maxCharsInValueToString) {
-				valueString = value.toString();
+				valueString = valueCache;
 			} else {
 				valueString = valueCache.substring(0, maxCharsInValueToString) + "[" + valueCache.length() + "::"
 						+ Base64.getEncoder()
-								.encodeToString(digest.digest(value.toString().getBytes(StandardCharsets.UTF_8)))
+								.encodeToString(DIGEST.get().digest(valueCache.getBytes(StandardCharsets.UTF_8)))
 						+ "]";
 			}
 		}
@@ -0,0 +1,34 @@
+package org.rossonet.ext.rules.api;
+
+import java.util.Set;
+
+/**
+ * Implemented by rules and conditions that know in advance the names of the
+ * facts read when they are evaluated, so that inference engines can evaluate
+ * them again only when one of those facts changes.
+ *
+ * The returned names may include names that are not read at every evaluation,
+ * but must include every fact that can be read.
+ */
+public interface FactDependent {
+
+	/**
+	 * Get the names of the facts that can be read by the condition.
+	 *
+	 * @return an unmodifiable set of fact names, or null if the dependencies
+	 *         cannot be known in advance
+	 */
+	Set<String> getFactDependencies();
+
+	/**
+	 * Get the fact dependencies of the given object.
+	 *
+	 * @param object a rule or a condition
+	 * @return the dependencies declared by the object, or null if the object is
+	 *         not {@link FactDependent} or its dependencies are not known
+	 */
+	static Set<String> of(final Object object) {
+		return object instanceof FactDependent ? ((FactDependent) object).getFactDependencies() : null;
+	}
+
+}
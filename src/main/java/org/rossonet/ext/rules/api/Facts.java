@@ -23,8 +23,9 @@
  */
 package org.rossonet.ext.rules.api;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
@@ -33,12 +34,87 @@ import java.util.Set;
 /**
  * This class encapsulates a set of facts and represents a facts namespace.
  * Facts have unique names within a <code>Facts</code> object.
+ * 
+ * Facts are indexed by name, so lookups, insertions and removals by name do
+ * not depend on the number of known facts.
  *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
 public class Facts implements Iterable<Fact<?>> {
 
-	private final Set<Fact<?>> facts = new HashSet<>();
+	/**
+	 * Read-only live view of the facts as a map of names to values.
+	 */
+	private final class FactsMapView extends AbstractMap<String, Object> {
+
+		private final Set<Map.Entry<String, Object>> entrySet = new AbstractSet<Map.Entry<String, Object>>() {
+
+			@Override
+			public boolean contains(final Object o) {
+				if (!(o instanceof Map.Entry)) {
+					return false;
+				}
+				final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+				final Fact<?> fact = facts.get(entry.getKey());
+				return fact != null && Objects.equals(fact.getValue(), entry.getValue());
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, Object>> iterator() {
+				final Iterator<Fact<?>> iterator = facts.values().iterator();
+				return new Iterator<Map.Entry<String, Object>>() {
+
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public Map.Entry<String, Object> next() {
+						final Fact<?> fact = iterator.next();
+						return new AbstractMap.SimpleImmutableEntry<>(fact.getName(), fact.getValue());
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return facts.size();
+			}
+		};
+
+		@Override
+		public boolean containsKey(final Object key) {
+			return facts.containsKey(key);
+		}
+
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			return entrySet;
+		}
+
+		@Override
+		public Object get(final Object key) {
+			final Fact<?> fact = facts.get(key);
+			return fact != null ? fact.getValue() : null;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return facts.isEmpty();
+		}
+
+		@Override
+		public int size() {
+			return facts.size();
+		}
+	}
+
+	private final Map<String, Fact<?>> facts = new HashMap<>();
+
+	private final Map<String, Object> mapView = new FactsMapView();
+
+	private long version;
 
 	private boolean traceEnable;
 
@@ -49,11 +125,8 @@ public class Facts implements Iterable<Fact<?>> {
 	 */
 	public <T> void add(final Fact<T> fact) {
 		Objects.requireNonNull(fact, "fact must not be null");
-		final Fact<?> retrievedFact = getFact(fact.getName());
-		if (retrievedFact != null) {
-			remove(retrievedFact);
-		}
-		facts.add(fact);
+		facts.put(fact.getName(), fact);
+		version++;
 	}
 
 	/**
@@ -61,20 +134,35 @@ public class Facts implements Iterable<Fact<?>> {
 	 * outside of the rules engine (aka other than manipulating them through rules).
 	 *
 	 * @return a copy of the current facts as a {@link HashMap}
+	 * @see #asMapView()
 	 */
 	public Map<String, Object> asMap() {
-		final Map<String, Object> map = new HashMap<>();
-		for (final Fact<?> fact : facts) {
+		final Map<String, Object> map = new HashMap<>(Math.max(16, (int) (facts.size() / .75f) + 1));
+		for (final Fact<?> fact : facts.values()) {
 			map.put(fact.getName(), fact.getValue());
 		}
 		return map;
 	}
 
+	/**
+	 * Return a read-only live view of the facts as a map of names to values. The
+	 * view reflects later changes of this <code>Facts</code> object and does not
+	 * copy the facts, so it is the preferred way for expression languages to read
+	 * the working memory. Any attempt to modify the view throws an
+	 * {@link UnsupportedOperationException}.
+	 *
+	 * @return a read-only live view of the current facts
+	 */
+	public Map<String, Object> asMapView() {
+		return mapView;
+	}
+
 	/**
 	 * Clear facts.
 	 */
 	public void clear() {
 		facts.clear();
+		version++;
 	}
 
 	/**
@@ -89,13 +177,50 @@ public class Facts implements Iterable<Fact<?>> {
 	@SuppressWarnings("unchecked")
 	public <T> T get(final String factName) {
 		Objects.requireNonNull(factName, "fact name must not be null");
-		final Fact<?> fact = getFact(factName);
+		final Fact<?> fact = facts.get(factName);
 		if (fact != null) {
 			return (T) fact.getValue();
 		}
 		return null;
 	}
 
+	/**
+	 * Get the value of a boolean fact, without boxing it when the fact is a
+	 * {@link BooleanFact}.
+	 *
+	 * @param factName     name of the fact, must not be null
+	 * @param defaultValue returned if there is no fact with the given name
+	 * @return the value of the fact
+	 * @throws ClassCastException if the value of the fact is not a boolean
+	 */
+	public boolean getBoolean(final String factName, final boolean defaultValue) {
+		final Fact<?> fact = getFact(factName);
+		if (fact instanceof BooleanFact) {
+			return ((BooleanFact) fact).getBooleanValue();
+		}
+		return fact != null ? (Boolean) fact.getValue() : defaultValue;
+	}
+
+	/**
+	 * Get the value of a numeric fact as a double, without boxing it when the
+	 * fact is a {@link DoubleFact}.
+	 *
+	 * @param factName     name of the fact, must not be null
+	 * @param defaultValue returned if there is no fact with the given name
+	 * @return the value of the fact
+	 * @throws ClassCastException if the value of the fact is not a number
+	 */
+	public double getDouble(final String factName, final double defaultValue) {
+		final Fact<?> fact = getFact(factName);
+		if (fact instanceof DoubleFact) {
+			return ((DoubleFact) fact).getDoubleValue();
+		}
+		if (fact instanceof LongFact) {
+			return ((LongFact) fact).getLongValue();
+		}
+		return fact != null ? ((Number) fact.getValue()).doubleValue() : defaultValue;
+	}
+
 	/**
 	 * Get a fact by name.
 	 *
@@ -105,7 +230,56 @@ public class Facts implements Iterable<Fact<?>> {
 	 */
 	public Fact<?> getFact(final String factName) {
 		Objects.requireNonNull(factName, "fact name must not be null");
-		return facts.stream().filter(fact -> fact.getName().equals(factName)).findFirst().orElse(null);
+		return facts.get(factName);
+	}
+
+	/**
+	 * Get the value of a numeric fact as a long, without boxing it when the fact
+	 * is a {@link LongFact}.
+	 *
+	 * @param factName     name of the fact, must not be null
+	 * @param defaultValue returned if there is no fact with the given name
+	 * @return the value of the fact
+	 * @throws ClassCastException if the value of the fact is not a number
+	 */
+	public long getLong(final String factName, final long defaultValue) {
+		final Fact<?> fact = getFact(factName);
+		if (fact instanceof LongFact) {
+			return ((LongFact) fact).getLongValue();
+		}
+		return fact != null ? ((Number) fact.getValue()).longValue() : defaultValue;
+	}
+
+	/**
+	 * Return the modification counter of the facts. The counter changes each time
+	 * a fact is added, replaced or removed, so two equal values mean that the
+	 * facts have not been modified in between. Changes of the state of a fact
+	 * value are not tracked.
+	 *
+	 * @return the modification counter
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Check if a fact with the given name is known.
+	 *
+	 * @param factName name of the fact, must not be null
+	 * @return true if there is a fact with the given name, false otherwise
+	 */
+	public boolean has(final String factName) {
+		Objects.requireNonNull(factName, "fact name must not be null");
+		return facts.containsKey(factName);
+	}
+
+	/**
+	 * Check if there are no facts.
+	 *
+	 * @return true if there are no facts, false otherwise
+	 */
+	public boolean isEmpty() {
+		return facts.isEmpty();
 	}
 
 	public boolean isTraceEnable() {
@@ -121,7 +295,25 @@ public class Facts implements Iterable<Fact<?>> {
 	 */
 	@Override
 	public Iterator<Fact<?>> iterator() {
-		return facts.iterator();
+		final Iterator<Fact<?>> iterator = facts.values().iterator();
+		return new Iterator<Fact<?>>() {
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Fact<?> next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+				version++;
+			}
+		};
 	}
 
 	/**
@@ -133,13 +325,39 @@ public class Facts implements Iterable<Fact<?>> {
 	public <T> void put(final String name, final T value) {
 		Objects.requireNonNull(name, "fact name must not be null");
 		Objects.requireNonNull(value, "fact value must not be null");
-		final Fact<?> retrievedFact = getFact(name);
-		if (retrievedFact != null) {
-			remove(retrievedFact);
-		}
 		add(new Fact<>(name, value));
 	}
 
+	/**
+	 * Add a {@link BooleanFact}, replacing any fact with the same name.
+	 *
+	 * @param name  of the fact to add, must not be null
+	 * @param value of the fact to add
+	 */
+	public void putBoolean(final String name, final boolean value) {
+		add(new BooleanFact(name, value));
+	}
+
+	/**
+	 * Add a {@link DoubleFact}, replacing any fact with the same name.
+	 *
+	 * @param name  of the fact to add, must not be null
+	 * @param value of the fact to add
+	 */
+	public void putDouble(final String name, final double value) {
+		add(new DoubleFact(name, value));
+	}
+
+	/**
+	 * Add a {@link LongFact}, replacing any fact with the same name.
+	 *
+	 * @param name  of the fact to add, must not be null
+	 * @param value of the fact to add
+	 */
+	public void putLong(final String name, final long value) {
+		add(new LongFact(name, value));
+	}
+
 	/**
 	 * Remove a fact.
 	 *
@@ -147,7 +365,11 @@ public class Facts implements Iterable<Fact<?>> {
 	 */
 	public <T> void remove(final Fact<T> fact) {
 		Objects.requireNonNull(fact, "fact must not be null");
-		facts.remove(fact);
+		final Fact<?> retrievedFact = facts.get(fact.getName());
+		if (fact.equals(retrievedFact)) {
+			facts.remove(fact.getName());
+			version++;
+		}
 	}
 
 	/**
@@ -157,9 +379,8 @@ public class Facts implements Iterable<Fact<?>> {
 	 */
 	public void remove(final String factName) {
 		Objects.requireNonNull(factName, "fact name must not be null");
-		final Fact<?> fact = getFact(factName);
-		if (fact != null) {
-			remove(fact);
+		if (facts.remove(factName) != null) {
+			version++;
 		}
 	}
 
@@ -167,9 +388,18 @@ public class Facts implements Iterable<Fact<?>> {
 		this.traceEnable = traceEnable;
 	}
 
+	/**
+	 * Return how many facts are currently known.
+	 *
+	 * @return the number of known facts
+	 */
+	public int size() {
+		return facts.size();
+	}
+
 	@Override
 	public String toString() {
-		final Iterator<Fact<?>> iterator = facts.iterator();
+		final Iterator<Fact<?>> iterator = facts.values().iterator();
 		final StringBuilder stringBuilder = new StringBuilder("[");
 		while (iterator.hasNext()) {
 			stringBuilder.append(iterator.next().toString());
@@ -0,0 +1,49 @@
+package org.rossonet.ext.rules.api;
+
+/**
+ * A fact holding a <code>long</code> value without boxing it. The value is
+ * boxed at the first call of {@link #getValue()}, for the expression languages
+ * reading facts as objects, and the box is then reused.
+ */
+public class LongFact extends Fact<Long> {
+
+	private final long value;
+	private Long boxedValue;
+
+	/**
+	 * Create a new fact.
+	 *
+	 * @param name  of the fact
+	 * @param value of the fact
+	 */
+	public LongFact(final String name, final long value) {
+		this(name, value, getClock().getAsLong());
+	}
+
+	/**
+	 * Create a new fact with the given creation time.
+	 *
+	 * @param name      of the fact
+	 * @param value     of the fact
+	 * @param createdAt creation time in milliseconds since the epoch
+	 */
+	public LongFact(final String name, final long value, final long createdAt) {
+		super(name, Long.class, createdAt);
+		this.value = value;
+	}
+
+	public long getLongValue() {
+		return value;
+	}
+
+	@Override
+	public Long getValue() {
+		Long boxed = boxedValue;
+		if (boxed == null) {
+			boxed = value;
+			boxedValue = boxed;
+		}
+		return boxed;
+	}
+
+}
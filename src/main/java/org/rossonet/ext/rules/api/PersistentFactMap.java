@@ -0,0 +1,322 @@
+package org.rossonet.ext.rules.api;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable map of facts by name, implemented as a hash array mapped trie.
+ *
+ * Updates copy only the path from the root to the changed fact, so that a new
+ * version costs O(log n) and shares the rest of the trie with the previous
+ * ones, which stay valid and can be read concurrently.
+ */
+final class PersistentFactMap implements Iterable<Fact<?>> {
+
+	/**
+	 * Node of the trie with the facts whose hashes differ at the level of the
+	 * node. Entries are facts or child nodes, indexed by the bits of the bitmap.
+	 */
+	private static final class BitmapNode implements Node {
+
+		private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+		private final int bitmap;
+		private final Object[] entries;
+
+		private BitmapNode(final int bitmap, final Object[] entries) {
+			this.bitmap = bitmap;
+			this.entries = entries;
+		}
+
+		@Override
+		public Object[] entries() {
+			return entries;
+		}
+
+		@Override
+		public Fact<?> get(final int shift, final int hash, final String name) {
+			final int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0) {
+				return null;
+			}
+			final Object entry = entries[index(bit)];
+			if (entry instanceof Node) {
+				return ((Node) entry).get(shift + BITS, hash, name);
+			}
+			final Fact<?> fact = (Fact<?>) entry;
+			return fact.getName().equals(name) ? fact : null;
+		}
+
+		private int index(final int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		@Override
+		public Node put(final int shift, final int hash, final Fact<?> fact, final boolean[] added) {
+			final int bit = bit(hash, shift);
+			final int index = index(bit);
+			if ((bitmap & bit) == 0) {
+				final Object[] newEntries = new Object[entries.length + 1];
+				System.arraycopy(entries, 0, newEntries, 0, index);
+				newEntries[index] = fact;
+				System.arraycopy(entries, index, newEntries, index + 1, entries.length - index);
+				added[0] = true;
+				return new BitmapNode(bitmap | bit, newEntries);
+			}
+			final Object entry = entries[index];
+			final Object newEntry;
+			if (entry instanceof Node) {
+				newEntry = ((Node) entry).put(shift + BITS, hash, fact, added);
+			} else {
+				final Fact<?> existing = (Fact<?>) entry;
+				if (existing.getName().equals(fact.getName())) {
+					newEntry = fact;
+				} else {
+					added[0] = true;
+					newEntry = merge(shift + BITS, existing, fact, hash);
+				}
+			}
+			if (newEntry == entry) {
+				return this;
+			}
+			final Object[] newEntries = entries.clone();
+			newEntries[index] = newEntry;
+			return new BitmapNode(bitmap, newEntries);
+		}
+
+		@Override
+		public Object remove(final int shift, final int hash, final String name) {
+			final int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0) {
+				return this;
+			}
+			final int index = index(bit);
+			final Object entry = entries[index];
+			final Object newEntry;
+			if (entry instanceof Node) {
+				newEntry = ((Node) entry).remove(shift + BITS, hash, name);
+				if (newEntry == entry) {
+					return this;
+				}
+			} else if (((Fact<?>) entry).getName().equals(name)) {
+				newEntry = null;
+			} else {
+				return this;
+			}
+			if (newEntry != null) {
+				final Object[] newEntries = entries.clone();
+				newEntries[index] = newEntry;
+				return new BitmapNode(bitmap, newEntries);
+			}
+			if (entries.length == 1) {
+				return null;
+			}
+			if (entries.length == 2 && !(entries[1 - index] instanceof Node)) {
+				// a single fact is inlined in the parent node
+				return entries[1 - index];
+			}
+			final Object[] newEntries = new Object[entries.length - 1];
+			System.arraycopy(entries, 0, newEntries, 0, index);
+			System.arraycopy(entries, index + 1, newEntries, index, entries.length - index - 1);
+			return new BitmapNode(bitmap & ~bit, newEntries);
+		}
+	}
+
+	/**
+	 * Node of the trie with the facts whose names have the same hash.
+	 */
+	private static final class CollisionNode implements Node {
+
+		private final int hash;
+		private final Fact<?>[] facts;
+
+		private CollisionNode(final int hash, final Fact<?>[] facts) {
+			this.hash = hash;
+			this.facts = facts;
+		}
+
+		@Override
+		public Object[] entries() {
+			return facts;
+		}
+
+		@Override
+		public Fact<?> get(final int shift, final int hash, final String name) {
+			for (final Fact<?> fact : facts) {
+				if (fact.getName().equals(name)) {
+					return fact;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public Node put(final int shift, final int hash, final Fact<?> fact, final boolean[] added) {
+			if (hash != this.hash) {
+				return new BitmapNode(bit(this.hash, shift), new Object[] { this }).put(shift, hash, fact, added);
+			}
+			for (int i = 0; i < facts.length; i++) {
+				if (facts[i].getName().equals(fact.getName())) {
+					final Fact<?>[] newFacts = facts.clone();
+					newFacts[i] = fact;
+					return new CollisionNode(hash, newFacts);
+				}
+			}
+			final Fact<?>[] newFacts = Arrays.copyOf(facts, facts.length + 1);
+			newFacts[facts.length] = fact;
+			added[0] = true;
+			return new CollisionNode(hash, newFacts);
+		}
+
+		@Override
+		public Object remove(final int shift, final int hash, final String name) {
+			for (int i = 0; i < facts.length; i++) {
+				if (facts[i].getName().equals(name)) {
+					if (facts.length == 2) {
+						return facts[1 - i];
+					}
+					final Fact<?>[] newFacts = new Fact<?>[facts.length - 1];
+					System.arraycopy(facts, 0, newFacts, 0, i);
+					System.arraycopy(facts, i + 1, newFacts, i, facts.length - i - 1);
+					return new CollisionNode(hash, newFacts);
+				}
+			}
+			return this;
+		}
+	}
+
+	private interface Node {
+
+		/**
+		 * @return the facts and child nodes of the node
+		 */
+		Object[] entries();
+
+		Fact<?> get(int shift, int hash, String name);
+
+		Node put(int shift, int hash, Fact<?> fact, boolean[] added);
+
+		/**
+		 * @return the new node, a single fact to inline in the parent node, or
+		 *         null if the node is empty
+		 */
+		Object remove(int shift, int hash, String name);
+	}
+
+	static final PersistentFactMap EMPTY = new PersistentFactMap(BitmapNode.EMPTY, 0);
+
+	private static final int BITS = 5;
+
+	private static int bit(final int hash, final int shift) {
+		return 1 << ((hash >>> shift) & 0x1f);
+	}
+
+	private static int hash(final String name) {
+		final int hash = name.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+
+	private static Node merge(final int shift, final Fact<?> existing, final Fact<?> fact, final int hash) {
+		final int existingHash = hash(existing.getName());
+		if (existingHash == hash) {
+			return new CollisionNode(hash, new Fact<?>[] { existing, fact });
+		}
+		final boolean[] added = new boolean[1];
+		return BitmapNode.EMPTY.put(shift, existingHash, existing, added).put(shift, hash, fact, added);
+	}
+
+	private final Node root;
+	private final int size;
+
+	private PersistentFactMap(final Node root, final int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	Fact<?> get(final String name) {
+		return root.get(0, hash(name), name);
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public Iterator<Fact<?>> iterator() {
+		return new Iterator<Fact<?>>() {
+
+			private final Deque<Object[]> entries = new ArrayDeque<>();
+			private final Deque<Integer> positions = new ArrayDeque<>();
+			private Fact<?> next;
+
+			{
+				entries.push(root.entries());
+				positions.push(0);
+				advance();
+			}
+
+			private void advance() {
+				next = null;
+				while (next == null && !entries.isEmpty()) {
+					final Object[] current = entries.peek();
+					final int position = positions.pop();
+					if (position == current.length) {
+						entries.pop();
+						continue;
+					}
+					positions.push(position + 1);
+					final Object entry = current[position];
+					if (entry instanceof Node) {
+						entries.push(((Node) entry).entries());
+						positions.push(0);
+					} else {
+						next = (Fact<?>) entry;
+					}
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Fact<?> next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				final Fact<?> fact = next;
+				advance();
+				return fact;
+			}
+		};
+	}
+
+	PersistentFactMap put(final Fact<?> fact) {
+		final boolean[] added = new boolean[1];
+		final Node newRoot = root.put(0, hash(fact.getName()), fact, added);
+		return newRoot == root ? this : new PersistentFactMap(newRoot, added[0] ? size + 1 : size);
+	}
+
+	PersistentFactMap remove(final String name) {
+		final Object newRoot = root.remove(0, hash(name), name);
+		if (newRoot == root) {
+			return this;
+		}
+		if (newRoot == null) {
+			return EMPTY;
+		}
+		if (newRoot instanceof Fact) {
+			return EMPTY.put((Fact<?>) newRoot);
+		}
+		return new PersistentFactMap((Node) newRoot, size - 1);
+	}
+
+	int size() {
+		return size;
+	}
+
+}
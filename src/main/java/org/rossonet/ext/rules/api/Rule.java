@@ -92,6 +92,18 @@ public interface Rule extends Comparable<Rule> {
 		return DEFAULT_PRIORITY;
 	}
 
+	/**
+	 * Tell whether the condition of the rule can be evaluated concurrently with
+	 * the conditions of other rules, which requires the condition to be free of
+	 * side effects.
+	 *
+	 * @return true if the condition can be evaluated in parallel
+	 * @see RulesEngineParameters#parallelEvaluation(boolean)
+	 */
+	default boolean isParallelizable() {
+		return true;
+	}
+
 	default boolean isTraceEnable() {
 		return false;
 	}
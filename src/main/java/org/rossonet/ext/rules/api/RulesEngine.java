@@ -23,6 +23,8 @@
  */
 package org.rossonet.ext.rules.api;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -43,11 +45,39 @@ public interface RulesEngine {
 		return Collections.emptyMap();
 	}
 
+	/**
+	 * Check rules without firing them on each of the given independent facts.
+	 *
+	 * @param rules      to check
+	 * @param factsBatch independent facts to check the rules on
+	 * @return the results of {@link #check(Rules, Facts)}, in the iteration order
+	 *         of the batch
+	 */
+	default List<Map<Rule, Boolean>> checkBatch(Rules rules, Collection<Facts> factsBatch) {
+		final List<Map<Rule, Boolean>> results = new ArrayList<>(factsBatch.size());
+		for (final Facts facts : factsBatch) {
+			results.add(check(rules, facts));
+		}
+		return results;
+	}
+
 	/**
 	 * Fire all registered rules on given facts.
 	 */
 	void fire(Rules rules, Facts facts);
 
+	/**
+	 * Fire all registered rules on each of the given independent facts.
+	 *
+	 * @param rules      to fire
+	 * @param factsBatch independent facts to fire the rules on
+	 */
+	default void fireBatch(Rules rules, Collection<Facts> factsBatch) {
+		for (final Facts facts : factsBatch) {
+			fire(rules, facts);
+		}
+	}
+
 	/**
 	 * Return the rules engine parameters.
 	 *
@@ -23,6 +23,8 @@
  */
 package org.rossonet.ext.rules.api;
 
+import java.util.Collection;
+
 import org.rossonet.ext.rules.core.InferenceRulesEngine;
 
 /**
@@ -35,7 +37,7 @@ public interface RulesEngineListener {
 	/**
 	 * Triggered after executing the rule set <strong>When this listener is used
 	 * with a {@link InferenceRulesEngine}, this method will be triggered after the
-	 * execution of each candidate rule set in each iteration.</strong>
+	 * execution of the rule set in each cycle.</strong>
 	 *
 	 * @param rules fired
 	 * @param facts present after firing rules
@@ -43,10 +45,41 @@ public interface RulesEngineListener {
 	default void afterExecute(Rules rules, Facts facts) {
 	}
 
+	/**
+	 * Triggered once after firing or checking the rule set on a batch of facts,
+	 * instead of {@link #afterExecute(Rules, Facts)} for each facts of the batch.
+	 * By default {@link #afterExecute(Rules, Facts)} is triggered for each facts.
+	 *
+	 * @param rules      fired
+	 * @param factsBatch present after firing rules
+	 * @see RulesEngine#fireBatch(Rules, Collection)
+	 */
+	default void afterBatch(Rules rules, Collection<Facts> factsBatch) {
+		for (final Facts facts : factsBatch) {
+			afterExecute(rules, facts);
+		}
+	}
+
+	/**
+	 * Triggered once before firing or checking the rule set on a batch of facts,
+	 * instead of {@link #beforeEvaluate(Rules, Facts)} for each facts of the
+	 * batch. By default {@link #beforeEvaluate(Rules, Facts)} is triggered for
+	 * each facts.
+	 *
+	 * @param rules      to fire
+	 * @param factsBatch present before firing rules
+	 * @see RulesEngine#fireBatch(Rules, Collection)
+	 */
+	default void beforeBatch(Rules rules, Collection<Facts> factsBatch) {
+		for (final Facts facts : factsBatch) {
+			beforeEvaluate(rules, facts);
+		}
+	}
+
 	/**
 	 * Triggered before evaluating the rule set. <strong>When this listener is used
 	 * with a {@link InferenceRulesEngine}, this method will be triggered before the
-	 * evaluation of each candidate rule set in each iteration.</strong>
+	 * evaluation of the rule set in each cycle.</strong>
 	 *
 	 * @param rules to fire
 	 * @param facts present before firing rules
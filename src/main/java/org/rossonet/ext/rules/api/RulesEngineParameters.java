@@ -23,8 +23,12 @@
  */
 package org.rossonet.ext.rules.api;
 
+import java.time.Duration;
+import java.util.Objects;
+
 import org.rossonet.ext.rules.core.DefaultRulesEngine;
 import org.rossonet.ext.rules.core.InferenceRulesEngine;
+import org.rossonet.ext.rules.core.ReteRulesEngine;
 
 /**
  * Parameters of a rules engine.
@@ -33,7 +37,9 @@ import org.rossonet.ext.rules.core.InferenceRulesEngine;
  * <li>When parameters are used with a {@link DefaultRulesEngine}, they are
  * applied on <strong>all registered rules</strong>.</li>
  * <li>When parameters are used with a {@link InferenceRulesEngine}, they are
- * applied on <strong>candidate rules in each iteration</strong>.</li>
+ * applied on <strong>the activations of each cycle</strong>.</li>
+ * <li>When parameters are used with a {@link ReteRulesEngine}, they are
+ * applied on <strong>the activations of each firing</strong>.</li>
  * </ul>
  *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
@@ -45,6 +51,21 @@ public class RulesEngineParameters {
 	 */
 	public static final int DEFAULT_RULE_PRIORITY_THRESHOLD = Integer.MAX_VALUE;
 
+	/**
+	 * Default maximum number of inference cycles.
+	 */
+	public static final int DEFAULT_MAX_CYCLES = Integer.MAX_VALUE;
+
+	/**
+	 * Default number of time budget violations after which a rule is disabled.
+	 */
+	public static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 3;
+
+	/**
+	 * Default time after which a disabled rule is evaluated again.
+	 */
+	public static final Duration DEFAULT_CIRCUIT_BREAKER_RESET_TIMEOUT = Duration.ofMinutes(1);
+
 	/**
 	 * Parameter to skip next applicable rules when a rule is applied.
 	 */
@@ -65,6 +86,48 @@ public class RulesEngineParameters {
 	 */
 	private int priorityThreshold;
 
+	/**
+	 * Parameter to stop inference engines after a user defined number of cycles.
+	 */
+	private int maxCycles = DEFAULT_MAX_CYCLES;
+
+	/**
+	 * Parameter to order the activations of inference engines.
+	 */
+	private ConflictResolutionStrategy conflictResolutionStrategy = ConflictResolutionStrategy.PRIORITY;
+
+	/**
+	 * Parameter to evaluate again in the next cycles of inference engines only
+	 * the conditions reading facts that changed.
+	 */
+	private boolean incrementalEvaluation;
+
+	/**
+	 * Parameter to evaluate the conditions of parallelizable rules concurrently.
+	 */
+	private boolean parallelEvaluation;
+
+	/**
+	 * Parameter to skip the rules discarded by the index of their conditions.
+	 */
+	private boolean conditionIndex;
+
+	/**
+	 * Parameter to limit the time spent in the condition and in the actions of
+	 * each rule.
+	 */
+	private Duration ruleTimeBudget;
+
+	/**
+	 * Parameter to disable a rule after a number of time budget violations.
+	 */
+	private int circuitBreakerThreshold = DEFAULT_CIRCUIT_BREAKER_THRESHOLD;
+
+	/**
+	 * Parameter to evaluate a disabled rule again after some time.
+	 */
+	private Duration circuitBreakerResetTimeout = DEFAULT_CIRCUIT_BREAKER_RESET_TIMEOUT;
+
 	/**
 	 * Create a new {@link RulesEngineParameters} with default values.
 	 */
@@ -92,10 +155,91 @@ public class RulesEngineParameters {
 		this.priorityThreshold = priorityThreshold;
 	}
 
+	/**
+	 * Set the time after which a rule disabled by its circuit breaker is
+	 * evaluated again. If that evaluation, and the execution of the actions when
+	 * the rule is triggered, stay within the budget the rule is enabled again,
+	 * otherwise it is disabled for the same time.
+	 *
+	 * @param circuitBreakerResetTimeout time a rule stays disabled
+	 * @return this parameters instance
+	 */
+	public RulesEngineParameters circuitBreakerResetTimeout(final Duration circuitBreakerResetTimeout) {
+		setCircuitBreakerResetTimeout(circuitBreakerResetTimeout);
+		return this;
+	}
+
+	/**
+	 * Set the number of time budget violations after which a rule is disabled.
+	 *
+	 * @param circuitBreakerThreshold number of violations, at least 1
+	 * @return this parameters instance
+	 */
+	public RulesEngineParameters circuitBreakerThreshold(final int circuitBreakerThreshold) {
+		setCircuitBreakerThreshold(circuitBreakerThreshold);
+		return this;
+	}
+
+	/**
+	 * Index the leading tests of the conditions comparing a fact or a property of
+	 * a fact with a literal, such as <code>device.type == 'X'</code>, so that
+	 * the rules whose condition is trivially false are not evaluated. Discarded
+	 * rules are handled as rules evaluated to false, so that the listeners and
+	 * the skip parameters keep their meaning, and the selection is computed
+	 * again after each executed action. Supported by the
+	 * {@link DefaultRulesEngine} for the rules exposing their
+	 * {@link ConditionExpression condition expression}.
+	 *
+	 * @param conditionIndex true to index the conditions
+	 * @return this parameters instance
+	 */
+	public RulesEngineParameters conditionIndex(final boolean conditionIndex) {
+		setConditionIndex(conditionIndex);
+		return this;
+	}
+
+	public RulesEngineParameters conflictResolutionStrategy(
+			final ConflictResolutionStrategy conflictResolutionStrategy) {
+		setConflictResolutionStrategy(conflictResolutionStrategy);
+		return this;
+	}
+
+	public Duration getCircuitBreakerResetTimeout() {
+		return circuitBreakerResetTimeout;
+	}
+
+	public int getCircuitBreakerThreshold() {
+		return circuitBreakerThreshold;
+	}
+
+	public ConflictResolutionStrategy getConflictResolutionStrategy() {
+		return conflictResolutionStrategy;
+	}
+
+	public int getMaxCycles() {
+		return maxCycles;
+	}
+
 	public int getPriorityThreshold() {
 		return priorityThreshold;
 	}
 
+	public Duration getRuleTimeBudget() {
+		return ruleTimeBudget;
+	}
+
+	public boolean isConditionIndex() {
+		return conditionIndex;
+	}
+
+	public boolean isIncrementalEvaluation() {
+		return incrementalEvaluation;
+	}
+
+	public boolean isParallelEvaluation() {
+		return parallelEvaluation;
+	}
+
 	public boolean isSkipOnFirstAppliedRule() {
 		return skipOnFirstAppliedRule;
 	}
@@ -108,15 +252,124 @@ public class RulesEngineParameters {
 		return skipOnFirstNonTriggeredRule;
 	}
 
+	/**
+	 * Evaluate again in the next cycles of the {@link InferenceRulesEngine} only
+	 * the conditions reading facts that have been written since their last
+	 * evaluation, reusing the last result of the other conditions.
+	 *
+	 * Only the facts written through {@link Facts#put(String, Object)},
+	 * {@link Facts#add(Fact)} and {@link Facts#remove(String)} are known to
+	 * change: an action changing a fact in place, such as a setter of a POJO or
+	 * <code>order.processed = true</code> in MVEL, does not cause the conditions
+	 * reading that fact to be evaluated again, and the rules whose last result
+	 * is true are triggered again in the next cycle. Enable it only when the
+	 * actions replace the facts they change. The last results are reused without
+	 * calling the rule listeners before and after the evaluation.
+	 *
+	 * @param incrementalEvaluation true to evaluate again only the conditions
+	 *                              affected by the written facts
+	 * @return this parameters instance
+	 */
+	public RulesEngineParameters incrementalEvaluation(final boolean incrementalEvaluation) {
+		setIncrementalEvaluation(incrementalEvaluation);
+		return this;
+	}
+
+	public RulesEngineParameters maxCycles(final int maxCycles) {
+		setMaxCycles(maxCycles);
+		return this;
+	}
+
+	/**
+	 * Evaluate the conditions of the rules concurrently on the common fork-join
+	 * pool, before executing the actions sequentially in the rules order. Only the
+	 * conditions of {@link Rule#isParallelizable() parallelizable} rules are
+	 * evaluated in parallel. Supported by the {@link DefaultRulesEngine}.
+	 *
+	 * @param parallelEvaluation true to evaluate conditions in parallel
+	 * @return this parameters instance
+	 */
+	public RulesEngineParameters parallelEvaluation(final boolean parallelEvaluation) {
+		setParallelEvaluation(parallelEvaluation);
+		return this;
+	}
+
 	public RulesEngineParameters priorityThreshold(final int priorityThreshold) {
 		setPriorityThreshold(priorityThreshold);
 		return this;
 	}
 
+	/**
+	 * Limit the time spent in the condition and in the actions of each rule.
+	 *
+	 * A condition exceeding the budget is considered as evaluated with error and
+	 * the actions of the rule are not executed; actions exceeding the budget are
+	 * considered as failed. A running condition or action is not interrupted.
+	 * Violations are reported to the rule listeners with a
+	 * {@link org.rossonet.ext.rules.core.RuleTimeBudgetExceededException}, and
+	 * after {@link #getCircuitBreakerThreshold()} violations the rule is skipped
+	 * for {@link #getCircuitBreakerResetTimeout()}. Circuit breakers are kept by
+	 * rule name.
+	 *
+	 * @param ruleTimeBudget budget of a condition or of the actions of a rule,
+	 *                       null for no budget
+	 * @return this parameters instance
+	 */
+	public RulesEngineParameters ruleTimeBudget(final Duration ruleTimeBudget) {
+		setRuleTimeBudget(ruleTimeBudget);
+		return this;
+	}
+
+	public void setCircuitBreakerResetTimeout(final Duration circuitBreakerResetTimeout) {
+		Objects.requireNonNull(circuitBreakerResetTimeout, "circuitBreakerResetTimeout must not be null");
+		if (circuitBreakerResetTimeout.isNegative()) {
+			throw new IllegalArgumentException("circuitBreakerResetTimeout must not be negative");
+		}
+		this.circuitBreakerResetTimeout = circuitBreakerResetTimeout;
+	}
+
+	public void setCircuitBreakerThreshold(final int circuitBreakerThreshold) {
+		if (circuitBreakerThreshold < 1) {
+			throw new IllegalArgumentException("circuitBreakerThreshold must be at least 1");
+		}
+		this.circuitBreakerThreshold = circuitBreakerThreshold;
+	}
+
+	public void setConditionIndex(final boolean conditionIndex) {
+		this.conditionIndex = conditionIndex;
+	}
+
+	public void setConflictResolutionStrategy(final ConflictResolutionStrategy conflictResolutionStrategy) {
+		this.conflictResolutionStrategy = Objects.requireNonNull(conflictResolutionStrategy,
+				"conflictResolutionStrategy must not be null");
+	}
+
+	public void setIncrementalEvaluation(final boolean incrementalEvaluation) {
+		this.incrementalEvaluation = incrementalEvaluation;
+	}
+
+	public void setMaxCycles(final int maxCycles) {
+		if (maxCycles < 1) {
+			throw new IllegalArgumentException("maxCycles must be at least 1");
+		}
+		this.maxCycles = maxCycles;
+	}
+
+	public void setParallelEvaluation(final boolean parallelEvaluation) {
+		this.parallelEvaluation = parallelEvaluation;
+	}
+
 	public void setPriorityThreshold(final int priorityThreshold) {
 		this.priorityThreshold = priorityThreshold;
 	}
 
+	public void setRuleTimeBudget(final Duration ruleTimeBudget) {
+		if (ruleTimeBudget != null && (ruleTimeBudget.isNegative() || ruleTimeBudget.isZero())) {
+			throw new IllegalArgumentException("ruleTimeBudget must be positive");
+		}
+		this.ruleTimeBudget = ruleTimeBudget;
+	}
+
 	public void setSkipOnFirstAppliedRule(final boolean skipOnFirstAppliedRule) {
 		this.skipOnFirstAppliedRule = skipOnFirstAppliedRule;
 	}
@@ -148,6 +401,11 @@ public class RulesEngineParameters {
 	public String toString() {
 		return "Engine parameters { " + "skipOnFirstAppliedRule = " + skipOnFirstAppliedRule
 				+ ", skipOnFirstNonTriggeredRule = " + skipOnFirstNonTriggeredRule + ", skipOnFirstFailedRule = "
-				+ skipOnFirstFailedRule + ", priorityThreshold = " + priorityThreshold + " }";
+				+ skipOnFirstFailedRule + ", priorityThreshold = " + priorityThreshold + ", maxCycles = " + maxCycles
+				+ ", incrementalEvaluation = " + incrementalEvaluation + ", parallelEvaluation = " + parallelEvaluation
+				+ ", conditionIndex = " + conditionIndex
+				+ ", ruleTimeBudget = " + ruleTimeBudget
+				+ ", circuitBreakerThreshold = " + circuitBreakerThreshold + ", circuitBreakerResetTimeout = "
+				+ circuitBreakerResetTimeout + " }";
 	}
 }
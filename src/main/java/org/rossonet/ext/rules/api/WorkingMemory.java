@@ -0,0 +1,501 @@
+package org.rossonet.ext.rules.api;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Concurrent working memory keeping versioned, immutable snapshots of the
+ * facts.
+ *
+ * Fact providers publish facts from any thread: each update creates a new
+ * version of the memory, copying only O(log n) nodes of the previous one.
+ * Firings work on a {@link Cycle}, a {@link Facts} instance reading a snapshot
+ * of the memory taken in constant time, so that several rules engines can
+ * evaluate the same memory at once without copying it. The facts written by
+ * the rules go into a delta private to the cycle, which is applied atomically
+ * to the latest version of the memory by {@link Cycle#commit()}: facts
+ * published in the meantime are kept unless the cycle wrote the same facts.
+ */
+public final class WorkingMemory {
+
+	/**
+	 * Facts of a firing, reading a snapshot of the working memory and writing
+	 * into a delta committed at the end of the firing.
+	 *
+	 * Facts added with {@link #addLocal(Fact)}, for instance the helpers given to
+	 * the rules, and the facts of the working memory given to
+	 * {@link WorkingMemory#begin(WorkingMemory)} are visible to the firing only
+	 * and are never committed; they hide the facts of the snapshot with the same
+	 * names. Like
+	 * {@link Facts}, a cycle is not thread-safe, but it can be read concurrently
+	 * as long as it is not written.
+	 *
+	 * {@link #size()} and {@link #isEmpty()} merge the snapshot, the local facts
+	 * and the delta, so they cost O(n).
+	 */
+	public static final class Cycle extends Facts {
+
+		/**
+		 * Live read-only view of the facts of the cycle.
+		 */
+		private final class CycleMapView extends AbstractMap<String, Object> {
+
+			@Override
+			public boolean containsKey(final Object key) {
+				return key instanceof String && has((String) key);
+			}
+
+			@Override
+			public Set<Map.Entry<String, Object>> entrySet() {
+				return new AbstractSet<Map.Entry<String, Object>>() {
+
+					@Override
+					public Iterator<Map.Entry<String, Object>> iterator() {
+						final Iterator<Fact<?>> facts = Cycle.this.iterator();
+						return new Iterator<Map.Entry<String, Object>>() {
+
+							@Override
+							public boolean hasNext() {
+								return facts.hasNext();
+							}
+
+							@Override
+							public Map.Entry<String, Object> next() {
+								final Fact<?> fact = facts.next();
+								return new AbstractMap.SimpleImmutableEntry<>(fact.getName(), fact.getValue());
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return Cycle.this.size();
+					}
+				};
+			}
+
+			@Override
+			public Object get(final Object key) {
+				if (!(key instanceof String)) {
+					return null;
+				}
+				final Fact<?> fact = getFact((String) key);
+				return fact != null ? fact.getValue() : null;
+			}
+		}
+
+		private final WorkingMemory memory;
+		private final PersistentFactMap snapshot;
+		private final long snapshotVersion;
+		// written facts, null for the removed ones
+		private final Map<String, Fact<?>> delta = new LinkedHashMap<>();
+		private final Map<String, Fact<?>> locals = new HashMap<>();
+		private final Map<String, Object> mapView = new CycleMapView();
+		private PersistentFactMap provided;
+		private boolean cleared;
+		private boolean committed;
+		private long version;
+
+		private Cycle(final WorkingMemory memory, final State state, final PersistentFactMap provided) {
+			this.memory = memory;
+			this.snapshot = state.facts;
+			this.snapshotVersion = state.version;
+			this.provided = provided;
+			this.version = state.version;
+		}
+
+		@Override
+		public <T> void add(final Fact<T> fact) {
+			Objects.requireNonNull(fact, "fact must not be null");
+			delta.put(fact.getName(), fact);
+			version++;
+		}
+
+		/**
+		 * Add a fact visible to this cycle only, which is not committed to the
+		 * working memory.
+		 *
+		 * @param fact to add, must not be null
+		 */
+		public void addLocal(final Fact<?> fact) {
+			Objects.requireNonNull(fact, "fact must not be null");
+			locals.put(fact.getName(), fact);
+			version++;
+		}
+
+		@Override
+		public Map<String, Object> asMap() {
+			final Map<String, Object> map = new HashMap<>();
+			for (final Fact<?> fact : this) {
+				map.put(fact.getName(), fact.getValue());
+			}
+			return map;
+		}
+
+		@Override
+		public Map<String, Object> asMapView() {
+			return mapView;
+		}
+
+		@Override
+		public void clear() {
+			delta.clear();
+			locals.clear();
+			provided = PersistentFactMap.EMPTY;
+			cleared = true;
+			version++;
+		}
+
+		/**
+		 * Apply the facts written by the rules to the latest version of the
+		 * working memory, atomically.
+		 *
+		 * @return the version of the working memory including the delta
+		 * @throws IllegalStateException if the cycle has already been committed
+		 */
+		public long commit() {
+			if (committed) {
+				throw new IllegalStateException("cycle already committed");
+			}
+			committed = true;
+			if (!cleared && delta.isEmpty()) {
+				return memory.getVersion();
+			}
+			return memory.update(facts -> {
+				PersistentFactMap updated = cleared ? PersistentFactMap.EMPTY : facts;
+				for (final Map.Entry<String, Fact<?>> entry : delta.entrySet()) {
+					updated = entry.getValue() != null ? updated.put(entry.getValue())
+							: updated.remove(entry.getKey());
+				}
+				return updated;
+			});
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T> T get(final String factName) {
+			final Fact<?> fact = getFact(factName);
+			return fact != null ? (T) fact.getValue() : null;
+		}
+
+		/**
+		 * Return the facts written or removed by the rules since the beginning of
+		 * the cycle.
+		 *
+		 * @return the written facts by name, with a null value for the removed ones
+		 */
+		public Map<String, Fact<?>> getDelta() {
+			return Collections.unmodifiableMap(delta);
+		}
+
+		@Override
+		public Fact<?> getFact(final String factName) {
+			Objects.requireNonNull(factName, "fact name must not be null");
+			if (delta.containsKey(factName)) {
+				return delta.get(factName);
+			}
+			final Fact<?> local = locals.get(factName);
+			if (local != null) {
+				return local;
+			}
+			final Fact<?> providedFact = provided.get(factName);
+			if (providedFact != null || cleared) {
+				return providedFact;
+			}
+			return snapshot.get(factName);
+		}
+
+		/**
+		 * Return the version of the working memory read by this cycle.
+		 *
+		 * @return the version of the snapshot
+		 */
+		public long getSnapshotVersion() {
+			return snapshotVersion;
+		}
+
+		@Override
+		public long getVersion() {
+			return version;
+		}
+
+		@Override
+		public boolean has(final String factName) {
+			return getFact(factName) != null;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return !iterator().hasNext();
+		}
+
+		@Override
+		public Iterator<Fact<?>> iterator() {
+			// delta and local facts are copied, so that facts can be removed while iterating
+			final Iterator<Fact<?>> deltaFacts = new ArrayList<>(delta.values()).iterator();
+			final Iterator<Fact<?>> localFacts = new ArrayList<>(locals.values()).iterator();
+			final PersistentFactMap providedMap = provided;
+			final Iterator<Fact<?>> providedFacts = providedMap.iterator();
+			final Iterator<Fact<?>> snapshotFacts = cleared ? Collections.emptyIterator() : snapshot.iterator();
+			return new Iterator<Fact<?>>() {
+
+				private Fact<?> next = advance();
+				private Fact<?> last;
+
+				private Fact<?> advance() {
+					while (deltaFacts.hasNext()) {
+						final Fact<?> fact = deltaFacts.next();
+						if (fact != null) {
+							return fact;
+						}
+					}
+					while (localFacts.hasNext()) {
+						final Fact<?> fact = localFacts.next();
+						if (!delta.containsKey(fact.getName())) {
+							return fact;
+						}
+					}
+					while (providedFacts.hasNext()) {
+						final Fact<?> fact = providedFacts.next();
+						if (!delta.containsKey(fact.getName()) && !locals.containsKey(fact.getName())) {
+							return fact;
+						}
+					}
+					while (snapshotFacts.hasNext()) {
+						final Fact<?> fact = snapshotFacts.next();
+						if (!delta.containsKey(fact.getName()) && !locals.containsKey(fact.getName())
+								&& providedMap.get(fact.getName()) == null) {
+							return fact;
+						}
+					}
+					return null;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return next != null;
+				}
+
+				@Override
+				public Fact<?> next() {
+					if (next == null) {
+						throw new NoSuchElementException();
+					}
+					last = next;
+					next = advance();
+					return last;
+				}
+
+				@Override
+				public void remove() {
+					if (last == null) {
+						throw new IllegalStateException();
+					}
+					Cycle.this.remove(last.getName());
+					last = null;
+				}
+			};
+		}
+
+		@Override
+		public <T> void put(final String name, final T value) {
+			Objects.requireNonNull(name, "fact name must not be null");
+			Objects.requireNonNull(value, "fact value must not be null");
+			add(new Fact<>(name, value));
+		}
+
+		@Override
+		public <T> void remove(final Fact<T> fact) {
+			Objects.requireNonNull(fact, "fact must not be null");
+			if (fact.equals(getFact(fact.getName()))) {
+				remove(fact.getName());
+			}
+		}
+
+		@Override
+		public void remove(final String factName) {
+			Objects.requireNonNull(factName, "fact name must not be null");
+			boolean removed = false;
+			if (!delta.containsKey(factName)) {
+				// local and provided facts are not committed
+				removed = locals.remove(factName) != null;
+				if (provided.get(factName) != null) {
+					provided = provided.remove(factName);
+					removed = true;
+				}
+			}
+			// the fact of the snapshot hidden by the removed ones must not reappear
+			if (delta.get(factName) != null
+					|| !delta.containsKey(factName) && !cleared && snapshot.get(factName) != null) {
+				delta.put(factName, null);
+				removed = true;
+			}
+			if (removed) {
+				version++;
+			}
+		}
+
+		@Override
+		public int size() {
+			int size = 0;
+			for (final Iterator<Fact<?>> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+				size++;
+			}
+			return size;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder stringBuilder = new StringBuilder("[");
+			final Iterator<Fact<?>> iterator = iterator();
+			while (iterator.hasNext()) {
+				stringBuilder.append(iterator.next().toString());
+				if (iterator.hasNext()) {
+					stringBuilder.append(",");
+				}
+			}
+			stringBuilder.append("]");
+			return stringBuilder.toString();
+		}
+	}
+
+	/**
+	 * Version of the working memory.
+	 */
+	private static final class State {
+
+		private final PersistentFactMap facts;
+		private final long version;
+
+		private State(final PersistentFactMap facts, final long version) {
+			this.facts = facts;
+			this.version = version;
+		}
+	}
+
+	private final AtomicReference<State> state = new AtomicReference<>(new State(PersistentFactMap.EMPTY, 0));
+
+	/**
+	 * Take a snapshot of the working memory and start a cycle on it.
+	 *
+	 * @return the facts of the cycle
+	 */
+	public Cycle begin() {
+		return new Cycle(this, state.get(), PersistentFactMap.EMPTY);
+	}
+
+	/**
+	 * Take a snapshot of the working memory and start a cycle on it, with the
+	 * facts of another working memory added for the cycle only.
+	 *
+	 * Both snapshots are taken in constant time, for instance to layer the facts
+	 * of the fact providers, kept in their own working memory, on the facts
+	 * committed by the rules.
+	 *
+	 * @param provided working memory with the facts to add, must not be null
+	 * @return the facts of the cycle
+	 */
+	public Cycle begin(final WorkingMemory provided) {
+		Objects.requireNonNull(provided, "provided must not be null");
+		return new Cycle(this, state.get(), provided.state.get().facts);
+	}
+
+	/**
+	 * Remove all the facts.
+	 *
+	 * @return the new version of the working memory
+	 */
+	public long clear() {
+		return update(facts -> PersistentFactMap.EMPTY);
+	}
+
+	public Fact<?> getFact(final String factName) {
+		Objects.requireNonNull(factName, "fact name must not be null");
+		return state.get().facts.get(factName);
+	}
+
+	/**
+	 * Return the version of the working memory, incremented by each update.
+	 *
+	 * @return the current version
+	 */
+	public long getVersion() {
+		return state.get().version;
+	}
+
+	/**
+	 * Publish a fact, replacing any fact with the same name.
+	 *
+	 * @param fact to publish, must not be null
+	 * @return the new version of the working memory
+	 */
+	public long publish(final Fact<?> fact) {
+		Objects.requireNonNull(fact, "fact must not be null");
+		return update(facts -> facts.put(fact));
+	}
+
+	/**
+	 * Publish facts atomically: cycles see all of them or none of them.
+	 *
+	 * @param facts to publish, must not be null
+	 * @return the new version of the working memory
+	 */
+	public long publishAll(final Collection<? extends Fact<?>> facts) {
+		Objects.requireNonNull(facts, "facts must not be null");
+		return update(current -> {
+			PersistentFactMap updated = current;
+			for (final Fact<?> fact : facts) {
+				updated = updated.put(fact);
+			}
+			return updated;
+		});
+	}
+
+	/**
+	 * Remove a fact.
+	 *
+	 * @param factName name of the fact to remove, must not be null
+	 * @return the new version of the working memory
+	 */
+	public long remove(final String factName) {
+		Objects.requireNonNull(factName, "fact name must not be null");
+		return update(facts -> facts.remove(factName));
+	}
+
+	public int size() {
+		return state.get().facts.size();
+	}
+
+	@Override
+	public String toString() {
+		final State current = state.get();
+		return "WorkingMemory{version=" + current.version + ", size=" + current.facts.size() + "}";
+	}
+
+	private long update(final UnaryOperator<PersistentFactMap> update) {
+		while (true) {
+			final State current = state.get();
+			final PersistentFactMap facts = update.apply(current.facts);
+			if (facts == current.facts) {
+				return current.version;
+			}
+			final State updated = new State(facts, current.version + 1);
+			if (state.compareAndSet(current, updated)) {
+				return updated.version;
+			}
+		}
+	}
+
+}
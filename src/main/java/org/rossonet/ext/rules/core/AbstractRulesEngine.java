@@ -26,6 +26,7 @@ package org.rossonet.ext.rules.core;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 import org.rossonet.ext.rules.api.RuleListener;
 import org.rossonet.ext.rules.api.RulesEngine;
@@ -42,6 +43,8 @@ public abstract class AbstractRulesEngine implements RulesEngine {
 	RulesEngineParameters parameters;
 	List<RuleListener> ruleListeners;
 	List<RulesEngineListener> rulesEngineListeners;
+	ExecutionTrace executionTrace;
+	final RuleCircuitBreakers circuitBreakers;
 
 	AbstractRulesEngine() {
 		this(new RulesEngineParameters());
@@ -51,6 +54,18 @@ public abstract class AbstractRulesEngine implements RulesEngine {
 		this.parameters = parameters;
 		this.ruleListeners = new ArrayList<>();
 		this.rulesEngineListeners = new ArrayList<>();
+		this.executionTrace = new ExecutionTrace();
+		this.circuitBreakers = new RuleCircuitBreakers(parameters);
+	}
+
+	/**
+	 * Return the trace recording the executions of the rules when the trace is
+	 * enabled on the rules, on the facts or on a rule.
+	 *
+	 * @return the execution trace of the engine
+	 */
+	public ExecutionTrace getExecutionTrace() {
+		return executionTrace;
 	}
 
 	/**
@@ -61,7 +76,12 @@ public abstract class AbstractRulesEngine implements RulesEngine {
 	@Override
 	public RulesEngineParameters getParameters() {
 		return new RulesEngineParameters(parameters.isSkipOnFirstAppliedRule(), parameters.isSkipOnFirstFailedRule(),
-				parameters.isSkipOnFirstNonTriggeredRule(), parameters.getPriorityThreshold());
+				parameters.isSkipOnFirstNonTriggeredRule(), parameters.getPriorityThreshold())
+				.maxCycles(parameters.getMaxCycles())
+				.conflictResolutionStrategy(parameters.getConflictResolutionStrategy())
+				.parallelEvaluation(parameters.isParallelEvaluation()).ruleTimeBudget(parameters.getRuleTimeBudget())
+				.circuitBreakerThreshold(parameters.getCircuitBreakerThreshold())
+				.circuitBreakerResetTimeout(parameters.getCircuitBreakerResetTimeout());
 	}
 
 	/**
@@ -99,4 +119,24 @@ public abstract class AbstractRulesEngine implements RulesEngine {
 	public void registerRulesEngineListeners(List<RulesEngineListener> rulesEngineListeners) {
 		this.rulesEngineListeners.addAll(rulesEngineListeners);
 	}
+
+	/**
+	 * Enable again all the rules disabled by their circuit breaker after
+	 * exceeding their time budget.
+	 *
+	 * @see RulesEngineParameters#ruleTimeBudget(java.time.Duration)
+	 */
+	public void resetCircuitBreakers() {
+		circuitBreakers.reset();
+	}
+
+	/**
+	 * Replace the execution trace of the engine, for instance to change its
+	 * capacity or its sample rate.
+	 *
+	 * @param executionTrace the new execution trace, must not be null
+	 */
+	public void setExecutionTrace(final ExecutionTrace executionTrace) {
+		this.executionTrace = Objects.requireNonNull(executionTrace, "Execution trace must not be null");
+	}
 }
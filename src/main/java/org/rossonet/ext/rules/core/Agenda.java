@@ -0,0 +1,75 @@
+package org.rossonet.ext.rules.core;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import org.rossonet.ext.rules.api.Activation;
+import org.rossonet.ext.rules.api.ConflictResolutionStrategy;
+import org.rossonet.ext.rules.api.Rule;
+
+/**
+ * Agenda of an inference rules engine: the activations of the matched rules
+ * waiting to be executed, ordered by a {@link ConflictResolutionStrategy}.
+ * Activations with the same order are executed in creation order.
+ *
+ * <strong>This class is not thread-safe.</strong>
+ */
+final class Agenda {
+
+	private final TreeSet<Activation> activations;
+	private long sequence;
+
+	Agenda(final ConflictResolutionStrategy strategy) {
+		final Comparator<Activation> comparator = strategy.thenComparingLong(Activation::getSequence);
+		this.activations = new TreeSet<>(comparator);
+	}
+
+	/**
+	 * Create a new activation for the given rule and add it to the agenda.
+	 *
+	 * @param rule    matched rule
+	 * @param recency creation time of the most recent fact read by the condition
+	 * @return the new activation
+	 */
+	Activation activate(final Rule rule, final long recency) {
+		final Activation activation = new Activation(rule, sequence++, recency);
+		activations.add(activation);
+		return activation;
+	}
+
+	/**
+	 * Add back an activation previously removed from this agenda.
+	 *
+	 * @param activation to add
+	 */
+	void add(final Activation activation) {
+		activations.add(activation);
+	}
+
+	void cancel(final Activation activation) {
+		activations.remove(activation);
+	}
+
+	boolean cancelIf(final Predicate<Activation> filter) {
+		return activations.removeIf(filter);
+	}
+
+	void clear() {
+		activations.clear();
+	}
+
+	boolean isEmpty() {
+		return activations.isEmpty();
+	}
+
+	/**
+	 * Remove and return the first activation of the agenda.
+	 *
+	 * @return the first activation or null if the agenda is empty
+	 */
+	Activation next() {
+		return activations.pollFirst();
+	}
+
+}
@@ -0,0 +1,389 @@
+package org.rossonet.ext.rules.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import org.rossonet.ext.rules.api.CompiledRules;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.rules.api.RulesEngine;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+import org.rossonet.ext.rules.support.ConditionSharing;
+import org.rossonet.ext.utils.concurrent.PriorityExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link RulesEngine} implementation dispatching the actions of the triggered
+ * rules onto a {@link PriorityExecutorService}, so that a single thread can
+ * drive many rule sets without blocking on slow actions.
+ *
+ * Conditions are evaluated in priority order on the calling thread, against
+ * the facts as they are when the rules are fired: actions do not change the
+ * facts seen by the conditions of the same firing. The actions of the
+ * triggered rules are then submitted to the executor, the rules with the
+ * highest priority getting the highest task priority.
+ *
+ * Rules are assigned to a group, by default named after the rule. The actions
+ * of the rules of a group with {@link Ordering#SEQUENTIAL sequential} ordering
+ * are executed one at a time, in the order they have been dispatched across
+ * all the firings of the engine; the actions of a group with
+ * {@link Ordering#CONCURRENT concurrent} ordering, the default, may run in
+ * parallel and must then be thread-safe, as well as the facts they share.
+ *
+ * Parameters are applied on the evaluation: since actions complete after the
+ * evaluation, {@link RulesEngineParameters#isSkipOnFirstAppliedRule()} stops
+ * at the first triggered rule and
+ * {@link RulesEngineParameters#isSkipOnFirstFailedRule()} is not supported.
+ * Rule listeners are notified of the executions on the threads of the
+ * executor.
+ */
+public final class AsyncRulesEngine extends AbstractRulesEngine {
+
+	/**
+	 * Ordering guarantee of the actions of a group of rules.
+	 */
+	public enum Ordering {
+		/**
+		 * Actions may run in parallel, in task priority order.
+		 */
+		CONCURRENT,
+		/**
+		 * Actions run one at a time, in dispatch order.
+		 */
+		SEQUENTIAL
+	}
+
+	/**
+	 * Outcome of an asynchronous firing, available once all the dispatched
+	 * actions have completed.
+	 */
+	public static final class Outcome {
+
+		private final List<Rule> triggeredRules;
+		private final Map<Rule, Exception> failures = new ConcurrentHashMap<>();
+
+		private Outcome(final List<Rule> triggeredRules) {
+			this.triggeredRules = Collections.unmodifiableList(triggeredRules);
+		}
+
+		/**
+		 * @return the rules whose actions failed, with their failure
+		 */
+		public Map<Rule, Exception> getFailures() {
+			return Collections.unmodifiableMap(failures);
+		}
+
+		/**
+		 * @return the triggered rules whose actions have been dispatched, in
+		 *         priority order
+		 */
+		public List<Rule> getTriggeredRules() {
+			return triggeredRules;
+		}
+
+		/**
+		 * @return true if all the dispatched actions succeeded
+		 */
+		public boolean isSuccessful() {
+			return failures.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "Outcome{triggeredRules=" + triggeredRules.size() + ", failures=" + failures.keySet() + "}";
+		}
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncRulesEngine.class);
+
+	/**
+	 * Map the priorities of the triggered rules, in priority order, to task
+	 * priorities: each distinct rule priority gets the next lower task
+	 * priority, down to {@link Thread#MIN_PRIORITY}.
+	 */
+	private static int[] taskPriorities(final CompiledRules rules, final List<Integer> triggered) {
+		final int[] taskPriorities = new int[triggered.size()];
+		int taskPriority = Thread.MAX_PRIORITY;
+		for (int i = 0; i < taskPriorities.length; i++) {
+			if (i > 0 && rules.getPriority(triggered.get(i)) != rules.getPriority(triggered.get(i - 1))) {
+				taskPriority = Math.max(Thread.MIN_PRIORITY, taskPriority - 1);
+			}
+			taskPriorities[i] = taskPriority;
+		}
+		return taskPriorities;
+	}
+
+	private final PriorityExecutorService executor;
+	private final Map<String, Ordering> orderings = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, CompletableFuture<Void>> sequences = new ConcurrentHashMap<>();
+	private volatile Function<Rule, String> ruleGroup = Rule::getName;
+
+	/**
+	 * Create a new {@link AsyncRulesEngine} with default parameters.
+	 *
+	 * @param executor executing the actions of the triggered rules
+	 */
+	public AsyncRulesEngine(final PriorityExecutorService executor) {
+		this(new RulesEngineParameters(), executor);
+	}
+
+	/**
+	 * Create a new {@link AsyncRulesEngine}.
+	 *
+	 * @param parameters of the engine
+	 * @param executor   executing the actions of the triggered rules
+	 */
+	public AsyncRulesEngine(final RulesEngineParameters parameters, final PriorityExecutorService executor) {
+		super(parameters);
+		this.executor = Objects.requireNonNull(executor, "Executor must not be null");
+	}
+
+	@Override
+	public Map<Rule, Boolean> check(final Rules rules, final Facts facts) {
+		Objects.requireNonNull(rules, "Rules must not be null");
+		Objects.requireNonNull(facts, "Facts must not be null");
+		triggerListenersBeforeRules(rules, facts);
+		final Map<Rule, Boolean> result = new HashMap<>();
+		ConditionSharing.invalidate();
+		for (final Rule rule : rules) {
+			if (shouldBeEvaluated(rule, facts)) {
+				result.put(rule, rule.evaluate(facts));
+			}
+		}
+		triggerListenersAfterRules(rules, facts);
+		return result;
+	}
+
+	private CompletableFuture<Void> dispatch(final Rule rule, final String name, final int taskPriority,
+			final Facts facts, final Outcome outcome) {
+		final String group = ruleGroup.apply(rule);
+		if (getOrdering(group) == Ordering.CONCURRENT) {
+			return submit(rule, name, taskPriority, facts, outcome);
+		}
+		final CompletableFuture<Void> sequence = sequences.compute(group,
+				(key, last) -> last == null ? submit(rule, name, taskPriority, facts, outcome)
+						: last.thenCompose(ignored -> submit(rule, name, taskPriority, facts, outcome)));
+		sequence.whenComplete((ignored, exception) -> sequences.remove(group, sequence));
+		return sequence;
+	}
+
+	private void evaluate(final CompiledRules rules, final Facts facts, final List<Integer> triggered) {
+		final RuleCircuitBreakers breakers = circuitBreakers.isEnabled() ? circuitBreakers : null;
+		ConditionSharing.invalidate();
+		for (int index = 0; index < rules.size(); index++) {
+			final Rule rule = rules.get(index);
+			final String name = rules.getName(index);
+			final int priority = rules.getPriority(index);
+			if (priority > parameters.getPriorityThreshold()) {
+				LOGGER.debug("Rule priority threshold ({}) exceeded at rule '{}' with priority={}, next rules will be skipped",
+						parameters.getPriorityThreshold(), name, priority);
+				break;
+			}
+			if (breakers != null && !breakers.allows(name)) {
+				LOGGER.debug("Rule '{}' has been skipped since it is disabled by its circuit breaker", name);
+				continue;
+			}
+			if (!shouldBeEvaluated(rule, facts)) {
+				LOGGER.debug("Rule '{}' has been skipped before being evaluated", name);
+				continue;
+			}
+			boolean evaluationResult;
+			try {
+				final long start = breakers != null ? System.nanoTime() : 0;
+				evaluationResult = rule.evaluate(facts);
+				if (breakers != null) {
+					breakers.check(name, System.nanoTime() - start);
+				}
+			} catch (final RuntimeException exception) {
+				evaluationResult = false;
+				LOGGER.error("Rule '" + name + "' evaluated with error", exception);
+				triggerListenersOnEvaluationError(rule, facts, exception);
+			}
+			triggerListenersAfterEvaluate(rule, facts, evaluationResult);
+			if (evaluationResult) {
+				LOGGER.debug("Rule '{}' triggered", name);
+				triggered.add(index);
+				if (parameters.isSkipOnFirstAppliedRule()) {
+					LOGGER.debug("Next rules will be skipped since parameter skipOnFirstAppliedRule is set");
+					break;
+				}
+			} else {
+				LOGGER.debug("Rule '{}' has been evaluated to false, it has not been executed", name);
+				if (parameters.isSkipOnFirstNonTriggeredRule()) {
+					LOGGER.debug("Next rules will be skipped since parameter skipOnFirstNonTriggeredRule is set");
+					break;
+				}
+			}
+		}
+	}
+
+	private void execute(final Rule rule, final String name, final Facts facts, final Outcome outcome) {
+		final RuleCircuitBreakers breakers = circuitBreakers.isEnabled() ? circuitBreakers : null;
+		try {
+			triggerListenersBeforeExecute(rule, facts);
+			final long start = breakers != null ? System.nanoTime() : 0;
+			rule.execute(facts);
+			if (breakers != null) {
+				breakers.check(name, System.nanoTime() - start);
+			}
+			LOGGER.debug("Rule '{}' performed successfully", name);
+			triggerListenersOnSuccess(rule, facts);
+		} catch (final Exception exception) {
+			fail(rule, name, facts, outcome, exception);
+		}
+	}
+
+	private void fail(final Rule rule, final String name, final Facts facts, final Outcome outcome,
+			final Exception exception) {
+		LOGGER.error("Rule '" + name + "' performed with error", exception);
+		outcome.failures.put(rule, exception);
+		triggerListenersOnFailure(rule, exception, facts);
+	}
+
+	/**
+	 * Fire the rules and wait for the completion of their actions.
+	 */
+	@Override
+	public void fire(final Rules rules, final Facts facts) {
+		fireAsync(rules, facts).join();
+	}
+
+	/**
+	 * Evaluate the rules on the calling thread and dispatch the actions of the
+	 * triggered rules onto the executor.
+	 *
+	 * @param rules to fire
+	 * @param facts to fire the rules on
+	 * @return the outcome of the firing, completed when all the dispatched
+	 *         actions have completed
+	 */
+	public CompletableFuture<Outcome> fireAsync(final Rules rules, final Facts facts) {
+		Objects.requireNonNull(rules, "Rules must not be null");
+		Objects.requireNonNull(facts, "Facts must not be null");
+		triggerListenersBeforeRules(rules, facts);
+		if (rules.isEmpty()) {
+			LOGGER.debug("No rules registered! Nothing to apply");
+			triggerListenersAfterRules(rules, facts);
+			return CompletableFuture.completedFuture(new Outcome(Collections.emptyList()));
+		}
+		final CompiledRules compiledRules = CompiledRules.compile(rules);
+		final List<Integer> triggered = new ArrayList<>();
+		evaluate(compiledRules, facts, triggered);
+		final List<Rule> triggeredRules = new ArrayList<>(triggered.size());
+		for (final int index : triggered) {
+			triggeredRules.add(compiledRules.get(index));
+		}
+		final Outcome outcome = new Outcome(triggeredRules);
+		final int[] taskPriorities = taskPriorities(compiledRules, triggered);
+		final CompletableFuture<?>[] actions = new CompletableFuture<?>[triggered.size()];
+		for (int i = 0; i < actions.length; i++) {
+			final int index = triggered.get(i);
+			actions[i] = dispatch(compiledRules.get(index), compiledRules.getName(index), taskPriorities[i], facts,
+					outcome);
+		}
+		return CompletableFuture.allOf(actions).handle((ignored, exception) -> {
+			triggerListenersAfterRules(rules, facts);
+			return outcome;
+		});
+	}
+
+	/**
+	 * Return the ordering of the actions of a group of rules.
+	 *
+	 * @param group name of the group
+	 * @return the ordering of the group, {@link Ordering#CONCURRENT} by default
+	 */
+	public Ordering getOrdering(final String group) {
+		return orderings.getOrDefault(group, Ordering.CONCURRENT);
+	}
+
+	/**
+	 * Set the ordering of the actions of a group of rules.
+	 *
+	 * @param group    name of the group
+	 * @param ordering of the actions of the group
+	 */
+	public void setOrdering(final String group, final Ordering ordering) {
+		Objects.requireNonNull(group, "Group must not be null");
+		orderings.put(group, Objects.requireNonNull(ordering, "Ordering must not be null"));
+	}
+
+	/**
+	 * Set the function assigning a rule to a group, named after the rule by
+	 * default.
+	 *
+	 * @param ruleGroup returns the name of the group of a rule, must not return
+	 *                  null
+	 */
+	public void setRuleGroup(final Function<Rule, String> ruleGroup) {
+		this.ruleGroup = Objects.requireNonNull(ruleGroup, "Rule group must not be null");
+	}
+
+	private boolean shouldBeEvaluated(final Rule rule, final Facts facts) {
+		return ruleListeners.stream().allMatch(ruleListener -> ruleListener.beforeEvaluate(rule, facts));
+	}
+
+	/**
+	 * Submit the actions of a rule to the executor.
+	 *
+	 * @return a future completed when the actions have completed, normally even
+	 *         if they failed
+	 */
+	private CompletableFuture<Void> submit(final Rule rule, final String name, final int taskPriority,
+			final Facts facts, final Outcome outcome) {
+		final CompletableFuture<Void> completion = new CompletableFuture<>();
+		try {
+			executor.submit(() -> {
+				try {
+					execute(rule, name, facts, outcome);
+				} finally {
+					completion.complete(null);
+				}
+			}, taskPriority);
+		} catch (final RejectedExecutionException exception) {
+			fail(rule, name, facts, outcome, exception);
+			completion.complete(null);
+		}
+		return completion;
+	}
+
+	private void triggerListenersAfterEvaluate(final Rule rule, final Facts facts, final boolean evaluationResult) {
+		ruleListeners.forEach(ruleListener -> ruleListener.afterEvaluate(rule, facts, evaluationResult));
+	}
+
+	private void triggerListenersAfterRules(final Rules rule, final Facts facts) {
+		rulesEngineListeners.forEach(rulesEngineListener -> rulesEngineListener.afterExecute(rule, facts));
+	}
+
+	private void triggerListenersBeforeExecute(final Rule rule, final Facts facts) {
+		ruleListeners.forEach(ruleListener -> ruleListener.beforeExecute(rule, facts));
+	}
+
+	private void triggerListenersBeforeRules(final Rules rule, final Facts facts) {
+		rulesEngineListeners.forEach(rulesEngineListener -> rulesEngineListener.beforeEvaluate(rule, facts));
+	}
+
+	private void triggerListenersOnEvaluationError(final Rule rule, final Facts facts, final Exception exception) {
+		ruleListeners.forEach(ruleListener -> ruleListener.onEvaluationError(rule, facts, exception));
+	}
+
+	private void triggerListenersOnFailure(final Rule rule, final Exception exception, final Facts facts) {
+		ruleListeners.forEach(ruleListener -> ruleListener.onFailure(rule, facts, exception));
+	}
+
+	private void triggerListenersOnSuccess(final Rule rule, final Facts facts) {
+		ruleListeners.forEach(ruleListener -> ruleListener.onSuccess(rule, facts));
+	}
+
+}
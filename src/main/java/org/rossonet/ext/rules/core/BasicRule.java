@@ -54,6 +54,11 @@ public class BasicRule implements Rule {
 	 */
 	protected int priority;
 
+	/**
+	 * Rule parallelizable flag.
+	 */
+	protected boolean parallelizable = true;
+
 	/**
 	 * Create a new {@link BasicRule}.
 	 */
@@ -168,10 +173,19 @@ public class BasicRule implements Rule {
 		return result;
 	}
 
+	@Override
+	public boolean isParallelizable() {
+		return parallelizable;
+	}
+
 	public void setDescription(final String description) {
 		this.description = description;
 	}
 
+	public void setParallelizable(final boolean parallelizable) {
+		this.parallelizable = parallelizable;
+	}
+
 	public void setPriority(final int priority) {
 		this.priority = priority;
 	}
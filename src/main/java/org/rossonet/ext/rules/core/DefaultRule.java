@@ -24,12 +24,14 @@
 package org.rossonet.ext.rules.core;
 
 import java.util.List;
+import java.util.Set;
 
 import org.rossonet.ext.rules.api.Action;
 import org.rossonet.ext.rules.api.Condition;
+import org.rossonet.ext.rules.api.FactDependent;
 import org.rossonet.ext.rules.api.Facts;
 
-class DefaultRule extends BasicRule {
+class DefaultRule extends BasicRule implements FactDependent {
 
 	private final Condition condition;
 	private final List<Action> actions;
@@ -52,4 +54,9 @@ class DefaultRule extends BasicRule {
 		}
 	}
 
+	@Override
+	public Set<String> getFactDependencies() {
+		return FactDependent.of(condition);
+	}
+
 }
@@ -23,16 +23,24 @@
  */
 package org.rossonet.ext.rules.core;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
-import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.CompiledRules;
 import org.rossonet.ext.rules.api.Facts;
 import org.rossonet.ext.rules.api.Rule;
 import org.rossonet.ext.rules.api.Rules;
 import org.rossonet.ext.rules.api.RulesEngine;
 import org.rossonet.ext.rules.api.RulesEngineParameters;
+import org.rossonet.ext.rules.support.ConditionIndex;
+import org.rossonet.ext.rules.support.ConditionSharing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,12 +52,42 @@ import org.slf4j.LoggerFactory;
  * the condition of each rule and executes its actions if the condition
  * evaluates to true.
  *
+ * When {@link RulesEngineParameters#isParallelEvaluation()} is set, the
+ * conditions of parallelizable rules are evaluated concurrently, while actions
+ * are still executed sequentially in the rules order, so that the skip
+ * parameters keep their meaning. Conditions are evaluated again when an action
+ * changes the facts.
+ *
+ * Batches of independent facts are fired with a single dispatch of the rules
+ * engine listeners. With parallel evaluation
+ * and parallelizable rules, the facts of a batch are partitioned across the
+ * cores of the common fork-join pool: the rules must then be thread-safe.
+ *
+ * Rules are compiled in {@link CompiledRules} once per firing, or once per
+ * batch; firing rules that are already compiled avoids this step.
+ *
+ * Evaluations, executions and failures are recorded in the
+ * {@link ExecutionTrace} of the engine when the trace is enabled on the rules,
+ * on the facts or on a rule, instead of being logged.
+ *
+ * When the rules have a {@link RulesEngineParameters#getRuleTimeBudget() time
+ * budget}, conditions and actions exceeding it are reported as evaluation errors
+ * and failures, and rules disabled by their circuit breaker are skipped.
+ *
+ * When {@link RulesEngineParameters#isConditionIndex()} is set, the rules whose
+ * condition is discarded by a {@link ConditionIndex} are handled as rules
+ * evaluated to false without evaluating their condition. The index is built
+ * again only when the rules change, and the rules it selects are computed again
+ * after each action, since actions can change the facts in place.
+ *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
 public final class DefaultRulesEngine extends AbstractRulesEngine {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultRulesEngine.class);
 
+	private volatile ConditionIndex conditionIndex;
+
 	/**
 	 * Create a new {@link DefaultRulesEngine} with default parameters.
 	 */
@@ -66,60 +104,80 @@ public final class DefaultRulesEngine extends AbstractRulesEngine {
 		super(parameters);
 	}
 
-	@Override
-	public Map<Rule, Boolean> check(final Rules rules, final Facts facts) {
-		Objects.requireNonNull(rules, "Rules must not be null");
-		Objects.requireNonNull(facts, "Facts must not be null");
-		triggerListenersBeforeRules(rules, facts);
-		final Map<Rule, Boolean> result = doCheck(rules, facts);
-		triggerListenersAfterRules(rules, facts);
-		return result;
-	}
-
-	private Map<Rule, Boolean> doCheck(final Rules rules, final Facts facts) {
-		LOGGER.debug("Checking rules");
-		final Map<Rule, Boolean> result = new HashMap<>();
-		for (final Rule rule : rules) {
-			if (shouldBeEvaluated(rule, facts)) {
-				result.put(rule, rule.evaluate(facts));
-			}
-		}
-		return result;
-	}
-
-	void doFire(final Rules rules, final Facts facts) {
-		if (rules.isEmpty()) {
-			LOGGER.debug("No rules registered! Nothing to apply");
-			return;
-		}
-		logEngineParameters();
-		log(rules);
-		log(facts);
-		LOGGER.debug("Rules evaluation started");
-		for (final Rule rule : rules) {
-			final String name = rule.getName();
-			final int priority = rule.getPriority();
+	/**
+	 * Apply the rules on the given facts.
+	 *
+	 * @param parallel true to evaluate the conditions in parallel
+	 * @param trace    trace of the firing, null if the firing is not sampled
+	 */
+	private void applyRules(final CompiledRules rules, final Facts facts, final boolean parallel,
+			final ExecutionTrace trace) {
+		final boolean traceAll = rules.isTraceEnable() || facts.isTraceEnable();
+		final RuleCircuitBreakers breakers = circuitBreakers.isEnabled() ? circuitBreakers : null;
+		ConditionSharing.invalidate();
+		final ConditionIndex.Candidates candidates = select(rules, facts);
+		final ParallelEvaluation parallelEvaluation = parallel
+				? new ParallelEvaluation(rules, count(rules, parameters.getPriorityThreshold()), facts, breakers,
+						candidates, rule -> shouldBeEvaluated(rule, facts))
+				: null;
+		for (int index = 0; index < rules.size(); index++) {
+			final Rule rule = rules.get(index);
+			final String name = rules.getName(index);
+			final int priority = rules.getPriority(index);
 			if (priority > parameters.getPriorityThreshold()) {
 				LOGGER.debug(
 						"Rule priority threshold ({}) exceeded at rule '{}' with priority={}, next rules will be skipped",
 						parameters.getPriorityThreshold(), name, priority);
 				break;
 			}
-			if (!shouldBeEvaluated(rule, facts)) {
+			if (breakers != null && !breakers.allows(name)) {
+				LOGGER.debug("Rule '{}' has been skipped since it is disabled by its circuit breaker", name);
+				continue;
+			}
+			if (!(parallelEvaluation != null ? parallelEvaluation.shouldBeEvaluated(index)
+					: shouldBeEvaluated(rule, facts))) {
 				LOGGER.debug("Rule '{}' has been skipped before being evaluated", name);
 				continue;
 			}
+			final boolean traced = trace != null && (traceAll || rule.isTraceEnable());
+			final boolean timed = traced || breakers != null;
 			boolean evaluationResult = false;
-			try {
-				evaluationResult = rule.evaluate(facts);
-			} catch (final RuntimeException exception) {
-				LOGGER.error("Rule '" + name + "' evaluated with error", exception);
-				triggerListenersOnEvaluationError(rule, facts, exception);
-				// give the option to either skip next rules on evaluation error or continue by
-				// considering the evaluation error as false
-				if (parameters.isSkipOnFirstNonTriggeredRule()) {
-					LOGGER.debug("Next rules will be skipped since parameter skipOnFirstNonTriggeredRule is set");
-					break;
+			long start = timed ? System.nanoTime() : 0;
+			if (candidates != null && !candidates.contains(index)) {
+				LOGGER.debug("Rule '{}' has been discarded by the condition index", name);
+			} else {
+				try {
+					final boolean result;
+					final long duration;
+					if (parallelEvaluation != null) {
+						result = parallelEvaluation.evaluate(index);
+						duration = parallelEvaluation.getDuration(index);
+					} else {
+						result = rule.evaluate(facts);
+						duration = timed ? System.nanoTime() - start : 0;
+					}
+					if (breakers != null) {
+						breakers.check(name, duration);
+					}
+					if (traced) {
+						trace.record(ExecutionTrace.Kind.EVALUATION, name, result, duration, null);
+					}
+					evaluationResult = result;
+				} catch (final RuntimeException exception) {
+					if (traced) {
+						trace.record(ExecutionTrace.Kind.EVALUATION_ERROR, name, false,
+								parallelEvaluation != null ? parallelEvaluation.getDuration(index)
+										: System.nanoTime() - start,
+								exception);
+					}
+					LOGGER.error("Rule '" + name + "' evaluated with error", exception);
+					triggerListenersOnEvaluationError(rule, facts, exception);
+					// give the option to either skip next rules on evaluation error or continue by
+					// considering the evaluation error as false
+					if (parameters.isSkipOnFirstNonTriggeredRule()) {
+						LOGGER.debug("Next rules will be skipped since parameter skipOnFirstNonTriggeredRule is set");
+						break;
+					}
 				}
 			}
 			if (evaluationResult) {
@@ -127,7 +185,15 @@ public final class DefaultRulesEngine extends AbstractRulesEngine {
 				triggerListenersAfterEvaluate(rule, facts, true);
 				try {
 					triggerListenersBeforeExecute(rule, facts);
+					start = timed ? System.nanoTime() : 0;
 					rule.execute(facts);
+					final long duration = timed ? System.nanoTime() - start : 0;
+					if (breakers != null) {
+						breakers.check(name, duration);
+					}
+					if (traced) {
+						trace.record(ExecutionTrace.Kind.EXECUTION, name, true, duration, null);
+					}
 					LOGGER.debug("Rule '{}' performed successfully", name);
 					triggerListenersOnSuccess(rule, facts);
 					if (parameters.isSkipOnFirstAppliedRule()) {
@@ -135,6 +201,10 @@ public final class DefaultRulesEngine extends AbstractRulesEngine {
 						break;
 					}
 				} catch (final Exception exception) {
+					if (traced) {
+						trace.record(ExecutionTrace.Kind.EXECUTION_FAILURE, name, true, System.nanoTime() - start,
+								exception);
+					}
 					LOGGER.error("Rule '" + name + "' performed with error", exception);
 					triggerListenersOnFailure(rule, exception, facts);
 					if (parameters.isSkipOnFirstFailedRule()) {
@@ -142,6 +212,13 @@ public final class DefaultRulesEngine extends AbstractRulesEngine {
 						break;
 					}
 				}
+				ConditionSharing.invalidate();
+				if (candidates != null) {
+					candidates.invalidate();
+				}
+				if (parallelEvaluation != null) {
+					parallelEvaluation.stop();
+				}
 			} else {
 				LOGGER.debug("Rule '{}' has been evaluated to false, it has not been executed", name);
 				triggerListenersAfterEvaluate(rule, facts, false);
@@ -153,6 +230,77 @@ public final class DefaultRulesEngine extends AbstractRulesEngine {
 		}
 	}
 
+	@Override
+	public Map<Rule, Boolean> check(final Rules rules, final Facts facts) {
+		Objects.requireNonNull(rules, "Rules must not be null");
+		Objects.requireNonNull(facts, "Facts must not be null");
+		triggerListenersBeforeRules(rules, facts);
+		LOGGER.debug("Checking rules");
+		final Map<Rule, Boolean> result = doCheck(CompiledRules.compile(rules), facts,
+				parameters.isParallelEvaluation());
+		triggerListenersAfterRules(rules, facts);
+		return result;
+	}
+
+	@Override
+	public List<Map<Rule, Boolean>> checkBatch(final Rules rules, final Collection<Facts> factsBatch) {
+		Objects.requireNonNull(rules, "Rules must not be null");
+		final Facts[] batch = toArray(factsBatch);
+		final CompiledRules compiledRules = CompiledRules.compile(rules);
+		triggerListenersBeforeBatch(rules, factsBatch);
+		LOGGER.debug("Checking rules on a batch of {} facts", batch.length);
+		final List<Map<Rule, Boolean>> results = new ArrayList<>(Collections.nCopies(batch.length, null));
+		forEach(compiledRules, batch, i -> results.set(i, doCheck(compiledRules, batch[i], false)));
+		triggerListenersAfterBatch(rules, factsBatch);
+		return results;
+	}
+
+	/**
+	 * Return the number of rules up to the first one exceeding the priority
+	 * threshold.
+	 */
+	private int count(final CompiledRules rules, final int priorityThreshold) {
+		int count = 0;
+		while (count < rules.size() && rules.getPriority(count) <= priorityThreshold) {
+			count++;
+		}
+		return count;
+	}
+
+	private Map<Rule, Boolean> doCheck(final CompiledRules rules, final Facts facts, final boolean parallel) {
+		final Map<Rule, Boolean> result = new HashMap<>();
+		ConditionSharing.invalidate();
+		final ConditionIndex.Candidates candidates = select(rules, facts);
+		final ParallelEvaluation parallelEvaluation = parallel
+				? new ParallelEvaluation(rules, rules.size(), facts, null, candidates,
+						rule -> shouldBeEvaluated(rule, facts))
+				: null;
+		for (int index = 0; index < rules.size(); index++) {
+			final Rule rule = rules.get(index);
+			if (!(parallelEvaluation != null ? parallelEvaluation.shouldBeEvaluated(index)
+					: shouldBeEvaluated(rule, facts))) {
+				continue;
+			}
+			if (candidates != null && !candidates.contains(index)) {
+				result.put(rule, false);
+			} else {
+				result.put(rule, parallelEvaluation != null ? parallelEvaluation.evaluate(index) : rule.evaluate(facts));
+			}
+		}
+		return result;
+	}
+
+	void doFire(final Rules rules, final Facts facts) {
+		if (rules.isEmpty()) {
+			LOGGER.debug("No rules registered! Nothing to apply");
+			return;
+		}
+		final CompiledRules compiledRules = CompiledRules.compile(rules);
+		logEngineParameters();
+		LOGGER.debug("Rules evaluation started");
+		applyRules(compiledRules, facts, parameters.isParallelEvaluation(), sample());
+	}
+
 	@Override
 	public void fire(final Rules rules, final Facts facts) {
 		Objects.requireNonNull(rules, "Rules must not be null");
@@ -162,39 +310,107 @@ public final class DefaultRulesEngine extends AbstractRulesEngine {
 		triggerListenersAfterRules(rules, facts);
 	}
 
-	private void log(final Facts facts) {
-		LOGGER.debug("Known facts:");
-		for (final Fact<?> fact : facts) {
-			LOGGER.debug("{}", fact);
+	@Override
+	public void fireBatch(final Rules rules, final Collection<Facts> factsBatch) {
+		Objects.requireNonNull(rules, "Rules must not be null");
+		final Facts[] batch = toArray(factsBatch);
+		triggerListenersBeforeBatch(rules, factsBatch);
+		if (rules.isEmpty()) {
+			LOGGER.debug("No rules registered! Nothing to apply");
+		} else {
+			final CompiledRules compiledRules = CompiledRules.compile(rules);
+			logEngineParameters();
+			LOGGER.debug("Rules evaluation started on a batch of {} facts", batch.length);
+			forEach(compiledRules, batch, i -> applyRules(compiledRules, batch[i], false, sample()));
 		}
+		triggerListenersAfterBatch(rules, factsBatch);
 	}
 
-	private void log(final Rules rules) {
-		LOGGER.debug("Registered rules:");
-		for (final Rule rule : rules) {
-			LOGGER.debug("Rule { name = '{}', description = '{}', priority = '{}'}", rule.getName(),
-					rule.getDescription(), rule.getPriority());
+	/**
+	 * Run the given task for each index of the batch, in parallel when the
+	 * parameters and the rules allow it.
+	 */
+	private void forEach(final CompiledRules rules, final Facts[] batch, final IntConsumer task) {
+		final IntStream indexes = IntStream.range(0, batch.length);
+		if (isParallelizable(rules) && batch.length > 1) {
+			indexes.parallel().forEach(task);
+		} else {
+			indexes.forEach(task);
 		}
 	}
 
+	private boolean isParallelizable(final CompiledRules rules) {
+		if (!parameters.isParallelEvaluation()) {
+			return false;
+		}
+		for (int index = 0; index < rules.size(); index++) {
+			if (!rules.get(index).isParallelizable()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private void logEngineParameters() {
 		LOGGER.debug("{}", parameters);
 	}
 
+	/**
+	 * Return the trace of the engine if the firing is sampled, null otherwise.
+	 */
+	private ExecutionTrace sample() {
+		final ExecutionTrace trace = executionTrace;
+		return trace.sample() ? trace : null;
+	}
+
+	/**
+	 * Return the rules selected by the condition index on the given facts, null
+	 * if the conditions are not indexed.
+	 */
+	private ConditionIndex.Candidates select(final CompiledRules rules, final Facts facts) {
+		if (!parameters.isConditionIndex()) {
+			return null;
+		}
+		ConditionIndex index = conditionIndex;
+		if (index == null || !index.isBuiltFor(rules)) {
+			index = new ConditionIndex(rules);
+			conditionIndex = index;
+		}
+		return index.getIndexedRules() > 0 ? index.select(facts) : null;
+	}
+
 	private boolean shouldBeEvaluated(final Rule rule, final Facts facts) {
 		return triggerListenersBeforeEvaluate(rule, facts);
 	}
 
+	private Facts[] toArray(final Collection<Facts> factsBatch) {
+		Objects.requireNonNull(factsBatch, "Facts batch must not be null");
+		final Facts[] batch = factsBatch.toArray(new Facts[0]);
+		for (final Facts facts : batch) {
+			Objects.requireNonNull(facts, "Facts must not be null");
+		}
+		return batch;
+	}
+
 	private void triggerListenersAfterEvaluate(final Rule rule, final Facts facts, final boolean evaluationResult) {
 		ruleListeners.forEach(ruleListener -> ruleListener.afterEvaluate(rule, facts, evaluationResult));
 	}
 
+	private void triggerListenersAfterBatch(final Rules rules, final Collection<Facts> factsBatch) {
+		rulesEngineListeners.forEach(rulesEngineListener -> rulesEngineListener.afterBatch(rules, factsBatch));
+	}
+
 	private void triggerListenersAfterRules(final Rules rule, final Facts facts) {
 		rulesEngineListeners.forEach(rulesEngineListener -> rulesEngineListener.afterExecute(rule, facts));
 	}
 
+	private void triggerListenersBeforeBatch(final Rules rules, final Collection<Facts> factsBatch) {
+		rulesEngineListeners.forEach(rulesEngineListener -> rulesEngineListener.beforeBatch(rules, factsBatch));
+	}
+
 	private boolean triggerListenersBeforeEvaluate(final Rule rule, final Facts facts) {
-		return ruleListeners.stream().allMatch(ruleListener -> ruleListener.beforeEvaluate(rule, facts));
+		return ruleListeners.isEmpty()
+				|| ruleListeners.stream().allMatch(ruleListener -> ruleListener.beforeEvaluate(rule, facts));
 	}
 
 	private void triggerListenersBeforeExecute(final Rule rule, final Facts facts) {
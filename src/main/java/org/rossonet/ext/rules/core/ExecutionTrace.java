@@ -0,0 +1,269 @@
+package org.rossonet.ext.rules.core;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.Rules;
+
+/**
+ * Structured trace of the rules executions, recorded in a preallocated ring
+ * buffer.
+ *
+ * A rules engine records the evaluations, the actions and the failures of a
+ * rule when the trace is enabled on the {@link Rules}, on the {@link Facts} or
+ * on the {@link Rule} itself. Only one firing out of {@link #getSampleRate()}
+ * is recorded. Once the buffer is full, the oldest entries are overwritten.
+ *
+ * Recording is lock-free and does not allocate: each entry claims a slot of the
+ * buffer and publishes its sequence number once written. {@link #dump()} reads
+ * the buffer without stopping the writers and skips the slots being
+ * overwritten.
+ */
+public final class ExecutionTrace {
+
+	/**
+	 * An entry of the trace.
+	 */
+	public static final class Entry {
+
+		private final long sequence;
+		private final long timestamp;
+		private final Kind kind;
+		private final String ruleName;
+		private final boolean result;
+		private final long duration;
+		private final Throwable failure;
+
+		private Entry(final long sequence, final long timestamp, final Kind kind, final String ruleName,
+				final boolean result, final long duration, final Throwable failure) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.kind = kind;
+			this.ruleName = ruleName;
+			this.result = result;
+			this.duration = duration;
+			this.failure = failure;
+		}
+
+		/**
+		 * Get the duration of the evaluation or of the actions.
+		 *
+		 * @return the duration in nanoseconds
+		 */
+		public long getDuration() {
+			return duration;
+		}
+
+		/**
+		 * Get the exception thrown by the condition or by the actions.
+		 *
+		 * @return the exception, null unless the entry is a failure
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public String getRuleName() {
+			return ruleName;
+		}
+
+		/**
+		 * Get the position of the entry in the trace, starting from 0 and never reset.
+		 *
+		 * @return the sequence number of the entry
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Get the time of the entry.
+		 *
+		 * @return the time in milliseconds since the epoch
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * Get the result of the evaluation.
+		 *
+		 * @return the result of the condition, false unless the entry is an evaluation
+		 */
+		public boolean isResult() {
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return "Entry{sequence=" + sequence + ", timestamp=" + timestamp + ", kind=" + kind + ", ruleName='"
+					+ ruleName + "', result=" + result + ", duration=" + duration + ", failure=" + failure + "}";
+		}
+
+	}
+
+	/**
+	 * Kind of an entry of the trace.
+	 */
+	public enum Kind {
+		/**
+		 * The condition of the rule has been evaluated.
+		 */
+		EVALUATION,
+		/**
+		 * The condition of the rule has thrown an exception.
+		 */
+		EVALUATION_ERROR,
+		/**
+		 * The actions of the rule have been executed.
+		 */
+		EXECUTION,
+		/**
+		 * The actions of the rule have thrown an exception.
+		 */
+		EXECUTION_FAILURE
+	}
+
+	/**
+	 * Default number of entries kept by the trace.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final int mask;
+	private final int sampleRate;
+	private final AtomicLong next = new AtomicLong();
+	private final AtomicLong firings = new AtomicLong();
+	private final AtomicLongArray published;
+	private final long[] timestamps;
+	private final Kind[] kinds;
+	private final String[] ruleNames;
+	private final boolean[] results;
+	private final long[] durations;
+	private final Throwable[] failures;
+
+	/**
+	 * Create a new {@link ExecutionTrace} keeping {@link #DEFAULT_CAPACITY}
+	 * entries and recording every firing.
+	 */
+	public ExecutionTrace() {
+		this(DEFAULT_CAPACITY, 1);
+	}
+
+	/**
+	 * Create a new {@link ExecutionTrace}.
+	 *
+	 * @param capacity   number of entries kept, rounded up to a power of two
+	 * @param sampleRate record one firing out of sampleRate
+	 */
+	public ExecutionTrace(final int capacity, final int sampleRate) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+		}
+		if (sampleRate < 1) {
+			throw new IllegalArgumentException("sampleRate must be greater than 0");
+		}
+		final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = size - 1;
+		this.sampleRate = sampleRate;
+		this.published = new AtomicLongArray(size);
+		for (int slot = 0; slot < size; slot++) {
+			published.set(slot, -1);
+		}
+		this.timestamps = new long[size];
+		this.kinds = new Kind[size];
+		this.ruleNames = new String[size];
+		this.results = new boolean[size];
+		this.durations = new long[size];
+		this.failures = new Throwable[size];
+	}
+
+	/**
+	 * Remove all the entries of the trace.
+	 */
+	public void clear() {
+		for (int slot = 0; slot <= mask; slot++) {
+			published.set(slot, -1);
+			failures[slot] = null;
+		}
+	}
+
+	/**
+	 * Get the entries kept by the trace, from the oldest to the newest.
+	 *
+	 * @return a snapshot of the entries
+	 */
+	public List<Entry> dump() {
+		final long last = next.get();
+		final long first = Math.max(0, last - mask - 1);
+		final List<Entry> entries = new ArrayList<>((int) (last - first));
+		for (long sequence = first; sequence < last; sequence++) {
+			final int slot = (int) (sequence & mask);
+			if (published.get(slot) != sequence) {
+				continue;
+			}
+			final Entry entry = new Entry(sequence, timestamps[slot], kinds[slot], ruleNames[slot], results[slot],
+					durations[slot], failures[slot]);
+			VarHandle.acquireFence();
+			if (published.get(slot) == sequence) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Get the number of entries kept by the trace.
+	 *
+	 * @return the capacity of the ring buffer
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Record an entry.
+	 *
+	 * @param kind     kind of the entry
+	 * @param ruleName name of the rule
+	 * @param result   result of the evaluation
+	 * @param duration duration of the evaluation or of the actions in
+	 *                 nanoseconds
+	 * @param failure  exception thrown by the rule, or null
+	 */
+	public void record(final Kind kind, final String ruleName, final boolean result, final long duration,
+			final Throwable failure) {
+		final long sequence = next.getAndIncrement();
+		final int slot = (int) (sequence & mask);
+		published.set(slot, -1);
+		timestamps[slot] = System.currentTimeMillis();
+		kinds[slot] = kind;
+		ruleNames[slot] = ruleName;
+		results[slot] = result;
+		durations[slot] = duration;
+		failures[slot] = failure;
+		published.lazySet(slot, sequence);
+	}
+
+	/**
+	 * Decide whether a firing is recorded, according to the sample rate.
+	 *
+	 * @return true for one call out of {@link #getSampleRate()}
+	 */
+	public boolean sample() {
+		return sampleRate == 1 || firings.getAndIncrement() % sampleRate == 0;
+	}
+
+}
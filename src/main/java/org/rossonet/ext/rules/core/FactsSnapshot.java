@@ -0,0 +1,112 @@
+package org.rossonet.ext.rules.core;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.Facts;
+
+/**
+ * Snapshot of the identity of the facts of a {@link Facts} instance, used to
+ * find out which facts have been inserted, updated or retracted since the
+ * snapshot was taken.
+ *
+ * A fact is considered updated when it has been replaced by another
+ * {@link Fact} instance, as done by {@link Facts#put(String, Object)}; changes of
+ * the state of a fact value are not detected.
+ *
+ * <strong>This class is not thread-safe.</strong>
+ */
+class FactsSnapshot {
+
+	private WeakReference<Facts> facts = new WeakReference<>(null);
+	private long version;
+	private final Map<String, Fact<?>> snapshot = new HashMap<>();
+
+	/**
+	 * Take a new snapshot of all the given facts.
+	 *
+	 * @param facts to take the snapshot of
+	 */
+	void bind(final Facts facts) {
+		this.facts = new WeakReference<>(facts);
+		snapshot.clear();
+		for (final Fact<?> fact : facts) {
+			snapshot.put(fact.getName(), fact);
+		}
+		version = facts.getVersion();
+	}
+
+	/**
+	 * Return the names of the facts inserted, updated or retracted since the last
+	 * snapshot and update the snapshot. When the version of the facts has not
+	 * changed, no fact is compared.
+	 *
+	 * @param facts to compare with the snapshot, must be the bound facts
+	 * @return the names of the changed facts
+	 */
+	Set<String> changes(final Facts facts) {
+		final Set<String> changes = new HashSet<>();
+		if (facts.getVersion() == version) {
+			return changes;
+		}
+		final Iterator<Map.Entry<String, Fact<?>>> iterator = snapshot.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<String, Fact<?>> entry = iterator.next();
+			final Fact<?> current = facts.getFact(entry.getKey());
+			if (current != entry.getValue()) {
+				changes.add(entry.getKey());
+				if (current == null) {
+					iterator.remove();
+				} else {
+					entry.setValue(current);
+				}
+			}
+		}
+		if (facts.size() != snapshot.size()) {
+			for (final Fact<?> fact : facts) {
+				if (!snapshot.containsKey(fact.getName())) {
+					snapshot.put(fact.getName(), fact);
+					changes.add(fact.getName());
+				}
+			}
+		}
+		version = facts.getVersion();
+		return changes;
+	}
+
+	/**
+	 * Check if the snapshot has been taken on the given facts.
+	 *
+	 * @param facts to check
+	 * @return true if the snapshot is bound to the given facts instance
+	 */
+	boolean isBoundTo(final Facts facts) {
+		return this.facts.get() == facts;
+	}
+
+	/**
+	 * Update the snapshot for the given facts only, when they are known to be the
+	 * only ones that have changed.
+	 *
+	 * @param facts      the bound facts
+	 * @param factsNames names of the changed facts
+	 */
+	void update(final Facts facts, final Collection<String> factsNames) {
+		for (final String factName : factsNames) {
+			final Fact<?> current = facts.getFact(factName);
+			if (current == null) {
+				snapshot.remove(factName);
+			} else {
+				snapshot.put(factName, current);
+			}
+		}
+		version = facts.getVersion();
+	}
+
+}
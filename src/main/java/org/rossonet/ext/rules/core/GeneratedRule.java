@@ -0,0 +1,296 @@
+package org.rossonet.ext.rules.core;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import org.rossonet.ext.rules.api.FactDependent;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class of the {@link Rule} implementations generated at build time for
+ * annotated rule classes by the
+ * <code>org.rossonet.ext.rules.processor.RuleProcessor</code> annotation
+ * processor.
+ *
+ * A generated rule calls the annotated methods of its target directly, without
+ * reflection. {@link RuleProxy#asRule(Object)} uses the generated class of an
+ * annotated rule class when it is present: its name is the binary name of the
+ * rule class followed by {@link #GENERATED_CLASS_SUFFIX}. Generated rules behave
+ * like the rules created by {@link RuleProxy}: a missing fact or a fact whose
+ * type does not match the parameter makes the condition evaluate to false.
+ *
+ * @param <T> type of the annotated rule
+ */
+public abstract class GeneratedRule<T> implements Rule, FactDependent {
+
+	/**
+	 * Suffix added to the binary name of an annotated rule class to get the name
+	 * of its generated rule class.
+	 */
+	public static final String GENERATED_CLASS_SUFFIX = "_Rule";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(GeneratedRule.class);
+
+	/**
+	 * Convert an injected fact to a double parameter.
+	 *
+	 * @param fact value checked by {@link #fact(Facts, String, Class)}
+	 * @return the converted value
+	 */
+	protected static double doubleValue(final Object fact) {
+		return fact instanceof Character ? (Character) fact : ((Number) fact).doubleValue();
+	}
+
+	/**
+	 * Get an injected fact, checking that it can be passed as a parameter of the
+	 * given type.
+	 *
+	 * @param facts    known facts
+	 * @param factName name of the injected fact
+	 * @param type     type of the parameter
+	 * @return the fact value
+	 */
+	protected static Object fact(final Facts facts, final String factName, final Class<?> type) {
+		return RuleAdapter.fact(facts, factName, type);
+	}
+
+	/**
+	 * Convert an injected fact to a float parameter.
+	 *
+	 * @param fact value checked by {@link #fact(Facts, String, Class)}
+	 * @return the converted value
+	 */
+	protected static float floatValue(final Object fact) {
+		return fact instanceof Character ? (Character) fact : ((Number) fact).floatValue();
+	}
+
+	/**
+	 * Convert an injected fact to an int parameter.
+	 *
+	 * @param fact value checked by {@link #fact(Facts, String, Class)}
+	 * @return the converted value
+	 */
+	protected static int intValue(final Object fact) {
+		return fact instanceof Character ? (Character) fact : ((Number) fact).intValue();
+	}
+
+	/**
+	 * Convert an injected fact to a long parameter.
+	 *
+	 * @param fact value checked by {@link #fact(Facts, String, Class)}
+	 * @return the converted value
+	 */
+	protected static long longValue(final Object fact) {
+		return fact instanceof Character ? (Character) fact : ((Number) fact).longValue();
+	}
+
+	private static RuntimeException rethrow(final Exception exception) {
+		if (exception instanceof RuntimeException) {
+			return (RuntimeException) exception;
+		}
+		return new UndeclaredThrowableException(exception);
+	}
+
+	/**
+	 * Convert an injected fact to a short parameter.
+	 *
+	 * @param fact value checked by {@link #fact(Facts, String, Class)}
+	 * @return the converted value
+	 */
+	protected static short shortValue(final Object fact) {
+		return ((Number) fact).shortValue();
+	}
+
+	/**
+	 * The annotated rule.
+	 */
+	protected final T target;
+
+	private final String name;
+	private final String description;
+	private final int annotationPriority;
+	private final boolean parallelizable;
+	private final Set<String> factDependencies;
+	private Integer priority;
+
+	/**
+	 * Create a new {@link GeneratedRule}.
+	 *
+	 * @param target           the annotated rule
+	 * @param name             rule name
+	 * @param description      rule description
+	 * @param priority         priority of the rule annotation
+	 * @param parallelizable   parallelizable flag of the rule annotation
+	 * @param factDependencies facts injected in the condition, null if the whole
+	 *                         facts are injected
+	 */
+	protected GeneratedRule(final T target, final String name, final String description, final int priority,
+			final boolean parallelizable, final String[] factDependencies) {
+		this.target = Objects.requireNonNull(target, "target must not be null");
+		this.name = name;
+		this.description = description;
+		this.annotationPriority = priority;
+		this.parallelizable = parallelizable;
+		this.factDependencies = factDependencies == null ? null
+				: Collections.unmodifiableSet(new HashSet<>(Arrays.asList(factDependencies)));
+	}
+
+	/**
+	 * Call the action methods of the target in their order.
+	 *
+	 * @param facts known facts
+	 * @throws Exception thrown by an action
+	 */
+	protected abstract void actions(Facts facts) throws Exception;
+
+	/**
+	 * Compare the target with the target of another rule, using the
+	 * <code>compareTo</code> method of the annotated rule.
+	 *
+	 * @param otherTarget target of the other rule
+	 * @return the result of <code>compareTo</code>
+	 * @throws Exception thrown by <code>compareTo</code>
+	 */
+	protected int compareTargets(final Object otherTarget) throws Exception {
+		throw new IllegalArgumentException("compareTo method must have a single argument");
+	}
+
+	@Override
+	public int compareTo(final Rule otherRule) {
+		if (hasCompareTo() && otherRule instanceof GeneratedRule) {
+			try {
+				return compareTargets(((GeneratedRule<?>) otherRule).getTarget());
+			} catch (final Exception exception) {
+				throw rethrow(exception);
+			}
+		}
+		final int otherPriority = otherRule.getPriority();
+		final int priority = getPriority();
+		if (priority < otherPriority) {
+			return -1;
+		} else if (priority > otherPriority) {
+			return 1;
+		} else {
+			return getName().compareTo(otherRule.getName());
+		}
+	}
+
+	/**
+	 * Call the condition method of the target.
+	 *
+	 * @param facts known facts
+	 * @return the result of the condition
+	 * @throws Exception thrown by the condition
+	 */
+	protected abstract boolean condition(Facts facts) throws Exception;
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof Rule)) {
+			return false;
+		}
+		final Rule otherRule = (Rule) o;
+		return getPriority() == otherRule.getPriority() && getName().equals(otherRule.getName())
+				&& Objects.equals(getDescription(), otherRule.getDescription());
+	}
+
+	@Override
+	public final boolean evaluate(final Facts facts) {
+		try {
+			return condition(facts);
+		} catch (final NoSuchFactException e) {
+			LOGGER.warn("Rule '{}' has been evaluated to false due to a declared but missing fact '{}' in {}",
+					target.getClass().getName(), e.getMissingFact(), facts);
+			return false;
+		} catch (final RuleAdapter.FactTypeMismatchException e) {
+			LOGGER.warn("Types of injected facts in rule '{}' do not match parameters types",
+					target.getClass().getName(), e);
+			return false;
+		} catch (final Exception exception) {
+			throw rethrow(exception);
+		}
+	}
+
+	@Override
+	public final void execute(final Facts facts) throws Exception {
+		actions(facts);
+	}
+
+	@Override
+	public String getDescription() {
+		return description;
+	}
+
+	@Override
+	public Set<String> getFactDependencies() {
+		return factDependencies;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getPriority() {
+		if (this.priority == null) {
+			try {
+				this.priority = priority();
+			} catch (final Exception exception) {
+				throw rethrow(exception);
+			}
+		}
+		return this.priority;
+	}
+
+	public T getTarget() {
+		return target;
+	}
+
+	/**
+	 * Check if the annotated rule defines its own <code>compareTo</code> method.
+	 *
+	 * @return false unless overridden
+	 */
+	protected boolean hasCompareTo() {
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = getName().hashCode();
+		final String description = getDescription();
+		result = 31 * result + (description != null ? description.hashCode() : 0);
+		result = 31 * result + getPriority();
+		return result;
+	}
+
+	@Override
+	public boolean isParallelizable() {
+		return parallelizable;
+	}
+
+	/**
+	 * Get the priority of the rule, called once per rule.
+	 *
+	 * @return the priority of the rule annotation unless overridden to call the
+	 *         priority method of the target
+	 * @throws Exception thrown by the priority method
+	 */
+	protected int priority() throws Exception {
+		return annotationPriority;
+	}
+
+	@Override
+	public String toString() {
+		return target.toString();
+	}
+
+}
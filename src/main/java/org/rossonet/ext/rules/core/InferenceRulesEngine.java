@@ -23,12 +23,17 @@
  */
 package org.rossonet.ext.rules.core;
 
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.TreeSet;
 
+import org.rossonet.ext.rules.api.Activation;
+import org.rossonet.ext.rules.api.CompiledRules;
+import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.FactDependent;
 import org.rossonet.ext.rules.api.Facts;
 import org.rossonet.ext.rules.api.Rule;
 import org.rossonet.ext.rules.api.RuleListener;
@@ -36,22 +41,300 @@ import org.rossonet.ext.rules.api.Rules;
 import org.rossonet.ext.rules.api.RulesEngine;
 import org.rossonet.ext.rules.api.RulesEngineListener;
 import org.rossonet.ext.rules.api.RulesEngineParameters;
+import org.rossonet.ext.rules.support.ConditionSharing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Inference {@link RulesEngine} implementation.
  *
- * Rules are selected based on given facts and fired according to their natural
- * order which is priority by default. This implementation continuously selects
- * and fires rules until no more rules are applicable.
+ * Rules are selected based on given facts and fired according to the conflict
+ * resolution strategy of the parameters, which is the natural order of the
+ * rules (priority) by default. This implementation continuously selects and
+ * fires rules until no more rules are applicable or the maximum number of
+ * cycles is reached.
+ *
+ * In each cycle the matched rules are queued as activations in an agenda and
+ * executed without evaluating their conditions again. When an action changes
+ * facts read by the condition of a queued activation, the activation is
+ * cancelled. Evaluation errors and cancelled activations are considered as non
+ * triggered rules: with
+ * {@link RulesEngineParameters#isSkipOnFirstNonTriggeredRule()}, the selection
+ * of a cycle stops at the first rule evaluated to false or with an error, as in
+ * the {@link DefaultRulesEngine}, and the execution of a cycle stops at the
+ * first cancelled activation, whose condition may no longer hold.
+ *
+ * The conditions of all the rules are evaluated in each cycle. With
+ * {@link RulesEngineParameters#isIncrementalEvaluation() incremental
+ * evaluation}, the condition of a rule is evaluated again in the next cycle only
+ * when one of the facts it reads has been written, otherwise the result of its
+ * last evaluation is used. The facts read by a condition are the dependencies
+ * declared by {@link FactDependent} rules, or are recorded while evaluating the
+ * condition. Conditions are therefore expected to depend only on the facts they
+ * read, and actions to replace the facts they change instead of changing them
+ * in place.
  *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
 public final class InferenceRulesEngine extends AbstractRulesEngine {
 
+	/**
+	 * Last evaluation of a rule during a firing.
+	 */
+	private static final class Evaluation {
+
+		/**
+		 * Names of the facts read by the condition, null if all facts may have been
+		 * read.
+		 */
+		private String[] inputs;
+		private boolean result;
+		private long recency;
+	}
+
+	/**
+	 * State of a single firing.
+	 */
+	private final class Firing {
+
+		private final CompiledRules rules;
+		private final Facts facts;
+		private final Agenda agenda = new Agenda(parameters.getConflictResolutionStrategy());
+		private final Map<Rule, Evaluation> evaluations = new IdentityHashMap<>();
+		private final TrackingFacts trackingFacts = new TrackingFacts();
+		private final Set<String> changedFacts = new HashSet<>();
+		/**
+		 * Trace of the firing, null if the firing is not sampled.
+		 */
+		private final ExecutionTrace trace;
+		private final boolean traceAll;
+		/**
+		 * Circuit breakers of the rules, null if the rules have no time budget.
+		 */
+		private final RuleCircuitBreakers breakers;
+		private boolean allFactsChanged;
+
+		private Firing(final Rules rules, final Facts facts) {
+			this.rules = CompiledRules.compile(rules);
+			this.facts = facts;
+			this.trace = executionTrace.sample() ? executionTrace : null;
+			this.traceAll = rules.isTraceEnable() || facts.isTraceEnable();
+			this.breakers = circuitBreakers.isEnabled() ? circuitBreakers : null;
+		}
+
+		private void activate(final Rule rule, final Evaluation evaluation) {
+			LOGGER.debug("Rule '{}' triggered", rule.getName());
+			agenda.activate(rule, evaluation.recency);
+		}
+
+		/**
+		 * Record the facts written by the last executed action and cancel the
+		 * activations whose conditions read them.
+		 *
+		 * @return true if at least one activation has been cancelled
+		 */
+		private boolean cancelActivations() {
+			if (!trackingFacts.isWriteTrackingComplete()) {
+				// facts have been cleared or written without going through the tracker
+				allFactsChanged = true;
+				final boolean cancelled = !agenda.isEmpty();
+				agenda.clear();
+				return cancelled;
+			}
+			final Set<String> writtenFacts = trackingFacts.getWrittenFacts();
+			if (writtenFacts.isEmpty()) {
+				return false;
+			}
+			changedFacts.addAll(writtenFacts);
+			return agenda.cancelIf(activation -> {
+				final boolean cancelled = reads(evaluations.get(activation.getRule()).inputs, writtenFacts);
+				if (cancelled) {
+					LOGGER.debug("Activation of rule '{}' has been cancelled", activation.getRule().getName());
+				}
+				return cancelled;
+			});
+		}
+
+		private Evaluation evaluate(final Rule rule) {
+			final Evaluation evaluation = evaluations.computeIfAbsent(rule, r -> new Evaluation());
+			final Set<String> factDependencies = FactDependent.of(rule);
+			if (factDependencies != null) {
+				evaluation.result = rule.evaluate(facts);
+				evaluation.inputs = factDependencies.toArray(new String[0]);
+				evaluation.recency = evaluation.result ? recency(facts, evaluation.inputs) : 0;
+			} else {
+				trackingFacts.reset(facts);
+				evaluation.result = rule.evaluate(trackingFacts);
+				evaluation.inputs = trackingFacts.isAllFactsRead() ? null
+						: trackingFacts.getReadFacts().toArray(new String[0]);
+				evaluation.recency = evaluation.result ? trackingFacts.getRecency() : 0;
+			}
+			return evaluation;
+		}
+
+		private void execute() {
+			for (Activation activation = agenda.next(); activation != null; activation = agenda.next()) {
+				final Rule rule = activation.getRule();
+				final String name = rule.getName();
+				trackingFacts.reset(facts);
+				final boolean traced = isTraced(rule);
+				final boolean timed = traced || breakers != null;
+				boolean failed = false;
+				long start = 0;
+				try {
+					triggerListenersBeforeExecute(rule, facts);
+					start = timed ? System.nanoTime() : 0;
+					rule.execute(trackingFacts);
+					final long duration = timed ? System.nanoTime() - start : 0;
+					if (breakers != null) {
+						breakers.check(name, duration);
+					}
+					if (traced) {
+						trace.record(ExecutionTrace.Kind.EXECUTION, name, true, duration, null);
+					}
+					LOGGER.debug("Rule '{}' performed successfully", name);
+					triggerListenersOnSuccess(rule, facts);
+				} catch (final Exception exception) {
+					if (traced) {
+						trace.record(ExecutionTrace.Kind.EXECUTION_FAILURE, name, true, System.nanoTime() - start,
+								exception);
+					}
+					LOGGER.error("Rule '" + name + "' performed with error", exception);
+					triggerListenersOnFailure(rule, exception, facts);
+					failed = true;
+				}
+				ConditionSharing.invalidate();
+				final boolean cancelled = cancelActivations();
+				if (failed && parameters.isSkipOnFirstFailedRule()) {
+					LOGGER.debug("Next rules will be skipped since parameter skipOnFirstFailedRule is set");
+					break;
+				}
+				if (!failed && parameters.isSkipOnFirstAppliedRule()) {
+					LOGGER.debug("Next rules will be skipped since parameter skipOnFirstAppliedRule is set");
+					break;
+				}
+				if (cancelled && parameters.isSkipOnFirstNonTriggeredRule()) {
+					LOGGER.debug("Next rules will be skipped since parameter skipOnFirstNonTriggeredRule is set");
+					break;
+				}
+			}
+			agenda.clear();
+		}
+
+		private boolean isAffected(final Evaluation evaluation) {
+			return !parameters.isIncrementalEvaluation() || allFactsChanged
+					|| reads(evaluation.inputs, changedFacts);
+		}
+
+		private boolean isTraced(final Rule rule) {
+			return trace != null && (traceAll || rule.isTraceEnable());
+		}
+
+		/**
+		 * Queue the matched rules in the agenda. With incremental evaluation, only
+		 * the rules never evaluated or whose facts changed since their last
+		 * evaluation are evaluated.
+		 *
+		 * @return true if at least one rule has been selected
+		 */
+		private boolean select() {
+			for (int index = 0; index < rules.size(); index++) {
+				final Rule rule = rules.get(index);
+				final String name = rules.getName(index);
+				final int priority = rules.getPriority(index);
+				if (priority > parameters.getPriorityThreshold()) {
+					LOGGER.debug(
+							"Rule priority threshold ({}) exceeded at rule '{}' with priority={}, next rules will be skipped",
+							parameters.getPriorityThreshold(), name, priority);
+					break;
+				}
+				if (breakers != null && !breakers.allows(name)) {
+					LOGGER.debug("Rule '{}' has been skipped since it is disabled by its circuit breaker", name);
+					// check the circuit breaker again in the next cycle
+					evaluations.remove(rule);
+					continue;
+				}
+				final Evaluation lastEvaluation = evaluations.get(rule);
+				if (lastEvaluation != null && !isAffected(lastEvaluation)) {
+					if (lastEvaluation.result) {
+						activate(rule, lastEvaluation);
+					} else if (parameters.isSkipOnFirstNonTriggeredRule()) {
+						LOGGER.debug("Next rules will be skipped since parameter skipOnFirstNonTriggeredRule is set");
+						break;
+					}
+					continue;
+				}
+				if (!shouldBeEvaluated(rule, facts)) {
+					LOGGER.debug("Rule '{}' has been skipped before being evaluated", name);
+					// ask the listeners again in the next cycle
+					evaluations.remove(rule);
+					continue;
+				}
+				final boolean traced = isTraced(rule);
+				final boolean timed = traced || breakers != null;
+				final long start = timed ? System.nanoTime() : 0;
+				try {
+					final Evaluation evaluation = evaluate(rule);
+					final long duration = timed ? System.nanoTime() - start : 0;
+					if (breakers != null) {
+						breakers.check(name, duration);
+					}
+					if (traced) {
+						trace.record(ExecutionTrace.Kind.EVALUATION, name, evaluation.result, duration, null);
+					}
+					triggerListenersAfterEvaluate(rule, facts, evaluation.result);
+					if (evaluation.result) {
+						activate(rule, evaluation);
+					} else if (parameters.isSkipOnFirstNonTriggeredRule()) {
+						LOGGER.debug("Next rules will be skipped since parameter skipOnFirstNonTriggeredRule is set");
+						break;
+					}
+				} catch (final RuntimeException exception) {
+					if (traced) {
+						trace.record(ExecutionTrace.Kind.EVALUATION_ERROR, name, false, System.nanoTime() - start,
+								exception);
+					}
+					LOGGER.error("Rule '" + name + "' evaluated with error", exception);
+					evaluations.remove(rule);
+					triggerListenersOnEvaluationError(rule, facts, exception);
+					if (parameters.isSkipOnFirstNonTriggeredRule()) {
+						LOGGER.debug("Next rules will be skipped since parameter skipOnFirstNonTriggeredRule is set");
+						break;
+					}
+					triggerListenersAfterEvaluate(rule, facts, false);
+				}
+			}
+			changedFacts.clear();
+			allFactsChanged = false;
+			return !agenda.isEmpty();
+		}
+	}
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(InferenceRulesEngine.class);
 
+	private static long recency(final Facts facts, final String[] factNames) {
+		long recency = 0;
+		for (final String factName : factNames) {
+			final Fact<?> fact = facts.getFact(factName);
+			if (fact != null) {
+				recency = Math.max(recency, fact.getCreatedAt());
+			}
+		}
+		return recency;
+	}
+
+	private static boolean reads(final String[] inputs, final Set<String> factNames) {
+		if (inputs == null) {
+			return true;
+		}
+		for (final String input : inputs) {
+			if (factNames.contains(input)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private final DefaultRulesEngine delegate;
 
 	/**
@@ -69,6 +352,7 @@ public final class InferenceRulesEngine extends AbstractRulesEngine {
 	public InferenceRulesEngine(RulesEngineParameters parameters) {
 		super(parameters);
 		delegate = new DefaultRulesEngine(parameters);
+		delegate.setExecutionTrace(executionTrace);
 	}
 
 	@Override
@@ -82,16 +366,28 @@ public final class InferenceRulesEngine extends AbstractRulesEngine {
 	public void fire(Rules rules, Facts facts) {
 		Objects.requireNonNull(rules, "Rules must not be null");
 		Objects.requireNonNull(facts, "Facts must not be null");
-		Set<Rule> selectedRules;
+		LOGGER.debug("{}", parameters);
+		final Firing firing = new Firing(rules, facts);
+		ConditionSharing.invalidate();
+		int cycles = 0;
+		boolean selected;
 		do {
+			if (cycles >= parameters.getMaxCycles()) {
+				LOGGER.warn("Maximum number of cycles ({}) reached, next rules will be skipped",
+						parameters.getMaxCycles());
+				break;
+			}
+			cycles++;
+			triggerListenersBeforeRules(rules, facts);
 			LOGGER.debug("Selecting candidate rules based on the following facts: {}", facts);
-			selectedRules = selectCandidates(rules, facts);
-			if (!selectedRules.isEmpty()) {
-				delegate.fire(new Rules(selectedRules), facts);
+			selected = firing.select();
+			if (selected) {
+				firing.execute();
 			} else {
 				LOGGER.debug("No candidate rules found for facts: {}", facts);
 			}
-		} while (!selectedRules.isEmpty());
+			triggerListenersAfterRules(rules, facts);
+		} while (selected);
 	}
 
 	/**
@@ -138,13 +434,47 @@ public final class InferenceRulesEngine extends AbstractRulesEngine {
 		delegate.registerRulesEngineListeners(rulesEngineListeners);
 	}
 
-	private Set<Rule> selectCandidates(Rules rules, Facts facts) {
-		final Set<Rule> candidates = new TreeSet<>();
-		for (final Rule rule : rules) {
-			if (rule.evaluate(facts)) {
-				candidates.add(rule);
-			}
-		}
-		return candidates;
+	/**
+	 * Replace the execution trace of the engine, shared with the engine used to
+	 * check the rules.
+	 *
+	 * @param executionTrace the new execution trace, must not be null
+	 */
+	@Override
+	public void setExecutionTrace(final ExecutionTrace executionTrace) {
+		super.setExecutionTrace(executionTrace);
+		delegate.setExecutionTrace(executionTrace);
+	}
+
+	private boolean shouldBeEvaluated(final Rule rule, final Facts facts) {
+		return ruleListeners.stream().allMatch(ruleListener -> ruleListener.beforeEvaluate(rule, facts));
+	}
+
+	private void triggerListenersAfterEvaluate(final Rule rule, final Facts facts, final boolean evaluationResult) {
+		ruleListeners.forEach(ruleListener -> ruleListener.afterEvaluate(rule, facts, evaluationResult));
+	}
+
+	private void triggerListenersAfterRules(final Rules rule, final Facts facts) {
+		rulesEngineListeners.forEach(rulesEngineListener -> rulesEngineListener.afterExecute(rule, facts));
+	}
+
+	private void triggerListenersBeforeExecute(final Rule rule, final Facts facts) {
+		ruleListeners.forEach(ruleListener -> ruleListener.beforeExecute(rule, facts));
+	}
+
+	private void triggerListenersBeforeRules(final Rules rule, final Facts facts) {
+		rulesEngineListeners.forEach(rulesEngineListener -> rulesEngineListener.beforeEvaluate(rule, facts));
+	}
+
+	private void triggerListenersOnEvaluationError(final Rule rule, final Facts facts, final Exception exception) {
+		ruleListeners.forEach(ruleListener -> ruleListener.onEvaluationError(rule, facts, exception));
+	}
+
+	private void triggerListenersOnFailure(final Rule rule, final Exception exception, final Facts facts) {
+		ruleListeners.forEach(ruleListener -> ruleListener.onFailure(rule, facts, exception));
+	}
+
+	private void triggerListenersOnSuccess(final Rule rule, final Facts facts) {
+		ruleListeners.forEach(ruleListener -> ruleListener.onSuccess(rule, facts));
 	}
 }
@@ -0,0 +1,183 @@
+package org.rossonet.ext.rules.core;
+
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import org.rossonet.ext.rules.api.CompiledRules;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.support.ConditionIndex;
+
+/**
+ * Evaluation of the conditions of the first rules of {@link CompiledRules} on
+ * the common fork-join pool.
+ *
+ * Conditions of {@link Rule#isParallelizable() parallelizable} rules are all
+ * evaluated in parallel, once, when the first of them is reached. Results are
+ * used only until the first write: after an action has been executed, or when
+ * the version of the facts differs from the one the results have been computed
+ * on, the remaining conditions are evaluated on the calling thread, so that the
+ * conditions are evaluated at most twice and see the changes made in place by
+ * the actions. Other conditions are evaluated on the calling thread when their
+ * result is requested, so that actions and side effects never run concurrently
+ * with an evaluation.
+ *
+ * Before the conditions are submitted, the rule listeners are asked on the
+ * calling thread whether each rule should be evaluated, and the rules they
+ * veto are not evaluated. The listeners are asked once per rule and firing:
+ * the engine gets their answers with {@link #shouldBeEvaluated(int)}. Rules
+ * disabled by their circuit breaker are not evaluated in parallel, nor the
+ * rules discarded by the condition index, and the rules above the priority
+ * threshold are not evaluated. The skip parameters are only known once the
+ * results are read, so the conditions following the rule that stops a firing
+ * may have been evaluated, and their listeners asked, although their results
+ * are not used.
+ *
+ * The time spent in each condition is measured, so that time budgets apply to
+ * the conditions evaluated in parallel.
+ *
+ * <strong>This class is not thread-safe.</strong>
+ */
+final class ParallelEvaluation {
+
+	private final CompiledRules rules;
+	private final int count;
+	private final Facts facts;
+	private final RuleCircuitBreakers circuitBreakers;
+	private final ConditionIndex.Candidates candidates;
+	private final Predicate<Rule> filter;
+	// answers of the rule listeners, null for the rules not asked for yet
+	private final Boolean[] accepted;
+	private final Object[] results;
+	private final long[] durations;
+	private boolean evaluated;
+	private boolean stopped;
+	private long version;
+
+	/**
+	 * @param rules           to evaluate
+	 * @param count           number of rules to evaluate, starting from the
+	 *                        first one
+	 * @param facts           to evaluate the rules on
+	 * @param circuitBreakers circuit breakers of the rules, null if the rules
+	 *                        have no time budget
+	 * @param candidates      rules selected by the condition index, null if the
+	 *                        conditions are not indexed
+	 * @param filter          asks the rule listeners whether a rule should be
+	 *                        evaluated
+	 */
+	ParallelEvaluation(final CompiledRules rules, final int count, final Facts facts,
+			final RuleCircuitBreakers circuitBreakers, final ConditionIndex.Candidates candidates,
+			final Predicate<Rule> filter) {
+		this.rules = rules;
+		this.count = count;
+		this.facts = facts;
+		this.circuitBreakers = circuitBreakers;
+		this.candidates = candidates;
+		this.filter = filter;
+		this.accepted = new Boolean[count];
+		this.results = new Object[count];
+		this.durations = new long[count];
+	}
+
+	/**
+	 * Return the result of the condition of the rule at the given index.
+	 *
+	 * @param index of the rule in the compiled rules
+	 * @return the evaluation result
+	 * @throws RuntimeException thrown by the condition
+	 */
+	boolean evaluate(final int index) {
+		final Rule rule = rules.get(index);
+		if (evaluated && facts.getVersion() != version) {
+			// the facts have been written since the parallel evaluation
+			stopped = true;
+		}
+		if (rule.isParallelizable() && !stopped) {
+			if (!evaluated) {
+				evaluateFrom(index);
+			}
+			final Object result = results[index];
+			if (result instanceof RuntimeException) {
+				throw (RuntimeException) result;
+			}
+			if (result != null) {
+				return (Boolean) result;
+			}
+			// disabled when the conditions have been evaluated in parallel
+		}
+		final long start = System.nanoTime();
+		try {
+			return rule.evaluate(facts);
+		} finally {
+			durations[index] = System.nanoTime() - start;
+		}
+	}
+
+	private void evaluateFrom(final int index) {
+		version = facts.getVersion();
+		if (candidates != null) {
+			// select the candidates on the calling thread, they are only read in parallel
+			candidates.contains(index);
+		}
+		for (int i = index; i < count; i++) {
+			if (isParallelizable(i)) {
+				accepted[i] = filter.test(rules.get(i));
+			}
+		}
+		IntStream.range(index, count).parallel().filter(i -> accepted[i] == Boolean.TRUE).forEach(i -> {
+			final long start = System.nanoTime();
+			try {
+				results[i] = rules.get(i).evaluate(facts);
+			} catch (final RuntimeException exception) {
+				results[i] = exception;
+			}
+			durations[i] = System.nanoTime() - start;
+		});
+		evaluated = true;
+	}
+
+	/**
+	 * Return the time spent in the last evaluation of the condition of the rule at
+	 * the given index.
+	 *
+	 * @param index of the rule in the compiled rules
+	 * @return the duration of the evaluation in nanoseconds
+	 */
+	long getDuration(final int index) {
+		return durations[index];
+	}
+
+	/**
+	 * Stop using the results evaluated in parallel, after an action that may have
+	 * changed the facts in place.
+	 */
+	void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Return whether the rule at the given index should be evaluated, asking the
+	 * rule listeners unless they have been asked before the parallel
+	 * evaluation. The first parallelizable rule asked for starts the parallel
+	 * evaluation.
+	 *
+	 * @param index of the rule in the compiled rules
+	 * @return true if the rule should be evaluated
+	 */
+	boolean shouldBeEvaluated(final int index) {
+		final Rule rule = rules.get(index);
+		if (index < count && rule.isParallelizable() && !evaluated && !stopped) {
+			evaluateFrom(index);
+		}
+		final Boolean answer = index < count ? accepted[index] : null;
+		return answer != null ? answer : filter.test(rule);
+	}
+
+	private boolean isParallelizable(final int index) {
+		return rules.get(index).isParallelizable()
+				&& (circuitBreakers == null || !circuitBreakers.isOpen(rules.getName(index)))
+				&& (candidates == null || candidates.contains(index));
+	}
+
+}
@@ -0,0 +1,450 @@
+package org.rossonet.ext.rules.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.rossonet.ext.rules.api.Activation;
+import org.rossonet.ext.rules.api.CompiledRules;
+import org.rossonet.ext.rules.api.ConflictResolutionStrategy;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.rules.api.RulesEngine;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+import org.rossonet.ext.rules.support.ConditionSharing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Incremental inference {@link RulesEngine} implementation inspired by the
+ * Rete algorithm.
+ *
+ * Each {@link Rules} instance is compiled into a network that is kept between
+ * firings:
+ * <ul>
+ * <li>the alpha network indexes rules by the names of the facts their
+ * conditions read. Dependencies are discovered while evaluating the conditions,
+ * so they are known for any {@link Rule} implementation;</li>
+ * <li>the beta memory keeps the last evaluation result of each rule. Conditions
+ * are opaque, so a condition is the join node of its own facts;</li>
+ * <li>the agenda keeps the activations of the matched rules that have not been
+ * fired yet, ordered by the conflict resolution strategy of the parameters.</li>
+ * </ul>
+ *
+ * Only fact insertions, updates and retractions are propagated: when a fact
+ * changes, only the rules that read it are evaluated again. A fired rule is
+ * activated again only when one of the facts read by its condition changes.
+ * The engine fires activations until the agenda is empty or the maximum number
+ * of cycles is reached; each fired activation counts as a cycle.
+ *
+ * Facts are compared by identity: a fact is updated when it is replaced, for
+ * instance with {@link Facts#put(String, Object)}. Changes of the state of a
+ * fact value are not detected, and conditions must read facts through the
+ * {@link Facts} instance they are given.
+ *
+ * Parameters are applied on the activations of each firing. Evaluation errors
+ * and activations cancelled before being fired are considered as non
+ * triggered rules. Rules disabled by their circuit breaker are checked again
+ * on the next change of the facts.
+ */
+public final class ReteRulesEngine extends AbstractRulesEngine {
+
+	/**
+	 * Network compiled from a {@link Rules} instance.
+	 */
+	private final class ReteNetwork {
+
+		// the network does not reference the compiled rules, which can be the key
+		// of the network in the weak map of the engine
+		private final boolean compiled;
+		private final RuleNode[] nodes;
+		private final Map<String, BitSet> alphaMemory = new HashMap<>();
+		private final BitSet allFactsReaders = new BitSet();
+		private final Map<Rule, RuleNode> ruleNodes = new IdentityHashMap<>();
+		private final BitSet dirty = new BitSet();
+		private final ConflictResolutionStrategy strategy;
+		private final Agenda agenda;
+		private final FactsSnapshot snapshot = new FactsSnapshot();
+		private final TrackingFacts trackingFacts = new TrackingFacts();
+
+		private ReteNetwork(final Rules source) {
+			final CompiledRules rules = CompiledRules.compile(source);
+			this.compiled = rules == source;
+			this.nodes = new RuleNode[rules.size()];
+			for (int i = 0; i < nodes.length; i++) {
+				nodes[i] = new RuleNode(rules.get(i), rules.getName(i), rules.getPriority(i));
+				ruleNodes.put(nodes[i].rule, nodes[i]);
+			}
+			this.strategy = parameters.getConflictResolutionStrategy();
+			this.agenda = new Agenda(strategy);
+			dirty.set(0, nodes.length);
+		}
+
+		private void activate(final int index, final boolean matched, final long recency) {
+			final RuleNode node = nodes[index];
+			node.matched = matched;
+			if (node.activation != null) {
+				agenda.cancel(node.activation);
+				node.activation = null;
+			}
+			if (matched) {
+				node.activation = agenda.activate(node.rule, recency);
+			}
+		}
+
+		/**
+		 * Evaluate the rules affected by the last changes and update the agenda.
+		 *
+		 * @return false if an evaluation failed or an activation has been cancelled
+		 */
+		private boolean propagate(final Facts facts) {
+			final RuleCircuitBreakers breakers = circuitBreakers.isEnabled() ? circuitBreakers : null;
+			boolean triggered = true;
+			for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+				dirty.clear(i);
+				final Rule rule = nodes[i].rule;
+				if (breakers != null && !breakers.allows(nodes[i].name)) {
+					LOGGER.debug("Rule '{}' has been skipped since it is disabled by its circuit breaker",
+							nodes[i].name);
+					// check the circuit breaker again on the next change of the facts
+					unlink(i);
+					allFactsReaders.set(i);
+					activate(i, false, 0);
+					continue;
+				}
+				if (!shouldBeEvaluated(rule, facts)) {
+					LOGGER.debug("Rule '{}' has been skipped before being evaluated", nodes[i].name);
+					// ask the listeners again on the next change of the facts
+					unlink(i);
+					allFactsReaders.set(i);
+					activate(i, false, 0);
+					continue;
+				}
+				final boolean wasActivated = nodes[i].activation != null;
+				trackingFacts.reset(facts);
+				boolean evaluationResult = false;
+				try {
+					final long start = breakers != null ? System.nanoTime() : 0;
+					evaluationResult = rule.evaluate(trackingFacts);
+					if (breakers != null) {
+						breakers.check(nodes[i].name, System.nanoTime() - start);
+					}
+					triggerListenersAfterEvaluate(rule, facts, evaluationResult);
+				} catch (final RuntimeException exception) {
+					evaluationResult = false;
+					LOGGER.error("Rule '" + nodes[i].name + "' evaluated with error", exception);
+					triggerListenersOnEvaluationError(rule, facts, exception);
+					triggered = false;
+				}
+				link(i, trackingFacts);
+				activate(i, evaluationResult, evaluationResult ? trackingFacts.getRecency() : 0);
+				if (wasActivated && !evaluationResult) {
+					triggered = false;
+				}
+			}
+			return triggered;
+		}
+
+		/**
+		 * Mark as dirty the rules depending on the changed facts.
+		 */
+		private void invalidate(final Set<String> changedFacts) {
+			if (changedFacts.isEmpty()) {
+				return;
+			}
+			dirty.or(allFactsReaders);
+			for (final String factName : changedFacts) {
+				final BitSet readers = alphaMemory.get(factName);
+				if (readers != null) {
+					dirty.or(readers);
+				}
+			}
+		}
+
+		private void invalidateAll() {
+			dirty.set(0, nodes.length);
+		}
+
+		private void link(final int index, final TrackingFacts trackingFacts) {
+			unlink(index);
+			final RuleNode node = nodes[index];
+			if (trackingFacts.isAllFactsRead()) {
+				allFactsReaders.set(index);
+			}
+			node.inputs = trackingFacts.getReadFacts().toArray(new String[0]);
+			for (final String factName : node.inputs) {
+				alphaMemory.computeIfAbsent(factName, k -> new BitSet(nodes.length)).set(index);
+			}
+		}
+
+		private boolean matches(final Rules rules) {
+			if (strategy != parameters.getConflictResolutionStrategy()) {
+				return false;
+			}
+			if (compiled) {
+				// the network is mapped to the compiled rules it has been built
+				// from, which are immutable
+				return true;
+			}
+			if (rules.size() != nodes.length) {
+				return false;
+			}
+			int i = 0;
+			for (final Rule rule : rules) {
+				if (rule != nodes[i++].rule) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Bring the network in sync with the given facts.
+		 */
+		private void synchronize(final Facts facts) {
+			if (!snapshot.isBoundTo(facts)) {
+				snapshot.bind(facts);
+				invalidateAll();
+			} else {
+				invalidate(snapshot.changes(facts));
+			}
+		}
+
+		private void unlink(final int index) {
+			final RuleNode node = nodes[index];
+			for (final String factName : node.inputs) {
+				final BitSet readers = alphaMemory.get(factName);
+				if (readers != null) {
+					readers.clear(index);
+					if (readers.isEmpty()) {
+						alphaMemory.remove(factName);
+					}
+				}
+			}
+			node.inputs = NO_INPUTS;
+			allFactsReaders.clear(index);
+		}
+	}
+
+	/**
+	 * Node of the network holding the state of a rule.
+	 */
+	private static final class RuleNode {
+
+		private final Rule rule;
+		private final String name;
+		private final int priority;
+		private String[] inputs = NO_INPUTS;
+		private boolean matched;
+		private Activation activation;
+
+		private RuleNode(final Rule rule, final String name, final int priority) {
+			this.rule = rule;
+			this.name = name;
+			this.priority = priority;
+		}
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReteRulesEngine.class);
+
+	private static final String[] NO_INPUTS = new String[0];
+
+	private final Map<Rules, ReteNetwork> networks = new WeakHashMap<>();
+
+	/**
+	 * Create a new {@link ReteRulesEngine} with default parameters.
+	 */
+	public ReteRulesEngine() {
+		super();
+	}
+
+	/**
+	 * Create a new {@link ReteRulesEngine}.
+	 *
+	 * @param parameters of the engine
+	 */
+	public ReteRulesEngine(final RulesEngineParameters parameters) {
+		super(parameters);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Only the rules affected by the changes of the facts since the last
+	 * evaluation are evaluated again, the other results come from the network.
+	 */
+	@Override
+	public Map<Rule, Boolean> check(final Rules rules, final Facts facts) {
+		Objects.requireNonNull(rules, "Rules must not be null");
+		Objects.requireNonNull(facts, "Facts must not be null");
+		triggerListenersBeforeRules(rules, facts);
+		final Map<Rule, Boolean> result = new LinkedHashMap<>();
+		final ReteNetwork network = getNetwork(rules);
+		synchronized (network) {
+			ConditionSharing.invalidate();
+			network.synchronize(facts);
+			network.propagate(facts);
+			for (final RuleNode node : network.nodes) {
+				result.put(node.rule, node.matched);
+			}
+		}
+		triggerListenersAfterRules(rules, facts);
+		return result;
+	}
+
+	/**
+	 * Forget the network compiled for the given rules, so that the next firing
+	 * evaluates all the rules again.
+	 *
+	 * @param rules to forget
+	 */
+	public void clear(final Rules rules) {
+		synchronized (networks) {
+			networks.remove(rules);
+		}
+	}
+
+	private void doFire(final ReteNetwork network, final Facts facts) {
+		ConditionSharing.invalidate();
+		network.synchronize(facts);
+		if (!network.propagate(facts) && parameters.isSkipOnFirstNonTriggeredRule()) {
+			LOGGER.debug("Next rules will be skipped since parameter skipOnFirstNonTriggeredRule is set");
+			return;
+		}
+		final RuleCircuitBreakers breakers = circuitBreakers.isEnabled() ? circuitBreakers : null;
+		final TrackingFacts trackingFacts = new TrackingFacts();
+		final List<Activation> skipped = new ArrayList<>();
+		int cycles = 0;
+		for (Activation activation = network.agenda.next(); activation != null; activation = network.agenda
+				.next()) {
+			final Rule rule = activation.getRule();
+			final RuleNode node = network.ruleNodes.get(rule);
+			final String name = node.name;
+			final int priority = node.priority;
+			if (priority > parameters.getPriorityThreshold()) {
+				LOGGER.debug("Rule priority threshold ({}) exceeded at rule '{}' with priority={}, rule will be skipped",
+						parameters.getPriorityThreshold(), name, priority);
+				skipped.add(activation);
+				continue;
+			}
+			if (cycles >= parameters.getMaxCycles()) {
+				LOGGER.warn("Maximum number of cycles ({}) reached, next rules will be skipped",
+						parameters.getMaxCycles());
+				skipped.add(activation);
+				break;
+			}
+			cycles++;
+			node.activation = null;
+			trackingFacts.reset(facts);
+			boolean failed = false;
+			try {
+				triggerListenersBeforeExecute(rule, facts);
+				final long start = breakers != null ? System.nanoTime() : 0;
+				rule.execute(trackingFacts);
+				if (breakers != null) {
+					breakers.check(name, System.nanoTime() - start);
+				}
+				LOGGER.debug("Rule '{}' performed successfully", name);
+				triggerListenersOnSuccess(rule, facts);
+			} catch (final Exception exception) {
+				LOGGER.error("Rule '" + name + "' performed with error", exception);
+				triggerListenersOnFailure(rule, exception, facts);
+				failed = true;
+			}
+			ConditionSharing.invalidate();
+			if (trackingFacts.isWriteTrackingComplete()) {
+				network.snapshot.update(facts, trackingFacts.getWrittenFacts());
+				network.invalidate(trackingFacts.getWrittenFacts());
+			} else {
+				network.invalidate(network.snapshot.changes(facts));
+			}
+			if (failed && parameters.isSkipOnFirstFailedRule()) {
+				LOGGER.debug("Next rules will be skipped since parameter skipOnFirstFailedRule is set");
+				break;
+			}
+			if (!failed && parameters.isSkipOnFirstAppliedRule()) {
+				LOGGER.debug("Next rules will be skipped since parameter skipOnFirstAppliedRule is set");
+				break;
+			}
+			if (!network.propagate(facts) && parameters.isSkipOnFirstNonTriggeredRule()) {
+				LOGGER.debug("Next rules will be skipped since parameter skipOnFirstNonTriggeredRule is set");
+				break;
+			}
+		}
+		// activations skipped by the parameters stay in the agenda for the next firing
+		for (final Activation activation : skipped) {
+			if (network.ruleNodes.get(activation.getRule()).activation == activation) {
+				network.agenda.add(activation);
+			}
+		}
+	}
+
+	@Override
+	public void fire(final Rules rules, final Facts facts) {
+		Objects.requireNonNull(rules, "Rules must not be null");
+		Objects.requireNonNull(facts, "Facts must not be null");
+		triggerListenersBeforeRules(rules, facts);
+		if (rules.isEmpty()) {
+			LOGGER.debug("No rules registered! Nothing to apply");
+		} else {
+			final ReteNetwork network = getNetwork(rules);
+			synchronized (network) {
+				doFire(network, facts);
+			}
+		}
+		triggerListenersAfterRules(rules, facts);
+	}
+
+	private ReteNetwork getNetwork(final Rules rules) {
+		synchronized (networks) {
+			ReteNetwork network = networks.get(rules);
+			if (network == null || !network.matches(rules)) {
+				LOGGER.debug("Compiling network for {} rules", rules.size());
+				network = new ReteNetwork(rules);
+				networks.put(rules, network);
+			}
+			return network;
+		}
+	}
+
+	private boolean shouldBeEvaluated(final Rule rule, final Facts facts) {
+		return ruleListeners.stream().allMatch(ruleListener -> ruleListener.beforeEvaluate(rule, facts));
+	}
+
+	private void triggerListenersAfterEvaluate(final Rule rule, final Facts facts, final boolean evaluationResult) {
+		ruleListeners.forEach(ruleListener -> ruleListener.afterEvaluate(rule, facts, evaluationResult));
+	}
+
+	private void triggerListenersAfterRules(final Rules rule, final Facts facts) {
+		rulesEngineListeners.forEach(rulesEngineListener -> rulesEngineListener.afterExecute(rule, facts));
+	}
+
+	private void triggerListenersBeforeExecute(final Rule rule, final Facts facts) {
+		ruleListeners.forEach(ruleListener -> ruleListener.beforeExecute(rule, facts));
+	}
+
+	private void triggerListenersBeforeRules(final Rules rule, final Facts facts) {
+		rulesEngineListeners.forEach(rulesEngineListener -> rulesEngineListener.beforeEvaluate(rule, facts));
+	}
+
+	private void triggerListenersOnEvaluationError(final Rule rule, final Facts facts, final Exception exception) {
+		ruleListeners.forEach(ruleListener -> ruleListener.onEvaluationError(rule, facts, exception));
+	}
+
+	private void triggerListenersOnFailure(final Rule rule, final Exception exception, final Facts facts) {
+		ruleListeners.forEach(ruleListener -> ruleListener.onFailure(rule, facts, exception));
+	}
+
+	private void triggerListenersOnSuccess(final Rule rule, final Facts facts) {
+		ruleListeners.forEach(ruleListener -> ruleListener.onSuccess(rule, facts));
+	}
+
+}
@@ -0,0 +1,364 @@
+package org.rossonet.ext.rules.core;
+
+import static java.lang.String.format;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.rossonet.ext.rules.annotation.Action;
+import org.rossonet.ext.rules.annotation.Condition;
+import org.rossonet.ext.rules.annotation.Fact;
+import org.rossonet.ext.rules.annotation.Priority;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adapter of an annotated rule class to the {@link Rule} interface, shared by
+ * all the instances of the class.
+ *
+ * The adapter is built once per class: the rule definition is validated, the
+ * name and the description are computed, and the annotated methods are bound
+ * to method handles taking the rule instance and the {@link Facts}. The names
+ * of the facts injected in each parameter are resolved when the handles are
+ * built, so invoking a condition or an action allocates no parameters array.
+ *
+ * Adapters are immutable and thread-safe.
+ */
+final class RuleAdapter {
+
+	/**
+	 * Thrown when the value of an injected fact does not match the type of the
+	 * parameter.
+	 */
+	static final class FactTypeMismatchException extends IllegalArgumentException {
+
+		private static final long serialVersionUID = -4166430123867312472L;
+
+		private FactTypeMismatchException(final String message) {
+			super(message);
+		}
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RuleAdapter.class);
+
+	private static final RuleDefinitionValidator ruleDefinitionValidator = new RuleDefinitionValidator();
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodHandle FACT;
+
+	/**
+	 * Numeric primitive types ordered by primitive widening conversions, char
+	 * widens to the same types as short.
+	 */
+	private static final List<Class<?>> WIDENING_ORDER = Arrays.asList(byte.class, short.class, int.class,
+			long.class, float.class, double.class);
+
+	private static final ClassValue<RuleAdapter> ADAPTERS = new ClassValue<RuleAdapter>() {
+
+		@Override
+		protected RuleAdapter computeValue(final Class<?> ruleClass) {
+			ruleDefinitionValidator.validateRuleDefinition(ruleClass);
+			return new RuleAdapter(ruleClass);
+		}
+	};
+
+	static {
+		try {
+			FACT = LOOKUP.findStatic(RuleAdapter.class, "fact",
+					MethodType.methodType(Object.class, Facts.class, String.class, Class.class));
+		} catch (final ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Bind the given method to a handle of type
+	 * <code>(Object, Facts)returnType</code>, injecting the facts declared by its
+	 * parameters.
+	 */
+	private static MethodHandle bind(final Method method, final Class<?> returnType) {
+		final Class<?>[] parameterTypes = method.getParameterTypes();
+		final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+		final MethodHandle[] filters = new MethodHandle[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; i++) {
+			final MethodHandle filter;
+			if (parameterAnnotations[i].length == 1) {
+				final String factName = ((Fact) (parameterAnnotations[i][0])).value(); // validated upfront
+				filter = MethodHandles.insertArguments(FACT, 1, factName, parameterTypes[i]);
+			} else {
+				// validated upfront, there may be only one parameter not annotated and which is
+				// of type Facts.class
+				filter = MethodHandles.identity(Facts.class);
+			}
+			filters[i] = filter.asType(MethodType.methodType(parameterTypes[i], Facts.class));
+		}
+		MethodHandle handle = MethodHandles.filterArguments(unreflect(method), 1, filters);
+		handle = handle.asType(handle.type().changeParameterType(0, Object.class).changeReturnType(returnType));
+		final int[] reorder = new int[parameterTypes.length + 1];
+		for (int i = 1; i < reorder.length; i++) {
+			reorder[i] = 1;
+		}
+		return MethodHandles.permuteArguments(handle, MethodType.methodType(returnType, Object.class, Facts.class),
+				reorder);
+	}
+
+	/**
+	 * Resolve an injected fact, called through {@link #FACT} and by generated
+	 * rules.
+	 */
+	static Object fact(final Facts facts, final String factName, final Class<?> type) {
+		final Object fact = facts.get(factName);
+		if (fact == null && !facts.has(factName)) {
+			throw new NoSuchFactException(format("No fact named '%s' found in known facts: %n%s", factName, facts),
+					factName);
+		}
+		if (!isAssignable(type, fact)) {
+			throw new FactTypeMismatchException(format("Fact '%s' (%s) can not be injected as %s", factName,
+					fact == null ? null : fact.getClass().getName(), type.getName()));
+		}
+		return fact;
+	}
+
+	/**
+	 * Check if the given fact can be passed as a parameter of the given type, with
+	 * the conversions of {@link Method#invoke(Object, Object...)}: unboxing
+	 * followed by a primitive widening conversion.
+	 */
+	private static boolean isAssignable(final Class<?> type, final Object fact) {
+		if (!type.isPrimitive()) {
+			return fact == null || type.isInstance(fact);
+		}
+		if (fact == null) {
+			return false;
+		}
+		final Class<?> factType = MethodType.methodType(fact.getClass()).unwrap().returnType();
+		if (factType == type) {
+			return true;
+		}
+		final int factRank = WIDENING_ORDER.indexOf(factType == char.class ? short.class : factType);
+		return type != char.class && factRank >= 0 && factRank < WIDENING_ORDER.indexOf(type);
+	}
+
+	/**
+	 * Get the adapter of the given annotated rule class, building it on first use.
+	 *
+	 * @param ruleClass annotated rule class
+	 * @return the adapter of the class
+	 * @throws IllegalArgumentException if the rule class is not well defined
+	 */
+	static RuleAdapter of(final Class<?> ruleClass) {
+		return ADAPTERS.get(ruleClass);
+	}
+
+	private static RuntimeException rethrow(final Throwable throwable) {
+		if (throwable instanceof RuntimeException) {
+			return (RuntimeException) throwable;
+		}
+		if (throwable instanceof Error) {
+			throw (Error) throwable;
+		}
+		return new UndeclaredThrowableException(throwable);
+	}
+
+	private static MethodHandle unreflect(final Method method) {
+		try {
+			// public methods of non public rule classes are not accessible otherwise
+			method.trySetAccessible();
+			return LOOKUP.unreflect(method);
+		} catch (final IllegalAccessException e) {
+			throw new IllegalArgumentException(format("Method '%s' is not accessible", method), e);
+		}
+	}
+
+	private final Class<?> ruleClass;
+	private final String name;
+	private final String description;
+	private final int priority;
+	private final boolean parallelizable;
+	private final String conditionMethodName;
+	private final MethodHandle condition;
+	private final MethodHandle[] actions;
+	private final MethodHandle priorityMethod;
+	private final Method compareToMethod;
+	private final MethodHandle compareTo;
+	private final Set<String> factDependencies;
+
+	private RuleAdapter(final Class<?> ruleClass) {
+		this.ruleClass = ruleClass;
+		final org.rossonet.ext.rules.annotation.Rule annotation = Utils
+				.findAnnotation(org.rossonet.ext.rules.annotation.Rule.class, ruleClass);
+		Method conditionMethod = null;
+		Method priorityMethod = null;
+		Method compareToMethod = null;
+		final Set<ActionMethodOrderBean> actionMethods = new TreeSet<>();
+		for (final Method method : ruleClass.getMethods()) {
+			if (method.isAnnotationPresent(Condition.class) && conditionMethod == null) {
+				conditionMethod = method;
+			}
+			if (method.isAnnotationPresent(Action.class)) {
+				actionMethods.add(new ActionMethodOrderBean(method, method.getAnnotation(Action.class).order()));
+			}
+			if (method.isAnnotationPresent(Priority.class) && priorityMethod == null) {
+				priorityMethod = method;
+			}
+			if (method.getName().equals("compareTo") && compareToMethod == null) {
+				compareToMethod = method;
+			}
+		}
+		this.name = annotation.name().equals(Rule.DEFAULT_NAME) ? ruleClass.getSimpleName() : annotation.name();
+		this.description = annotation.description().equals(Rule.DEFAULT_DESCRIPTION)
+				? defaultDescription(conditionMethod, actionMethods)
+				: annotation.description();
+		this.priority = annotation.priority();
+		this.parallelizable = annotation.parallelizable();
+		this.conditionMethodName = conditionMethod.getName();
+		this.condition = bind(conditionMethod, boolean.class);
+		this.actions = new MethodHandle[actionMethods.size()];
+		int index = 0;
+		for (final ActionMethodOrderBean actionMethod : actionMethods) {
+			actions[index++] = bind(actionMethod.getMethod(), void.class);
+		}
+		this.priorityMethod = priorityMethod == null ? null
+				: unreflect(priorityMethod).asType(MethodType.methodType(int.class, Object.class));
+		this.compareToMethod = compareToMethod;
+		this.compareTo = compareToMethod == null || compareToMethod.getParameterCount() != 1
+				|| compareToMethod.getReturnType() != int.class ? null
+						: unreflect(compareToMethod)
+								.asType(MethodType.methodType(int.class, Object.class, Object.class));
+		this.factDependencies = factDependencies(conditionMethod);
+	}
+
+	/**
+	 * Compare two instances of the rule class with its own
+	 * <code>compareTo</code> method.
+	 *
+	 * @throws IllegalArgumentException if the <code>compareTo</code> method does
+	 *                                  not take a single argument
+	 */
+	int compare(final Object target, final Object otherTarget) {
+		if (compareTo == null) {
+			throw new IllegalArgumentException("compareTo method must have a single argument");
+		}
+		try {
+			return (int) compareTo.invokeExact(target, otherTarget);
+		} catch (final Throwable throwable) {
+			throw rethrow(throwable);
+		}
+	}
+
+	/**
+	 * Default description = "when " + conditionMethodName + " then " + comma
+	 * separated actionMethodsNames
+	 */
+	private String defaultDescription(final Method conditionMethod, final Set<ActionMethodOrderBean> actionMethods) {
+		final StringBuilder description = new StringBuilder();
+		description.append("when ");
+		description.append(conditionMethod.getName());
+		description.append(" then ");
+		final Iterator<ActionMethodOrderBean> iterator = actionMethods.iterator();
+		while (iterator.hasNext()) {
+			description.append(iterator.next().getMethod().getName());
+			if (iterator.hasNext()) {
+				description.append(",");
+			}
+		}
+		return description.toString();
+	}
+
+	boolean evaluate(final Object target, final Facts facts) {
+		try {
+			return (boolean) condition.invokeExact(target, facts);
+		} catch (final NoSuchFactException e) {
+			LOGGER.warn("Rule '{}' has been evaluated to false due to a declared but missing fact '{}' in {}",
+					ruleClass.getName(), e.getMissingFact(), facts);
+			return false;
+		} catch (final FactTypeMismatchException e) {
+			LOGGER.warn("Types of injected facts in method '{}' in rule '{}' do not match parameters types",
+					conditionMethodName, ruleClass.getName(), e);
+			return false;
+		} catch (final Throwable throwable) {
+			throw rethrow(throwable);
+		}
+	}
+
+	void execute(final Object target, final Facts facts) throws Exception {
+		for (final MethodHandle action : actions) {
+			try {
+				action.invokeExact(target, facts);
+			} catch (final Exception e) {
+				throw e;
+			} catch (final Throwable throwable) {
+				throw rethrow(throwable);
+			}
+		}
+	}
+
+	/**
+	 * The dependencies of an annotated rule are the facts injected in its
+	 * condition method. They are unknown when the whole {@link Facts} is injected.
+	 */
+	private Set<String> factDependencies(final Method conditionMethod) {
+		final Set<String> factDependencies = new HashSet<>();
+		for (final Annotation[] annotations : conditionMethod.getParameterAnnotations()) {
+			if (annotations.length == 1) {
+				factDependencies.add(((Fact) (annotations[0])).value()); // validated upfront
+			} else {
+				return null;
+			}
+		}
+		return Collections.unmodifiableSet(factDependencies);
+	}
+
+	String getDescription() {
+		return description;
+	}
+
+	Set<String> getFactDependencies() {
+		return factDependencies;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the priority of the given rule instance: the value returned by its
+	 * {@link Priority} method if any, otherwise the priority of the annotation.
+	 */
+	int getPriority(final Object target) {
+		if (priorityMethod == null) {
+			return priority;
+		}
+		try {
+			return (int) priorityMethod.invokeExact(target);
+		} catch (final Throwable throwable) {
+			throw rethrow(throwable);
+		}
+	}
+
+	/**
+	 * Check if the rule class defines its own <code>compareTo</code> method.
+	 */
+	boolean hasCompareTo() {
+		return compareToMethod != null;
+	}
+
+	boolean isParallelizable() {
+		return parallelizable;
+	}
+
+}
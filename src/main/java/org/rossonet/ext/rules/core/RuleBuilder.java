@@ -40,6 +40,7 @@ public class RuleBuilder {
 	private String name = Rule.DEFAULT_NAME;
 	private String description = Rule.DEFAULT_DESCRIPTION;
 	private int priority = Rule.DEFAULT_PRIORITY;
+	private boolean parallelizable = true;
 
 	private Condition condition = Condition.FALSE;
 	private final List<Action> actions = new ArrayList<>();
@@ -50,7 +51,9 @@ public class RuleBuilder {
 	 * @return a new rule instance
 	 */
 	public Rule build() {
-		return new DefaultRule(name, description, priority, condition, actions);
+		final DefaultRule rule = new DefaultRule(name, description, priority, condition, actions);
+		rule.setParallelizable(parallelizable);
+		return rule;
 	}
 
 	/**
@@ -75,6 +78,17 @@ public class RuleBuilder {
 		return this;
 	}
 
+	/**
+	 * Set whether the rule condition can be evaluated in parallel.
+	 *
+	 * @param parallelizable false if the condition has side effects
+	 * @return the builder instance
+	 */
+	public RuleBuilder parallelizable(boolean parallelizable) {
+		this.parallelizable = parallelizable;
+		return this;
+	}
+
 	/**
 	 * Set rule priority.
 	 *
@@ -0,0 +1,143 @@
+package org.rossonet.ext.rules.core;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+
+/**
+ * Circuit breakers enforcing the
+ * {@link RulesEngineParameters#getRuleTimeBudget() time budget} of the rules of
+ * an engine, kept by rule name so that they survive the rule sets rebuilt at
+ * each firing.
+ *
+ * A breaker is created at the first violation of a rule. After
+ * {@link RulesEngineParameters#getCircuitBreakerThreshold()} violations the
+ * breaker opens and the rule is skipped. Once
+ * {@link RulesEngineParameters#getCircuitBreakerResetTimeout()} has elapsed the
+ * breaker is half-open: the rule is evaluated again, and the breaker is closed
+ * if the rule stays within its budget, or opened again at the first violation.
+ */
+final class RuleCircuitBreakers {
+
+	/**
+	 * State of the breaker of a rule, guarded by its monitor.
+	 */
+	private static final class Breaker {
+
+		private State state = State.CLOSED;
+		private int violations;
+		private long openedAt;
+	}
+
+	private enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final RulesEngineParameters parameters;
+	private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+	RuleCircuitBreakers(final RulesEngineParameters parameters) {
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Tell whether a rule can be evaluated, turning its breaker half-open when
+	 * the reset timeout has elapsed.
+	 *
+	 * @param ruleName name of the rule
+	 * @return false if the rule is disabled
+	 */
+	boolean allows(final String ruleName) {
+		final Breaker breaker = breakers.get(ruleName);
+		if (breaker == null) {
+			return true;
+		}
+		synchronized (breaker) {
+			if (breaker.state != State.OPEN) {
+				return true;
+			}
+			if (System.nanoTime() - breaker.openedAt >= parameters.getCircuitBreakerResetTimeout().toNanos()) {
+				breaker.state = State.HALF_OPEN;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Check the time spent in the condition or in the actions of a rule.
+	 *
+	 * @param ruleName name of the rule
+	 * @param duration time spent in nanoseconds
+	 * @throws RuleTimeBudgetExceededException if the time budget is exceeded
+	 */
+	void check(final String ruleName, final long duration) {
+		final long budget = getBudget();
+		if (duration <= budget) {
+			final Breaker breaker = breakers.get(ruleName);
+			if (breaker != null) {
+				synchronized (breaker) {
+					if (breaker.state == State.HALF_OPEN) {
+						breakers.remove(ruleName, breaker);
+					}
+				}
+			}
+			return;
+		}
+		final Breaker breaker = breakers.computeIfAbsent(ruleName, name -> new Breaker());
+		final boolean opened;
+		synchronized (breaker) {
+			breaker.violations++;
+			opened = breaker.state == State.HALF_OPEN
+					|| breaker.violations >= parameters.getCircuitBreakerThreshold();
+			if (opened) {
+				breaker.state = State.OPEN;
+				breaker.openedAt = System.nanoTime();
+			}
+		}
+		throw new RuleTimeBudgetExceededException(ruleName, duration, budget, opened);
+	}
+
+	/**
+	 * @return the time budget of the rules in nanoseconds
+	 */
+	long getBudget() {
+		final Duration budget = parameters.getRuleTimeBudget();
+		return budget == null ? Long.MAX_VALUE : budget.toNanos();
+	}
+
+	/**
+	 * @return true if the rules have a time budget
+	 */
+	boolean isEnabled() {
+		return parameters.getRuleTimeBudget() != null;
+	}
+
+	/**
+	 * Tell whether a rule is disabled, without changing the state of its
+	 * breaker.
+	 *
+	 * @param ruleName name of the rule
+	 * @return true if the breaker of the rule is open
+	 */
+	boolean isOpen(final String ruleName) {
+		final Breaker breaker = breakers.get(ruleName);
+		if (breaker == null) {
+			return false;
+		}
+		synchronized (breaker) {
+			return breaker.state == State.OPEN
+					&& System.nanoTime() - breaker.openedAt < parameters.getCircuitBreakerResetTimeout().toNanos();
+		}
+	}
+
+	/**
+	 * Close all the breakers.
+	 */
+	void reset() {
+		breakers.clear();
+	}
+
+}
@@ -46,33 +46,33 @@ import org.rossonet.ext.rules.api.Facts;
  */
 class RuleDefinitionValidator {
 
-	private void checkActionMethods(final Object rule) {
-		final List<Method> actionMethods = getMethodsAnnotatedWith(Action.class, rule);
+	private void checkActionMethods(final Class<?> ruleClass) {
+		final List<Method> actionMethods = getMethodsAnnotatedWith(Action.class, ruleClass);
 		if (actionMethods.isEmpty()) {
 			throw new IllegalArgumentException(
 					format("Rule '%s' must have at least one public method annotated with '%s'",
-							rule.getClass().getName(), Action.class.getName()));
+							ruleClass.getName(), Action.class.getName()));
 		}
 
 		for (final Method actionMethod : actionMethods) {
 			if (!isActionMethodWellDefined(actionMethod)) {
 				throw new IllegalArgumentException(format(
 						"Action method '%s' defined in rule '%s' must be public, must return void type and may have parameters annotated with @Fact (and/or exactly one parameter of type Facts or one of its sub-types).",
-						actionMethod, rule.getClass().getName()));
+						actionMethod, ruleClass.getName()));
 			}
 		}
 	}
 
-	private void checkConditionMethod(final Object rule) {
-		final List<Method> conditionMethods = getMethodsAnnotatedWith(Condition.class, rule);
+	private void checkConditionMethod(final Class<?> ruleClass) {
+		final List<Method> conditionMethods = getMethodsAnnotatedWith(Condition.class, ruleClass);
 		if (conditionMethods.isEmpty()) {
 			throw new IllegalArgumentException(format("Rule '%s' must have a public method annotated with '%s'",
-					rule.getClass().getName(), Condition.class.getName()));
+					ruleClass.getName(), Condition.class.getName()));
 		}
 
 		if (conditionMethods.size() > 1) {
 			throw new IllegalArgumentException(format("Rule '%s' must have exactly one method annotated with '%s'",
-					rule.getClass().getName(), Condition.class.getName()));
+					ruleClass.getName(), Condition.class.getName()));
 		}
 
 		final Method conditionMethod = conditionMethods.get(0);
@@ -80,13 +80,13 @@ class RuleDefinitionValidator {
 		if (!isConditionMethodWellDefined(conditionMethod)) {
 			throw new IllegalArgumentException(format(
 					"Condition method '%s' defined in rule '%s' must be public, must return boolean type and may have parameters annotated with @Fact (and/or exactly one parameter of type Facts or one of its sub-types).",
-					conditionMethod, rule.getClass().getName()));
+					conditionMethod, ruleClass.getName()));
 		}
 	}
 
-	private void checkPriorityMethod(final Object rule) {
+	private void checkPriorityMethod(final Class<?> ruleClass) {
 
-		final List<Method> priorityMethods = getMethodsAnnotatedWith(Priority.class, rule);
+		final List<Method> priorityMethods = getMethodsAnnotatedWith(Priority.class, ruleClass);
 
 		if (priorityMethods.isEmpty()) {
 			return;
@@ -94,7 +94,7 @@ class RuleDefinitionValidator {
 
 		if (priorityMethods.size() > 1) {
 			throw new IllegalArgumentException(format("Rule '%s' must have exactly one method annotated with '%s'",
-					rule.getClass().getName(), Priority.class.getName()));
+					ruleClass.getName(), Priority.class.getName()));
 		}
 
 		final Method priorityMethod = priorityMethods.get(0);
@@ -102,23 +102,23 @@ class RuleDefinitionValidator {
 		if (!isPriorityMethodWellDefined(priorityMethod)) {
 			throw new IllegalArgumentException(format(
 					"Priority method '%s' defined in rule '%s' must be public, have no parameters and return integer type.",
-					priorityMethod, rule.getClass().getName()));
+					priorityMethod, ruleClass.getName()));
 		}
 	}
 
-	private void checkRuleClass(final Object rule) {
-		if (!isRuleClassWellDefined(rule)) {
+	private void checkRuleClass(final Class<?> ruleClass) {
+		if (!isRuleClassWellDefined(ruleClass)) {
 			throw new IllegalArgumentException(
-					format("Rule '%s' is not annotated with '%s'", rule.getClass().getName(), Rule.class.getName()));
+					format("Rule '%s' is not annotated with '%s'", ruleClass.getName(), Rule.class.getName()));
 		}
 	}
 
-	private Method[] getMethods(final Object rule) {
-		return rule.getClass().getMethods();
+	private Method[] getMethods(final Class<?> ruleClass) {
+		return ruleClass.getMethods();
 	}
 
-	private List<Method> getMethodsAnnotatedWith(final Class<? extends Annotation> annotation, final Object rule) {
-		final Method[] methods = getMethods(rule);
+	private List<Method> getMethodsAnnotatedWith(final Class<? extends Annotation> annotation, final Class<?> ruleClass) {
+		final Method[] methods = getMethods(ruleClass);
 		final List<Method> annotatedMethods = new ArrayList<>();
 		for (final Method method : methods) {
 			if (method.isAnnotationPresent(annotation)) {
@@ -153,15 +153,19 @@ class RuleDefinitionValidator {
 				&& method.getParameterTypes().length == 0;
 	}
 
-	private boolean isRuleClassWellDefined(final Object rule) {
-		return Utils.isAnnotationPresent(Rule.class, rule.getClass());
+	private boolean isRuleClassWellDefined(final Class<?> ruleClass) {
+		return Utils.isAnnotationPresent(Rule.class, ruleClass);
+	}
+
+	void validateRuleDefinition(final Class<?> ruleClass) {
+		checkRuleClass(ruleClass);
+		checkConditionMethod(ruleClass);
+		checkActionMethods(ruleClass);
+		checkPriorityMethod(ruleClass);
 	}
 
 	void validateRuleDefinition(final Object rule) {
-		checkRuleClass(rule);
-		checkConditionMethod(rule);
-		checkActionMethods(rule);
-		checkPriorityMethod(rule);
+		validateRuleDefinition(rule.getClass());
 	}
 
 	private boolean validParameters(final Method method) {
@@ -0,0 +1,416 @@
+package org.rossonet.ext.rules.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.RuleListener;
+
+/**
+ * {@link RuleListener} recording metrics per rule name: number of evaluations,
+ * number of triggered evaluations, evaluation errors, action failures and
+ * latencies of the conditions and of the actions.
+ *
+ * Counters are {@link LongAdder}s and latencies are recorded in histograms with
+ * logarithmic buckets, so that rules evaluated concurrently do not contend on
+ * the same counter. Each power of two is divided in {@value #SUB_BUCKETS}
+ * buckets, which bounds the relative error of the latencies to 25%.
+ *
+ * Latencies are measured between the listener callbacks on the thread firing
+ * the rules. With parallel evaluation, the latency of a condition includes the
+ * time spent waiting for its result.
+ */
+public class RuleMetricsListener implements RuleListener {
+
+	/**
+	 * Metrics of a rule being recorded.
+	 */
+	private static final class Counters {
+
+		private final LongAdder evaluations = new LongAdder();
+		private final LongAdder triggers = new LongAdder();
+		private final LongAdder evaluationErrors = new LongAdder();
+		private final LongAdder executions = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final Histogram evaluationLatency = new Histogram();
+		private final Histogram actionLatency = new Histogram();
+	}
+
+	/**
+	 * Latency histogram being recorded.
+	 */
+	private static final class Histogram {
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		private void record(final long latency) {
+			final long value = Math.max(0, latency);
+			buckets.incrementAndGet(bucket(value));
+			count.increment();
+			total.add(value);
+			max.accumulate(value);
+		}
+
+		private Latency snapshot() {
+			final long[] counts = new long[BUCKETS];
+			long sum = 0;
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				counts[bucket] = buckets.get(bucket);
+				sum += counts[bucket];
+			}
+			return new Latency(counts, sum, total.sum(), max.get());
+		}
+	}
+
+	/**
+	 * Snapshot of a latency histogram. Latencies are in nanoseconds.
+	 */
+	public static final class Latency {
+
+		private final long[] buckets;
+		private final long count;
+		private final long total;
+		private final long max;
+
+		private Latency(final long[] buckets, final long count, final long total, final long max) {
+			this.buckets = buckets;
+			this.count = count;
+			this.total = total;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Get the mean latency.
+		 *
+		 * @return the mean latency, 0 if nothing has been recorded
+		 */
+		public double getMean() {
+			return count == 0 ? 0 : (double) total / count;
+		}
+
+		/**
+		 * Get the latency below which the given percentage of the recorded latencies
+		 * falls.
+		 *
+		 * @param percentile between 0 and 100
+		 * @return the highest latency of the bucket holding the percentile, 0 if
+		 *         nothing has been recorded
+		 */
+		public long getPercentile(final double percentile) {
+			if (percentile < 0 || percentile > 100) {
+				throw new IllegalArgumentException("percentile must be between 0 and 100");
+			}
+			final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+			long cumulated = 0;
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				cumulated += buckets[bucket];
+				if (cumulated >= rank) {
+					return Math.min(highestValue(bucket), max);
+				}
+			}
+			return 0;
+		}
+
+		public long getTotal() {
+			return total;
+		}
+
+		@Override
+		public String toString() {
+			return "Latency{count=" + count + ", mean=" + getMean() + ", p50=" + getPercentile(50) + ", p99="
+					+ getPercentile(99) + ", max=" + max + "}";
+		}
+	}
+
+	/**
+	 * Snapshot of the metrics of a rule.
+	 */
+	public static final class RuleMetrics {
+
+		private final String ruleName;
+		private final long evaluations;
+		private final long triggers;
+		private final long evaluationErrors;
+		private final long executions;
+		private final long failures;
+		private final Latency evaluationLatency;
+		private final Latency actionLatency;
+
+		private RuleMetrics(final String ruleName, final Counters counters) {
+			this.ruleName = ruleName;
+			this.evaluations = counters.evaluations.sum();
+			this.triggers = counters.triggers.sum();
+			this.evaluationErrors = counters.evaluationErrors.sum();
+			this.executions = counters.executions.sum();
+			this.failures = counters.failures.sum();
+			this.evaluationLatency = counters.evaluationLatency.snapshot();
+			this.actionLatency = counters.actionLatency.snapshot();
+		}
+
+		/**
+		 * Get the latencies of the actions, including the failed ones.
+		 *
+		 * @return the latency histogram of the actions
+		 */
+		public Latency getActionLatency() {
+			return actionLatency;
+		}
+
+		public long getEvaluationErrors() {
+			return evaluationErrors;
+		}
+
+		/**
+		 * Get the latencies of the conditions, including the ones that have thrown an
+		 * exception.
+		 *
+		 * @return the latency histogram of the conditions
+		 */
+		public Latency getEvaluationLatency() {
+			return evaluationLatency;
+		}
+
+		/**
+		 * Get the number of evaluations of the condition, including evaluation errors.
+		 *
+		 * @return the number of evaluations
+		 */
+		public long getEvaluations() {
+			return evaluations;
+		}
+
+		/**
+		 * Get the number of executions of the actions, including failures.
+		 *
+		 * @return the number of executions
+		 */
+		public long getExecutions() {
+			return executions;
+		}
+
+		public long getFailures() {
+			return failures;
+		}
+
+		public String getRuleName() {
+			return ruleName;
+		}
+
+		/**
+		 * Get the ratio of the evaluations in which the condition was true.
+		 *
+		 * @return the trigger ratio, 0 if the rule has never been evaluated
+		 */
+		public double getTriggerRatio() {
+			return evaluations == 0 ? 0 : (double) triggers / evaluations;
+		}
+
+		public long getTriggers() {
+			return triggers;
+		}
+
+		@Override
+		public String toString() {
+			return "RuleMetrics{ruleName='" + ruleName + "', evaluations=" + evaluations + ", triggers=" + triggers
+					+ ", evaluationErrors=" + evaluationErrors + ", executions=" + executions + ", failures="
+					+ failures + ", evaluationLatency=" + evaluationLatency + ", actionLatency=" + actionLatency
+					+ "}";
+		}
+	}
+
+	/**
+	 * Start times of the evaluation and of the nested executions of the current
+	 * thread.
+	 */
+	private static final class Timer {
+
+		private long evaluationStart = NOT_STARTED;
+		private long[] executionStarts = new long[4];
+		private int depth;
+
+		private long popExecution() {
+			return depth == 0 ? NOT_STARTED : executionStarts[--depth];
+		}
+
+		private void pushExecution(final long start) {
+			if (depth == executionStarts.length) {
+				executionStarts = Arrays.copyOf(executionStarts, depth * 2);
+			}
+			executionStarts[depth++] = start;
+		}
+	}
+
+	private static final int SUB_BUCKET_BITS = 2;
+
+	/**
+	 * Number of buckets per power of two.
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Highest power of two of the latencies, larger latencies are recorded in the
+	 * last bucket.
+	 */
+	private static final int MAX_EXPONENT = 44;
+
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private static final long NOT_STARTED = Long.MIN_VALUE;
+
+	private static int bucket(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long highestValue(final int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return ((subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	private final ConcurrentMap<String, Counters> counters = new ConcurrentHashMap<>();
+
+	private final ThreadLocal<Timer> timers = ThreadLocal.withInitial(Timer::new);
+
+	@Override
+	public void afterEvaluate(final Rule rule, final Facts facts, final boolean evaluationResult) {
+		final Timer timer = timers.get();
+		if (timer.evaluationStart == NOT_STARTED) {
+			// already recorded as an evaluation error
+			return;
+		}
+		final Counters ruleCounters = counters(rule);
+		ruleCounters.evaluationLatency.record(System.nanoTime() - timer.evaluationStart);
+		timer.evaluationStart = NOT_STARTED;
+		ruleCounters.evaluations.increment();
+		if (evaluationResult) {
+			ruleCounters.triggers.increment();
+		}
+	}
+
+	@Override
+	public boolean beforeEvaluate(final Rule rule, final Facts facts) {
+		timers.get().evaluationStart = System.nanoTime();
+		return true;
+	}
+
+	@Override
+	public void beforeExecute(final Rule rule, final Facts facts) {
+		timers.get().pushExecution(System.nanoTime());
+	}
+
+	private Counters counters(final Rule rule) {
+		final String ruleName = rule.getName();
+		final Counters ruleCounters = counters.get(ruleName);
+		return ruleCounters != null ? ruleCounters : counters.computeIfAbsent(ruleName, name -> new Counters());
+	}
+
+	/**
+	 * Get a snapshot of the metrics of all the rules.
+	 *
+	 * @return the metrics by rule name, sorted by name
+	 */
+	public Map<String, RuleMetrics> getMetrics() {
+		final Map<String, RuleMetrics> metrics = new TreeMap<>();
+		counters.forEach((ruleName, ruleCounters) -> metrics.put(ruleName, new RuleMetrics(ruleName, ruleCounters)));
+		return Collections.unmodifiableMap(metrics);
+	}
+
+	/**
+	 * Get a snapshot of the metrics of a rule.
+	 *
+	 * @param ruleName name of the rule
+	 * @return the metrics of the rule, null if no metric has been recorded for it
+	 */
+	public RuleMetrics getMetrics(final String ruleName) {
+		Objects.requireNonNull(ruleName, "ruleName must not be null");
+		final Counters ruleCounters = counters.get(ruleName);
+		return ruleCounters == null ? null : new RuleMetrics(ruleName, ruleCounters);
+	}
+
+	@Override
+	public void onEvaluationError(final Rule rule, final Facts facts, final Exception exception) {
+		final Timer timer = timers.get();
+		final Counters ruleCounters = counters(rule);
+		if (timer.evaluationStart != NOT_STARTED) {
+			ruleCounters.evaluationLatency.record(System.nanoTime() - timer.evaluationStart);
+			timer.evaluationStart = NOT_STARTED;
+		}
+		ruleCounters.evaluations.increment();
+		ruleCounters.evaluationErrors.increment();
+	}
+
+	@Override
+	public void onFailure(final Rule rule, final Facts facts, final Exception exception) {
+		final Counters ruleCounters = recordExecution(rule);
+		ruleCounters.failures.increment();
+	}
+
+	@Override
+	public void onSuccess(final Rule rule, final Facts facts) {
+		recordExecution(rule);
+	}
+
+	private Counters recordExecution(final Rule rule) {
+		final long start = timers.get().popExecution();
+		final Counters ruleCounters = counters(rule);
+		if (start != NOT_STARTED) {
+			ruleCounters.actionLatency.record(System.nanoTime() - start);
+		}
+		ruleCounters.executions.increment();
+		return ruleCounters;
+	}
+
+	/**
+	 * Remove all the recorded metrics.
+	 */
+	public void reset() {
+		counters.clear();
+	}
+
+	/**
+	 * Get a snapshot of the metrics of all the rules as facts, so that they can
+	 * be used by other rules. Each fact is named after a rule and its value is the
+	 * {@link RuleMetrics} of the rule.
+	 *
+	 * @return the metrics as facts
+	 */
+	public Facts toFacts() {
+		final Facts facts = new Facts();
+		counters.forEach((ruleName, ruleCounters) -> facts.add(new Fact<>(ruleName, new RuleMetrics(ruleName,
+				ruleCounters))));
+		return facts;
+	}
+
+}
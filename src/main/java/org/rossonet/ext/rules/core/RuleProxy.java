@@ -23,282 +23,163 @@
  */
 package org.rossonet.ext.rules.core;
 
-import static java.lang.String.format;
-
-import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import java.util.TreeSet;
 
-import org.rossonet.ext.rules.annotation.Action;
-import org.rossonet.ext.rules.annotation.Condition;
-import org.rossonet.ext.rules.annotation.Fact;
-import org.rossonet.ext.rules.annotation.Priority;
+import org.rossonet.ext.rules.api.FactDependent;
 import org.rossonet.ext.rules.api.Facts;
 import org.rossonet.ext.rules.api.Rule;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
- * Main class to create rule proxies from annotated objects.
+ * Main class to create rules from annotated objects.
+ *
+ * When the class of the annotated object has a {@link GeneratedRule} generated
+ * at build time, the object is wrapped in an instance of the generated class.
+ * Otherwise it is wrapped in a {@link Rule} that delegates to the
+ * {@link RuleAdapter} of its class, built once per class: conditions, actions
+ * and priority methods are invoked through method handles, without dynamic
+ * proxies nor reflective calls.
  *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
-public class RuleProxy implements InvocationHandler {
+public class RuleProxy implements Rule, FactDependent {
 
-	private static final RuleDefinitionValidator ruleDefinitionValidator = new RuleDefinitionValidator();
-	private static final Logger LOGGER = LoggerFactory.getLogger(RuleProxy.class);
+	/**
+	 * Constructors of the generated rule classes, as handles of type
+	 * <code>(Object)Rule</code>.
+	 */
+	private static final ClassValue<Optional<MethodHandle>> GENERATED_RULES = new ClassValue<Optional<MethodHandle>>() {
+
+		@Override
+		protected Optional<MethodHandle> computeValue(final Class<?> ruleClass) {
+			try {
+				final Class<?> generatedClass = Class.forName(
+						ruleClass.getName() + GeneratedRule.GENERATED_CLASS_SUFFIX, true, ruleClass.getClassLoader());
+				if (!GeneratedRule.class.isAssignableFrom(generatedClass)) {
+					return Optional.empty();
+				}
+				return Optional.of(MethodHandles.lookup().unreflectConstructor(generatedClass.getConstructor(ruleClass))
+						.asType(MethodType.methodType(Rule.class, Object.class)));
+			} catch (final ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+				return Optional.empty();
+			}
+		}
+	};
 
 	/**
 	 * Makes the rule object implement the {@link Rule} interface.
 	 *
 	 * @param rule the annotated rule object.
-	 * @return a proxy that implements the {@link Rule} interface.
+	 * @return a rule that wraps the annotated rule object.
 	 */
 	public static Rule asRule(final Object rule) {
 		Rule result;
 		if (rule instanceof Rule) {
 			result = (Rule) rule;
 		} else {
-			ruleDefinitionValidator.validateRuleDefinition(rule);
-			result = (Rule) Proxy.newProxyInstance(Rule.class.getClassLoader(),
-					new Class[] { Rule.class, Comparable.class }, new RuleProxy(rule));
+			final Optional<MethodHandle> generatedRule = GENERATED_RULES.get(rule.getClass());
+			result = generatedRule.isPresent() ? newGeneratedRule(generatedRule.get(), rule)
+					: new RuleProxy(rule, RuleAdapter.of(rule.getClass()));
 		}
 		return result;
 	}
 
+	private static Rule newGeneratedRule(final MethodHandle constructor, final Object rule) {
+		try {
+			return (Rule) constructor.invokeExact(rule);
+		} catch (final RuntimeException | Error e) {
+			throw e;
+		} catch (final Throwable throwable) {
+			throw new IllegalStateException("Unable to create the generated rule of " + rule.getClass().getName(),
+					throwable);
+		}
+	}
+
 	private final Object target;
-	private String name;
-	private String description;
+	private final RuleAdapter adapter;
 	private Integer priority;
-	private Method[] methods;
-	private Method conditionMethod;
-	private Set<ActionMethodOrderBean> actionMethods;
 
-	private Method compareToMethod;
-	private Method toStringMethod;
-
-	private org.rossonet.ext.rules.annotation.Rule annotation;
-
-	private RuleProxy(final Object target) {
+	private RuleProxy(final Object target, final RuleAdapter adapter) {
 		this.target = target;
+		this.adapter = adapter;
 	}
 
-	private void appendActionMethodsNames(StringBuilder description) {
-		final Iterator<ActionMethodOrderBean> iterator = getActionMethodBeans().iterator();
-		while (iterator.hasNext()) {
-			description.append(iterator.next().getMethod().getName());
-			if (iterator.hasNext()) {
-				description.append(",");
-			}
-		}
-	}
-
-	private void appendConditionMethodName(StringBuilder description) {
-		final Method method = getConditionMethod();
-		if (method != null) {
-			description.append("when ");
-			description.append(method.getName());
-			description.append(" then ");
+	@Override
+	public int compareTo(final Rule otherRule) {
+		if (adapter.hasCompareTo() && otherRule instanceof RuleProxy) {
+			return adapter.compare(target, ((RuleProxy) otherRule).getTarget());
 		}
-	}
-
-	private int compareTo(final Rule otherRule) throws Exception {
 		final int otherPriority = otherRule.getPriority();
-		final int priority = getRulePriority();
+		final int priority = getPriority();
 		if (priority < otherPriority) {
 			return -1;
 		} else if (priority > otherPriority) {
 			return 1;
 		} else {
 			final String otherName = otherRule.getName();
-			final String name = getRuleName();
+			final String name = getName();
 			return name.compareTo(otherName);
 		}
 	}
 
-	private Object compareToMethod(final Object[] args) throws Exception {
-		final Method compareToMethod = getCompareToMethod();
-		final Object otherRule = args[0]; // validated upfront
-		if (compareToMethod != null && Proxy.isProxyClass(otherRule.getClass())) {
-			if (compareToMethod.getParameters().length != 1) {
-				throw new IllegalArgumentException("compareTo method must have a single argument");
-			}
-			final RuleProxy ruleProxy = (RuleProxy) Proxy.getInvocationHandler(otherRule);
-			return compareToMethod.invoke(target, ruleProxy.getTarget());
-		} else {
-			return compareTo((Rule) otherRule);
-		}
-	}
-
-	private boolean equalsMethod(final Object[] args) throws Exception {
-		if (!(args[0] instanceof Rule)) {
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof Rule)) {
 			return false;
 		}
-		final Rule otherRule = (Rule) args[0];
+		final Rule otherRule = (Rule) o;
 		final int otherPriority = otherRule.getPriority();
-		final int priority = getRulePriority();
+		final int priority = getPriority();
 		if (priority != otherPriority) {
 			return false;
 		}
 		final String otherName = otherRule.getName();
-		final String name = getRuleName();
+		final String name = getName();
 		if (!name.equals(otherName)) {
 			return false;
 		}
 		final String otherDescription = otherRule.getDescription();
-		final String description = getRuleDescription();
+		final String description = getDescription();
 		return Objects.equals(description, otherDescription);
 	}
 
-	private Object evaluateMethod(final Object[] args) throws IllegalAccessException, InvocationTargetException {
-		final Facts facts = (Facts) args[0];
-		final Method conditionMethod = getConditionMethod();
-		try {
-			final List<Object> actualParameters = getActualParameters(conditionMethod, facts);
-			return conditionMethod.invoke(target, actualParameters.toArray()); // validated upfront
-		} catch (final NoSuchFactException e) {
-			LOGGER.warn("Rule '{}' has been evaluated to false due to a declared but missing fact '{}' in {}",
-					getTargetClass().getName(), e.getMissingFact(), facts);
-			return false;
-		} catch (final IllegalArgumentException e) {
-			LOGGER.warn("Types of injected facts in method '{}' in rule '{}' do not match parameters types",
-					conditionMethod.getName(), getTargetClass().getName(), e);
-			return false;
-		}
-	}
-
-	private Object executeMethod(final Object[] args) throws IllegalAccessException, InvocationTargetException {
-		final Facts facts = (Facts) args[0];
-		for (final ActionMethodOrderBean actionMethodBean : getActionMethodBeans()) {
-			final Method actionMethod = actionMethodBean.getMethod();
-			final List<Object> actualParameters = getActualParameters(actionMethod, facts);
-			actionMethod.invoke(target, actualParameters.toArray());
-		}
-		return null;
-	}
-
-	private Set<ActionMethodOrderBean> getActionMethodBeans() {
-		if (this.actionMethods == null) {
-			this.actionMethods = new TreeSet<>();
-			final Method[] methods = getMethods();
-			for (final Method method : methods) {
-				if (method.isAnnotationPresent(Action.class)) {
-					final Action actionAnnotation = method.getAnnotation(Action.class);
-					final int order = actionAnnotation.order();
-					this.actionMethods.add(new ActionMethodOrderBean(method, order));
-				}
-			}
-		}
-		return this.actionMethods;
-	}
-
-	private List<Object> getActualParameters(Method method, Facts facts) {
-		final List<Object> actualParameters = new ArrayList<>();
-		final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-		for (final Annotation[] annotations : parameterAnnotations) {
-			if (annotations.length == 1) {
-				final String factName = ((Fact) (annotations[0])).value(); // validated upfront.
-				final Object fact = facts.get(factName);
-				if (fact == null && !facts.asMap().containsKey(factName)) {
-					throw new NoSuchFactException(
-							format("No fact named '%s' found in known facts: %n%s", factName, facts), factName);
-				}
-				actualParameters.add(fact);
-			} else {
-				actualParameters.add(facts); // validated upfront, there may be only one parameter not annotated and
-												// which is of type Facts.class
-			}
-		}
-		return actualParameters;
-	}
-
-	private Method getCompareToMethod() {
-		if (this.compareToMethod == null) {
-			final Method[] methods = getMethods();
-			for (final Method method : methods) {
-				if (method.getName().equals("compareTo")) {
-					this.compareToMethod = method;
-					return this.compareToMethod;
-				}
-			}
-		}
-		return this.compareToMethod;
-	}
-
-	private Method getConditionMethod() {
-		if (this.conditionMethod == null) {
-			final Method[] methods = getMethods();
-			for (final Method method : methods) {
-				if (method.isAnnotationPresent(Condition.class)) {
-					this.conditionMethod = method;
-					return this.conditionMethod;
-				}
-			}
-		}
-		return this.conditionMethod;
+	@Override
+	public boolean evaluate(final Facts facts) {
+		return adapter.evaluate(target, facts);
 	}
 
-	private Method[] getMethods() {
-		if (this.methods == null) {
-			this.methods = getTargetClass().getMethods();
-		}
-		return this.methods;
+	@Override
+	public void execute(final Facts facts) throws Exception {
+		adapter.execute(target, facts);
 	}
 
-	private org.rossonet.ext.rules.annotation.Rule getRuleAnnotation() {
-		if (this.annotation == null) {
-			this.annotation = Utils.findAnnotation(org.rossonet.ext.rules.annotation.Rule.class, getTargetClass());
-		}
-		return this.annotation;
+	@Override
+	public String getDescription() {
+		return adapter.getDescription();
 	}
 
-	private String getRuleDescription() {
-		if (this.description == null) {
-			// Default description = "when " + conditionMethodName + " then " + comma
-			// separated actionMethodsNames
-			final StringBuilder description = new StringBuilder();
-			appendConditionMethodName(description);
-			appendActionMethodsNames(description);
-			final org.rossonet.ext.rules.annotation.Rule rule = getRuleAnnotation();
-			this.description = rule.description().equals(Rule.DEFAULT_DESCRIPTION) ? description.toString()
-					: rule.description();
-		}
-		return this.description;
+	/**
+	 * The dependencies of an annotated rule are the facts injected in its
+	 * condition method. They are unknown when the whole {@link Facts} is injected.
+	 */
+	@Override
+	public Set<String> getFactDependencies() {
+		return adapter.getFactDependencies();
 	}
 
-	private String getRuleName() {
-		if (this.name == null) {
-			final org.rossonet.ext.rules.annotation.Rule rule = getRuleAnnotation();
-			this.name = rule.name().equals(Rule.DEFAULT_NAME) ? getTargetClass().getSimpleName() : rule.name();
-		}
-		return this.name;
+	@Override
+	public String getName() {
+		return adapter.getName();
 	}
 
-	private int getRulePriority() throws Exception {
+	@Override
+	public int getPriority() {
 		if (this.priority == null) {
-			int priority = Rule.DEFAULT_PRIORITY;
-
-			final org.rossonet.ext.rules.annotation.Rule rule = getRuleAnnotation();
-			if (rule.priority() != Rule.DEFAULT_PRIORITY) {
-				priority = rule.priority();
-			}
-
-			final Method[] methods = getMethods();
-			for (final Method method : methods) {
-				if (method.isAnnotationPresent(Priority.class)) {
-					priority = (int) method.invoke(target);
-					break;
-				}
-			}
-			this.priority = priority;
+			this.priority = adapter.getPriority(target);
 		}
 		return this.priority;
 	}
@@ -307,66 +188,24 @@ public class RuleProxy implements InvocationHandler {
 		return target;
 	}
 
-	private Class<?> getTargetClass() {
-		return target.getClass();
-	}
-
-	private Method getToStringMethod() {
-		if (this.toStringMethod == null) {
-			final Method[] methods = getMethods();
-			for (final Method method : methods) {
-				if ("toString".equals(method.getName())) {
-					this.toStringMethod = method;
-					return this.toStringMethod;
-				}
-			}
-		}
-		return this.toStringMethod;
-	}
-
-	private int hashCodeMethod() throws Exception {
-		int result = getRuleName().hashCode();
-		final int priority = getRulePriority();
-		final String description = getRuleDescription();
+	@Override
+	public int hashCode() {
+		int result = getName().hashCode();
+		final int priority = getPriority();
+		final String description = getDescription();
 		result = 31 * result + (description != null ? description.hashCode() : 0);
 		result = 31 * result + priority;
 		return result;
 	}
 
 	@Override
-	public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-		final String methodName = method.getName();
-		switch (methodName) {
-		case "getName":
-			return getRuleName();
-		case "getDescription":
-			return getRuleDescription();
-		case "getPriority":
-			return getRulePriority();
-		case "compareTo":
-			return compareToMethod(args);
-		case "evaluate":
-			return evaluateMethod(args);
-		case "execute":
-			return executeMethod(args);
-		case "equals":
-			return equalsMethod(args);
-		case "hashCode":
-			return hashCodeMethod();
-		case "toString":
-			return toStringMethod();
-		default:
-			return null;
-		}
+	public boolean isParallelizable() {
+		return adapter.isParallelizable();
 	}
 
-	private String toStringMethod() throws Exception {
-		final Method toStringMethod = getToStringMethod();
-		if (toStringMethod != null) {
-			return (String) toStringMethod.invoke(target);
-		} else {
-			return getRuleName();
-		}
+	@Override
+	public String toString() {
+		return target.toString();
 	}
 
 }
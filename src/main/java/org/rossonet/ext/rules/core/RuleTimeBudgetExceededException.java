@@ -0,0 +1,69 @@
+package org.rossonet.ext.rules.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.rossonet.ext.rules.api.RuleListener;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+
+/**
+ * Exception reported to the {@link RuleListener}s when the condition or the
+ * actions of a rule exceed the
+ * {@link RulesEngineParameters#getRuleTimeBudget() time budget} of the rules.
+ */
+public class RuleTimeBudgetExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = -2318245618702153349L;
+
+	private final String ruleName;
+	private final long duration;
+	private final long budget;
+	private final boolean circuitOpen;
+
+	/**
+	 * Create a new {@link RuleTimeBudgetExceededException}.
+	 *
+	 * @param ruleName    name of the rule
+	 * @param duration    time spent in nanoseconds
+	 * @param budget      time budget in nanoseconds
+	 * @param circuitOpen true if the violation disabled the rule
+	 */
+	public RuleTimeBudgetExceededException(final String ruleName, final long duration, final long budget,
+			final boolean circuitOpen) {
+		super("Rule '" + ruleName + "' exceeded its time budget (" + TimeUnit.NANOSECONDS.toMicros(duration)
+				+ " us > " + TimeUnit.NANOSECONDS.toMicros(budget) + " us)"
+				+ (circuitOpen ? ", the rule has been disabled by its circuit breaker" : ""));
+		this.ruleName = ruleName;
+		this.duration = duration;
+		this.budget = budget;
+		this.circuitOpen = circuitOpen;
+	}
+
+	/**
+	 * @return the time budget in nanoseconds
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return the time spent in nanoseconds
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public String getRuleName() {
+		return ruleName;
+	}
+
+	/**
+	 * Tell whether this violation opened the circuit breaker of the rule, so
+	 * that the rule is skipped until the reset timeout elapses.
+	 *
+	 * @return true if the rule has been disabled
+	 */
+	public boolean isCircuitOpen() {
+		return circuitOpen;
+	}
+
+}
@@ -0,0 +1,245 @@
+package org.rossonet.ext.rules.core;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.Facts;
+
+/**
+ * {@link Facts} decorator that records the names of the facts read and written
+ * through it. Every operation is delegated to the decorated facts.
+ *
+ * Operations that expose the whole working memory (iteration, map views,
+ * <code>toString</code>...) are recorded as a read of all facts. Writes done on
+ * the decorated facts without going through this decorator are detected using
+ * {@link Facts#getVersion()}.
+ *
+ * Public so that the conditions memoizing their result per {@link Facts}
+ * instance can recognize it and evaluate again, since a memoized result would
+ * not be recorded as a read. Only the engines create it.
+ *
+ * <strong>This class is not thread-safe.</strong>
+ */
+public class TrackingFacts extends Facts {
+
+	private Facts delegate;
+	private final Set<String> readFacts = new HashSet<>();
+	private final Set<String> writtenFacts = new HashSet<>();
+	private boolean allFactsRead;
+	private boolean allFactsWritten;
+	private long expectedVersion;
+	private boolean untrackedWrites;
+
+	TrackingFacts() {
+	}
+
+	@Override
+	public <T> void add(final Fact<T> fact) {
+		beforeWrite();
+		delegate.add(fact);
+		afterWrite(fact.getName());
+	}
+
+	private void afterWrite(final String factName) {
+		if (factName != null) {
+			writtenFacts.add(factName);
+		} else {
+			allFactsWritten = true;
+		}
+		expectedVersion = delegate.getVersion();
+	}
+
+	@Override
+	public Map<String, Object> asMap() {
+		allFactsRead = true;
+		return delegate.asMap();
+	}
+
+	@Override
+	public Map<String, Object> asMapView() {
+		allFactsRead = true;
+		return delegate.asMapView();
+	}
+
+	private void beforeWrite() {
+		if (delegate.getVersion() != expectedVersion) {
+			untrackedWrites = true;
+		}
+	}
+
+	@Override
+	public void clear() {
+		beforeWrite();
+		delegate.clear();
+		afterWrite(null);
+	}
+
+	@Override
+	public <T> T get(final String factName) {
+		readFacts.add(factName);
+		return delegate.get(factName);
+	}
+
+	Facts getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public Fact<?> getFact(final String factName) {
+		readFacts.add(factName);
+		return delegate.getFact(factName);
+	}
+
+	Set<String> getReadFacts() {
+		return readFacts;
+	}
+
+	/**
+	 * Return the creation time of the most recent fact read through this
+	 * decorator, or of the most recent fact when all facts have been read.
+	 *
+	 * @return creation time in milliseconds, or 0 if no existing fact was read
+	 */
+	long getRecency() {
+		long recency = 0;
+		if (allFactsRead) {
+			for (final Fact<?> fact : delegate) {
+				recency = Math.max(recency, fact.getCreatedAt());
+			}
+		} else {
+			for (final String factName : readFacts) {
+				final Fact<?> fact = delegate.getFact(factName);
+				if (fact != null) {
+					recency = Math.max(recency, fact.getCreatedAt());
+				}
+			}
+		}
+		return recency;
+	}
+
+	@Override
+	public long getVersion() {
+		return delegate.getVersion();
+	}
+
+	Set<String> getWrittenFacts() {
+		return writtenFacts;
+	}
+
+	@Override
+	public boolean has(final String factName) {
+		readFacts.add(factName);
+		return delegate.has(factName);
+	}
+
+	boolean isAllFactsRead() {
+		return allFactsRead;
+	}
+
+	/**
+	 * Check whether the written facts are known exactly: no fact has been written
+	 * on the decorated facts without going through this decorator, and the facts
+	 * have not been cleared.
+	 *
+	 * @return true if {@link #getWrittenFacts()} lists every modified fact
+	 */
+	boolean isWriteTrackingComplete() {
+		return !allFactsWritten && !untrackedWrites && delegate.getVersion() == expectedVersion;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		allFactsRead = true;
+		return delegate.isEmpty();
+	}
+
+	@Override
+	public boolean isTraceEnable() {
+		return delegate.isTraceEnable();
+	}
+
+	@Override
+	public Iterator<Fact<?>> iterator() {
+		allFactsRead = true;
+		final Iterator<Fact<?>> iterator = delegate.iterator();
+		return new Iterator<Fact<?>>() {
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Fact<?> next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void remove() {
+				beforeWrite();
+				iterator.remove();
+				afterWrite(null);
+			}
+		};
+	}
+
+	@Override
+	public <T> void put(final String name, final T value) {
+		beforeWrite();
+		delegate.put(name, value);
+		afterWrite(name);
+	}
+
+	@Override
+	public <T> void remove(final Fact<T> fact) {
+		beforeWrite();
+		delegate.remove(fact);
+		afterWrite(fact.getName());
+	}
+
+	@Override
+	public void remove(final String factName) {
+		beforeWrite();
+		delegate.remove(factName);
+		afterWrite(factName);
+	}
+
+	/**
+	 * Bind the decorator to the given facts and forget what has been recorded so
+	 * far.
+	 *
+	 * @param facts to decorate
+	 * @return this decorator
+	 */
+	TrackingFacts reset(final Facts facts) {
+		this.delegate = facts;
+		readFacts.clear();
+		writtenFacts.clear();
+		allFactsRead = false;
+		allFactsWritten = false;
+		untrackedWrites = false;
+		expectedVersion = facts.getVersion();
+		return this;
+	}
+
+	@Override
+	public void setTraceEnable(final boolean traceEnable) {
+		delegate.setTraceEnable(traceEnable);
+	}
+
+	@Override
+	public int size() {
+		allFactsRead = true;
+		return delegate.size();
+	}
+
+	@Override
+	public String toString() {
+		allFactsRead = true;
+		return delegate.toString();
+	}
+
+}
@@ -0,0 +1,102 @@
+package org.rossonet.ext.rules.jexl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.jexl3.JexlContext;
+import org.rossonet.ext.rules.api.Facts;
+
+/**
+ * {@link JexlContext} that reads and writes variables directly in a
+ * {@link Facts} instance, without copying the facts into a map.
+ *
+ * The context also acts as a {@link JexlContext.NamespaceResolver}: a fact can
+ * be used as a namespace, so that <code>ctx:isPresent('plc1')</code> invokes
+ * <code>isPresent</code> on the value of the fact named <code>ctx</code>. When
+ * no fact has the namespace name, the namespaces of the engine are used.
+ *
+ * When the context is writable (the default) variables set by the script are
+ * written to the facts; a <code>null</code> value removes the fact. A read only
+ * context keeps variables set by the script local to the execution, leaving the
+ * facts untouched.
+ *
+ * A context is bound to a single {@link Facts} instance and is meant to be
+ * used for a single execution, so a compiled script can be executed
+ * concurrently on different facts with one context per execution.
+ */
+public class FactsJexlContext implements JexlContext, JexlContext.NamespaceResolver {
+
+	private final Facts facts;
+
+	private final boolean readOnly;
+
+	private Map<String, Object> localVariables;
+
+	/**
+	 * Create a new writable {@link FactsJexlContext}.
+	 *
+	 * @param facts to read and write variables from, must not be null
+	 */
+	public FactsJexlContext(final Facts facts) {
+		this(facts, false);
+	}
+
+	/**
+	 * Create a new {@link FactsJexlContext}.
+	 *
+	 * @param facts    to read and write variables from, must not be null
+	 * @param readOnly true to keep variables set by the script local to the
+	 *                 execution
+	 */
+	public FactsJexlContext(final Facts facts, final boolean readOnly) {
+		this.facts = Objects.requireNonNull(facts, "facts cannot be null");
+		this.readOnly = readOnly;
+	}
+
+	@Override
+	public Object get(final String name) {
+		if (localVariables != null && localVariables.containsKey(name)) {
+			return localVariables.get(name);
+		}
+		return facts.get(name);
+	}
+
+	/**
+	 * Return the facts this context is bound to.
+	 *
+	 * @return the facts
+	 */
+	public Facts getFacts() {
+		return facts;
+	}
+
+	@Override
+	public boolean has(final String name) {
+		return localVariables != null && localVariables.containsKey(name) || facts.has(name);
+	}
+
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	@Override
+	public Object resolveNamespace(final String name) {
+		return name != null ? facts.get(name) : null;
+	}
+
+	@Override
+	public void set(final String name, final Object value) {
+		if (readOnly) {
+			if (localVariables == null) {
+				localVariables = new HashMap<>();
+			}
+			localVariables.put(name, value);
+		} else if (value == null) {
+			facts.remove(name);
+		} else {
+			facts.put(name, value);
+		}
+	}
+
+}
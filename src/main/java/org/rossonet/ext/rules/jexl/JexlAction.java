@@ -28,7 +28,6 @@ import java.util.Objects;
 import org.apache.commons.jexl3.JexlEngine;
 import org.apache.commons.jexl3.JexlException;
 import org.apache.commons.jexl3.JexlScript;
-import org.apache.commons.jexl3.MapContext;
 import org.rossonet.ext.rules.api.Action;
 import org.rossonet.ext.rules.api.Facts;
 import org.slf4j.Logger;
@@ -56,10 +55,16 @@ public class JexlAction implements Action {
 		this.compiledScript = jexl.createScript(expression);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Variables are read directly from the facts; variables set by the action are
+	 * written back to the facts.
+	 */
 	@Override
 	public void execute(Facts facts) {
 		Objects.requireNonNull(facts, "facts cannot be null");
-		final MapContext ctx = new MapContext(facts.asMap());
+		final FactsJexlContext ctx = new FactsJexlContext(facts);
 		try {
 			compiledScript.execute(ctx);
 		} catch (final JexlException e) {
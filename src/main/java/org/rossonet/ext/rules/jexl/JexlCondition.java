@@ -23,37 +23,92 @@
  */
 package org.rossonet.ext.rules.jexl;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.apache.commons.jexl3.JexlEngine;
 import org.apache.commons.jexl3.JexlScript;
-import org.apache.commons.jexl3.MapContext;
 import org.rossonet.ext.rules.api.Condition;
+import org.rossonet.ext.rules.api.ConditionExpression;
+import org.rossonet.ext.rules.api.FactDependent;
 import org.rossonet.ext.rules.api.Facts;
 
 /**
+ * The fact dependencies of the condition are the variables of the script. They
+ * are unknown when the script may call functions of a namespace, since facts
+ * can be used as namespaces.
+ *
  * @author Lauri Kimmel
  * @author Mahmoud Ben Hassine
  */
-public class JexlCondition implements Condition {
+public class JexlCondition implements Condition, ConditionExpression, FactDependent {
+
+	private static final Pattern NAMESPACE_CALL = Pattern.compile("[\\p{L}_$][\\w$]*\\s*:\\s*[\\p{L}_$][\\w$]*\\s*\\(");
+
+	private static Set<String> factDependencies(JexlScript script) {
+		if (NAMESPACE_CALL.matcher(script.getSourceText()).find()) {
+			return null;
+		}
+		final Set<String> factDependencies = new HashSet<>();
+		for (final List<String> variable : script.getVariables()) {
+			// antish variables such as a.b.c may be resolved as facts named a, a.b or a.b.c
+			final StringBuilder name = new StringBuilder();
+			for (final String fragment : variable) {
+				if (name.length() > 0) {
+					name.append('.');
+				}
+				name.append(fragment);
+				factDependencies.add(name.toString());
+			}
+		}
+		return Collections.unmodifiableSet(factDependencies);
+	}
+
+	private final String expression;
 
 	private final JexlScript compiledScript;
 
+	private final Set<String> factDependencies;
+
 	public JexlCondition(String expression) {
 		Objects.requireNonNull(expression, "expression cannot be null");
+		this.expression = expression;
 		this.compiledScript = JexlRule.DEFAULT_JEXL.createScript(expression);
+		this.factDependencies = factDependencies(compiledScript);
 	}
 
 	public JexlCondition(String expression, JexlEngine jexl) {
 		Objects.requireNonNull(expression, "expression cannot be null");
 		Objects.requireNonNull(jexl, "jexl cannot be null");
+		this.expression = expression;
 		this.compiledScript = jexl.createScript(expression);
+		this.factDependencies = factDependencies(compiledScript);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Variables are read directly from the facts; variables set by the condition
+	 * are kept local to the evaluation and do not change the facts.
+	 */
 	@Override
 	public boolean evaluate(Facts facts) {
 		Objects.requireNonNull(facts, "facts cannot be null");
-		final MapContext ctx = new MapContext(facts.asMap());
+		final FactsJexlContext ctx = new FactsJexlContext(facts, true);
 		return (Boolean) compiledScript.execute(ctx);
 	}
+
+	@Override
+	public String getConditionExpression() {
+		return expression;
+	}
+
+	@Override
+	public Set<String> getFactDependencies() {
+		return factDependencies;
+	}
 }
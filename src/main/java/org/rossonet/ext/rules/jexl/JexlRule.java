@@ -26,11 +26,14 @@ package org.rossonet.ext.rules.jexl;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import org.apache.commons.jexl3.JexlBuilder;
 import org.apache.commons.jexl3.JexlEngine;
 import org.rossonet.ext.rules.api.Action;
 import org.rossonet.ext.rules.api.Condition;
+import org.rossonet.ext.rules.api.ConditionExpression;
+import org.rossonet.ext.rules.api.FactDependent;
 import org.rossonet.ext.rules.api.Facts;
 import org.rossonet.ext.rules.api.Rule;
 import org.rossonet.ext.rules.core.BasicRule;
@@ -39,7 +42,7 @@ import org.rossonet.ext.rules.core.BasicRule;
  * @author Lauri Kimmel
  * @author Mahmoud Ben Hassine
  */
-public class JexlRule extends BasicRule {
+public class JexlRule extends BasicRule implements ConditionExpression, FactDependent {
 
 	static final JexlEngine DEFAULT_JEXL = new JexlBuilder().create();
 
@@ -75,11 +78,26 @@ public class JexlRule extends BasicRule {
 		}
 	}
 
+	@Override
+	public String getConditionExpression() {
+		return ConditionExpression.of(condition);
+	}
+
+	@Override
+	public Set<String> getFactDependencies() {
+		return FactDependent.of(condition);
+	}
+
 	public JexlRule name(String name) {
 		this.name = Objects.requireNonNull(name, "name cannot be null");
 		return this;
 	}
 
+	public JexlRule parallelizable(boolean parallelizable) {
+		this.parallelizable = parallelizable;
+		return this;
+	}
+
 	public JexlRule priority(int priority) {
 		this.priority = priority;
 		return this;
@@ -91,6 +109,11 @@ public class JexlRule extends BasicRule {
 		return this;
 	}
 
+	public JexlRule when(Condition condition) {
+		this.condition = Objects.requireNonNull(condition, "condition cannot be null");
+		return this;
+	}
+
 	public JexlRule when(String condition) {
 		Objects.requireNonNull(condition, "condition cannot be null");
 		this.condition = new JexlCondition(condition, jexl);
@@ -28,8 +28,8 @@ import java.util.List;
 import java.util.Objects;
 
 import org.apache.commons.jexl3.JexlEngine;
+import org.rossonet.ext.rules.api.Condition;
 import org.rossonet.ext.rules.api.Rule;
-import org.rossonet.ext.rules.api.Rules;
 import org.rossonet.ext.rules.support.AbstractRuleFactory;
 import org.rossonet.ext.rules.support.RuleDefinition;
 import org.rossonet.ext.rules.support.reader.RuleDefinitionReader;
@@ -52,6 +52,11 @@ public class JexlRuleFactory extends AbstractRuleFactory {
 		this.jexl = Objects.requireNonNull(jexl, "Jexl Engine cannot be null");
 	}
 
+	@Override
+	protected Condition createCondition(String expression) {
+		return new JexlCondition(expression, jexl);
+	}
+
 	public Rule createRule(Reader ruleDescriptor) throws Exception {
 		Objects.requireNonNull(ruleDescriptor, "ruleDescriptor cannot be null");
 		Objects.requireNonNull(jexl, "jexl cannot be null");
@@ -62,23 +67,18 @@ public class JexlRuleFactory extends AbstractRuleFactory {
 		return createRule(ruleDefinitions.get(0));
 	}
 
-	@Override
-	public Rules createRules(Reader rulesDescriptor) throws Exception {
-		Objects.requireNonNull(rulesDescriptor, "rulesDescriptor cannot be null");
-		final Rules rules = new Rules();
-		final List<RuleDefinition> ruleDefinitions = reader.read(rulesDescriptor);
-		for (final RuleDefinition ruleDefinition : ruleDefinitions) {
-			rules.register(createRule(ruleDefinition));
-		}
-		return rules;
-	}
-
 	@Override
 	protected Rule createSimpleRule(RuleDefinition ruleDefinition) {
 		Objects.requireNonNull(ruleDefinition, "ruleDefinition cannot be null");
 		final JexlRule rule = new JexlRule(jexl).name(ruleDefinition.getName())
 				.description(ruleDefinition.getDescription()).priority(ruleDefinition.getPriority())
-				.when(ruleDefinition.getCondition());
+				.parallelizable(ruleDefinition.isParallelizable());
+		final Condition sharedCondition = getSharedCondition(ruleDefinition);
+		if (sharedCondition != null) {
+			rule.when(sharedCondition);
+		} else {
+			rule.when(ruleDefinition.getCondition());
+		}
 		for (final String action : ruleDefinition.getActions()) {
 			rule.then(action);
 		}
@@ -0,0 +1,239 @@
+package org.rossonet.ext.rules.mvel;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import org.mvel2.UnresolveablePropertyException;
+import org.mvel2.integration.VariableResolver;
+import org.mvel2.integration.VariableResolverFactory;
+import org.mvel2.integration.impl.BaseVariableResolverFactory;
+import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.Facts;
+
+/**
+ * MVEL {@link VariableResolverFactory} that resolves variables directly from a
+ * {@link Facts} instance, without copying the facts into a map.
+ *
+ * A factory is bound to a single {@link Facts} instance and is meant to be used
+ * for a single execution of a compiled expression: resolvers are created
+ * lazily, the first time a variable is referenced, and are then reused for the
+ * rest of the execution.
+ *
+ * When the factory is writable (the default) variables created or assigned by
+ * the expression are written back to the facts; a <code>null</code> value
+ * removes the fact. A read only factory keeps new variables and assignments
+ * local to the execution, leaving the facts untouched.
+ */
+public class FactsVariableResolverFactory extends BaseVariableResolverFactory {
+
+	/**
+	 * {@link VariableResolver} bound to a fact name.
+	 */
+	private static final class FactVariableResolver implements VariableResolver {
+
+		private static final long serialVersionUID = -1592364717281404185L;
+
+		private final transient Facts facts;
+		private final String name;
+		private Class<?> type;
+
+		private FactVariableResolver(final Facts facts, final String name) {
+			this.facts = facts;
+			this.name = name;
+		}
+
+		@Override
+		public int getFlags() {
+			return 0;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public Class getType() {
+			if (type != null) {
+				return type;
+			}
+			final Fact<?> fact = facts.getFact(name);
+			return fact != null ? fact.getType() : Object.class;
+		}
+
+		@Override
+		public Object getValue() {
+			return facts.get(name);
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public void setStaticType(final Class type) {
+			this.type = type;
+		}
+
+		@Override
+		public void setValue(final Object value) {
+			if (value == null) {
+				facts.remove(name);
+			} else {
+				facts.put(name, value);
+			}
+		}
+	}
+
+	/**
+	 * {@link VariableResolver} holding a variable local to the execution.
+	 */
+	private static final class LocalVariableResolver implements VariableResolver {
+
+		private static final long serialVersionUID = 5317279434165938127L;
+
+		private final String name;
+		private Class<?> type;
+		private transient Object value;
+
+		private LocalVariableResolver(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public int getFlags() {
+			return 0;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public Class getType() {
+			if (type != null) {
+				return type;
+			}
+			return value != null ? value.getClass() : Object.class;
+		}
+
+		@Override
+		public Object getValue() {
+			return value;
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public void setStaticType(final Class type) {
+			this.type = type;
+		}
+
+		@Override
+		public void setValue(final Object value) {
+			this.value = value;
+		}
+	}
+
+	private static final long serialVersionUID = 2093813165541781409L;
+
+	private final transient Facts facts;
+
+	private final boolean readOnly;
+
+	/**
+	 * Create a new writable {@link FactsVariableResolverFactory}.
+	 *
+	 * @param facts to resolve variables from, must not be null
+	 */
+	public FactsVariableResolverFactory(final Facts facts) {
+		this(facts, false);
+	}
+
+	/**
+	 * Create a new {@link FactsVariableResolverFactory}.
+	 *
+	 * @param facts    to resolve variables from, must not be null
+	 * @param readOnly true to keep variables created or assigned by the
+	 *                 expression local to the execution
+	 */
+	public FactsVariableResolverFactory(final Facts facts, final boolean readOnly) {
+		this.facts = Objects.requireNonNull(facts, "facts must not be null");
+		this.readOnly = readOnly;
+	}
+
+	@Override
+	public VariableResolver createVariable(final String name, final Object value) {
+		VariableResolver resolver = variableResolvers.get(name);
+		if (resolver == null || readOnly && resolver instanceof FactVariableResolver) {
+			if (readOnly) {
+				resolver = new LocalVariableResolver(name);
+			} else {
+				resolver = new FactVariableResolver(facts, name);
+			}
+			variableResolvers.put(name, resolver);
+		}
+		resolver.setValue(value);
+		return resolver;
+	}
+
+	@Override
+	public VariableResolver createVariable(final String name, final Object value, final Class<?> type) {
+		final VariableResolver resolver = createVariable(name, value);
+		resolver.setStaticType(type);
+		return resolver;
+	}
+
+	/**
+	 * Return the facts this factory is bound to.
+	 *
+	 * @return the facts
+	 */
+	public Facts getFacts() {
+		return facts;
+	}
+
+	@Override
+	public Set<String> getKnownVariables() {
+		final Set<String> knownVariables = new HashSet<>(variableResolvers.keySet());
+		for (final Fact<?> fact : facts) {
+			knownVariables.add(fact.getName());
+		}
+		if (nextFactory != null) {
+			knownVariables.addAll(nextFactory.getKnownVariables());
+		}
+		return knownVariables;
+	}
+
+	@Override
+	public VariableResolver getVariableResolver(final String name) {
+		VariableResolver resolver = variableResolvers.get(name);
+		if (resolver != null) {
+			return resolver;
+		}
+		if (facts.has(name)) {
+			resolver = new FactVariableResolver(facts, name);
+			variableResolvers.put(name, resolver);
+			return resolver;
+		}
+		if (nextFactory != null) {
+			return nextFactory.getVariableResolver(name);
+		}
+		throw new UnresolveablePropertyException("unable to resolve variable '" + name + "'");
+	}
+
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	@Override
+	public boolean isResolveable(final String name) {
+		return isTarget(name) || isNextResolveable(name);
+	}
+
+	@Override
+	public boolean isTarget(final String name) {
+		return variableResolvers.containsKey(name) || facts.has(name);
+	}
+
+}
@@ -66,10 +66,16 @@ public class MVELAction implements Action {
 		compiledExpression = MVEL.compileExpression(expression, parserContext);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Variables are resolved directly from the facts; variables created or
+	 * assigned by the action are written back to the facts.
+	 */
 	@Override
 	public void execute(Facts facts) {
 		try {
-			MVEL.executeExpression(compiledExpression, facts.asMap());
+			MVEL.executeExpression(compiledExpression, new FactsVariableResolverFactory(facts));
 		} catch (final Exception e) {
 			LOGGER.error("Unable to evaluate expression: '" + expression + "' on facts: " + facts, e);
 			throw e;
@@ -24,29 +24,57 @@
 package org.rossonet.ext.rules.mvel;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.mvel2.MVEL;
 import org.mvel2.ParserContext;
 import org.rossonet.ext.rules.api.Condition;
+import org.rossonet.ext.rules.api.ConditionExpression;
+import org.rossonet.ext.rules.api.FactDependent;
 import org.rossonet.ext.rules.api.Facts;
 
 /**
  * This class is an implementation of {@link Condition} that uses
  * <a href="https://github.com/mvel/mvel">MVEL</a> to evaluate the condition.
  *
+ * The fact dependencies of the condition are the inputs collected by MVEL while
+ * compiling the expression.
+ *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
-public class MVELCondition implements Condition {
+public class MVELCondition implements Condition, ConditionExpression, FactDependent {
+
+	/**
+	 * Create a parser context with the configuration of the given one, so that
+	 * the inputs of a single expression are collected even when the given context
+	 * is shared between expressions.
+	 */
+	private static ParserContext newParserContext(ParserContext parserContext) {
+		final ParserContext context = new ParserContext(parserContext.getParserConfiguration());
+		context.setStrictTypeEnforcement(parserContext.isStrictTypeEnforcement());
+		context.setStrongTyping(parserContext.isStrongTyping());
+		for (final Map.Entry<String, Class> input : parserContext.getInputs().entrySet()) {
+			context.addInput(input.getKey(), input.getValue());
+		}
+		return context;
+	}
+
+	private final String expression;
 
 	private final Serializable compiledExpression;
 
+	private final Set<String> factDependencies;
+
 	/**
 	 * Create a new {@link MVELCondition}.
 	 *
 	 * @param expression the condition written in expression language
 	 */
 	public MVELCondition(String expression) {
-		compiledExpression = MVEL.compileExpression(expression);
+		this(expression, new ParserContext());
 	}
 
 	/**
@@ -56,12 +84,31 @@ public class MVELCondition implements Condition {
 	 * @param parserContext the MVEL parser context
 	 */
 	public MVELCondition(String expression, ParserContext parserContext) {
-		compiledExpression = MVEL.compileExpression(expression, parserContext);
+		this.expression = expression;
+		final ParserContext context = newParserContext(parserContext);
+		compiledExpression = MVEL.compileExpression(expression, context);
+		factDependencies = Collections.unmodifiableSet(new HashSet<>(context.getInputs().keySet()));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Variables are resolved directly from the facts; variables assigned by the
+	 * condition are kept local to the evaluation and do not change the facts.
+	 */
 	@Override
 	public boolean evaluate(Facts facts) {
 		// MVEL.evalToBoolean does not accept compiled expressions..
-		return (boolean) MVEL.executeExpression(compiledExpression, facts.asMap());
+		return (boolean) MVEL.executeExpression(compiledExpression, new FactsVariableResolverFactory(facts, true));
+	}
+
+	@Override
+	public String getConditionExpression() {
+		return expression;
+	}
+
+	@Override
+	public Set<String> getFactDependencies() {
+		return factDependencies;
 	}
 }
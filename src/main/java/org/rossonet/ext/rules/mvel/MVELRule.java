@@ -25,10 +25,13 @@ package org.rossonet.ext.rules.mvel;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.mvel2.ParserContext;
 import org.rossonet.ext.rules.api.Action;
 import org.rossonet.ext.rules.api.Condition;
+import org.rossonet.ext.rules.api.ConditionExpression;
+import org.rossonet.ext.rules.api.FactDependent;
 import org.rossonet.ext.rules.api.Facts;
 import org.rossonet.ext.rules.api.Rule;
 import org.rossonet.ext.rules.core.BasicRule;
@@ -40,7 +43,7 @@ import org.rossonet.ext.rules.core.BasicRule;
  *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
-public class MVELRule extends BasicRule {
+public class MVELRule extends BasicRule implements ConditionExpression, FactDependent {
 
 	private Condition condition = Condition.FALSE;
 	private final List<Action> actions = new ArrayList<>();
@@ -86,6 +89,16 @@ public class MVELRule extends BasicRule {
 		}
 	}
 
+	@Override
+	public String getConditionExpression() {
+		return ConditionExpression.of(condition);
+	}
+
+	@Override
+	public Set<String> getFactDependencies() {
+		return FactDependent.of(condition);
+	}
+
 	/**
 	 * Set rule name.
 	 *
@@ -97,6 +110,17 @@ public class MVELRule extends BasicRule {
 		return this;
 	}
 
+	/**
+	 * Set whether the rule condition can be evaluated in parallel.
+	 *
+	 * @param parallelizable false if the condition has side effects
+	 * @return this rule
+	 */
+	public MVELRule parallelizable(boolean parallelizable) {
+		this.parallelizable = parallelizable;
+		return this;
+	}
+
 	/**
 	 * Set rule priority.
 	 *
@@ -119,6 +143,17 @@ public class MVELRule extends BasicRule {
 		return this;
 	}
 
+	/**
+	 * Specify the rule's condition.
+	 *
+	 * @param condition of the rule
+	 * @return this rule
+	 */
+	public MVELRule when(Condition condition) {
+		this.condition = condition;
+		return this;
+	}
+
 	/**
 	 * Specify the rule's condition as MVEL expression.
 	 * 
@@ -27,6 +27,7 @@ import java.io.Reader;
 import java.util.List;
 
 import org.mvel2.ParserContext;
+import org.rossonet.ext.rules.api.Condition;
 import org.rossonet.ext.rules.api.Rule;
 import org.rossonet.ext.rules.api.Rules;
 import org.rossonet.ext.rules.support.AbstractRuleFactory;
@@ -69,6 +70,11 @@ public class MVELRuleFactory extends AbstractRuleFactory {
 		this.parserContext = parserContext;
 	}
 
+	@Override
+	protected Condition createCondition(String expression) {
+		return new MVELCondition(expression, parserContext);
+	}
+
 	/**
 	 * Create a new {@link MVELRule} from a Reader.
 	 *
@@ -90,7 +96,9 @@ public class MVELRuleFactory extends AbstractRuleFactory {
 	}
 
 	/**
-	 * Create a set of {@link MVELRule} from a rule descriptor.
+	 * Create a set of {@link MVELRule} from a rule descriptor. Sub-expressions
+	 * repeated across the conditions of the rules are evaluated once per firing
+	 * and after each action.
 	 *
 	 * @param rulesDescriptor descriptor of rule definitions
 	 * @return a set of rules
@@ -98,19 +106,20 @@ public class MVELRuleFactory extends AbstractRuleFactory {
 	 */
 	@Override
 	public Rules createRules(Reader rulesDescriptor) throws Exception {
-		final Rules rules = new Rules();
-		final List<RuleDefinition> ruleDefinitions = reader.read(rulesDescriptor);
-		for (final RuleDefinition ruleDefinition : ruleDefinitions) {
-			rules.register(createRule(ruleDefinition));
-		}
-		return rules;
+		return super.createRules(rulesDescriptor);
 	}
 
 	@Override
 	protected Rule createSimpleRule(RuleDefinition ruleDefinition) {
 		final MVELRule mvelRule = new MVELRule(parserContext).name(ruleDefinition.getName())
 				.description(ruleDefinition.getDescription()).priority(ruleDefinition.getPriority())
-				.when(ruleDefinition.getCondition());
+				.parallelizable(ruleDefinition.isParallelizable());
+		final Condition sharedCondition = getSharedCondition(ruleDefinition);
+		if (sharedCondition != null) {
+			mvelRule.when(sharedCondition);
+		} else {
+			mvelRule.when(ruleDefinition.getCondition());
+		}
 		for (final String action : ruleDefinition.getActions()) {
 			mvelRule.then(action);
 		}
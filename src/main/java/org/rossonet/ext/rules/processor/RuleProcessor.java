@@ -0,0 +1,431 @@
+package org.rossonet.ext.rules.processor;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+import org.rossonet.ext.rules.annotation.Action;
+import org.rossonet.ext.rules.annotation.Condition;
+import org.rossonet.ext.rules.annotation.Fact;
+import org.rossonet.ext.rules.annotation.Priority;
+import org.rossonet.ext.rules.annotation.Rule;
+import org.rossonet.ext.rules.core.GeneratedRule;
+
+/**
+ * Annotation processor generating a {@link GeneratedRule} implementation for
+ * each class annotated with {@link Rule}, directly or through a meta
+ * annotation.
+ *
+ * The processor reports as compilation errors the rule definitions that
+ * <code>RuleDefinitionValidator</code> would reject at runtime. The generated
+ * class is named after the binary name of the rule class followed by
+ * {@link GeneratedRule#GENERATED_CLASS_SUFFIX}, in the same package, and calls
+ * the annotated methods without reflection.
+ * {@link org.rossonet.ext.rules.core.RuleProxy#asRule(Object)} uses it when it
+ * is present. No class is generated for abstract rule classes and for rule
+ * classes not accessible from their package: they keep using the runtime
+ * adapters.
+ *
+ * The processor is not part of the main jar of this library, so that the
+ * compiler does not run it for every project having the library on its
+ * classpath. To enable it, add both the library and its jar with the
+ * <code>processor</code> classifier to the annotation processor path of the
+ * compiler.
+ */
+@SupportedAnnotationTypes("*")
+public class RuleProcessor extends AbstractProcessor {
+
+	/**
+	 * Annotated method of a rule class.
+	 */
+	private static final class RuleMethod {
+
+		private final ExecutableElement method;
+		private final int order;
+
+		private RuleMethod(final ExecutableElement method, final int order) {
+			this.method = method;
+			this.order = order;
+		}
+	}
+
+	private static final String FACTS = "org.rossonet.ext.rules.api.Facts";
+
+	private final Set<String> processedTypes = new HashSet<>();
+
+	private List<ExecutableElement> annotatedWith(final List<ExecutableElement> methods,
+			final Class<? extends java.lang.annotation.Annotation> annotation) {
+		final List<ExecutableElement> annotatedMethods = new ArrayList<>();
+		for (final ExecutableElement method : methods) {
+			if (method.getAnnotation(annotation) != null) {
+				annotatedMethods.add(method);
+			}
+		}
+		return annotatedMethods;
+	}
+
+	private void appendArguments(final StringBuilder source, final ExecutableElement method) {
+		source.append('(');
+		boolean first = true;
+		for (final VariableElement parameter : method.getParameters()) {
+			if (!first) {
+				source.append(", ");
+			}
+			first = false;
+			final TypeMirror type = erasure(parameter.asType());
+			final Fact fact = parameter.getAnnotation(Fact.class);
+			if (fact == null) {
+				source.append(type.toString().equals(FACTS) ? "facts" : "(" + type + ") facts");
+				continue;
+			}
+			final String lookup = "fact(facts, " + processingEnv.getElementUtils().getConstantExpression(fact.value())
+					+ ", " + type + ".class)";
+			switch (type.getKind()) {
+			case BOOLEAN:
+			case BYTE:
+			case CHAR:
+				source.append("(")
+						.append(processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName())
+						.append(") ").append(lookup);
+				break;
+			case SHORT:
+			case INT:
+			case LONG:
+			case FLOAT:
+			case DOUBLE:
+				source.append(type).append("Value(").append(lookup).append(')');
+				break;
+			default:
+				source.append("(").append(type).append(") ").append(lookup);
+			}
+		}
+		source.append(')');
+	}
+
+	private void appendCall(final StringBuilder source, final TypeElement ruleClass, final ExecutableElement method) {
+		source.append(method.getModifiers().contains(Modifier.STATIC) ? erasure(ruleClass.asType()).toString()
+				: "target");
+		source.append('.').append(method.getSimpleName());
+		appendArguments(source, method);
+	}
+
+	private boolean check(final TypeElement ruleClass, final List<ExecutableElement> methods) {
+		final List<ExecutableElement> conditionMethods = annotatedWith(methods, Condition.class);
+		if (conditionMethods.isEmpty()) {
+			return error(ruleClass, format("Rule '%s' must have a public method annotated with '%s'",
+					ruleClass.getQualifiedName(), Condition.class.getName()));
+		}
+		if (conditionMethods.size() > 1) {
+			return error(ruleClass, format("Rule '%s' must have exactly one method annotated with '%s'",
+					ruleClass.getQualifiedName(), Condition.class.getName()));
+		}
+		final ExecutableElement conditionMethod = conditionMethods.get(0);
+		if (conditionMethod.getReturnType().getKind() != TypeKind.BOOLEAN || !validParameters(conditionMethod)) {
+			return error(conditionMethod, format(
+					"Condition method '%s' defined in rule '%s' must be public, must return boolean type and may have parameters annotated with @Fact (and/or exactly one parameter of type Facts or one of its sub-types).",
+					conditionMethod, ruleClass.getQualifiedName()));
+		}
+		final List<ExecutableElement> actionMethods = annotatedWith(methods, Action.class);
+		if (actionMethods.isEmpty()) {
+			return error(ruleClass, format("Rule '%s' must have at least one public method annotated with '%s'",
+					ruleClass.getQualifiedName(), Action.class.getName()));
+		}
+		for (final ExecutableElement actionMethod : actionMethods) {
+			if (actionMethod.getReturnType().getKind() != TypeKind.VOID || !validParameters(actionMethod)) {
+				return error(actionMethod, format(
+						"Action method '%s' defined in rule '%s' must be public, must return void type and may have parameters annotated with @Fact (and/or exactly one parameter of type Facts or one of its sub-types).",
+						actionMethod, ruleClass.getQualifiedName()));
+			}
+		}
+		final List<ExecutableElement> priorityMethods = annotatedWith(methods, Priority.class);
+		if (priorityMethods.size() > 1) {
+			return error(ruleClass, format("Rule '%s' must have exactly one method annotated with '%s'",
+					ruleClass.getQualifiedName(), Priority.class.getName()));
+		}
+		for (final ExecutableElement priorityMethod : priorityMethods) {
+			if (priorityMethod.getReturnType().getKind() != TypeKind.INT
+					|| !priorityMethod.getParameters().isEmpty()) {
+				return error(priorityMethod, format(
+						"Priority method '%s' defined in rule '%s' must be public, have no parameters and return integer type.",
+						priorityMethod, ruleClass.getQualifiedName()));
+			}
+		}
+		return true;
+	}
+
+	private TypeMirror erasure(final TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type);
+	}
+
+	private boolean error(final Element element, final String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+		return false;
+	}
+
+	private Rule findRuleAnnotation(final TypeElement type) {
+		final Rule rule = type.getAnnotation(Rule.class);
+		if (rule != null) {
+			return rule;
+		}
+		for (final AnnotationMirror annotation : processingEnv.getElementUtils().getAllAnnotationMirrors(type)) {
+			final Rule metaRule = annotation.getAnnotationType().asElement().getAnnotation(Rule.class);
+			if (metaRule != null) {
+				return metaRule;
+			}
+		}
+		return null;
+	}
+
+	private void generate(final TypeElement ruleClass, final Rule annotation, final List<ExecutableElement> methods)
+			throws IOException {
+		final String packageName = processingEnv.getElementUtils().getPackageOf(ruleClass).getQualifiedName()
+				.toString();
+		final String binaryName = processingEnv.getElementUtils().getBinaryName(ruleClass).toString();
+		final String simpleName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1)
+				+ GeneratedRule.GENERATED_CLASS_SUFFIX;
+		final String ruleType = erasure(ruleClass.asType()).toString();
+		final ExecutableElement conditionMethod = annotatedWith(methods, Condition.class).get(0);
+		final List<RuleMethod> actionMethods = new ArrayList<>();
+		for (final ExecutableElement actionMethod : annotatedWith(methods, Action.class)) {
+			actionMethods.add(new RuleMethod(actionMethod, actionMethod.getAnnotation(Action.class).order()));
+		}
+		actionMethods.sort(Comparator.comparingInt(actionMethod -> actionMethod.order));
+		final List<ExecutableElement> priorityMethods = annotatedWith(methods, Priority.class);
+		ExecutableElement compareToMethod = null;
+		for (final ExecutableElement method : methods) {
+			if (method.getSimpleName().contentEquals("compareTo")) {
+				compareToMethod = method;
+				break;
+			}
+		}
+
+		final String name = annotation.name().equals(org.rossonet.ext.rules.api.Rule.DEFAULT_NAME)
+				? ruleClass.getSimpleName().toString()
+				: annotation.name();
+		final StringBuilder description = new StringBuilder();
+		if (annotation.description().equals(org.rossonet.ext.rules.api.Rule.DEFAULT_DESCRIPTION)) {
+			description.append("when ").append(conditionMethod.getSimpleName()).append(" then ");
+			for (int i = 0; i < actionMethods.size(); i++) {
+				description.append(i > 0 ? "," : "").append(actionMethods.get(i).method.getSimpleName());
+			}
+		} else {
+			description.append(annotation.description());
+		}
+		final StringBuilder factDependencies = new StringBuilder("new String[] { ");
+		for (final VariableElement parameter : conditionMethod.getParameters()) {
+			final Fact fact = parameter.getAnnotation(Fact.class);
+			if (fact == null) {
+				factDependencies.setLength(0);
+				break;
+			}
+			factDependencies.append(processingEnv.getElementUtils().getConstantExpression(fact.value())).append(", ");
+		}
+
+		final StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("@javax.annotation.processing.Generated(\"").append(RuleProcessor.class.getName())
+				.append("\")\n");
+		source.append("@SuppressWarnings({ \"rawtypes\", \"unchecked\" })\n");
+		source.append("public final class ").append(simpleName).append(" extends ")
+				.append(GeneratedRule.class.getName()).append('<').append(ruleType).append("> {\n\n");
+		source.append("\tpublic ").append(simpleName).append("(final ").append(ruleType).append(" target) {\n");
+		source.append("\t\tsuper(target, ").append(processingEnv.getElementUtils().getConstantExpression(name))
+				.append(", ").append(processingEnv.getElementUtils().getConstantExpression(description.toString()))
+				.append(", ").append(annotation.priority()).append(", ").append(annotation.parallelizable())
+				.append(", ").append(factDependencies.length() == 0 ? "null" : factDependencies.append("}"))
+				.append(");\n\t}\n\n");
+		source.append("\t@Override\n\tprotected void actions(final ").append(FACTS)
+				.append(" facts) throws Exception {\n");
+		for (final RuleMethod actionMethod : actionMethods) {
+			source.append("\t\t");
+			appendCall(source, ruleClass, actionMethod.method);
+			source.append(";\n");
+		}
+		source.append("\t}\n\n");
+		if (compareToMethod != null) {
+			if (compareToMethod.getParameters().size() == 1 && compareToMethod.getReturnType().getKind() == TypeKind.INT
+					&& !compareToMethod.getModifiers().contains(Modifier.STATIC)) {
+				source.append("\t@Override\n\tprotected int compareTargets(final Object otherTarget) throws Exception {\n");
+				source.append("\t\treturn target.compareTo((")
+						.append(erasure(compareToMethod.getParameters().get(0).asType())).append(") otherTarget);\n");
+				source.append("\t}\n\n");
+			}
+		}
+		source.append("\t@Override\n\tprotected boolean condition(final ").append(FACTS)
+				.append(" facts) throws Exception {\n\t\treturn ");
+		appendCall(source, ruleClass, conditionMethod);
+		source.append(";\n\t}\n\n");
+		if (compareToMethod != null) {
+			source.append("\t@Override\n\tprotected boolean hasCompareTo() {\n\t\treturn true;\n\t}\n\n");
+		}
+		if (!priorityMethods.isEmpty()) {
+			source.append("\t@Override\n\tprotected int priority() throws Exception {\n\t\treturn ");
+			appendCall(source, ruleClass, priorityMethods.get(0));
+			source.append(";\n\t}\n\n");
+		}
+		source.append("}\n");
+
+		try (Writer writer = processingEnv.getFiler()
+				.createSourceFile(packageName.isEmpty() ? simpleName : packageName + "." + simpleName, ruleClass)
+				.openWriter()) {
+			writer.write(source.toString());
+		}
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	/**
+	 * Check if the given type can be referenced from the package of the rule
+	 * class.
+	 */
+	private boolean isAccessible(final TypeMirror type) {
+		if (type.getKind() == TypeKind.ARRAY) {
+			return isAccessible(((ArrayType) type).getComponentType());
+		}
+		if (type.getKind() != TypeKind.DECLARED) {
+			return true;
+		}
+		for (Element element = ((DeclaredType) type).asElement(); element != null
+				&& !(element instanceof PackageElement); element = element.getEnclosingElement()) {
+			if (element.getModifiers().contains(Modifier.PRIVATE) || !(element instanceof TypeElement)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isGenerable(final TypeElement ruleClass, final List<ExecutableElement> methods) {
+		if (ruleClass.getModifiers().contains(Modifier.ABSTRACT) || !isAccessible(erasure(ruleClass.asType()))) {
+			return false;
+		}
+		for (final ExecutableElement method : methods) {
+			for (final VariableElement parameter : method.getParameters()) {
+				if (!isAccessible(erasure(parameter.asType()))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Only runtime visible annotations are considered, as done at runtime.
+	 */
+	private boolean isRuntimeVisible(final AnnotationMirror annotation) {
+		final Retention retention = annotation.getAnnotationType().asElement().getAnnotation(Retention.class);
+		return retention != null && retention.value() == RetentionPolicy.RUNTIME;
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		for (final Element element : roundEnv.getRootElements()) {
+			process(element);
+		}
+		return false;
+	}
+
+	private void process(final Element element) {
+		if (!(element instanceof TypeElement)) {
+			return;
+		}
+		final TypeElement type = (TypeElement) element;
+		for (final Element enclosedElement : type.getEnclosedElements()) {
+			process(enclosedElement);
+		}
+		if (!type.getKind().isClass() || !processedTypes.add(type.getQualifiedName().toString())) {
+			return;
+		}
+		final Rule annotation = findRuleAnnotation(type);
+		if (annotation == null) {
+			return;
+		}
+		final List<ExecutableElement> methods = publicMethods(type);
+		if (type.getModifiers().contains(Modifier.ABSTRACT) || !check(type, methods)
+				|| !isGenerable(type, methods)) {
+			return;
+		}
+		try {
+			generate(type, annotation, methods);
+		} catch (final IOException e) {
+			error(type, format("Unable to generate the rule class of '%s': %s", type.getQualifiedName(), e));
+		}
+	}
+
+	/**
+	 * The public methods of the class, including the inherited ones, as returned
+	 * by {@link Class#getMethods()}.
+	 */
+	private List<ExecutableElement> publicMethods(final TypeElement type) {
+		final List<ExecutableElement> methods = new ArrayList<>();
+		for (final Element member : processingEnv.getElementUtils().getAllMembers(type)) {
+			if (member.getKind() == ElementKind.METHOD && member.getModifiers().contains(Modifier.PUBLIC)) {
+				methods.add((ExecutableElement) member);
+			}
+		}
+		return methods;
+	}
+
+	private boolean validParameters(final ExecutableElement method) {
+		int notAnnotatedParameterCount = 0;
+		TypeMirror notAnnotatedParameterType = null;
+		for (final VariableElement parameter : method.getParameters()) {
+			boolean annotated = false;
+			for (final AnnotationMirror annotation : parameter.getAnnotationMirrors()) {
+				if (!isRuntimeVisible(annotation)) {
+					continue;
+				}
+				annotated = true;
+				// Annotation types has to be Fact
+				if (!((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName()
+						.contentEquals(Fact.class.getName())) {
+					return false;
+				}
+			}
+			if (!annotated) {
+				notAnnotatedParameterCount += 1;
+				notAnnotatedParameterType = parameter.asType();
+			}
+		}
+		if (notAnnotatedParameterCount > 1) {
+			return false;
+		}
+		if (notAnnotatedParameterCount == 1) {
+			final TypeElement facts = processingEnv.getElementUtils().getTypeElement(FACTS);
+			return processingEnv.getTypeUtils().isAssignable(erasure(notAnnotatedParameterType), facts.asType());
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,5 @@
+/**
+ * This package contains the annotation processor generating rules from
+ * annotated rule classes at build time.
+ */
+package org.rossonet.ext.rules.processor;
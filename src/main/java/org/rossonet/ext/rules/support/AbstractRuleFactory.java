@@ -28,6 +28,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
+import org.rossonet.ext.rules.api.Condition;
 import org.rossonet.ext.rules.api.Rule;
 import org.rossonet.ext.rules.api.Rules;
 import org.rossonet.ext.rules.support.composite.ActivationRuleGroup;
@@ -41,6 +42,13 @@ import org.slf4j.LoggerFactory;
 /**
  * Base class for rule factories.
  *
+ * When a rule set is created, the sub-expressions repeated across the
+ * conditions of its rules are compiled once and evaluated once per firing and
+ * after each action, if the factory compiles conditions with
+ * {@link #createCondition(String)}.
+ * Factories then build the condition of a rule from
+ * {@link #getSharedCondition(RuleDefinition)} when it is not null.
+ *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
 public abstract class AbstractRuleFactory {
@@ -77,6 +85,7 @@ public abstract class AbstractRuleFactory {
 		}
 		compositeRule.setDescription(ruleDefinition.getDescription());
 		compositeRule.setPriority(ruleDefinition.getPriority());
+		compositeRule.setParallelizable(ruleDefinition.isParallelizable());
 
 		for (final RuleDefinition composingRuleDefinition : ruleDefinition.getComposingRules()) {
 			compositeRule.addRule(createRule(composingRuleDefinition));
@@ -85,6 +94,17 @@ public abstract class AbstractRuleFactory {
 		return compositeRule;
 	}
 
+	/**
+	 * Create a condition from an expression, to share the sub-expressions
+	 * repeated across the conditions of a rule set.
+	 *
+	 * @param expression the condition written in expression language
+	 * @return the condition, null if the factory does not share conditions
+	 */
+	protected Condition createCondition(String expression) {
+		return null;
+	}
+
 	protected Rule createRule(RuleDefinition ruleDefinition) {
 		if (ruleDefinition.isCompositeRule()) {
 			return createCompositeRule(ruleDefinition);
@@ -97,6 +117,7 @@ public abstract class AbstractRuleFactory {
 		Objects.requireNonNull(rulesDescriptor, "rulesDescriptor cannot be null");
 		final Rules rules = new Rules();
 		final List<RuleDefinition> ruleDefinitions = getRuleDefinitionReader().read(rulesDescriptor);
+		new ConditionSharing(this::createCondition).share(ruleDefinitions);
 		for (final RuleDefinition ruleDefinition : ruleDefinitions) {
 			rules.register(createRule(ruleDefinition));
 		}
@@ -107,4 +128,16 @@ public abstract class AbstractRuleFactory {
 
 	protected abstract RuleDefinitionReader getRuleDefinitionReader();
 
+	/**
+	 * Get the condition of a rule built from sub-expressions shared with the other
+	 * rules of the rule set being created.
+	 *
+	 * @param ruleDefinition definition of a simple rule
+	 * @return the shared condition, null if the condition of the rule is not
+	 *         shared
+	 */
+	protected Condition getSharedCondition(RuleDefinition ruleDefinition) {
+		return ruleDefinition.getSharedCondition();
+	}
+
 }
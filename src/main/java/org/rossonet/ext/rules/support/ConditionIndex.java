@@ -0,0 +1,566 @@
+package org.rossonet.ext.rules.support;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.rossonet.ext.rules.api.CompiledRules;
+import org.rossonet.ext.rules.api.ConditionExpression;
+import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+
+/**
+ * Discrimination index of the conditions of {@link CompiledRules}, to skip the
+ * rules whose condition is trivially false before evaluating them.
+ *
+ * The {@link ConditionExpression expressions} of the conditions are split in
+ * their top-level <code>&amp;&amp;</code> conjuncts, and the leading conjuncts
+ * comparing a fact, or a property of a fact, with a literal are indexed:
+ * equality tests (<code>==</code>, <code>!=</code>) in hash tables by literal,
+ * range tests (<code>&lt;</code>, <code>&lt;=</code>, <code>&gt;</code>,
+ * <code>&gt;=</code>) in sorted arrays of thresholds. When selecting the rules
+ * to evaluate, each indexed attribute is resolved once and looked up in its
+ * tables, so that the cost does not depend on the number of rules testing it.
+ *
+ * A rule is discarded only when one of its indexed tests is false and all of
+ * them could be decided, that is when evaluating the condition would return
+ * false: when an attribute cannot be resolved, or its value cannot be compared
+ * with the literal exactly as the expression language does, the rule is
+ * evaluated as usual. Properties are read from maps, public getters and public
+ * fields.
+ *
+ * The index is immutable and can be shared between threads; the
+ * {@link Candidates} of a firing are not thread-safe.
+ */
+public final class ConditionIndex {
+
+	/**
+	 * Reader of a property of the instances of a class.
+	 */
+	private static final class Accessor {
+
+		private static Accessor of(final Class<?> type, final String property) {
+			final String suffix = property.substring(0, 1).toUpperCase(Locale.ROOT) + property.substring(1);
+			for (final String prefix : new String[] { "get", "is" }) {
+				try {
+					final Method method = type.getMethod(prefix + suffix);
+					if (!Modifier.isStatic(method.getModifiers()) && method.getReturnType() != void.class
+							&& (prefix.equals("get") || method.getReturnType() == boolean.class
+									|| method.getReturnType() == Boolean.class)) {
+						return new Accessor(type, method, null);
+					}
+				} catch (final NoSuchMethodException exception) {
+					// try the next accessor
+				}
+			}
+			try {
+				final Field field = type.getField(property);
+				if (!Modifier.isStatic(field.getModifiers())) {
+					return new Accessor(type, null, field);
+				}
+			} catch (final NoSuchFieldException exception) {
+				// no accessor
+			}
+			return new Accessor(type, null, null);
+		}
+
+		private final Class<?> type;
+		private final Method method;
+		private final Field field;
+
+		private Accessor(final Class<?> type, final Method method, final Field field) {
+			this.type = type;
+			this.method = method;
+			this.field = field;
+		}
+
+		private Object get(final Object target) {
+			try {
+				if (method != null) {
+					return method.invoke(target);
+				}
+				if (field != null) {
+					return field.get(target);
+				}
+			} catch (final ReflectiveOperationException | RuntimeException exception) {
+				// the condition reports the error
+			}
+			return UNRESOLVED;
+		}
+	}
+
+	/**
+	 * Rules selected by the index for a firing, computed again when the version
+	 * of the facts changes or after {@link #invalidate()}.
+	 */
+	public final class Candidates {
+
+		private final Facts facts;
+		private final BitSet discarded = new BitSet();
+		private final BitSet undecided = new BitSet();
+		private final BitSet scratch = new BitSet();
+		private boolean computed;
+		private long version;
+
+		private Candidates(final Facts facts) {
+			this.facts = facts;
+		}
+
+		/**
+		 * Check whether the rule at the given index must be evaluated.
+		 *
+		 * @param index of the rule in the compiled rules
+		 * @return false if the condition of the rule is false on the current facts
+		 */
+		public boolean contains(final int index) {
+			final long currentVersion = facts.getVersion();
+			if (!computed || currentVersion != version) {
+				discarded.clear();
+				undecided.clear();
+				for (final Discriminator discriminator : discriminators) {
+					discriminator.select(facts, discarded, undecided, scratch);
+				}
+				discarded.andNot(undecided);
+				version = currentVersion;
+				computed = true;
+			}
+			return !discarded.get(index);
+		}
+
+		/**
+		 * Compute the selection again at the next check, for instance after an
+		 * action that may have changed the facts in place, without changing their
+		 * version.
+		 */
+		public void invalidate() {
+			computed = false;
+		}
+	}
+
+	/**
+	 * Tests of the rules on an attribute, a fact or a property path of a fact.
+	 */
+	private static final class Discriminator {
+
+		private final String factName;
+		// dotted fact names that the expression language could resolve instead
+		private final String[] factPaths;
+		private final String[] properties;
+		// racy but safe, accessors are immutable
+		private final Accessor[] accessors;
+		private final BitSet rules = new BitSet();
+		// rules by kind of literal
+		private final BitSet[] equalRules = { new BitSet(), new BitSet(), new BitSet() };
+		private final BitSet[] notEqualRules = { new BitSet(), new BitSet(), new BitSet() };
+		private final Map<Object, BitSet> equalities = new HashMap<>();
+		private final Map<Object, BitSet> inequalities = new HashMap<>();
+		private final BitSet rangeRules = new BitSet();
+		private final Map<String, RangeTests> ranges = new LinkedHashMap<>();
+
+		private Discriminator(final String path) {
+			final String[] segments = path.split("\\.");
+			factName = segments[0];
+			properties = Arrays.copyOfRange(segments, 1, segments.length);
+			accessors = new Accessor[properties.length];
+			factPaths = new String[properties.length];
+			final StringBuilder factPath = new StringBuilder(factName);
+			for (int i = 0; i < properties.length; i++) {
+				factPaths[i] = factPath.append('.').append(properties[i]).toString();
+			}
+		}
+
+		private void add(final Test test, final int rule) {
+			rules.set(rule);
+			switch (test.operator) {
+			case "==":
+				equalRules[kind(test.literal)].set(rule);
+				equalities.computeIfAbsent(test.literal, literal -> new BitSet()).set(rule);
+				break;
+			case "!=":
+				notEqualRules[kind(test.literal)].set(rule);
+				inequalities.computeIfAbsent(test.literal, literal -> new BitSet()).set(rule);
+				break;
+			default:
+				rangeRules.set(rule);
+				ranges.computeIfAbsent(test.operator, RangeTests::new).add(((Number) test.literal).doubleValue(),
+						rule);
+			}
+		}
+
+		private Object property(final int index, final Object target) {
+			if (target instanceof Map) {
+				final Map<?, ?> map = (Map<?, ?>) target;
+				return map.containsKey(properties[index]) ? map.get(properties[index]) : UNRESOLVED;
+			}
+			Accessor accessor = accessors[index];
+			if (accessor == null || accessor.type != target.getClass()) {
+				accessor = Accessor.of(target.getClass(), properties[index]);
+				accessors[index] = accessor;
+			}
+			return accessor.get(target);
+		}
+
+		private Object resolve(final Facts facts) {
+			for (final String factPath : factPaths) {
+				if (facts.has(factPath)) {
+					return UNRESOLVED;
+				}
+			}
+			final Fact<?> fact = facts.getFact(factName);
+			Object value = fact != null ? fact.getValue() : null;
+			for (int i = 0; i < properties.length && value != null && value != UNRESOLVED; i++) {
+				value = property(i, value);
+			}
+			return value != null ? value : UNRESOLVED;
+		}
+
+		/**
+		 * Add the rules whose tests on the attribute are false to the discarded
+		 * ones, and the rules whose tests cannot be decided to the undecided ones.
+		 */
+		private void select(final Facts facts, final BitSet discarded, final BitSet undecided, final BitSet scratch) {
+			final Object value = resolve(facts);
+			if (value == UNRESOLVED) {
+				undecided.or(rules);
+				return;
+			}
+			final Object key = key(value);
+			final int kind = key != null ? kind(key) : -1;
+			for (int i = 0; i < equalRules.length; i++) {
+				if (i != kind) {
+					undecided.or(equalRules[i]);
+					undecided.or(notEqualRules[i]);
+				}
+			}
+			if (key != null) {
+				scratch.clear();
+				scratch.or(equalRules[kind]);
+				final BitSet equal = equalities.get(key);
+				if (equal != null) {
+					scratch.andNot(equal);
+				}
+				discarded.or(scratch);
+				final BitSet notEqual = inequalities.get(key);
+				if (notEqual != null) {
+					discarded.or(notEqual);
+				}
+			}
+			if (!rangeRules.isEmpty()) {
+				final double number = rangeValue(value);
+				if (Double.isNaN(number)) {
+					undecided.or(rangeRules);
+				} else {
+					for (final RangeTests rangeTests : ranges.values()) {
+						rangeTests.select(number, discarded);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Range tests of the rules on an attribute with the same operator, sorted by
+	 * threshold.
+	 */
+	private static final class RangeTests {
+
+		/**
+		 * Return the index of the first threshold greater than the value, or
+		 * greater or equal when inclusive.
+		 */
+		private static int search(final double[] thresholds, final double value, final boolean inclusive) {
+			int low = 0;
+			int high = thresholds.length;
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (thresholds[middle] > value || inclusive && thresholds[middle] == value) {
+					high = middle;
+				} else {
+					low = middle + 1;
+				}
+			}
+			return low;
+		}
+
+		private final String operator;
+		private double[] thresholds = new double[0];
+		private int[] rules = new int[0];
+
+		private RangeTests(final String operator) {
+			this.operator = operator;
+		}
+
+		private void add(final double threshold, final int rule) {
+			final int index = search(thresholds, threshold, false);
+			final int length = thresholds.length;
+			final double[] newThresholds = new double[length + 1];
+			final int[] newRules = new int[length + 1];
+			System.arraycopy(thresholds, 0, newThresholds, 0, index);
+			System.arraycopy(rules, 0, newRules, 0, index);
+			newThresholds[index] = threshold;
+			newRules[index] = rule;
+			System.arraycopy(thresholds, index, newThresholds, index + 1, length - index);
+			System.arraycopy(rules, index, newRules, index + 1, length - index);
+			thresholds = newThresholds;
+			rules = newRules;
+		}
+
+		/**
+		 * Add the rules whose test is false for the given value to the discarded
+		 * ones.
+		 */
+		private void select(final double value, final BitSet discarded) {
+			final int from;
+			final int to;
+			switch (operator) {
+			case ">":
+				// false when threshold >= value
+				from = search(thresholds, value, true);
+				to = thresholds.length;
+				break;
+			case ">=":
+				from = search(thresholds, value, false);
+				to = thresholds.length;
+				break;
+			case "<":
+				// false when threshold <= value
+				from = 0;
+				to = search(thresholds, value, false);
+				break;
+			default:
+				from = 0;
+				to = search(thresholds, value, true);
+			}
+			for (int i = from; i < to; i++) {
+				discarded.set(rules[i]);
+			}
+		}
+	}
+
+	/**
+	 * Comparison of an attribute with a literal.
+	 */
+	private static final class Test {
+
+		private final String path;
+		private final String operator;
+		private final Object literal;
+
+		private Test(final String path, final String operator, final Object literal) {
+			this.path = path;
+			this.operator = operator;
+			this.literal = literal;
+		}
+	}
+
+	private static final String PATH = "([\\p{L}_$][\\w$]*(?:\\.[\\p{L}_$][\\w$]*)*)";
+
+	private static final String OPERATOR = "(==|!=|<=|>=|<|>)";
+
+	private static final String LITERAL = "('[^'\\\\]*'|\"[^\"\\\\]*\"|-?\\d+(?:\\.\\d+)?(?:[eE][+-]?\\d+)?|true|false)";
+
+	private static final Pattern TEST = Pattern.compile(PATH + " ?" + OPERATOR + " ?" + LITERAL);
+
+	private static final Pattern REVERSED_TEST = Pattern.compile(LITERAL + " ?" + OPERATOR + " ?" + PATH);
+
+	private static final List<String> KEYWORDS = Arrays.asList("empty", "false", "new", "nil", "null", "this",
+			"true");
+
+	// largest magnitude of the integers exactly represented by a double
+	private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+	private static final Object UNRESOLVED = new Object();
+
+	/**
+	 * Return the key of a value in the equality tables, numbers being compared by
+	 * value whatever their type.
+	 *
+	 * @return the key, null if the value cannot be compared exactly
+	 */
+	private static Object key(final Object value) {
+		if (value instanceof String || value instanceof Boolean) {
+			return value;
+		}
+		if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			return ((Number) value).longValue();
+		}
+		if (value instanceof Double) {
+			final double number = (Double) value;
+			if (Double.isNaN(number)) {
+				return null;
+			}
+			return number == Math.rint(number) && Math.abs(number) < 0x1p63 ? (Object) (long) number : value;
+		}
+		return null;
+	}
+
+	private static int kind(final Object key) {
+		if (key instanceof String) {
+			return 0;
+		}
+		return key instanceof Boolean ? 2 : 1;
+	}
+
+	private static Object literal(final String literal) {
+		if (literal.startsWith("'") || literal.startsWith("\"")) {
+			return literal.substring(1, literal.length() - 1);
+		}
+		if (literal.equals("true") || literal.equals("false")) {
+			return Boolean.valueOf(literal);
+		}
+		try {
+			if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+				return key(Long.parseLong(literal));
+			}
+			return key(Double.parseDouble(literal));
+		} catch (final NumberFormatException exception) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parse a conjunct comparing an attribute with a literal.
+	 *
+	 * @return the test, null if the conjunct cannot be indexed
+	 */
+	private static Test parse(final String conjunct) {
+		Matcher matcher = TEST.matcher(conjunct);
+		String path;
+		String operator;
+		String literal;
+		if (matcher.matches()) {
+			path = matcher.group(1);
+			operator = matcher.group(2);
+			literal = matcher.group(3);
+		} else {
+			matcher = REVERSED_TEST.matcher(conjunct);
+			if (!matcher.matches()) {
+				return null;
+			}
+			literal = matcher.group(1);
+			operator = matcher.group(2);
+			path = matcher.group(3);
+			if (operator.startsWith("<")) {
+				operator = ">" + operator.substring(1);
+			} else if (operator.startsWith(">")) {
+				operator = "<" + operator.substring(1);
+			}
+		}
+		if (KEYWORDS.contains(path.split("\\.")[0])) {
+			return null;
+		}
+		final Object value = literal(literal);
+		if (value == null) {
+			return null;
+		}
+		if (!operator.equals("==") && !operator.equals("!=") && Double.isNaN(rangeValue(value))) {
+			return null;
+		}
+		return new Test(path, operator, value);
+	}
+
+	/**
+	 * Return the value of a number compared with range tests.
+	 *
+	 * @return the value, NaN if it cannot be compared exactly
+	 */
+	private static double rangeValue(final Object value) {
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof Double) {
+			return ((Number) value).doubleValue();
+		}
+		if (value instanceof Long && Math.abs((Long) value) <= MAX_EXACT_DOUBLE) {
+			return (Long) value;
+		}
+		return Double.NaN;
+	}
+
+	private final Rule[] rules;
+	private final Discriminator[] discriminators;
+	private final int indexedRules;
+
+	/**
+	 * Create the index of the conditions of the given rules.
+	 *
+	 * @param rules to index
+	 */
+	public ConditionIndex(final CompiledRules rules) {
+		this.rules = new Rule[rules.size()];
+		final Map<String, Discriminator> discriminators = new LinkedHashMap<>();
+		int indexedRules = 0;
+		for (int index = 0; index < rules.size(); index++) {
+			this.rules[index] = rules.get(index);
+			final String expression = ConditionExpression.of(rules.get(index));
+			final List<String> conjuncts = expression != null ? ConditionSharing.conjuncts(expression) : null;
+			if (conjuncts == null) {
+				continue;
+			}
+			final List<Test> tests = new ArrayList<>();
+			for (final String conjunct : conjuncts) {
+				final Test test = parse(conjunct);
+				if (test == null) {
+					// a test after a conjunct that may fail is never decisive
+					break;
+				}
+				tests.add(test);
+			}
+			for (final Test test : tests) {
+				discriminators.computeIfAbsent(test.path, Discriminator::new).add(test, index);
+			}
+			if (!tests.isEmpty()) {
+				indexedRules++;
+			}
+		}
+		this.discriminators = discriminators.values().toArray(new Discriminator[0]);
+		this.indexedRules = indexedRules;
+	}
+
+	/**
+	 * Get the number of rules with at least one indexed test.
+	 *
+	 * @return the number of indexed rules
+	 */
+	public int getIndexedRules() {
+		return indexedRules;
+	}
+
+	/**
+	 * Check whether the index has been built for the given rules, that is for the
+	 * same rule instances in the same order.
+	 *
+	 * @param rules compiled rules
+	 * @return true if the index can be used with the rules
+	 */
+	public boolean isBuiltFor(final CompiledRules rules) {
+		if (rules.size() != this.rules.length) {
+			return false;
+		}
+		for (int index = 0; index < this.rules.length; index++) {
+			if (rules.get(index) != this.rules[index]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Select the rules to evaluate on the given facts.
+	 *
+	 * @param facts of the firing
+	 * @return the candidates, following the changes of the facts
+	 */
+	public Candidates select(final Facts facts) {
+		return new Candidates(facts);
+	}
+
+}
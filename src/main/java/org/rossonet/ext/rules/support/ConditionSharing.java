@@ -0,0 +1,367 @@
+package org.rossonet.ext.rules.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.rossonet.ext.rules.api.Condition;
+import org.rossonet.ext.rules.api.ConditionExpression;
+import org.rossonet.ext.rules.api.FactDependent;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.core.TrackingFacts;
+
+/**
+ * Compilation step sharing the sub-expressions repeated across the conditions
+ * of a rule set.
+ *
+ * Conditions are split in their top-level <code>&amp;&amp;</code> conjuncts.
+ * Conjuncts which are identical, after normalizing the whitespaces, in the
+ * conditions of at least two rules are compiled once, and their result is
+ * memoized per {@link Facts} instance and {@link Facts#getVersion() version}
+ * until the engines {@link #invalidate() invalidate} it, at the start of each
+ * firing and after each action, since the facts can also be changed in place.
+ * The other conjuncts are compiled together, and the order of the conjuncts is
+ * kept so that short-circuit evaluation still applies.
+ *
+ * Only the conditions of parallelizable rules, which are free of side effects,
+ * are shared. Conditions with a top-level <code>||</code>, <code>or</code>,
+ * <code>?</code>, <code>;</code> or assignment are not split, since splitting
+ * them could change their meaning.
+ */
+public final class ConditionSharing {
+
+	/**
+	 * Conjunction of the conditions of the parts of an expression.
+	 */
+	private static final class Conjunction implements Condition, ConditionExpression, FactDependent {
+
+		private final Condition[] conditions;
+		private final String expression;
+		private final Set<String> factDependencies;
+
+		private Conjunction(final List<Condition> conditions) {
+			this.conditions = conditions.toArray(new Condition[0]);
+			Set<String> dependencies = new HashSet<>();
+			for (final Condition condition : conditions) {
+				final Set<String> conditionDependencies = FactDependent.of(condition);
+				if (conditionDependencies == null) {
+					dependencies = null;
+					break;
+				}
+				dependencies.addAll(conditionDependencies);
+			}
+			this.factDependencies = dependencies == null ? null : Collections.unmodifiableSet(dependencies);
+			final StringBuilder source = new StringBuilder();
+			for (final Condition condition : conditions) {
+				final String conditionExpression = ConditionExpression.of(condition);
+				if (conditionExpression == null) {
+					source.setLength(0);
+					break;
+				}
+				source.append(source.length() > 0 ? AND : "").append(conditionExpression);
+			}
+			this.expression = source.length() > 0 ? source.toString() : null;
+		}
+
+		@Override
+		public boolean evaluate(final Facts facts) {
+			for (final Condition condition : conditions) {
+				if (!condition.evaluate(facts)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String getConditionExpression() {
+			return expression;
+		}
+
+		@Override
+		public Set<String> getFactDependencies() {
+			return factDependencies;
+		}
+	}
+
+	/**
+	 * Result of a shared condition for a version of the facts, valid until the
+	 * next invalidation.
+	 */
+	private static final class Memo {
+
+		private final Facts facts;
+		private final long version;
+		private final long epoch;
+		private final boolean result;
+
+		private Memo(final Facts facts, final long version, final long epoch, final boolean result) {
+			this.facts = facts;
+			this.version = version;
+			this.epoch = epoch;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Condition shared between rules, evaluated once per version of the facts
+	 * between two invalidations.
+	 *
+	 * The {@link TrackingFacts} used by the engines to record the facts read by a
+	 * condition are not memoized, so that the reads of the condition are
+	 * recorded at each evaluation.
+	 */
+	private static final class SharedCondition implements Condition, ConditionExpression, FactDependent {
+
+		private final Condition condition;
+		private volatile Memo memo;
+
+		private SharedCondition(final Condition condition) {
+			this.condition = condition;
+		}
+
+		@Override
+		public boolean evaluate(final Facts facts) {
+			if (facts instanceof TrackingFacts) {
+				return condition.evaluate(facts);
+			}
+			final long version = facts.getVersion();
+			final long currentEpoch = epoch.get();
+			final Memo lastMemo = memo;
+			if (lastMemo != null && lastMemo.facts == facts && lastMemo.version == version
+					&& lastMemo.epoch == currentEpoch) {
+				return lastMemo.result;
+			}
+			final boolean result = condition.evaluate(facts);
+			memo = new Memo(facts, version, currentEpoch, result);
+			return result;
+		}
+
+		@Override
+		public String getConditionExpression() {
+			return ConditionExpression.of(condition);
+		}
+
+		@Override
+		public Set<String> getFactDependencies() {
+			return FactDependent.of(condition);
+		}
+	}
+
+	private static final String AND = " && ";
+	// incremented to invalidate the results memoized by all the shared conditions
+	private static final AtomicLong epoch = new AtomicLong();
+
+	private static boolean add(final List<String> conjuncts, final StringBuilder conjunct) {
+		final String normalized = conjunct.toString().trim();
+		conjunct.setLength(0);
+		if (normalized.isEmpty()) {
+			return false;
+		}
+		conjuncts.add(normalized);
+		return true;
+	}
+
+	/**
+	 * Split an expression in its top-level conjuncts, with normalized
+	 * whitespaces.
+	 *
+	 * @param expression condition expression
+	 * @return the conjuncts, null if the expression cannot be split safely
+	 */
+	static List<String> conjuncts(final String expression) {
+		final List<String> conjuncts = new ArrayList<>();
+		final StringBuilder conjunct = new StringBuilder();
+		final int length = expression.length();
+		int depth = 0;
+		char quote = 0;
+		for (int i = 0; i < length; i++) {
+			final char c = expression.charAt(i);
+			final char next = i + 1 < length ? expression.charAt(i + 1) : 0;
+			if (quote != 0) {
+				conjunct.append(c);
+				if (c == '\\' && next != 0) {
+					conjunct.append(next);
+					i++;
+				} else if (c == quote) {
+					quote = 0;
+				}
+				continue;
+			}
+			if (Character.isWhitespace(c)) {
+				if (conjunct.length() > 0 && conjunct.charAt(conjunct.length() - 1) != ' ') {
+					conjunct.append(' ');
+				}
+				continue;
+			}
+			if (Character.isJavaIdentifierStart(c)) {
+				int end = i + 1;
+				while (end < length && Character.isJavaIdentifierPart(expression.charAt(end))) {
+					end++;
+				}
+				final String identifier = expression.substring(i, end);
+				if (depth == 0 && identifier.equals("or")) {
+					return null;
+				}
+				conjunct.append(identifier);
+				i = end - 1;
+				continue;
+			}
+			switch (c) {
+			case '"':
+			case '\'':
+				quote = c;
+				break;
+			case '(':
+			case '[':
+			case '{':
+				depth++;
+				break;
+			case ')':
+			case ']':
+			case '}':
+				depth--;
+				break;
+			default:
+				if (depth == 0) {
+					if (c == '&' && next == '&') {
+						if (!add(conjuncts, conjunct)) {
+							return null;
+						}
+						i++;
+						continue;
+					}
+					if (c == '|' && next == '|' || c == '?' || c == ';' || isAssignment(expression, i)) {
+						return null;
+					}
+				}
+			}
+			conjunct.append(c);
+		}
+		if (depth != 0 || quote != 0 || !add(conjuncts, conjunct)) {
+			return null;
+		}
+		return conjuncts;
+	}
+
+	/**
+	 * Invalidate the results memoized by the shared conditions, so that they are
+	 * evaluated again. Called by the engines at the start of each firing and
+	 * after each action.
+	 */
+	public static void invalidate() {
+		epoch.incrementAndGet();
+	}
+
+	private static boolean isAssignment(final String expression, final int index) {
+		if (expression.charAt(index) != '=') {
+			return false;
+		}
+		final char previous = index > 0 ? expression.charAt(index - 1) : 0;
+		final char next = index + 1 < expression.length() ? expression.charAt(index + 1) : 0;
+		return "=!<>~".indexOf(previous) < 0 && next != '=' && next != '~';
+	}
+
+	private final Function<String, Condition> compiler;
+	private final Map<String, SharedCondition> sharedConditions = new HashMap<>();
+
+	/**
+	 * Create a new {@link ConditionSharing}.
+	 *
+	 * @param compiler compiles an expression, returns null if conditions cannot
+	 *                 be shared
+	 */
+	ConditionSharing(final Function<String, Condition> compiler) {
+		this.compiler = compiler;
+	}
+
+	private void collect(final List<RuleDefinition> ruleDefinitions, final List<RuleDefinition> simpleRules) {
+		for (final RuleDefinition ruleDefinition : ruleDefinitions) {
+			if (ruleDefinition.isCompositeRule()) {
+				collect(ruleDefinition.getComposingRules(), simpleRules);
+			} else if (ruleDefinition.isParallelizable() && ruleDefinition.getCondition() != null) {
+				simpleRules.add(ruleDefinition);
+			}
+		}
+	}
+
+	/**
+	 * Compile the conjuncts of a condition, grouping the consecutive conjuncts
+	 * which are not shared.
+	 *
+	 * @return the compiled condition, null if the compiler returned null
+	 */
+	private Condition compile(final List<String> conjuncts, final Map<String, Integer> occurrences) {
+		final List<Condition> conditions = new ArrayList<>();
+		final StringBuilder expression = new StringBuilder();
+		for (final String conjunct : conjuncts) {
+			if (occurrences.get(conjunct) < 2) {
+				expression.append(expression.length() > 0 ? AND : "").append(conjunct);
+				continue;
+			}
+			if (expression.length() > 0) {
+				conditions.add(compiler.apply(expression.toString()));
+				expression.setLength(0);
+			}
+			SharedCondition sharedCondition = sharedConditions.get(conjunct);
+			if (sharedCondition == null) {
+				final Condition condition = compiler.apply(conjunct);
+				if (condition == null) {
+					return null;
+				}
+				sharedCondition = new SharedCondition(condition);
+				sharedConditions.put(conjunct, sharedCondition);
+			}
+			conditions.add(sharedCondition);
+		}
+		if (expression.length() > 0) {
+			conditions.add(compiler.apply(expression.toString()));
+		}
+		if (conditions.contains(null)) {
+			return null;
+		}
+		return conditions.size() == 1 ? conditions.get(0) : new Conjunction(conditions);
+	}
+
+	/**
+	 * Compile the conditions of the given rule definitions, and of their
+	 * composing rules, that share sub-expressions, and set them as the shared
+	 * conditions of the rule definitions.
+	 *
+	 * @param ruleDefinitions definitions of a rule set
+	 */
+	void share(final List<RuleDefinition> ruleDefinitions) {
+		final List<RuleDefinition> simpleRules = new ArrayList<>();
+		collect(ruleDefinitions, simpleRules);
+		final Map<RuleDefinition, List<String>> ruleConjuncts = new HashMap<>();
+		final Map<String, Integer> occurrences = new HashMap<>();
+		for (final RuleDefinition ruleDefinition : simpleRules) {
+			final List<String> conjuncts = conjuncts(ruleDefinition.getCondition());
+			if (conjuncts != null) {
+				ruleConjuncts.put(ruleDefinition, conjuncts);
+				for (final String conjunct : new LinkedHashSet<>(conjuncts)) {
+					occurrences.merge(conjunct, 1, Integer::sum);
+				}
+			}
+		}
+		for (final RuleDefinition ruleDefinition : simpleRules) {
+			final List<String> conjuncts = ruleConjuncts.get(ruleDefinition);
+			if (conjuncts != null && conjuncts.stream().anyMatch(conjunct -> occurrences.get(conjunct) > 1)) {
+				final Condition condition = compile(conjuncts, occurrences);
+				if (condition == null) {
+					// the rule factory does not compile conditions
+					return;
+				}
+				ruleDefinition.setSharedCondition(condition);
+			}
+		}
+	}
+
+}
@@ -26,6 +26,7 @@ package org.rossonet.ext.rules.support;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.rossonet.ext.rules.api.Condition;
 import org.rossonet.ext.rules.api.Rule;
 
 /**
@@ -42,10 +43,16 @@ public class RuleDefinition {
 	private String name = Rule.DEFAULT_NAME;
 	private String description = Rule.DEFAULT_DESCRIPTION;
 	private int priority = Rule.DEFAULT_PRIORITY;
+	private boolean parallelizable = true;
 	private String condition;
 	private List<String> actions = new ArrayList<>();
 	private List<RuleDefinition> composingRules = new ArrayList<>();
 	private String compositeRuleType;
+	/**
+	 * Condition built by the rule factory from sub-expressions shared with other
+	 * rules of the same rule set, null if the condition is not shared.
+	 */
+	private Condition sharedCondition;
 
 	public List<String> getActions() {
 		return actions;
@@ -75,10 +82,18 @@ public class RuleDefinition {
 		return priority;
 	}
 
+	Condition getSharedCondition() {
+		return sharedCondition;
+	}
+
 	public boolean isCompositeRule() {
 		return !composingRules.isEmpty();
 	}
 
+	public boolean isParallelizable() {
+		return parallelizable;
+	}
+
 	public void setActions(List<String> actions) {
 		this.actions = actions;
 	}
@@ -103,7 +118,15 @@ public class RuleDefinition {
 		this.name = name;
 	}
 
+	public void setParallelizable(boolean parallelizable) {
+		this.parallelizable = parallelizable;
+	}
+
 	public void setPriority(int priority) {
 		this.priority = priority;
 	}
+
+	void setSharedCondition(Condition sharedCondition) {
+		this.sharedCondition = sharedCondition;
+	}
 }
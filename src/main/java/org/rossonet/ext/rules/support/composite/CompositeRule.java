@@ -23,11 +23,14 @@
  */
 package org.rossonet.ext.rules.support.composite;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.rossonet.ext.rules.api.FactDependent;
 import org.rossonet.ext.rules.api.Facts;
 import org.rossonet.ext.rules.api.Rule;
 import org.rossonet.ext.rules.core.BasicRule;
@@ -41,7 +44,7 @@ import org.rossonet.ext.rules.core.RuleProxy;
  *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
-public abstract class CompositeRule extends BasicRule {
+public abstract class CompositeRule extends BasicRule implements FactDependent {
 
 	/**
 	 * The set of composing rules.
@@ -105,6 +108,44 @@ public abstract class CompositeRule extends BasicRule {
 	@Override
 	public abstract void execute(Facts facts) throws Exception;
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The dependencies of a composite rule are the union of the dependencies of
+	 * its composing rules, when all of them are known.
+	 */
+	@Override
+	public Set<String> getFactDependencies() {
+		final Set<String> factDependencies = new HashSet<>();
+		for (final Rule rule : rules) {
+			final Set<String> ruleDependencies = FactDependent.of(rule);
+			if (ruleDependencies == null) {
+				return null;
+			}
+			factDependencies.addAll(ruleDependencies);
+		}
+		return Collections.unmodifiableSet(factDependencies);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * A composite rule can be evaluated in parallel only when all its composing
+	 * rules can.
+	 */
+	@Override
+	public boolean isParallelizable() {
+		if (!parallelizable) {
+			return false;
+		}
+		for (final Rule rule : rules) {
+			if (!rule.isParallelizable()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Remove a rule from the composite rule.
 	 * 
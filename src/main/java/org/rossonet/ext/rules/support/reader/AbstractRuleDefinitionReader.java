@@ -56,6 +56,9 @@ public abstract class AbstractRuleDefinitionReader implements RuleDefinitionRead
 		final Integer priority = (Integer) map.get("priority");
 		ruleDefinition.setPriority(priority != null ? priority : Rule.DEFAULT_PRIORITY);
 
+		final Boolean parallelizable = (Boolean) map.get("parallelizable");
+		ruleDefinition.setParallelizable(parallelizable == null || parallelizable);
+
 		final String compositeRuleType = (String) map.get("compositeRuleType");
 
 		final String condition = (String) map.get("condition");
@@ -1,20 +1,38 @@
 package org.rossonet.rules.base;
 
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.json.JSONArray;
+import org.rossonet.ext.rules.api.CompiledRules;
 import org.rossonet.ext.rules.api.Fact;
-import org.rossonet.ext.rules.api.Facts;
 import org.rossonet.ext.rules.api.Rule;
-import org.rossonet.ext.rules.api.RuleListener;
 import org.rossonet.ext.rules.api.Rules;
 import org.rossonet.ext.rules.api.RulesEngine;
-import org.rossonet.ext.rules.api.RulesEngineListener;
+import org.rossonet.ext.rules.api.WorkingMemory;
+import org.rossonet.ext.rules.core.AbstractRulesEngine;
 import org.rossonet.ext.rules.core.DefaultRulesEngine;
+import org.rossonet.ext.rules.core.ExecutionTrace;
 import org.rossonet.ext.rules.mvel.MVELRuleFactory;
 import org.rossonet.ext.rules.support.AbstractRuleFactory;
 import org.rossonet.ext.rules.support.reader.JsonRuleDefinitionReader;
@@ -23,68 +41,243 @@ import org.rossonet.utils.TextHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Base of the rules engines firing the rules of {@link RuleProvider}s on the
+ * facts of {@link FactProvider}s.
+ *
+ * The facts of the providers are kept in a {@link WorkingMemory} across
+ * firings: {@link IncrementalFactProvider}s push their changes to it as they
+ * happen, the other providers are {@link FactProviderAdapter adapted} and
+ * compared with their previous facts before each firing. Each firing reads a
+ * snapshot of the memory, so that the facts are not copied, and the facts
+ * written by the rules are discarded at the end of the firing unless a
+ * {@link #setWorkingMemory(WorkingMemory) working memory} is set.
+ *
+ * The providers are refreshed concurrently on virtual threads, each one with a
+ * deadline, so that the firing waits at most the longest deadline instead of
+ * the sum of the refreshes. A provider late or failing keeps its last facts,
+ * reported as stale by {@link RulesContext#isStale(String)}; a late refresh
+ * still pushes its changes when it completes, and it is not started again
+ * until then. {@link #close()} cancels the pending refreshes and stops the
+ * threads of the refreshes.
+ *
+ * The rules of each provider are compiled once and kept in a cache keyed by
+ * the {@link RuleProvider#getRulesVersion() version} of the provider, or by a
+ * hash of the rules when the provider has no version, so that only the rules
+ * of the providers that changed are compiled again. When no provider changed,
+ * the {@link CompiledRules} of the previous firing are fired again.
+ */
 public abstract class AbstractBaseRulesEngine implements BaseRulesEngine {
 
-	public static final String CTX = "ctx";
-	public static final String MEM = "mem";
-	private static final String MAT = "mat";
-	private static final String RANDOM = "rand";
-	private final Set<FactProvider> factsProviders = Collections.synchronizedSet(new HashSet<>());
-	private final Set<RuleProvider> rulesProviders = Collections.synchronizedSet(new HashSet<>());
-	private RulesEngine rulesEngine;
-	private final Logger logger = LoggerFactory.getLogger(AbstractBaseRulesEngine.class);
-	private RulesEngineStatus status = RulesEngineStatus.INIT;
-	private CachedMemory cachedMemory;
-	private final AbstractRuleFactory ruleFactory;
-	private final RuleListener ruleListener = new RuleListener() {
+	/**
+	 * Rules of the last firing, merged from the compiled rules of the providers.
+	 */
+	private static final class MergedRules {
 
-		@Override
-		public void afterEvaluate(final Rule rule, final Facts facts, final boolean evaluationResult) {
-			// TODO: preparare il debug on demand
-			RuleListener.super.afterEvaluate(rule, facts, evaluationResult);
+		private final List<Rules> sources;
+		private final CompiledRules rules;
+
+		private MergedRules(final List<Rules> sources, final CompiledRules rules) {
+			this.sources = sources;
+			this.rules = rules;
 		}
 
-		@Override
-		public boolean beforeEvaluate(final Rule rule, final Facts facts) {
-			// TODO: preparare il debug on demand
-			// se false, la regola non viene eseguita
+		/**
+		 * Check whether the rules have been merged from the same compiled rules.
+		 */
+		private boolean isMergedFrom(final List<Rules> sources) {
+			if (sources.size() != this.sources.size()) {
+				return false;
+			}
+			for (int i = 0; i < sources.size(); i++) {
+				if (sources.get(i) != this.sources.get(i)) {
+					return false;
+				}
+			}
 			return true;
 		}
+	}
 
-		@Override
-		public void beforeExecute(final Rule rule, final Facts facts) {
-			// TODO: preparare il debug on demand
+	/**
+	 * Fact provider with its deadline and the state of its last refresh,
+	 * tracking the names of its facts to report them as stale.
+	 *
+	 * When several providers publish a fact with the same name, the last one
+	 * published is kept and owns the name: a provider retracting a fact removes
+	 * it only if it owns the name.
+	 */
+	private static final class ProviderState implements FactDeltaListener {
+
+		private final IncrementalFactProvider provider;
+		private final Duration timeout;
+		private final WorkingMemory providedFacts;
+		private final Map<String, ProviderState> factOwners;
+		private final Set<String> factNames = ConcurrentHashMap.newKeySet();
+		private volatile Future<?> refresh;
+		private volatile boolean stale;
+
+		private ProviderState(final IncrementalFactProvider provider, final Duration timeout,
+				final WorkingMemory providedFacts, final Map<String, ProviderState> factOwners) {
+			this.provider = provider;
+			this.timeout = timeout;
+			this.providedFacts = providedFacts;
+			this.factOwners = factOwners;
+		}
+
+		/**
+		 * Wait for the refresh of the provider until its deadline, measured from
+		 * the start of the refreshes.
+		 */
+		private void awaitRefresh(final long startNanos, final Logger logger) {
+			final Future<?> current = refresh;
+			if (current == null) {
+				return;
+			}
+			final long remainingNanos = startNanos + timeout.toNanos() - System.nanoTime();
+			try {
+				current.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+				stale = false;
+				refresh = null;
+			} catch (final TimeoutException e) {
+				stale = true;
+				logger.warn("fact provider " + provider + " not refreshed in " + timeout + ", using its last facts");
+			} catch (final ExecutionException e) {
+				stale = true;
+				refresh = null;
+				logger.warn("fact provider " + provider + " refresh fault, using its last facts"
+						+ LogHelper.stackTraceToString(e.getCause(), 5));
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stale = true;
+			}
+		}
+
+		/**
+		 * Cancel the refresh of the provider, interrupting it if running.
+		 */
+		private synchronized void cancelRefresh() {
+			final Future<?> current = refresh;
+			if (current != null) {
+				current.cancel(true);
+				refresh = null;
+			}
 		}
 
 		@Override
-		public void onEvaluationError(final Rule rule, final Facts facts, final Exception exception) {
-			// TODO: preparare il debug on demand
+		public void insert(final Fact<?> fact) {
+			factNames.add(fact.getName());
+			publish(fact);
+		}
+
+		/**
+		 * Publish a fact of the provider, which becomes the owner of its name.
+		 */
+		private void publish(final Fact<?> fact) {
+			factOwners.compute(fact.getName(), (factName, owner) -> {
+				providedFacts.publish(fact);
+				return this;
+			});
 		}
 
 		@Override
-		public void onFailure(final Rule rule, final Facts facts, final Exception exception) {
-			// TODO: preparare il debug on demand
+		public void retract(final String factName) {
+			factNames.remove(factName);
+			factOwners.computeIfPresent(factName, (name, owner) -> {
+				if (owner != this) {
+					return owner;
+				}
+				providedFacts.remove(name);
+				return null;
+			});
+		}
+
+		/**
+		 * Start the refresh of the provider, unless the previous one is still
+		 * running.
+		 */
+		private synchronized void startRefresh(final ExecutorService executor) {
+			if (refresh == null) {
+				refresh = executor.submit(provider::refresh);
+			}
 		}
 
 		@Override
-		public void onSuccess(final Rule rule, final Facts facts) {
-			// TODO: preparare il debug on demand
+		public void update(final Fact<?> fact) {
+			publish(fact);
 		}
+	}
+
+	/**
+	 * Key of the compiled rules of a provider with a version.
+	 */
+	private static final class ProviderVersion {
 
-	};
-	private final RulesEngineListener rulesEngineListener = new RulesEngineListener() {
+		private final RuleProvider provider;
+		private final long version;
+
+		private ProviderVersion(final RuleProvider provider, final long version) {
+			this.provider = provider;
+			this.version = version;
+		}
 
 		@Override
-		public void afterExecute(final Rules rules, final Facts facts) {
-			// TODO: preparare il debug on demand
+		public boolean equals(final Object object) {
+			if (!(object instanceof ProviderVersion)) {
+				return false;
+			}
+			final ProviderVersion other = (ProviderVersion) object;
+			return provider == other.provider && version == other.version;
 		}
 
 		@Override
-		public void beforeEvaluate(final Rules rules, final Facts facts) {
-			// TODO: preparare il debug on demand
+		public int hashCode() {
+			return 31 * System.identityHashCode(provider) + Long.hashCode(version);
 		}
+	}
 
-	};
+	public static final String CTX = "ctx";
+	public static final String MEM = "mem";
+	private static final String MAT = "mat";
+	private static final String RANDOM = "rand";
+	private static final int COMPILED_RULES_CACHE_SIZE = 256;
+	public static final Duration DEFAULT_FACT_PROVIDER_TIMEOUT = Duration.ofSeconds(1);
+
+	/**
+	 * Return a hash of the content of the rules.
+	 */
+	private static String contentHash(final JSONArray rules) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(digest.digest(rules.toString().getBytes(StandardCharsets.UTF_8)));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private final Map<FactProvider, ProviderState> factsProviders = Collections
+			.synchronizedMap(new LinkedHashMap<>());
+	// facts of the providers, updated by their changes
+	private final WorkingMemory providedFacts = new WorkingMemory();
+	// provider of each fact of providedFacts
+	private final Map<String, ProviderState> factOwners = new ConcurrentHashMap<>();
+	private final ExecutorService refreshExecutor = Executors
+			.newThreadPerTaskExecutor(Thread.ofVirtual().name("fact-provider-", 0).factory());
+	private volatile Duration factProviderTimeout = DEFAULT_FACT_PROVIDER_TIMEOUT;
+	private final Set<RuleProvider> rulesProviders = Collections.synchronizedSet(new HashSet<>());
+	private RulesEngine rulesEngine;
+	private final Logger logger = LoggerFactory.getLogger(AbstractBaseRulesEngine.class);
+	private RulesEngineStatus status = RulesEngineStatus.INIT;
+	private CachedMemory cachedMemory;
+	private final AbstractRuleFactory ruleFactory;
+	private boolean traceEnable;
+	private WorkingMemory workingMemory;
+	private final Cache<Object, Rules> compiledRules = Caffeine.newBuilder().maximumSize(COMPILED_RULES_CACHE_SIZE)
+			.recordStats().build();
+	private volatile MergedRules mergedRules;
 
 	public AbstractBaseRulesEngine() {
 		this(new MVELRuleFactory(new JsonRuleDefinitionReader()));
@@ -98,7 +291,22 @@ public abstract class AbstractBaseRulesEngine implements BaseRulesEngine {
 
 	@Override
 	public void addFactProvider(final FactProvider factProvider) {
-		factsProviders.add(factProvider);
+		addFactProvider(factProvider, null);
+	}
+
+	@Override
+	public void addFactProvider(final FactProvider factProvider, final Duration timeout) {
+		if (factProvider == null) {
+			return;
+		}
+		final IncrementalFactProvider incrementalFactProvider = factProvider instanceof IncrementalFactProvider
+				? (IncrementalFactProvider) factProvider
+				: new FactProviderAdapter(factProvider);
+		final ProviderState state = new ProviderState(incrementalFactProvider,
+				timeout != null ? timeout : factProviderTimeout, providedFacts, factOwners);
+		if (factsProviders.putIfAbsent(factProvider, state) == null) {
+			incrementalFactProvider.subscribe(state);
+		}
 	}
 
 	@Override
@@ -108,8 +316,8 @@ public abstract class AbstractBaseRulesEngine implements BaseRulesEngine {
 
 	@Override
 	public void clearFacts() {
-		factsProviders.clear();
-		factsProviders.add(cachedMemory);
+		removeFactProviders();
+		addFactProvider(cachedMemory);
 	}
 
 	@Override
@@ -117,8 +325,57 @@ public abstract class AbstractBaseRulesEngine implements BaseRulesEngine {
 		rulesProviders.clear();
 	}
 
-	private Rules createRules(final JSONArray rules) throws Exception {
-		final Rules outputRules = ruleFactory.createRules(new StringReader(rules.toString()));
+	@Override
+	public void close() {
+		removeFactProviders();
+		refreshExecutor.shutdownNow();
+	}
+
+	/**
+	 * Return the rules of all the providers, compiling only the rules that are
+	 * not in the cache.
+	 */
+	private CompiledRules createRules() {
+		final List<Rules> sources = new ArrayList<>();
+		for (final RuleProvider rp : rulesProviders) {
+			final long version = rp.getRulesVersion();
+			final Rules providerRules;
+			if (version >= 0) {
+				providerRules = compiledRules.get(new ProviderVersion(rp, version), key -> createRules(rp.getRules()));
+			} else {
+				final JSONArray rules = rp.getRules();
+				providerRules = rules != null ? compiledRules.get(contentHash(rules), key -> createRules(rules))
+						: null;
+			}
+			if (providerRules != null) {
+				sources.add(providerRules);
+			}
+		}
+		final MergedRules lastRules = mergedRules;
+		if (lastRules != null && lastRules.isMergedFrom(sources)) {
+			return lastRules.rules;
+		}
+		final Rules rules = new Rules();
+		for (final Rules providerRules : sources) {
+			for (final Rule rule : providerRules) {
+				rules.register(rule);
+			}
+		}
+		final CompiledRules activeRules = new CompiledRules(rules);
+		mergedRules = new MergedRules(sources, activeRules);
+		return activeRules;
+	}
+
+	private Rules createRules(final JSONArray rules) {
+		if (rules == null) {
+			return null;
+		}
+		final Rules outputRules;
+		try {
+			outputRules = ruleFactory.createRules(new StringReader(rules.toString()));
+		} catch (final Exception e) {
+			throw new IllegalArgumentException("rules not compiled", e);
+		}
 		if (outputRules != null) {
 			logger.debug(TextHelper.ANSI_GREEN + "found " + outputRules.size() + " rules" + TextHelper.ANSI_RESET);
 		} else {
@@ -128,27 +385,33 @@ public abstract class AbstractBaseRulesEngine implements BaseRulesEngine {
 	}
 
 	@Override
-	public CommandQueue fireRules() {
-		final Facts facts = new Facts();
-		for (final FactProvider fp : factsProviders) {
-			if (fp != null && fp.getFacts() != null) {
-				for (final Fact<?> f : fp.getFacts()) {
-					facts.put(f.getName(), f.getValue());
-				}
-			}
+	public List<ExecutionTrace.Entry> dumpTrace() {
+		if (rulesEngine instanceof AbstractRulesEngine) {
+			return ((AbstractRulesEngine) rulesEngine).getExecutionTrace().dump();
 		}
-		final JSONArray rules = new JSONArray();
-		for (final RuleProvider rp : rulesProviders) {
-			logger.debug("fire with " + rp.getRules().length() + " rules and " + facts.asMap().size() + " facts");
-			rules.putAll(rp.getRules());
+		return Collections.emptyList();
+	}
+
+	@Override
+	public CommandQueue fireRules() {
+		if (refreshExecutor.isShutdown()) {
+			throw new IllegalStateException("rules engine closed");
 		}
+		final Set<String> staleFacts = refreshFactProviders();
+		final WorkingMemory memory = workingMemory;
+		final WorkingMemory.Cycle facts = memory != null ? memory.begin(providedFacts) : providedFacts.begin();
+		facts.setTraceEnable(traceEnable);
 		final CommandQueue commandQueue = new CommandQueue();
 		try {
-			final Rules activeRules = createRules(rules);
-			facts.add(new Fact<>(CTX, new RulesContext(commandQueue, facts)));
-			facts.add(new Fact<>(MAT, Math.class));
-			facts.add(new Fact<>(RANDOM, ThreadLocalRandom.current()));
+			final Rules activeRules = createRules();
+			logger.debug("fire with " + activeRules.size() + " rules and " + facts.size() + " facts");
+			facts.addLocal(new Fact<>(CTX, new RulesContext(commandQueue, facts, staleFacts)));
+			facts.addLocal(new Fact<>(MAT, Math.class));
+			facts.addLocal(new Fact<>(RANDOM, ThreadLocalRandom.current()));
 			rulesEngine.fire(activeRules, facts);
+			if (memory != null) {
+				facts.commit();
+			}
 		} catch (final Exception e) {
 			logger.error(
 					TextHelper.ANSI_RED + "fire fault" + TextHelper.ANSI_RESET + LogHelper.stackTraceToString(e, 5));
@@ -161,6 +424,16 @@ public abstract class AbstractBaseRulesEngine implements BaseRulesEngine {
 		return cachedMemory;
 	}
 
+	@Override
+	public CacheStats getCompiledRulesStats() {
+		return compiledRules.stats();
+	}
+
+	@Override
+	public Duration getFactProviderTimeout() {
+		return factProviderTimeout;
+	}
+
 	public RulesEngine getRulesEngine() {
 		return rulesEngine;
 	}
@@ -170,6 +443,62 @@ public abstract class AbstractBaseRulesEngine implements BaseRulesEngine {
 		return status;
 	}
 
+	@Override
+	public WorkingMemory getWorkingMemory() {
+		return workingMemory;
+	}
+
+	@Override
+	public boolean isTraceEnable() {
+		return traceEnable;
+	}
+
+	/**
+	 * Refresh the fact providers concurrently, waiting each one until its
+	 * deadline.
+	 *
+	 * @return the names of the facts of the providers late or failing
+	 */
+	private Set<String> refreshFactProviders() {
+		final List<ProviderState> providers;
+		synchronized (factsProviders) {
+			providers = new ArrayList<>(factsProviders.values());
+		}
+		final long startNanos = System.nanoTime();
+		for (final ProviderState state : providers) {
+			state.startRefresh(refreshExecutor);
+		}
+		Set<String> staleFacts = Collections.emptySet();
+		for (final ProviderState state : providers) {
+			state.awaitRefresh(startNanos, logger);
+			if (state.stale) {
+				if (staleFacts.isEmpty()) {
+					staleFacts = new HashSet<>();
+				}
+				staleFacts.addAll(state.factNames);
+			}
+		}
+		return staleFacts;
+	}
+
+	/**
+	 * Remove the fact providers and their facts, cancelling their pending
+	 * refreshes.
+	 */
+	private void removeFactProviders() {
+		final List<ProviderState> providers;
+		synchronized (factsProviders) {
+			providers = new ArrayList<>(factsProviders.values());
+			factsProviders.clear();
+		}
+		for (final ProviderState state : providers) {
+			state.cancelRefresh();
+			state.provider.unsubscribe(state);
+		}
+		providedFacts.clear();
+		factOwners.clear();
+	}
+
 	@Override
 	public void resetAndInitialize() {
 		resetAndInitialize(new DefaultRulesEngine());
@@ -186,10 +515,29 @@ public abstract class AbstractBaseRulesEngine implements BaseRulesEngine {
 
 	@Override
 	public void setCachedMemory(final CachedMemory cachedMemory) {
-		if (factsProviders.contains(this.cachedMemory)) {
-			factsProviders.remove(cachedMemory);
+		if (this.cachedMemory != null) {
+			final ProviderState state = factsProviders.remove(this.cachedMemory);
+			if (state != null) {
+				state.cancelRefresh();
+				state.provider.unsubscribe(state);
+			}
 		}
 		this.cachedMemory = cachedMemory;
-		factsProviders.add(cachedMemory);
+		addFactProvider(cachedMemory);
+	}
+
+	@Override
+	public void setFactProviderTimeout(final Duration timeout) {
+		this.factProviderTimeout = Objects.requireNonNull(timeout, "timeout must not be null");
+	}
+
+	@Override
+	public void setTraceEnable(final boolean traceEnable) {
+		this.traceEnable = traceEnable;
+	}
+
+	@Override
+	public void setWorkingMemory(final WorkingMemory workingMemory) {
+		this.workingMemory = workingMemory;
 	}
 }
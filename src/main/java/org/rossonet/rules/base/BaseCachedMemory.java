@@ -1,14 +1,79 @@
 package org.rossonet.rules.base;
 
-import java.time.Instant;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.rossonet.ext.rules.api.Fact;
 import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.utils.LogHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class BaseCachedMemory implements CachedMemory {
+/**
+ * {@link CachedMemory} of facts valid for a time window.
+ *
+ * The facts are kept by name, saving a fact replaces the fact with the same
+ * name. The activation and the expiry of the facts are scheduled on a
+ * {@link TimerWheel}, advanced at each {@link #refresh()} and in the
+ * background when its next timer is due, so that saving, removing and
+ * refreshing do not depend on the number of facts in the memory, and an idle
+ * memory does not wake up.
+ *
+ * As an {@link IncrementalFactProvider}, the memory pushes the saved and
+ * removed facts when they change, and the facts becoming valid or expiring when
+ * their timer expires.
+ */
+public class BaseCachedMemory implements CachedMemory, IncrementalFactProvider {
+
+	/**
+	 * Policy applied when a fact is saved in a full memory.
+	 */
+	public enum EvictionPolicy {
+		/**
+		 * Remove the fact saved first.
+		 */
+		OLDEST,
+		/**
+		 * Reject the new fact with an {@link IllegalStateException}.
+		 */
+		REJECT
+	}
+
+	/**
+	 * Background wake-up of a memory, not keeping the memory from being garbage
+	 * collected.
+	 */
+	private static final class ExpiryTask implements Runnable {
+
+		private final WeakReference<BaseCachedMemory> memory;
+
+		private ExpiryTask(final BaseCachedMemory memory) {
+			this.memory = new WeakReference<>(memory);
+		}
+
+		@Override
+		public void run() {
+			final BaseCachedMemory cachedMemory = memory.get();
+			if (cachedMemory == null) {
+				return;
+			}
+			try {
+				cachedMemory.wakeUp();
+			} catch (final RuntimeException e) {
+				logger.error("expiry fault" + LogHelper.stackTraceToString(e, 5));
+			}
+		}
+	}
 
 	public class TimerCachedMemory {
 
@@ -20,19 +85,41 @@ public class BaseCachedMemory implements CachedMemory {
 
 		private final long createdAt;
 
+		// pending activation or expiry, guarded by the memory
+		private TimerWheel.Timer<TimerCachedMemory> timer;
+
 		public TimerCachedMemory(final String name, final long validDelayMs, final long validUntilMs,
 				final Fact<?> fact) {
+			this(name, validDelayMs, validUntilMs, fact, now());
+		}
+
+		TimerCachedMemory(final String name, final long validDelayMs, final long validUntilMs, final Fact<?> fact,
+				final long createdAt) {
 			this.name = name;
 			this.validDelayMs = validDelayMs;
 			this.validUntilMs = validUntilMs;
 			this.fact = fact;
-			this.createdAt = Instant.now().toEpochMilli();
+			this.createdAt = createdAt;
+		}
+
+		/**
+		 * Return the time the fact becomes valid.
+		 */
+		private long getActivationTime() {
+			return validDelayMs != -1 ? createdAt + validDelayMs : createdAt;
 		}
 
 		public long getCreatedAt() {
 			return createdAt;
 		}
 
+		/**
+		 * Return the first time the fact is expired.
+		 */
+		private long getExpiryTime() {
+			return validUntilMs > Long.MAX_VALUE - createdAt - 1 ? Long.MAX_VALUE : createdAt + validUntilMs + 1;
+		}
+
 		public Fact<?> getFact() {
 			return fact;
 		}
@@ -50,21 +137,19 @@ public class BaseCachedMemory implements CachedMemory {
 		}
 
 		public boolean isExpired() {
-			if (validUntilMs != -1 && createdAt + validUntilMs < Instant.now().toEpochMilli()) {
-				return true;
-			} else {
-				return false;
-			}
+			return isExpired(now());
+		}
+
+		private boolean isExpired(final long time) {
+			return validUntilMs != -1 && time >= getExpiryTime();
+		}
+
+		private boolean isValid(final long time) {
+			return time >= getActivationTime() && !isExpired(time);
 		}
 
 		public boolean isValidNow() {
-			if (validDelayMs != -1 && createdAt + validDelayMs > Instant.now().toEpochMilli()) {
-				return false;
-			}
-			if (isExpired()) {
-				return false;
-			}
-			return true;
+			return isValid(now());
 		}
 
 		@Override
@@ -93,70 +178,306 @@ public class BaseCachedMemory implements CachedMemory {
 
 	}
 
-	private final List<TimerCachedMemory> factsMemory = Collections.synchronizedList(new ArrayList<>());
+	private static final Logger logger = LoggerFactory.getLogger(BaseCachedMemory.class);
+	private static final ScheduledExecutorService expiryScheduler = Executors
+			.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("cached-memory-expiry").daemon().factory());
+	private static final int TO_STRING_MAX_FACTS = 20;
+
+	/**
+	 * Return the time of the clock of the facts.
+	 */
+	static long now() {
+		return Fact.getClock().getAsLong();
+	}
+
+	// facts by name, in the order they have been saved, guarded by this
+	private final Map<String, TimerCachedMemory> factsMemory = new LinkedHashMap<>();
+	private final TimerWheel<TimerCachedMemory> timers = new TimerWheel<>(now());
+	private final int maximumSize;
+	private final EvictionPolicy evictionPolicy;
+	private final ExpiryTask expiryTask = new ExpiryTask(this);
+	private final Fact<BaseCachedMemory> cachedMemoryFact = new Fact<>(AbstractBaseRulesEngine.MEM, this);
+	private final List<FactDeltaListener> listeners = new ArrayList<>();
+	// valid facts, pushed to the listeners, by name
+	private final Map<String, Fact<?>> published = new ConcurrentHashMap<>();
+	// next background wake-up, guarded by this
+	private ScheduledFuture<?> wakeUp;
+	private long wakeUpTime = Long.MAX_VALUE;
+	private boolean closed;
+
+	public BaseCachedMemory() {
+		this(0, EvictionPolicy.OLDEST);
+	}
+
+	/**
+	 * @param maximumSize    maximum number of facts in the memory, valid or not,
+	 *                       0 for no limit
+	 * @param evictionPolicy policy applied when a fact is saved in a full memory
+	 */
+	public BaseCachedMemory(final int maximumSize, final EvictionPolicy evictionPolicy) {
+		if (maximumSize < 0) {
+			throw new IllegalArgumentException("maximumSize must not be negative");
+		}
+		this.maximumSize = maximumSize;
+		this.evictionPolicy = Objects.requireNonNull(evictionPolicy, "evictionPolicy must not be null");
+	}
+
+	private void cancelTimer(final TimerCachedMemory memoryFact) {
+		if (memoryFact.timer != null) {
+			timers.cancel(memoryFact.timer);
+			memoryFact.timer = null;
+		}
+	}
 
-	public void clear() {
+	public synchronized void clear() {
+		for (final TimerCachedMemory memoryFact : factsMemory.values()) {
+			cancelTimer(memoryFact);
+		}
 		factsMemory.clear();
+		for (final String name : new ArrayList<>(published.keySet())) {
+			push(name, null);
+		}
+		cleared();
+		scheduleWakeUp();
+	}
+
+	/**
+	 * Called after the memory has been cleared, under the lock of the memory.
+	 */
+	void cleared() {
 	}
 
 	@Override
 	public void close() throws Exception {
-		factsMemory.clear();
+		synchronized (this) {
+			closed = true;
+		}
+		clear();
+	}
 
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
 	}
 
 	@Override
 	public Facts getFacts() {
 		final Facts reply = new Facts();
-		final List<TimerCachedMemory> toDelete = new ArrayList<>();
-		for (final TimerCachedMemory memoryFact : factsMemory) {
-			if (memoryFact.isValidNow()) {
-				reply.add(memoryFact.getFact());
-			}
-			if (memoryFact.isExpired()) {
-				toDelete.add(memoryFact);
-			}
-		}
-		reply.add(new Fact<BaseCachedMemory>(AbstractBaseRulesEngine.MEM, this));
-		for (final TimerCachedMemory expiredFact : toDelete) {
-			factsMemory.remove(expiredFact);
+		for (final Fact<?> fact : published.values()) {
+			reply.add(fact);
 		}
+		reply.add(cachedMemoryFact);
 		return reply;
 	}
 
-	public void remove(final String factName) {
-		TimerCachedMemory toDelete = null;
-		for (final TimerCachedMemory f : factsMemory) {
-			if (f.getName().equals(factName)) {
-				toDelete = f;
-				break;
+	/**
+	 * Return the facts of the memory, valid or not, in the order they have been
+	 * saved.
+	 */
+	synchronized List<TimerCachedMemory> getMemoryFacts() {
+		return new ArrayList<>(factsMemory.values());
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Return the time the memory must be refreshed next in the background, under
+	 * the lock of the memory.
+	 *
+	 * @return the time, {@link Long#MAX_VALUE} if there is nothing to do
+	 */
+	long getNextWakeUpTime() {
+		return timers.nextDeadline();
+	}
+
+	private void push(final String name, final Fact<?> fact) {
+		final Fact<?> previous = fact != null ? published.put(name, fact) : published.remove(name);
+		if (previous == fact) {
+			return;
+		}
+		for (final FactDeltaListener listener : listeners) {
+			if (fact == null) {
+				listener.retract(name);
+			} else if (previous == null) {
+				listener.insert(fact);
+			} else {
+				listener.update(fact);
 			}
 		}
-		if (toDelete != null) {
-			factsMemory.remove(toDelete);
+	}
+
+	@Override
+	public synchronized void refresh() {
+		final long now = now();
+		timers.advance(now, memoryFact -> {
+			memoryFact.timer = null;
+			update(memoryFact, now);
+		});
+	}
+
+	public synchronized void remove(final String factName) {
+		final TimerCachedMemory memoryFact = factsMemory.remove(factName);
+		if (memoryFact != null) {
+			cancelTimer(memoryFact);
+			push(factName, null);
+			removed(factName);
+			scheduleWakeUp();
+		}
+	}
+
+	/**
+	 * Called after a fact has been removed or evicted, under the lock of the
+	 * memory.
+	 *
+	 * @param factName name of the fact removed
+	 */
+	void removed(final String factName) {
+	}
+
+	/**
+	 * Restore a fact saved at the given time, for instance by a previous run of
+	 * the application. The maximum size of the memory is not applied.
+	 */
+	synchronized <F extends Object> void restore(final String name, final F payload, final long createdAt,
+			final long validDelayMs, final long validUntilMs) {
+		final TimerCachedMemory previous = factsMemory.remove(name);
+		if (previous != null) {
+			cancelTimer(previous);
 		}
+		final TimerCachedMemory memoryFact = new TimerCachedMemory(name, validDelayMs, validUntilMs,
+				new Fact<F>(name, payload, createdAt), createdAt);
+		factsMemory.put(name, memoryFact);
+		update(memoryFact, now());
+		scheduleWakeUp();
 	}
 
 	public <F extends Object> void save(final String name, final F payload) {
 		save(name, payload, -1, -1);
 	}
 
-	public <F extends Object> void save(final String name, final F payload, final long validDelayMs,
+	public synchronized <F extends Object> void save(final String name, final F payload, final long validDelayMs,
 			final long validUntilMs) {
-		factsMemory.add(new TimerCachedMemory(name, validDelayMs, validUntilMs, new Fact<F>(name, payload)));
+		final TimerCachedMemory previous = factsMemory.remove(name);
+		if (previous != null) {
+			cancelTimer(previous);
+		} else if (maximumSize > 0 && factsMemory.size() >= maximumSize) {
+			if (evictionPolicy == EvictionPolicy.REJECT) {
+				throw new IllegalStateException("cached memory full with " + maximumSize + " facts, " + name
+						+ " not saved");
+			}
+			final Iterator<TimerCachedMemory> oldest = factsMemory.values().iterator();
+			final TimerCachedMemory evicted = oldest.next();
+			oldest.remove();
+			cancelTimer(evicted);
+			push(evicted.getName(), null);
+			removed(evicted.getName());
+		}
+		final long now = now();
+		final TimerCachedMemory memoryFact = new TimerCachedMemory(name, validDelayMs, validUntilMs,
+				new Fact<F>(name, payload, now), now);
+		factsMemory.put(name, memoryFact);
+		update(memoryFact, now);
+		saved(memoryFact);
+		scheduleWakeUp();
+	}
+
+	/**
+	 * Called after a fact has been saved, under the lock of the memory.
+	 *
+	 * @param memoryFact the fact saved
+	 */
+	void saved(final TimerCachedMemory memoryFact) {
+	}
+
+	/**
+	 * Schedule the background refresh at the next time the memory has something
+	 * to do, cancelling it when there is nothing to do. A wake-up already
+	 * scheduled earlier is kept, since an early refresh is harmless.
+	 */
+	private void scheduleWakeUp() {
+		final long time = closed ? Long.MAX_VALUE : getNextWakeUpTime();
+		if (time != Long.MAX_VALUE && time >= wakeUpTime) {
+			return;
+		}
+		if (wakeUp != null) {
+			wakeUp.cancel(false);
+			wakeUp = null;
+		}
+		wakeUpTime = time;
+		if (time != Long.MAX_VALUE) {
+			wakeUp = expiryScheduler.schedule(expiryTask, Math.max(0, time - now()), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public synchronized int size() {
+		return factsMemory.size();
 	}
 
 	@Override
-	public String toString() {
-		final int maxLen = 20;
+	public synchronized void subscribe(final FactDeltaListener listener) {
+		listeners.add(listener);
+		listener.insert(cachedMemoryFact);
+		for (final Fact<?> fact : published.values()) {
+			listener.insert(fact);
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
 		final StringBuilder builder = new StringBuilder();
 		builder.append("CachedMemory [");
-		if (factsMemory != null) {
-			builder.append("factsMemory=");
-			builder.append(factsMemory.subList(0, Math.min(factsMemory.size(), maxLen)));
+		builder.append("factsMemory=");
+		final List<TimerCachedMemory> memoryFacts = new ArrayList<>();
+		for (final TimerCachedMemory memoryFact : factsMemory.values()) {
+			if (memoryFacts.size() == TO_STRING_MAX_FACTS) {
+				break;
+			}
+			memoryFacts.add(memoryFact);
 		}
+		builder.append(memoryFacts);
 		builder.append("]");
 		return builder.toString();
 	}
 
+	@Override
+	public synchronized void unsubscribe(final FactDeltaListener listener) {
+		if (listeners.remove(listener)) {
+			for (final String name : published.keySet()) {
+				listener.retract(name);
+			}
+			listener.retract(cachedMemoryFact.getName());
+		}
+	}
+
+	/**
+	 * Publish a fact according to its validity at the given time, and schedule
+	 * its next activation or expiry. An expired fact is removed.
+	 */
+	private void update(final TimerCachedMemory memoryFact, final long time) {
+		final String name = memoryFact.getName();
+		if (memoryFact.isExpired(time)) {
+			factsMemory.remove(name);
+			push(name, null);
+		} else if (memoryFact.isValid(time)) {
+			push(name, memoryFact.getFact());
+			if (memoryFact.getValidUntilMs() != -1) {
+				memoryFact.timer = timers.schedule(memoryFact, memoryFact.getExpiryTime());
+			}
+		} else {
+			push(name, null);
+			memoryFact.timer = timers.schedule(memoryFact, memoryFact.getActivationTime());
+		}
+	}
+
+	/**
+	 * Refresh the memory from the background, then schedule the next wake-up.
+	 */
+	private synchronized void wakeUp() {
+		wakeUp = null;
+		wakeUpTime = Long.MAX_VALUE;
+		refresh();
+		scheduleWakeUp();
+	}
+
 }
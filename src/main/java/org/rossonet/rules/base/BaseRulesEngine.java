@@ -1,31 +1,123 @@
 package org.rossonet.rules.base;
 
+import java.time.Duration;
+import java.util.List;
+
 import org.rossonet.ext.rules.api.RulesEngine;
+import org.rossonet.ext.rules.api.WorkingMemory;
+import org.rossonet.ext.rules.core.ExecutionTrace;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
-public interface BaseRulesEngine {
+public interface BaseRulesEngine extends AutoCloseable {
 
 	enum RulesEngineStatus {
 		INIT, ACTIVE, FAULTED
 	}
 
+	/**
+	 * Add a provider of facts. The facts of an {@link IncrementalFactProvider}
+	 * are updated with its changes, the facts of the other providers are
+	 * compared with their previous facts before each firing.
+	 *
+	 * @param factProvider the provider to add
+	 */
 	public void addFactProvider(FactProvider factProvider);
 
+	/**
+	 * Add a provider of facts with its own deadline. The providers are refreshed
+	 * concurrently before each firing: a provider not refreshed within its
+	 * deadline, or failing, keeps its last facts, which are reported as stale by
+	 * the {@link RulesContext} of the firing.
+	 *
+	 * @param factProvider the provider to add
+	 * @param timeout      the deadline of the refresh of the provider
+	 */
+	public void addFactProvider(FactProvider factProvider, Duration timeout);
+
 	public void addRulesProvider(RuleProvider ruleProvider);
 
 	void clearFacts();
 
 	void clearRules();
 
+	/**
+	 * Remove the fact providers, cancelling their pending refreshes, and stop the
+	 * threads refreshing them. The rules engine cannot fire the rules anymore.
+	 */
+	@Override
+	void close();
+
+	/**
+	 * Get the entries recorded by the execution trace of the rules engine, from
+	 * the oldest to the newest.
+	 *
+	 * @return the entries of the trace, empty if the rules engine has no trace
+	 */
+	List<ExecutionTrace.Entry> dumpTrace();
+
 	public CommandQueue fireRules();
 
 	CachedMemory getCachedMemory();
 
+	/**
+	 * Get the statistics of the cache of the compiled rules: hits and misses,
+	 * and the time spent compiling the rules of the providers as load time.
+	 *
+	 * @return the statistics of the cache
+	 */
+	CacheStats getCompiledRulesStats();
+
+	/**
+	 * Get the deadline of the refresh of the fact providers added without their
+	 * own deadline.
+	 *
+	 * @return the default deadline
+	 */
+	Duration getFactProviderTimeout();
+
 	public RulesEngineStatus getStatus();
 
+	/**
+	 * Get the working memory the rules are fired on, if any.
+	 *
+	 * @return the working memory, null if the facts are collected from the fact
+	 *         providers only
+	 */
+	WorkingMemory getWorkingMemory();
+
+	boolean isTraceEnable();
+
 	void resetAndInitialize();
 
 	void resetAndInitialize(RulesEngine ruleEngine);
 
 	void setCachedMemory(CachedMemory cachedMemory);
 
+	/**
+	 * Set the deadline of the refresh of the fact providers added without their
+	 * own deadline.
+	 *
+	 * @param timeout the default deadline
+	 */
+	void setFactProviderTimeout(Duration timeout);
+
+	/**
+	 * Enable the execution trace of the rules engine for the next firings.
+	 *
+	 * @param traceEnable true to record the firings in the trace
+	 */
+	void setTraceEnable(boolean traceEnable);
+
+	/**
+	 * Fire the rules on a concurrent working memory: each firing reads a
+	 * snapshot of the memory, with the facts of the fact providers layered on it
+	 * for the firing only, and the facts written by the rules are committed to
+	 * the memory at the end of the firing.
+	 *
+	 * @param workingMemory the working memory, null to fire the rules on the
+	 *                      facts of the fact providers only
+	 */
+	void setWorkingMemory(WorkingMemory workingMemory);
+
 }
@@ -0,0 +1,256 @@
+package org.rossonet.rules.base;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Sliding window over a stream of numeric events, keeping the aggregates of the
+ * events of the last period of time or the last events.
+ *
+ * Events are kept in primitive ring buffers, not as facts. Sum and count are
+ * updated on each event and eviction, minimum and maximum with monotonic
+ * queues, so that adding an event costs O(1) amortized. Aggregates are exposed
+ * through an immutable {@link WindowAggregates} snapshot, computed again only
+ * when the window changes.
+ */
+public class EventWindow {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Create a window over the last events.
+	 *
+	 * @param size number of events in the window
+	 * @return the window
+	 */
+	public static EventWindow ofCount(final int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("size must be at least 1");
+		}
+		return new EventWindow(size, -1, Clock.systemUTC());
+	}
+
+	/**
+	 * Create a window over the events of the last period of time.
+	 *
+	 * @param duration of the window
+	 * @return the window
+	 */
+	public static EventWindow ofTime(final Duration duration) {
+		return ofTime(duration, Clock.systemUTC());
+	}
+
+	/**
+	 * Create a window over the events of the last period of time.
+	 *
+	 * @param duration of the window
+	 * @param clock    giving the time of the events added without timestamp and
+	 *                 of the evictions
+	 * @return the window
+	 */
+	public static EventWindow ofTime(final Duration duration, final Clock clock) {
+		Objects.requireNonNull(duration, "duration must not be null");
+		if (duration.isNegative() || duration.isZero()) {
+			throw new IllegalArgumentException("duration must be positive");
+		}
+		Objects.requireNonNull(clock, "clock must not be null");
+		return new EventWindow(Integer.MAX_VALUE, duration.toMillis(), clock);
+	}
+
+	private final int size;
+	private final long durationMs;
+	private final Clock clock;
+	// events from sequence head (oldest) to tail (excluded), at index sequence & mask
+	private long[] timestamps = new long[INITIAL_CAPACITY];
+	private double[] values = new double[INITIAL_CAPACITY];
+	private int mask = INITIAL_CAPACITY - 1;
+	private long head;
+	private long tail;
+	private double sum;
+	// newest timestamp added since the last clear, the reference of the evictions
+	private long newestTimestamp = Long.MIN_VALUE;
+	// sequences of the candidate minimums and maximums, from minHead to minTail
+	// and from maxHead to maxTail, at index sequence & mask
+	private long[] minQueue = new long[INITIAL_CAPACITY];
+	private long minHead;
+	private long minTail;
+	private long[] maxQueue = new long[INITIAL_CAPACITY];
+	private long maxHead;
+	private long maxTail;
+	private WindowAggregates snapshot;
+
+	private EventWindow(final int size, final long durationMs, final Clock clock) {
+		this.size = size;
+		this.durationMs = durationMs;
+		this.clock = clock;
+	}
+
+	/**
+	 * Add an event at the current time of the clock of the window.
+	 *
+	 * @param value of the event
+	 * @return true if the event has been added, see {@link #add(long, double)}
+	 */
+	public boolean add(final double value) {
+		return add(clock.millis(), value);
+	}
+
+	/**
+	 * Add an event. Events are expected in timestamp order: an event older than
+	 * the newest event of the window is evicted with it, and an event already
+	 * out of a time window, older than the newest event by the duration of the
+	 * window or more, is dropped.
+	 *
+	 * @param timestamp of the event in milliseconds since the epoch
+	 * @param value     of the event
+	 * @return true if the event has been added, false if it has been dropped
+	 */
+	public synchronized boolean add(final long timestamp, final double value) {
+		if (Double.isNaN(value)) {
+			throw new IllegalArgumentException("value must be a number");
+		}
+		if (durationMs >= 0 && newestTimestamp != Long.MIN_VALUE && timestamp <= newestTimestamp - durationMs) {
+			return false;
+		}
+		newestTimestamp = Math.max(newestTimestamp, timestamp);
+		if (tail - head == timestamps.length) {
+			grow();
+		}
+		final int index = (int) (tail & mask);
+		timestamps[index] = timestamp;
+		values[index] = value;
+		sum += value;
+		while (minTail > minHead && values[(int) (minQueue[(int) ((minTail - 1) & mask)] & mask)] >= value) {
+			minTail--;
+		}
+		minQueue[(int) (minTail++ & mask)] = tail;
+		while (maxTail > maxHead && values[(int) (maxQueue[(int) ((maxTail - 1) & mask)] & mask)] <= value) {
+			maxTail--;
+		}
+		maxQueue[(int) (maxTail++ & mask)] = tail;
+		tail++;
+		if (tail - head > size) {
+			evictOldest();
+		}
+		if (durationMs >= 0) {
+			evict(newestTimestamp);
+		}
+		snapshot = null;
+		return true;
+	}
+
+	/**
+	 * Remove all the events.
+	 */
+	public synchronized void clear() {
+		head = tail;
+		minHead = minTail;
+		maxHead = maxTail;
+		sum = 0;
+		newestTimestamp = Long.MIN_VALUE;
+		snapshot = null;
+	}
+
+	private void evict(final long now) {
+		final long oldest = now - durationMs;
+		while (head < tail && timestamps[(int) (head & mask)] <= oldest) {
+			evictOldest();
+		}
+	}
+
+	private void evictOldest() {
+		sum -= values[(int) (head & mask)];
+		if (minQueue[(int) (minHead & mask)] == head) {
+			minHead++;
+		}
+		if (maxQueue[(int) (maxHead & mask)] == head) {
+			maxHead++;
+		}
+		head++;
+		if (head == tail) {
+			// avoid accumulating rounding errors between bursts of events
+			sum = 0;
+		}
+		snapshot = null;
+	}
+
+	/**
+	 * Return the aggregates of the events in the window, evicting first the
+	 * events older than the duration of a time window.
+	 *
+	 * @return the aggregates of the window
+	 */
+	public synchronized WindowAggregates getAggregates() {
+		if (durationMs >= 0) {
+			evict(clock.millis());
+		}
+		if (snapshot == null) {
+			final int count = (int) (tail - head);
+			final double[] windowValues = new double[count];
+			for (int i = 0; i < count; i++) {
+				windowValues[i] = values[(int) ((head + i) & mask)];
+			}
+			snapshot = count == 0 ? new WindowAggregates(windowValues, 0, 0, 0)
+					: new WindowAggregates(windowValues, sum, values[(int) (minQueue[(int) (minHead & mask)] & mask)],
+							values[(int) (maxQueue[(int) (maxHead & mask)] & mask)]);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return the duration of a time window, null for a count window
+	 */
+	public Duration getDuration() {
+		return durationMs < 0 ? null : Duration.ofMillis(durationMs);
+	}
+
+	/**
+	 * @return the number of events of a count window, {@link Integer#MAX_VALUE}
+	 *         for a time window
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	private void grow() {
+		final int capacity = timestamps.length * 2;
+		final long[] newTimestamps = new long[capacity];
+		final double[] newValues = new double[capacity];
+		for (long sequence = head; sequence < tail; sequence++) {
+			newTimestamps[(int) (sequence & (capacity - 1))] = timestamps[(int) (sequence & mask)];
+			newValues[(int) (sequence & (capacity - 1))] = values[(int) (sequence & mask)];
+		}
+		minQueue = grow(minQueue, minHead, minTail, capacity);
+		maxQueue = grow(maxQueue, maxHead, maxTail, capacity);
+		timestamps = newTimestamps;
+		values = newValues;
+		mask = capacity - 1;
+	}
+
+	private long[] grow(final long[] queue, final long queueHead, final long queueTail, final int capacity) {
+		final long[] newQueue = new long[capacity];
+		for (long position = queueHead; position < queueTail; position++) {
+			newQueue[(int) (position & (capacity - 1))] = queue[(int) (position & mask)];
+		}
+		return newQueue;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("EventWindow [");
+		if (durationMs >= 0) {
+			builder.append("duration=");
+			builder.append(Duration.ofMillis(durationMs));
+		} else {
+			builder.append("size=");
+			builder.append(size);
+		}
+		builder.append(", aggregates=");
+		builder.append(getAggregates());
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.rossonet.rules.base;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.Facts;
+
+/**
+ * {@link FactProvider} of named {@link EventWindow}s, exposing the
+ * {@link WindowAggregates} of each window as a fact named after the window.
+ *
+ * Events are added from any thread, for instance by the sensor drivers, and
+ * the aggregates are read by the rules at each firing, directly by fact name or
+ * with {@link RulesContext#getWindow(String)}.
+ */
+public class EventWindows implements FactProvider {
+
+	private final Map<String, EventWindow> windows = new ConcurrentHashMap<>();
+
+	/**
+	 * Add an event to a window.
+	 *
+	 * @param name  of the window
+	 * @param value of the event
+	 * @return true if the event has been added, see
+	 *         {@link EventWindow#add(long, double)}
+	 * @throws IllegalArgumentException if the window is not registered
+	 */
+	public boolean add(final String name, final double value) {
+		return getWindow(name).add(value);
+	}
+
+	/**
+	 * Add an event to a window.
+	 *
+	 * @param name      of the window
+	 * @param timestamp of the event in milliseconds since the epoch
+	 * @param value     of the event
+	 * @return true if the event has been added, false if it is already out of
+	 *         the time window
+	 * @throws IllegalArgumentException if the window is not registered
+	 */
+	public boolean add(final String name, final long timestamp, final double value) {
+		return getWindow(name).add(timestamp, value);
+	}
+
+	public void clear() {
+		windows.clear();
+	}
+
+	@Override
+	public Facts getFacts() {
+		final Facts facts = new Facts();
+		for (final Map.Entry<String, EventWindow> window : windows.entrySet()) {
+			facts.add(new Fact<>(window.getKey(), window.getValue().getAggregates()));
+		}
+		return facts;
+	}
+
+	public EventWindow getWindow(final String name) {
+		final EventWindow window = windows.get(name);
+		if (window == null) {
+			throw new IllegalArgumentException("window " + name + " not found");
+		}
+		return window;
+	}
+
+	/**
+	 * Register a window, replacing the window with the same name.
+	 *
+	 * @param name   of the window and of its fact
+	 * @param window to register
+	 * @return the registered window
+	 */
+	public EventWindow register(final String name, final EventWindow window) {
+		windows.put(name, window);
+		return window;
+	}
+
+	public void remove(final String name) {
+		windows.remove(name);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("EventWindows [");
+		builder.append("windows=");
+		builder.append(windows.keySet());
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
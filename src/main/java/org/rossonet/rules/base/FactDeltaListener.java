@@ -0,0 +1,33 @@
+package org.rossonet.rules.base;
+
+import org.rossonet.ext.rules.api.Fact;
+
+/**
+ * Receiver of the changes of the facts of an {@link IncrementalFactProvider}.
+ *
+ * Methods can be called from any thread.
+ */
+public interface FactDeltaListener {
+
+	/**
+	 * A fact has been added.
+	 *
+	 * @param fact the new fact
+	 */
+	public void insert(Fact<?> fact);
+
+	/**
+	 * A fact has been removed.
+	 *
+	 * @param factName name of the removed fact
+	 */
+	public void retract(String factName);
+
+	/**
+	 * A fact has been replaced by a fact with the same name.
+	 *
+	 * @param fact the new fact
+	 */
+	public void update(Fact<?> fact);
+
+}
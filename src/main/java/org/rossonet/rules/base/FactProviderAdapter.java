@@ -0,0 +1,104 @@
+package org.rossonet.rules.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.Facts;
+
+/**
+ * {@link IncrementalFactProvider} of the facts of a pull-style
+ * {@link FactProvider}.
+ *
+ * At each {@link #refresh()} the facts of the provider are compared with the
+ * ones of the previous refresh, by name and value, and only the differences are
+ * pushed. The facts are read out of the lock of the adapter, so that a
+ * provider blocking on I/O does not block the subscriptions.
+ */
+public class FactProviderAdapter implements IncrementalFactProvider {
+
+	private final FactProvider factProvider;
+	private final List<FactDeltaListener> listeners = new ArrayList<>();
+	private final Map<String, Fact<?>> published = new HashMap<>();
+
+	public FactProviderAdapter(final FactProvider factProvider) {
+		this.factProvider = Objects.requireNonNull(factProvider, "factProvider must not be null");
+	}
+
+	public FactProvider getFactProvider() {
+		return factProvider;
+	}
+
+	@Override
+	public Facts getFacts() {
+		return factProvider.getFacts();
+	}
+
+	@Override
+	public void refresh() {
+		final Facts facts = factProvider.getFacts();
+		synchronized (this) {
+			update(facts);
+		}
+	}
+
+	@Override
+	public synchronized void subscribe(final FactDeltaListener listener) {
+		listeners.add(listener);
+		for (final Fact<?> fact : published.values()) {
+			listener.insert(fact);
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("FactProviderAdapter [");
+		builder.append("factProvider=");
+		builder.append(factProvider);
+		builder.append("]");
+		return builder.toString();
+	}
+
+	@Override
+	public synchronized void unsubscribe(final FactDeltaListener listener) {
+		if (listeners.remove(listener)) {
+			for (final String name : published.keySet()) {
+				listener.retract(name);
+			}
+		}
+	}
+
+	private void update(final Facts facts) {
+		final Iterator<Map.Entry<String, Fact<?>>> iterator = published.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final String name = iterator.next().getKey();
+			if (facts == null || !facts.has(name)) {
+				iterator.remove();
+				for (final FactDeltaListener listener : listeners) {
+					listener.retract(name);
+				}
+			}
+		}
+		if (facts == null) {
+			return;
+		}
+		for (final Fact<?> fact : facts) {
+			final Fact<?> previous = published.put(fact.getName(), fact);
+			if (previous == null) {
+				for (final FactDeltaListener listener : listeners) {
+					listener.insert(fact);
+				}
+			} else if (previous != fact && !Objects.equals(previous.getValue(), fact.getValue())) {
+				for (final FactDeltaListener listener : listeners) {
+					listener.update(fact);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.rossonet.rules.base;
+
+/**
+ * {@link FactProvider} pushing the changes of its facts, so that the rules
+ * engine keeps the facts in a working memory across firings and applies only
+ * the changes, instead of copying all the facts at each firing.
+ *
+ * Pull-style providers are adapted by {@link FactProviderAdapter}.
+ */
+public interface IncrementalFactProvider extends FactProvider {
+
+	/**
+	 * Push the changes that cannot be pushed when they happen, for instance the
+	 * facts becoming valid or expiring with time. Called by the rules engine
+	 * before each firing, from a thread of its own and with a deadline: a
+	 * refresh blocking on I/O should not hold the locks needed by
+	 * {@link #subscribe(FactDeltaListener)} and
+	 * {@link #unsubscribe(FactDeltaListener)}.
+	 */
+	public default void refresh() {
+	}
+
+	/**
+	 * Start pushing the changes of the facts to a listener: all the current facts
+	 * are inserted, then the changes are pushed as they happen.
+	 *
+	 * @param listener to push the changes to
+	 */
+	public void subscribe(FactDeltaListener listener);
+
+	/**
+	 * Stop pushing the changes of the facts to a listener, after retracting all
+	 * the current facts from it.
+	 *
+	 * @param listener to stop pushing the changes to
+	 */
+	public void unsubscribe(FactDeltaListener listener);
+
+}
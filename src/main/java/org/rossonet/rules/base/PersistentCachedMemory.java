@@ -0,0 +1,254 @@
+package org.rossonet.rules.base;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.rossonet.utils.LogHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link BaseCachedMemory} persisting its facts in a directory, so that they
+ * survive a restart of the application.
+ *
+ * The saves and the removals are appended to a memory-mapped log, compacted
+ * in a snapshot of the facts when a segment of the log is full. At startup the
+ * facts are restored from the last snapshot and the records following it: the
+ * validity windows are relative to the time the facts have been saved, so the
+ * facts expired while the application was down are not restored.
+ *
+ * The values of the facts are serialized by a {@link ValueCodec}. The time the
+ * records are written to the storage device is set by the {@link SyncPolicy}:
+ * the records written to the log survive a crash of the application in any
+ * case, the policy sets what can be lost in a crash of the system.
+ */
+public class PersistentCachedMemory extends BaseCachedMemory {
+
+	/**
+	 * Policy writing the log to the storage device.
+	 */
+	public enum SyncPolicy {
+		/**
+		 * Write each change before returning, the slowest.
+		 */
+		ALWAYS,
+		/**
+		 * Write the changes at most a sync period after they happen, in the
+		 * background.
+		 */
+		PERIODIC,
+		/**
+		 * Leave it to the operating system, writing the changes only when the log
+		 * is compacted or closed.
+		 */
+		NEVER
+	}
+
+	public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+	public static final long DEFAULT_SYNC_PERIOD_MS = 1000;
+
+	private static final Logger logger = LoggerFactory.getLogger(PersistentCachedMemory.class);
+
+	private final Path directory;
+	private final ValueCodec codec;
+	private final SyncPolicy syncPolicy;
+	private final long syncPeriodMs;
+	// null while the facts are restored and after the memory is closed
+	private SegmentLog log;
+	// value of the fact being saved, encoded before changing the memory
+	private byte[] savingValue;
+	private long lastSync;
+	// records appended since the last sync, to write with the PERIODIC policy
+	private boolean unsynced;
+
+	/**
+	 * Create a memory with the facts persisted in a directory, with the values
+	 * serialized by the Java serialization and the changes written every
+	 * {@link #DEFAULT_SYNC_PERIOD_MS} milliseconds.
+	 *
+	 * @param directory directory of the log, created if missing
+	 * @throws IOException if the log cannot be read or written
+	 */
+	public PersistentCachedMemory(final Path directory) throws IOException {
+		this(directory, new SerializableValueCodec(), SyncPolicy.PERIODIC, DEFAULT_SYNC_PERIOD_MS,
+				DEFAULT_SEGMENT_SIZE, 0, EvictionPolicy.OLDEST);
+	}
+
+	/**
+	 * @param directory      directory of the log, created if missing
+	 * @param codec          serialization of the values of the facts
+	 * @param syncPolicy     policy writing the log to the storage device
+	 * @param syncPeriodMs   period in milliseconds of the writes of the
+	 *                       {@link SyncPolicy#PERIODIC} policy
+	 * @param segmentSize    size in bytes of the segments of the log, larger
+	 *                       segments are compacted less often
+	 * @param maximumSize    maximum number of facts in the memory, valid or not,
+	 *                       0 for no limit
+	 * @param evictionPolicy policy applied when a fact is saved in a full memory
+	 * @throws IOException if the log cannot be read or written
+	 */
+	public PersistentCachedMemory(final Path directory, final ValueCodec codec, final SyncPolicy syncPolicy,
+			final long syncPeriodMs, final int segmentSize, final int maximumSize, final EvictionPolicy evictionPolicy)
+			throws IOException {
+		super(maximumSize, evictionPolicy);
+		if (syncPeriodMs <= 0) {
+			throw new IllegalArgumentException("syncPeriodMs must be positive");
+		}
+		if (segmentSize <= 0) {
+			throw new IllegalArgumentException("segmentSize must be positive");
+		}
+		this.directory = Objects.requireNonNull(directory, "directory must not be null");
+		this.codec = Objects.requireNonNull(codec, "codec must not be null");
+		this.syncPolicy = Objects.requireNonNull(syncPolicy, "syncPolicy must not be null");
+		this.syncPeriodMs = syncPeriodMs;
+		final SegmentLog recoveredLog = SegmentLog.open(directory, segmentSize, entry -> {
+			try {
+				restore(entry.getName(), codec.decode(entry.getValue()), entry.getCreatedAt(), entry.getValidDelayMs(),
+						entry.getValidUntilMs());
+			} catch (final IOException e) {
+				logger.warn("fact " + entry.getName() + " not restored" + LogHelper.stackTraceToString(e, 5));
+			}
+		});
+		synchronized (this) {
+			log = recoveredLog;
+			lastSync = now();
+		}
+	}
+
+	/**
+	 * Append a record to the log, compacting the log when the segment is full.
+	 */
+	private void append(final boolean appended) {
+		try {
+			if (!appended) {
+				compact();
+			} else if (syncPolicy == SyncPolicy.ALWAYS) {
+				log.sync();
+			} else if (syncPolicy == SyncPolicy.PERIODIC) {
+				unsynced = true;
+			}
+		} catch (final IOException e) {
+			throw new UncheckedIOException("cached memory log not written", e);
+		}
+	}
+
+	@Override
+	synchronized void cleared() {
+		if (log != null) {
+			append(log.appendClear());
+		}
+	}
+
+	@Override
+	public void close() throws Exception {
+		synchronized (this) {
+			if (log != null) {
+				log.close();
+				log = null;
+			}
+		}
+		super.close();
+	}
+
+	/**
+	 * Write the facts of the memory to a snapshot, deleting the records of the
+	 * log written before.
+	 *
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public synchronized void compact() throws IOException {
+		if (log == null) {
+			throw new IllegalStateException("cached memory closed");
+		}
+		final List<SegmentLog.Entry> entries = new ArrayList<>();
+		for (final TimerCachedMemory memoryFact : getMemoryFacts()) {
+			entries.add(new SegmentLog.Entry(memoryFact.getName(), memoryFact.getCreatedAt(),
+					memoryFact.getValidDelayMs(), memoryFact.getValidUntilMs(),
+					codec.encode(memoryFact.getFact().getValue())));
+		}
+		log.compact(entries);
+		lastSync = now();
+		unsynced = false;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	@Override
+	synchronized long getNextWakeUpTime() {
+		final long next = super.getNextWakeUpTime();
+		return unsynced ? Math.min(next, lastSync + syncPeriodMs) : next;
+	}
+
+	public long getSyncPeriodMs() {
+		return syncPeriodMs;
+	}
+
+	public SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	@Override
+	public synchronized void refresh() {
+		super.refresh();
+		if (log != null && unsynced) {
+			final long now = now();
+			if (now - lastSync >= syncPeriodMs) {
+				log.sync();
+				lastSync = now;
+				unsynced = false;
+			}
+		}
+	}
+
+	@Override
+	synchronized void removed(final String factName) {
+		if (log != null) {
+			append(log.appendRemove(factName));
+		}
+	}
+
+	@Override
+	public <F extends Object> void save(final String name, final F payload, final long validDelayMs,
+			final long validUntilMs) {
+		final byte[] value;
+		try {
+			value = codec.encode(payload);
+		} catch (final IOException e) {
+			throw new IllegalArgumentException("value of fact " + name + " not serialized", e);
+		}
+		synchronized (this) {
+			savingValue = value;
+			try {
+				super.save(name, payload, validDelayMs, validUntilMs);
+			} finally {
+				savingValue = null;
+			}
+		}
+	}
+
+	@Override
+	synchronized void saved(final TimerCachedMemory memoryFact) {
+		if (log != null) {
+			append(log.appendSave(memoryFact.getName(), memoryFact.getCreatedAt(), memoryFact.getValidDelayMs(),
+					memoryFact.getValidUntilMs(), savingValue));
+		}
+	}
+
+	/**
+	 * Force the records written to the log to the storage device.
+	 */
+	public synchronized void sync() {
+		if (log != null) {
+			log.sync();
+			lastSync = now();
+			unsynced = false;
+		}
+	}
+
+}
@@ -6,4 +6,14 @@ public interface RuleProvider {
 
 	public JSONArray getRules();
 
+	/**
+	 * Get the version of the rules, which must change whenever the rules change,
+	 * so that the rules engine compiles them again only when they change.
+	 *
+	 * @return the version of the rules, or -1 to compare the rules by content
+	 */
+	public default long getRulesVersion() {
+		return -1;
+	}
+
 }
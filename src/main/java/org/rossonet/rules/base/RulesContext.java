@@ -3,9 +3,11 @@ package org.rossonet.rules.base;
 import java.lang.reflect.InvocationTargetException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -33,9 +35,22 @@ public class RulesContext {
 
 	private final Facts facts;
 
+	private final Set<String> staleFacts;
+
 	public RulesContext(final CommandQueue commandQueue, final Facts facts) {
+		this(commandQueue, facts, Collections.emptySet());
+	}
+
+	/**
+	 * @param commandQueue queue of the commands of the rules
+	 * @param facts        facts of the firing
+	 * @param staleFacts   names of the facts of the fact providers not refreshed
+	 *                     for the firing
+	 */
+	public RulesContext(final CommandQueue commandQueue, final Facts facts, final Set<String> staleFacts) {
 		this.facts = facts;
 		this.commandQueue = commandQueue;
+		this.staleFacts = staleFacts;
 	}
 
 	public <T extends Object> void addFact(final String factName, final T payload) {
@@ -89,12 +104,29 @@ public class RulesContext {
 	}
 
 	public Fact<?> getFact(final String factName) {
-		for (final Fact<?> f : facts) {
-			if (f.getName().equals(factName)) {
-				return f;
-			}
-		}
-		return null;
+		return facts.getFact(factName);
+	}
+
+	/**
+	 * Return the aggregates of an event window provided by {@link EventWindows}.
+	 *
+	 * @param windowName name of the window
+	 * @return the aggregates of the window, null if there is no such window
+	 */
+	public WindowAggregates getWindow(final String windowName) {
+		final Object value = facts.get(windowName);
+		return value instanceof WindowAggregates ? (WindowAggregates) value : null;
+	}
+
+	/**
+	 * Check whether some facts are stale, because their fact provider has not
+	 * been refreshed within its deadline or has failed.
+	 *
+	 * @return true if some facts are from the last good refresh of their
+	 *         provider
+	 */
+	public boolean hasStaleFacts() {
+		return !staleFacts.isEmpty();
 	}
 
 	public void info(final String msg) {
@@ -102,21 +134,12 @@ public class RulesContext {
 	}
 
 	public boolean isCachedMemoryPresent() {
-		if (facts.asMap().containsKey(AbstractBaseRulesEngine.MEM)
-				&& facts.asMap().get(AbstractBaseRulesEngine.MEM).getClass().equals(BaseCachedMemory.class)) {
-			return true;
-		} else {
-			return false;
-		}
+		final Object memory = facts.get(AbstractBaseRulesEngine.MEM);
+		return memory instanceof BaseCachedMemory;
 	}
 
 	public boolean isPresent(final String factName) {
-		for (final Fact<?> f : facts) {
-			if (f.getName().equals(factName)) {
-				return true;
-			}
-		}
-		return false;
+		return facts.has(factName);
 	}
 
 	public boolean isPresentByClass(final String factClass) {
@@ -130,6 +153,17 @@ public class RulesContext {
 		return false;
 	}
 
+	/**
+	 * Check whether a fact is stale, because its fact provider has not been
+	 * refreshed within its deadline or has failed.
+	 *
+	 * @param factName name of the fact
+	 * @return true if the fact is from the last good refresh of its provider
+	 */
+	public boolean isStale(final String factName) {
+		return staleFacts.contains(factName);
+	}
+
 	public String listAllFactsByClass() {
 		return listAllFactsByClass(DEFAULT_CLASS_LIST_SEPARATOR);
 	}
@@ -154,16 +188,7 @@ public class RulesContext {
 	}
 
 	public void removeFact(final String factName) {
-		Fact<?> toDelete = null;
-		for (final Fact<?> f : facts) {
-			if (f.getName().equals(factName)) {
-				toDelete = f;
-				break;
-			}
-		}
-		if (toDelete != null) {
-			facts.remove(toDelete);
-		}
+		facts.remove(factName);
 	}
 
 	public boolean test(final boolean condition) {
@@ -0,0 +1,400 @@
+package org.rossonet.rules.base;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes of a {@link PersistentCachedMemory}.
+ *
+ * The changes are appended to a memory-mapped segment file of fixed size. When
+ * the segment is full, the log is compacted: the facts of the memory are
+ * written to a snapshot file, then a new segment is started and the previous
+ * files are deleted. The recovery reads the last snapshot and the segments
+ * following it, stopping at the first record not completely written, and
+ * returns only the last fact saved with each name, so that the values replaced
+ * or removed are not decoded.
+ *
+ * Each record is framed by its length and the CRC32 of its content. Not thread
+ * safe, the memory synchronizes the access.
+ */
+final class SegmentLog implements Closeable {
+
+	/**
+	 * Fact of a snapshot.
+	 */
+	static final class Entry {
+
+		private final String name;
+		private final long createdAt;
+		private final long validDelayMs;
+		private final long validUntilMs;
+		private final byte[] value;
+
+		Entry(final String name, final long createdAt, final long validDelayMs, final long validUntilMs,
+				final byte[] value) {
+			this.name = name;
+			this.createdAt = createdAt;
+			this.validDelayMs = validDelayMs;
+			this.validUntilMs = validUntilMs;
+			this.value = value;
+		}
+
+		long getCreatedAt() {
+			return createdAt;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		long getValidDelayMs() {
+			return validDelayMs;
+		}
+
+		long getValidUntilMs() {
+			return validUntilMs;
+		}
+
+		byte[] getValue() {
+			return value;
+		}
+	}
+
+	private static final byte SAVE = 1;
+	private static final byte REMOVE = 2;
+	private static final byte CLEAR = 3;
+	// length and CRC32 of the record
+	private static final int HEADER_SIZE = 8;
+	private static final int ZERO_CHUNK_SIZE = 64 * 1024;
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".dat";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	/**
+	 * Apply a record to the facts recovered, by name in the order they have been
+	 * saved.
+	 */
+	private static void apply(final ByteBuffer payload, final Map<String, Entry> facts) {
+		switch (payload.get()) {
+		case SAVE:
+			final long createdAt = payload.getLong();
+			final long validDelayMs = payload.getLong();
+			final long validUntilMs = payload.getLong();
+			final String name = readName(payload);
+			final byte[] value = new byte[payload.remaining()];
+			payload.get(value);
+			facts.remove(name);
+			facts.put(name, new Entry(name, createdAt, validDelayMs, validUntilMs, value));
+			break;
+		case REMOVE:
+			facts.remove(readName(payload));
+			break;
+		case CLEAR:
+			facts.clear();
+			break;
+		default:
+			throw new IllegalStateException("unknown record type");
+		}
+	}
+
+	private static int crc(final ByteBuffer payload) {
+		final CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+		return (int) crc.getValue();
+	}
+
+	private static void delete(final Path directory, final String prefix, final String suffix,
+			final long beforeSequence) throws IOException {
+		for (final long sequence : list(directory, prefix, suffix)) {
+			if (sequence < beforeSequence) {
+				Files.deleteIfExists(directory.resolve(fileName(prefix, sequence, suffix)));
+			}
+		}
+	}
+
+	private static String fileName(final String prefix, final long sequence, final String suffix) {
+		return String.format("%s%016d%s", prefix, sequence, suffix);
+	}
+
+	/**
+	 * Return the sequences of the files of a kind, in ascending order.
+	 */
+	private static List<Long> list(final Path directory, final String prefix, final String suffix)
+			throws IOException {
+		final List<Long> sequences = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.map(file -> file.getFileName().toString())
+					.filter(name -> name.startsWith(prefix) && name.endsWith(suffix)).forEach(name -> {
+						try {
+							sequences.add(
+									Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+						} catch (final NumberFormatException e) {
+							// not a file of the log
+						}
+					});
+		}
+		Collections.sort(sequences);
+		return sequences;
+	}
+
+	private static MappedByteBuffer map(final FileChannel channel, final FileChannel.MapMode mode, final long size)
+			throws IOException {
+		return channel.map(mode, 0, size);
+	}
+
+	/**
+	 * Open the log in a directory, recovering the facts of the last run.
+	 *
+	 * @param directory   directory of the files of the log, created if missing
+	 * @param segmentSize size in bytes of the segment files
+	 * @param recovered   receives the facts recovered, in the order they have
+	 *                    been saved
+	 * @return the log, ready to append after the recovered records
+	 * @throws IOException if the files of the log cannot be read or written
+	 */
+	static SegmentLog open(final Path directory, final int segmentSize, final Consumer<Entry> recovered)
+			throws IOException {
+		Files.createDirectories(directory);
+		try (Stream<Path> files = Files.list(directory)) {
+			for (final Path file : (Iterable<Path>) files::iterator) {
+				if (file.getFileName().toString().endsWith(TEMPORARY_SUFFIX)) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+		final List<Long> snapshots = list(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+		final long snapshotSequence = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+		final Map<String, Entry> facts = new LinkedHashMap<>();
+		if (!snapshots.isEmpty()) {
+			try (FileChannel channel = FileChannel.open(
+					directory.resolve(fileName(SNAPSHOT_PREFIX, snapshotSequence, SNAPSHOT_SUFFIX)),
+					StandardOpenOption.READ)) {
+				replay(map(channel, FileChannel.MapMode.READ_ONLY, channel.size()), facts);
+			}
+		}
+		final SegmentLog log = new SegmentLog(directory, segmentSize);
+		log.sequence = snapshotSequence;
+		int lastEnd = 0;
+		for (final long sequence : list(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+			if (sequence < snapshotSequence) {
+				continue;
+			}
+			try (FileChannel channel = FileChannel.open(
+					directory.resolve(fileName(SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX)), StandardOpenOption.READ)) {
+				final ByteBuffer segment = map(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+				if (replay(segment, facts) > 0) {
+					log.sequence = sequence;
+					lastEnd = segment.position();
+				}
+			}
+		}
+		delete(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX, snapshotSequence);
+		delete(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX, snapshotSequence);
+		for (final Entry entry : facts.values()) {
+			recovered.accept(entry);
+		}
+		// the next records are appended to the last segment
+		log.openSegment(lastEnd);
+		return log;
+	}
+
+	private static String readName(final ByteBuffer payload) {
+		final byte[] name = new byte[payload.getInt()];
+		payload.get(name);
+		return new String(name, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Apply the records of a buffer to the facts recovered, until the first record
+	 * not completely written. The position of the buffer is left at the end of the
+	 * last record.
+	 *
+	 * @return the number of records read
+	 */
+	private static int replay(final ByteBuffer buffer, final Map<String, Entry> facts) {
+		int records = 0;
+		while (buffer.remaining() >= HEADER_SIZE) {
+			final int start = buffer.position();
+			final int length = buffer.getInt(start);
+			if (length <= 0 || length > buffer.remaining() - HEADER_SIZE) {
+				break;
+			}
+			final ByteBuffer payload = buffer.slice(start + HEADER_SIZE, length);
+			if (crc(payload) != buffer.getInt(start + Integer.BYTES)) {
+				break;
+			}
+			apply(payload, facts);
+			buffer.position(start + HEADER_SIZE + length);
+			records++;
+		}
+		return records;
+	}
+
+	private static ByteBuffer saveRecord(final String name, final long createdAt, final long validDelayMs,
+			final long validUntilMs, final byte[] value) {
+		final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer payload = ByteBuffer
+				.allocate(1 + 3 * Long.BYTES + Integer.BYTES + nameBytes.length + value.length);
+		payload.put(SAVE).putLong(createdAt).putLong(validDelayMs).putLong(validUntilMs).putInt(nameBytes.length)
+				.put(nameBytes).put(value);
+		return payload.flip();
+	}
+
+	/**
+	 * Write the entries of a directory to the storage device, where supported.
+	 */
+	private static void syncDirectory(final Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (final IOException e) {
+			// not supported by the file system
+		}
+	}
+
+	private final Path directory;
+	private final int segmentSize;
+	private long sequence;
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private int syncedPosition;
+
+	private SegmentLog(final Path directory, final int segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Append a record to the segment.
+	 *
+	 * @return false if the segment is full, the log must be compacted
+	 */
+	private boolean append(final ByteBuffer payload) {
+		if (segment == null || segment.remaining() < HEADER_SIZE + payload.remaining()) {
+			return false;
+		}
+		final int start = segment.position();
+		final int length = payload.remaining();
+		segment.putInt(start + Integer.BYTES, crc(payload));
+		segment.put(start + HEADER_SIZE, payload, payload.position(), length);
+		// the length is written last, a record without length ends the log
+		segment.putInt(start, length);
+		segment.position(start + HEADER_SIZE + length);
+		return true;
+	}
+
+	boolean appendClear() {
+		return append(ByteBuffer.allocate(1).put(CLEAR).flip());
+	}
+
+	boolean appendRemove(final String name) {
+		final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		return append(ByteBuffer.allocate(1 + Integer.BYTES + nameBytes.length).put(REMOVE)
+				.putInt(nameBytes.length).put(nameBytes).flip());
+	}
+
+	boolean appendSave(final String name, final long createdAt, final long validDelayMs, final long validUntilMs,
+			final byte[] value) {
+		return append(saveRecord(name, createdAt, validDelayMs, validUntilMs, value));
+	}
+
+	@Override
+	public void close() throws IOException {
+		sync();
+		closeSegment();
+	}
+
+	private void closeSegment() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+			segment = null;
+		}
+	}
+
+	/**
+	 * Write the facts to a new snapshot and start a new segment, deleting the
+	 * previous files.
+	 *
+	 * @param entries the facts of the memory
+	 * @throws IOException if the snapshot or the segment cannot be written
+	 */
+	void compact(final Collection<Entry> entries) throws IOException {
+		final long nextSequence = sequence + 1;
+		final Path snapshot = directory.resolve(fileName(SNAPSHOT_PREFIX, nextSequence, SNAPSHOT_SUFFIX));
+		final Path temporary = directory.resolve(snapshot.getFileName() + TEMPORARY_SUFFIX);
+		try (FileChannel snapshotChannel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			final OutputStream stream = Channels.newOutputStream(snapshotChannel);
+			final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+			for (final Entry entry : entries) {
+				final ByteBuffer payload = saveRecord(entry.name, entry.createdAt, entry.validDelayMs,
+						entry.validUntilMs, entry.value);
+				output.writeInt(payload.remaining());
+				output.writeInt(crc(payload));
+				output.write(payload.array(), 0, payload.remaining());
+			}
+			output.flush();
+			snapshotChannel.force(true);
+		}
+		Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(directory);
+		// the records of the segment are in the snapshot
+		closeSegment();
+		sequence = nextSequence;
+		openSegment(0);
+		delete(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX, sequence);
+		delete(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX, sequence);
+	}
+
+	/**
+	 * Map the segment of the current sequence, appending after the given position
+	 * and clearing the rest of the segment from records not completely written.
+	 */
+	private void openSegment(final int position) throws IOException {
+		channel = FileChannel.open(directory.resolve(fileName(SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX)),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		// a segment written with a larger size is kept whole
+		final int size = (int) Math.max(segmentSize, Math.min(channel.size(), Integer.MAX_VALUE));
+		segment = map(channel, FileChannel.MapMode.READ_WRITE, size);
+		final byte[] zeros = new byte[ZERO_CHUNK_SIZE];
+		for (int offset = position; offset < size; offset += ZERO_CHUNK_SIZE) {
+			segment.put(offset, zeros, 0, Math.min(ZERO_CHUNK_SIZE, size - offset));
+		}
+		segment.position(position);
+		syncedPosition = 0;
+	}
+
+	/**
+	 * Write the records appended since the last sync to the storage device.
+	 */
+	void sync() {
+		if (segment != null && segment.position() > syncedPosition) {
+			segment.force(syncedPosition, segment.position() - syncedPosition);
+			syncedPosition = segment.position();
+		}
+	}
+
+}
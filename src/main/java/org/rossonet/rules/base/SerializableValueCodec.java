@@ -0,0 +1,33 @@
+package org.rossonet.rules.base;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * {@link ValueCodec} of {@link java.io.Serializable} values, with the Java
+ * serialization.
+ */
+public class SerializableValueCodec implements ValueCodec {
+
+	@Override
+	public Object decode(final byte[] data) throws IOException {
+		try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(data))) {
+			return input.readObject();
+		} catch (final ClassNotFoundException e) {
+			throw new IOException("class of the value not found", e);
+		}
+	}
+
+	@Override
+	public byte[] encode(final Object value) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			output.writeObject(value);
+		}
+		return bytes.toByteArray();
+	}
+
+}
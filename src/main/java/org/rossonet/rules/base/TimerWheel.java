@@ -0,0 +1,228 @@
+package org.rossonet.rules.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of timers with a deadline in milliseconds.
+ *
+ * The timers are kept in buckets of wheels of increasing span: the first wheel
+ * has buckets of {@link #TICK_MS} milliseconds, each next wheel buckets as wide
+ * as the whole previous wheel. Scheduling and cancelling a timer are O(1),
+ * advancing the time visits only the buckets crossed, cascading the timers of
+ * the wider wheels to the narrower ones as their deadline gets closer.
+ *
+ * Not thread safe, the callers synchronize the access.
+ */
+final class TimerWheel<T> {
+
+	/**
+	 * Timer of a value, linked in a bucket of the wheel.
+	 */
+	static final class Timer<T> {
+
+		private final T value;
+		private final long deadline;
+		private Timer<T> previous;
+		private Timer<T> next;
+
+		private Timer(final T value, final long deadline) {
+			this.value = value;
+			this.deadline = deadline;
+		}
+
+		long getDeadline() {
+			return deadline;
+		}
+
+		T getValue() {
+			return value;
+		}
+	}
+
+	private static final int TICK_BITS = 4;
+	private static final int BUCKET_BITS = 6;
+	private static final int BUCKETS = 1 << BUCKET_BITS;
+	private static final int LEVELS = 5;
+	static final long TICK_MS = 1L << TICK_BITS;
+
+	private static <T> Timer<T> newBucket() {
+		final Timer<T> sentinel = new Timer<>(null, Long.MAX_VALUE);
+		sentinel.previous = sentinel;
+		sentinel.next = sentinel;
+		return sentinel;
+	}
+
+	/**
+	 * Return the position of the bits of the ticks of a level in the time.
+	 */
+	private static int shift(final int level) {
+		return TICK_BITS + level * BUCKET_BITS;
+	}
+
+	private final Timer<T>[][] wheel;
+	private long time;
+	private int size;
+
+	@SuppressWarnings("unchecked")
+	TimerWheel(final long time) {
+		this.time = time;
+		wheel = new Timer[LEVELS][BUCKETS];
+		for (int level = 0; level < LEVELS; level++) {
+			for (int index = 0; index < BUCKETS; index++) {
+				wheel[level][index] = newBucket();
+			}
+		}
+	}
+
+	/**
+	 * Advance the time of the wheel, removing the timers with a deadline reached.
+	 *
+	 * @param now     the new time, a time before the time of the wheel is ignored
+	 * @param expired receives the values of the timers removed, after the wheel
+	 *                has been advanced, so that it can schedule new timers
+	 */
+	void advance(final long now, final Consumer<T> expired) {
+		final long previousTime = time;
+		time = Math.max(now, previousTime);
+		final List<T> values = new ArrayList<>();
+		for (int level = 0; level < LEVELS; level++) {
+			final long previousTicks = previousTime >>> shift(level);
+			final long currentTicks = time >>> shift(level);
+			// the current bucket of the first wheel is visited anyway, for the timers
+			// scheduled in the current tick
+			if (level > 0 && currentTicks == previousTicks) {
+				break;
+			}
+			final long count = Math.min(currentTicks - previousTicks + 1, BUCKETS);
+			for (long tick = previousTicks; tick < previousTicks + count; tick++) {
+				expire(wheel[level][(int) (tick & (BUCKETS - 1))], values);
+			}
+		}
+		for (final T value : values) {
+			expired.accept(value);
+		}
+	}
+
+	/**
+	 * Return the bucket of a deadline, at the narrowest level spanning it.
+	 */
+	private Timer<T> bucket(final long deadline) {
+		final long delta = deadline - time;
+		for (int level = 0; level < LEVELS - 1; level++) {
+			if (delta < 1L << shift(level + 1)) {
+				return wheel[level][(int) ((Math.max(deadline, time) >>> shift(level)) & (BUCKETS - 1))];
+			}
+		}
+		return wheel[LEVELS - 1][(int) ((deadline >>> shift(LEVELS - 1)) & (BUCKETS - 1))];
+	}
+
+	/**
+	 * Cancel a timer, if still scheduled.
+	 *
+	 * @param timer the timer to cancel
+	 */
+	void cancel(final Timer<T> timer) {
+		if (timer.next != null) {
+			unlink(timer);
+			size--;
+		}
+	}
+
+	/**
+	 * Remove the timers of a bucket with a deadline reached, scheduling the others
+	 * again in the bucket of their deadline.
+	 */
+	private void expire(final Timer<T> bucket, final List<T> values) {
+		Timer<T> timer = bucket.next;
+		bucket.previous = bucket;
+		bucket.next = bucket;
+		while (timer != bucket) {
+			final Timer<T> next = timer.next;
+			timer.previous = null;
+			timer.next = null;
+			if (timer.deadline <= time) {
+				size--;
+				values.add(timer.value);
+			} else {
+				link(bucket(timer.deadline), timer);
+			}
+			timer = next;
+		}
+	}
+
+	long getTime() {
+		return time;
+	}
+
+	private void link(final Timer<T> bucket, final Timer<T> timer) {
+		timer.previous = bucket.previous;
+		timer.next = bucket;
+		bucket.previous.next = timer;
+		bucket.previous = timer;
+	}
+
+	/**
+	 * Return the time the wheel must be advanced next to expire its first timer.
+	 *
+	 * The deadlines of the first wheel are exact, the timers of the wider wheels
+	 * are accounted at the time their bucket is cascaded, so the time returned is
+	 * never after the earliest deadline.
+	 *
+	 * @return the time, {@link Long#MAX_VALUE} if the wheel is empty
+	 */
+	long nextDeadline() {
+		if (size == 0) {
+			return Long.MAX_VALUE;
+		}
+		long next = Long.MAX_VALUE;
+		// the current bucket of the first wheel can also hold the timers of the
+		// tick a whole wheel later
+		final long firstTicks = time >>> shift(0);
+		for (long tick = firstTicks; tick < firstTicks + BUCKETS && tick << shift(0) <= next; tick++) {
+			final Timer<T> bucket = wheel[0][(int) (tick & (BUCKETS - 1))];
+			for (Timer<T> timer = bucket.next; timer != bucket; timer = timer.next) {
+				next = Math.min(next, timer.deadline);
+			}
+		}
+		for (int level = 1; level < LEVELS; level++) {
+			final long ticks = time >>> shift(level);
+			for (long tick = ticks + 1; tick <= ticks + BUCKETS; tick++) {
+				final Timer<T> bucket = wheel[level][(int) (tick & (BUCKETS - 1))];
+				if (bucket.next != bucket) {
+					next = Math.min(next, tick << shift(level));
+					break;
+				}
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Schedule a timer. A timer with a deadline already reached expires at the
+	 * next {@link #advance(long, Consumer)}.
+	 *
+	 * @param value    the value of the timer
+	 * @param deadline the deadline of the timer
+	 * @return the timer, to cancel it
+	 */
+	Timer<T> schedule(final T value, final long deadline) {
+		final Timer<T> timer = new Timer<>(value, deadline);
+		link(bucket(deadline), timer);
+		size++;
+		return timer;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void unlink(final Timer<T> timer) {
+		timer.previous.next = timer.next;
+		timer.next.previous = timer.previous;
+		timer.previous = null;
+		timer.next = null;
+	}
+
+}
@@ -0,0 +1,29 @@
+package org.rossonet.rules.base;
+
+import java.io.IOException;
+
+/**
+ * Serialization of the values of the facts persisted by a
+ * {@link PersistentCachedMemory}.
+ */
+public interface ValueCodec {
+
+	/**
+	 * Read a value written by {@link #encode(Object)}.
+	 *
+	 * @param data the serialized value
+	 * @return the value
+	 * @throws IOException if the data is not a value of the codec
+	 */
+	public Object decode(byte[] data) throws IOException;
+
+	/**
+	 * Serialize a value.
+	 *
+	 * @param value the value, can be null
+	 * @return the serialized value
+	 * @throws IOException if the value cannot be serialized by the codec
+	 */
+	public byte[] encode(Object value) throws IOException;
+
+}
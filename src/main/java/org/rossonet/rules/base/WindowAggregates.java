@@ -0,0 +1,91 @@
+package org.rossonet.rules.base;
+
+import java.util.Arrays;
+
+/**
+ * Immutable aggregates of the events of an {@link EventWindow}, exposed to the
+ * rules as a fact, for instance <code>temperature.avg &gt; 30</code> or
+ * <code>ctx.getWindow("alarms").count &gt; 5</code>.
+ *
+ * Aggregates of an empty window are zero.
+ */
+public class WindowAggregates {
+
+	private final double[] values;
+	private final double sum;
+	private final double min;
+	private final double max;
+	private double[] sortedValues;
+
+	WindowAggregates(final double[] values, final double sum, final double min, final double max) {
+		this.values = values;
+		this.sum = sum;
+		this.min = min;
+		this.max = max;
+	}
+
+	public double getAvg() {
+		return values.length == 0 ? 0 : sum / values.length;
+	}
+
+	public int getCount() {
+		return values.length;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Return a percentile of the values of the window, with the nearest-rank
+	 * method. Values are sorted at the first call.
+	 *
+	 * @param percentile between 0 and 100
+	 * @return the smallest value greater than or equal to the given percentage
+	 *         of the values
+	 */
+	public synchronized double getPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100");
+		}
+		if (values.length == 0) {
+			return 0;
+		}
+		if (sortedValues == null) {
+			sortedValues = values.clone();
+			Arrays.sort(sortedValues);
+		}
+		final int rank = (int) Math.ceil(percentile / 100 * sortedValues.length);
+		return sortedValues[Math.max(0, rank - 1)];
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	public boolean isEmpty() {
+		return values.length == 0;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("WindowAggregates [count=");
+		builder.append(values.length);
+		builder.append(", sum=");
+		builder.append(sum);
+		builder.append(", min=");
+		builder.append(min);
+		builder.append(", max=");
+		builder.append(max);
+		builder.append(", avg=");
+		builder.append(getAvg());
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
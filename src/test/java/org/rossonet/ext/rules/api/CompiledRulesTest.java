@@ -0,0 +1,82 @@
+package org.rossonet.ext.rules.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.core.BasicRule;
+import org.rossonet.ext.rules.core.DefaultRulesEngine;
+import org.rossonet.ext.rules.core.RuleBuilder;
+
+public class CompiledRulesTest {
+
+	@Test
+	public void compileReturnsCompiledRulesUnchanged() {
+		final CompiledRules compiledRules = new CompiledRules(new Rules(new BasicRule("rule")));
+
+		assertThat(CompiledRules.compile(compiledRules)).isSameAs(compiledRules);
+	}
+
+	@Test
+	public void compiledRulesAreImmutable() {
+		final Rule rule = new BasicRule("rule");
+		final CompiledRules compiledRules = CompiledRules.compile(new Rules(rule));
+
+		assertThrows(UnsupportedOperationException.class, () -> compiledRules.register(new BasicRule("other")));
+		assertThrows(UnsupportedOperationException.class, () -> compiledRules.unregister(rule));
+		assertThrows(UnsupportedOperationException.class, () -> compiledRules.unregister("rule"));
+		assertThrows(UnsupportedOperationException.class, compiledRules::clear);
+		assertThat(compiledRules).containsExactly(rule);
+	}
+
+	@Test
+	public void compiledRulesAreSortedAndCached() {
+		final BasicRule first = new BasicRule("first", "first rule", 1);
+		final BasicRule second = new BasicRule("second", "second rule", 2);
+		final Rules rules = new Rules(second, first);
+
+		final CompiledRules compiledRules = CompiledRules.compile(rules);
+		first.setPriority(3);
+		rules.unregister(first);
+
+		assertThat(compiledRules.size()).isEqualTo(2);
+		assertThat(compiledRules.get(0)).isSameAs(first);
+		assertThat(compiledRules.getName(0)).isEqualTo("first");
+		assertThat(compiledRules.getDescription(0)).isEqualTo("first rule");
+		assertThat(compiledRules.getPriority(0)).isEqualTo(1);
+		assertThat(compiledRules.get(1)).isSameAs(second);
+		assertThat(compiledRules).containsExactly(first, second);
+	}
+
+	@Test
+	public void compiledRulesCanBeFired() {
+		final List<String> fired = new ArrayList<>();
+		final Rule first = new RuleBuilder().name("first").priority(1).when(facts -> true)
+				.then(facts -> fired.add("first")).build();
+		final Rule second = new RuleBuilder().name("second").priority(2).when(facts -> true)
+				.then(facts -> fired.add("second")).build();
+		final CompiledRules compiledRules = CompiledRules.compile(new Rules(second, first));
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine();
+
+		rulesEngine.fire(compiledRules, new Facts());
+		rulesEngine.fire(compiledRules, new Facts());
+
+		assertThat(fired).containsExactly("first", "second", "first", "second");
+	}
+
+	@Test
+	public void rulesAreFoundByNameIgnoringCase() {
+		final Rule first = new BasicRule("first");
+		final Rule second = new BasicRule("second");
+		final CompiledRules compiledRules = CompiledRules.compile(new Rules(first, second));
+
+		assertThat(compiledRules.get("SECOND")).isSameAs(second);
+		assertThat(compiledRules.indexOf("first")).isEqualTo(0);
+		assertThat(compiledRules.indexOf("unknown")).isEqualTo(-1);
+		assertThat(compiledRules.get("unknown")).isNull();
+	}
+
+}
@@ -24,6 +24,7 @@
 package org.rossonet.ext.rules.api;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.util.Map;
 
@@ -65,6 +66,35 @@ public class FactsTest {
 		assertThat(map).containsValues(1, 2);
 	}
 
+	@Test
+	public void testAsMapView() {
+		final Map<String, Object> view = facts.asMapView();
+		facts.put("foo", 1);
+		facts.put("bar", 2);
+
+		assertThat(view).hasSize(2);
+		assertThat(view).containsEntry("foo", 1).containsEntry("bar", 2);
+
+		facts.put("foo", 3);
+		facts.remove("bar");
+
+		assertThat(view).hasSize(1);
+		assertThat(view).containsEntry("foo", 3);
+		assertThat(view.containsKey("bar")).isFalse();
+		assertThat(facts.asMapView()).isSameAs(view);
+	}
+
+	@Test
+	public void testAsMapViewIsReadOnly() {
+		facts.put("foo", 1);
+		final Map<String, Object> view = facts.asMapView();
+
+		assertThatThrownBy(() -> view.put("bar", 2)).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> view.remove("foo")).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(view::clear).isInstanceOf(UnsupportedOperationException.class);
+		assertThat(facts.has("foo")).isTrue();
+	}
+
 	@Test
 	public void testClear() {
 		final Facts facts = new Facts();
@@ -107,6 +137,17 @@ public class FactsTest {
 		assertThat(facts).isEmpty();
 	}
 
+	@Test
+	public void testHasAndSize() {
+		facts.put("foo", 1);
+		facts.put("bar", 2);
+		facts.put("foo", 3);
+
+		assertThat(facts.size()).isEqualTo(2);
+		assertThat(facts.has("foo")).isTrue();
+		assertThat(facts.has("baz")).isFalse();
+	}
+
 	@Test
 	public void testRemoveByName() {
 		final Fact<Integer> foo = new Fact<>("foo", 1);
@@ -0,0 +1,113 @@
+package org.rossonet.ext.rules.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.Test;
+
+public class PrimitiveFactsTest {
+
+	private final Facts facts = new Facts();
+
+	@Test
+	public void clockGivesTheCreationTime() {
+		final LongSupplier clock = Fact.getClock();
+		Fact.setClock(() -> 42L);
+		try {
+			assertThat(new Fact<>("object", "value").getCreatedAt()).isEqualTo(42L);
+			assertThat(new LongFact("long", 1).getCreatedAt()).isEqualTo(42L);
+			assertThat(new DoubleFact("double", 1, 7L).getCreatedAt()).isEqualTo(7L);
+		} finally {
+			Fact.setClock(clock);
+		}
+	}
+
+	@Test
+	public void longValuesAreDigestedConcurrently() throws Exception {
+		// Given
+		final StringBuilder value = new StringBuilder();
+		for (int i = 0; i < Fact.getMaxCharsInValueToString() * 10; i++) {
+			value.append(i % 10);
+		}
+		final Fact<String> fact = new Fact<>("long", value.toString(), 0);
+		final String expected = fact.toString();
+		final List<Callable<Boolean>> tasks = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			tasks.add(() -> {
+				for (int j = 0; j < 1000; j++) {
+					if (!fact.toString().equals(expected)) {
+						return false;
+					}
+				}
+				return true;
+			});
+		}
+
+		// When
+		final ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			// Then
+			assertThat(expected).contains("[" + value.length() + "::");
+			for (final Future<Boolean> result : executor.invokeAll(tasks)) {
+				assertThat(result.get()).isTrue();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void primitiveFactsAreEqualToFactsWithTheSameName() {
+		// Given
+		facts.putLong("counter", 1);
+
+		// When
+		facts.remove(new Fact<>("counter", 1L));
+
+		// Then
+		assertThat(facts.has("counter")).isFalse();
+		assertThat(new LongFact("counter", 1)).isEqualTo(new Fact<>("counter", 2L));
+	}
+
+	@Test
+	public void primitiveFactsAreReadAsObjects() {
+		// Given
+		facts.putLong("counter", 1000);
+		facts.putDouble("temperature", 21.5);
+		facts.add(new Fact<>("boxed", 7));
+
+		// Then
+		final Long counter = facts.get("counter");
+		assertThat(counter).isEqualTo(1000L);
+		assertThat(facts.<Long>get("counter")).isSameAs(counter);
+		assertThat(facts.<Double>get("temperature")).isEqualTo(21.5);
+		assertThat(facts.asMap()).containsEntry("counter", 1000L);
+		assertThat(facts.getLong("boxed", 0)).isEqualTo(7L);
+		assertThat(facts.getFact("boxed").getType()).isEqualTo(Integer.class);
+	}
+
+	@Test
+	public void primitiveFactsAreReadWithoutBoxing() {
+		// Given
+		facts.putLong("counter", 42);
+		facts.putDouble("temperature", 21.5);
+		facts.putBoolean("alarm", true);
+
+		// Then
+		assertThat(facts.getLong("counter", 0)).isEqualTo(42L);
+		assertThat(facts.getDouble("counter", 0)).isEqualTo(42.0);
+		assertThat(facts.getDouble("temperature", 0)).isEqualTo(21.5);
+		assertThat(facts.getBoolean("alarm", false)).isTrue();
+		assertThat(facts.getLong("missing", -1)).isEqualTo(-1L);
+		assertThat(facts.getFact("counter")).isInstanceOf(LongFact.class);
+		assertThat(facts.getFact("counter").getType()).isEqualTo(Long.class);
+	}
+
+}
@@ -0,0 +1,213 @@
+package org.rossonet.ext.rules.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class WorkingMemoryTest {
+
+	private final WorkingMemory memory = new WorkingMemory();
+
+	@Test
+	public void commitIsRejectedTwice() {
+		// Given
+		final WorkingMemory.Cycle cycle = memory.begin();
+		cycle.put("foo", 1);
+		cycle.commit();
+
+		// Then
+		assertThatThrownBy(cycle::commit).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	public void commitKeepsConcurrentPublishes() {
+		// Given
+		memory.publish(new Fact<>("foo", 1));
+		memory.publish(new Fact<>("bar", 2));
+		final WorkingMemory.Cycle cycle = memory.begin();
+		cycle.put("foo", 10);
+		cycle.remove("bar");
+		memory.publish(new Fact<>("baz", 3));
+
+		// When
+		final long version = cycle.commit();
+
+		// Then
+		assertThat(version).isEqualTo(memory.getVersion());
+		assertThat(memory.getFact("foo").getValue()).isEqualTo(10);
+		assertThat(memory.getFact("bar")).isNull();
+		assertThat(memory.getFact("baz").getValue()).isEqualTo(3);
+		assertThat(memory.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void cycleReadsASnapshot() {
+		// Given
+		memory.publish(new Fact<>("foo", 1));
+		final WorkingMemory.Cycle cycle = memory.begin();
+
+		// When
+		memory.publish(new Fact<>("foo", 2));
+		memory.publish(new Fact<>("bar", 3));
+
+		// Then
+		assertThat(cycle.<Integer>get("foo")).isEqualTo(1);
+		assertThat(cycle.has("bar")).isFalse();
+		assertThat(cycle.size()).isEqualTo(1);
+		assertThat(memory.begin().<Integer>get("foo")).isEqualTo(2);
+		assertThat(cycle.getSnapshotVersion()).isLessThan(memory.getVersion());
+	}
+
+	@Test
+	public void iteratorRemovesFacts() {
+		// Given
+		memory.publish(new Fact<>("foo", 1));
+		final WorkingMemory.Cycle cycle = memory.begin();
+		cycle.put("bar", 2);
+		cycle.addLocal(new Fact<>("baz", 3));
+
+		// When
+		final Iterator<Fact<?>> iterator = cycle.iterator();
+		while (iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+
+		// Then
+		assertThat(cycle.isEmpty()).isTrue();
+		cycle.commit();
+		assertThat(memory.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void localFactsAreNotCommitted() {
+		// Given
+		final WorkingMemory.Cycle cycle = memory.begin();
+		cycle.addLocal(new Fact<>("local", 1));
+		cycle.put("written", 2);
+
+		// When
+		cycle.commit();
+
+		// Then
+		assertThat(cycle.asMap()).containsOnlyKeys("local", "written");
+		assertThat(memory.getFact("local")).isNull();
+		assertThat(memory.getFact("written").getValue()).isEqualTo(2);
+		assertThat(cycle.getDelta()).containsOnlyKeys("written");
+	}
+
+	@Test
+	public void providedFactsAreNotCommitted() {
+		// Given
+		final WorkingMemory provided = new WorkingMemory();
+		provided.publish(new Fact<>("sensor", 1));
+		provided.publish(new Fact<>("shared", 2));
+		memory.publish(new Fact<>("shared", 3));
+		final WorkingMemory.Cycle cycle = memory.begin(provided);
+
+		// When
+		provided.publish(new Fact<>("sensor", 4));
+		cycle.put("written", cycle.<Integer>get("sensor"));
+		cycle.remove("sensor");
+		cycle.commit();
+
+		// Then
+		assertThat(cycle.<Integer>get("shared")).isEqualTo(2);
+		assertThat(cycle.has("sensor")).isFalse();
+		assertThat(memory.getFact("written").getValue()).isEqualTo(1);
+		assertThat(memory.getFact("sensor")).isNull();
+		assertThat(memory.getFact("shared").getValue()).isEqualTo(3);
+		assertThat(provided.getFact("sensor").getValue()).isEqualTo(4);
+	}
+
+	@Test
+	public void persistentFactMapBehavesLikeAMap() {
+		// Given: names with colliding hashes and random names
+		final List<String> names = new ArrayList<>(Arrays.asList("Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB"));
+		for (int i = 0; i < 500; i++) {
+			names.add("fact" + i);
+		}
+		final Random random = new Random(42);
+		final Map<String, Fact<?>> expected = new HashMap<>();
+		PersistentFactMap map = PersistentFactMap.EMPTY;
+		final PersistentFactMap empty = map;
+
+		// When
+		for (int i = 0; i < 20000; i++) {
+			final String name = names.get(random.nextInt(names.size()));
+			if (random.nextInt(3) == 0) {
+				expected.remove(name);
+				map = map.remove(name);
+			} else {
+				final Fact<Integer> fact = new Fact<>(name, i);
+				expected.put(name, fact);
+				map = map.put(fact);
+			}
+		}
+
+		// Then
+		assertThat(map.size()).isEqualTo(expected.size());
+		for (final String name : names) {
+			assertThat(map.get(name)).isSameAs(expected.get(name));
+		}
+		final Map<String, Fact<?>> iterated = new HashMap<>();
+		for (final Fact<?> fact : map) {
+			iterated.put(fact.getName(), fact);
+		}
+		assertThat(iterated).isEqualTo(expected);
+		assertThat(empty.isEmpty()).isTrue();
+	}
+
+	@Test
+	public void publishAllIsAtomic() {
+		// Given
+		final WorkingMemory.Cycle before = memory.begin();
+
+		// When
+		final long version = memory.publishAll(Arrays.asList(new Fact<>("foo", 1), new Fact<>("bar", 2)));
+
+		// Then
+		assertThat(version).isEqualTo(before.getSnapshotVersion() + 1);
+		assertThat(before.isEmpty()).isTrue();
+		assertThat(memory.begin().asMap()).containsOnlyKeys("foo", "bar");
+	}
+
+	@Test
+	public void removedFactsDoNotReappearFromTheSnapshot() {
+		// Given
+		final WorkingMemory provided = new WorkingMemory();
+		provided.publish(new Fact<>("shared", 1));
+		memory.publish(new Fact<>("shared", 2));
+		memory.publish(new Fact<>("local", 3));
+		final WorkingMemory.Cycle cycle = memory.begin(provided);
+		cycle.addLocal(new Fact<>("local", 4));
+
+		// When
+		cycle.remove("shared");
+		cycle.remove("local");
+
+		// Then
+		assertThat(cycle.has("shared")).isFalse();
+		assertThat(cycle.has("local")).isFalse();
+		assertThat(cycle.asMap()).isEmpty();
+		assertThat(cycle.getDelta()).containsOnlyKeys("shared", "local");
+
+		// When
+		cycle.commit();
+
+		// Then
+		assertThat(memory.getFact("shared")).isNull();
+		assertThat(memory.getFact("local")).isNull();
+		assertThat(provided.getFact("shared").getValue()).isEqualTo(1);
+	}
+
+}
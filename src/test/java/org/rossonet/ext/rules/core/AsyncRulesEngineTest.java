@@ -0,0 +1,127 @@
+package org.rossonet.ext.rules.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.utils.concurrent.PriorityExecutorService;
+import org.rossonet.ext.utils.concurrent.PriorityExecutors;
+
+public class AsyncRulesEngineTest {
+
+	private final PriorityExecutorService executor = PriorityExecutors.newPriorityFixedThreadPool(2);
+	private final List<String> executions = new CopyOnWriteArrayList<>();
+
+	@Test
+	public void actionsAreExecutedOnTheExecutor() throws Exception {
+		// Given
+		final CountDownLatch release = new CountDownLatch(1);
+		final Rule slow = new RuleBuilder().name("slow").when(facts -> true).then(facts -> {
+			release.await();
+			executions.add(Thread.currentThread().getName());
+		}).build();
+		final AsyncRulesEngine rulesEngine = new AsyncRulesEngine(executor);
+
+		// When
+		final CompletableFuture<AsyncRulesEngine.Outcome> future = rulesEngine.fireAsync(new Rules(slow), new Facts());
+
+		// Then
+		assertThat(future.isDone()).isFalse();
+		release.countDown();
+		final AsyncRulesEngine.Outcome outcome = future.get(5, TimeUnit.SECONDS);
+		assertThat(outcome.isSuccessful()).isTrue();
+		assertThat(outcome.getTriggeredRules()).containsExactly(slow);
+		assertThat(executions).hasSize(1);
+		assertThat(executions.get(0)).isNotEqualTo(Thread.currentThread().getName());
+	}
+
+	@Test
+	public void failuresAreReportedInTheOutcome() throws Exception {
+		// Given
+		final Rule failing = new RuleBuilder().name("failing").priority(1).when(facts -> true).then(facts -> {
+			throw new IllegalStateException("failure");
+		}).build();
+		final Rule notTriggered = new RuleBuilder().name("notTriggered").priority(2).when(facts -> false).build();
+		final AsyncRulesEngine rulesEngine = new AsyncRulesEngine(executor);
+
+		// When
+		final AsyncRulesEngine.Outcome outcome = rulesEngine.fireAsync(new Rules(failing, notTriggered), new Facts())
+				.get(5, TimeUnit.SECONDS);
+
+		// Then
+		assertThat(outcome.isSuccessful()).isFalse();
+		assertThat(outcome.getTriggeredRules()).containsExactly(failing);
+		assertThat(outcome.getFailures().get(failing)).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	public void mostUrgentRulesOfEachFiringAreExecutedFirst() throws Exception {
+		// Given
+		final CountDownLatch release = new CountDownLatch(1);
+		final Rule blocker = new RuleBuilder().name("blocker").when(facts -> true).then(facts -> release.await())
+				.build();
+		final PriorityExecutorService singleThreadExecutor = PriorityExecutors.newPrioritySingleThreadPool();
+		final AsyncRulesEngine rulesEngine = new AsyncRulesEngine(singleThreadExecutor);
+		final CompletableFuture<AsyncRulesEngine.Outcome> blocked = rulesEngine.fireAsync(new Rules(blocker),
+				new Facts());
+
+		// When
+		final CompletableFuture<AsyncRulesEngine.Outcome> first = rulesEngine
+				.fireAsync(new Rules(rule("a1", 1), rule("a2", 2), rule("a3", 3)), new Facts());
+		final CompletableFuture<AsyncRulesEngine.Outcome> second = rulesEngine.fireAsync(new Rules(rule("b1", 5)),
+				new Facts());
+		release.countDown();
+		CompletableFuture.allOf(blocked, first, second).get(5, TimeUnit.SECONDS);
+		singleThreadExecutor.shutdown();
+
+		// Then
+		assertThat(executions).hasSize(4);
+		assertThat(executions.subList(0, 2)).containsOnly("a1", "b1");
+		assertThat(executions.subList(2, 4)).containsExactly("a2", "a3");
+	}
+
+	private Rule rule(final String name, final int priority) {
+		return new RuleBuilder().name(name).priority(priority).when(facts -> true).then(facts -> executions.add(name))
+				.build();
+	}
+
+	@Test
+	public void sequentialGroupsKeepTheDispatchOrder() throws Exception {
+		// Given
+		final Rule first = new RuleBuilder().name("first").priority(1).when(facts -> true).then(facts -> {
+			Thread.sleep(20);
+			executions.add("first");
+		}).build();
+		final Rule second = new RuleBuilder().name("second").priority(2).when(facts -> true)
+				.then(facts -> executions.add("second")).build();
+		final AsyncRulesEngine rulesEngine = new AsyncRulesEngine(executor);
+		rulesEngine.setRuleGroup(rule -> "device");
+		rulesEngine.setOrdering("device", AsyncRulesEngine.Ordering.SEQUENTIAL);
+
+		// When
+		final CompletableFuture<AsyncRulesEngine.Outcome> firstFiring = rulesEngine.fireAsync(new Rules(first, second),
+				new Facts());
+		final CompletableFuture<AsyncRulesEngine.Outcome> secondFiring = rulesEngine.fireAsync(new Rules(first),
+				new Facts());
+		CompletableFuture.allOf(firstFiring, secondFiring).get(5, TimeUnit.SECONDS);
+
+		// Then
+		assertThat(executions).containsExactly("first", "second", "first");
+		assertThat(rulesEngine.getOrdering("other")).isEqualTo(AsyncRulesEngine.Ordering.CONCURRENT);
+	}
+
+	@AfterEach
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+}
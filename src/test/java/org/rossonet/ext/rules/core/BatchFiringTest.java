@@ -0,0 +1,94 @@
+package org.rossonet.ext.rules.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.rules.api.RulesEngineListener;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+
+public class BatchFiringTest {
+
+	private static List<Facts> temperatures(final int count) {
+		final List<Facts> batch = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			final Facts facts = new Facts();
+			facts.put("temperature", i);
+			batch.add(facts);
+		}
+		return batch;
+	}
+
+	private final Rule alarm = new RuleBuilder().name("alarm").when(facts -> facts.<Integer>get("temperature") > 50)
+			.then(facts -> facts.put("alarm", true)).build();
+
+	@Test
+	public void testCheckBatchReturnsResultsInOrder() {
+		// Given
+		final List<Facts> batch = temperatures(100);
+
+		// When
+		final List<Map<Rule, Boolean>> results = new DefaultRulesEngine(
+				new RulesEngineParameters().parallelEvaluation(true)).checkBatch(new Rules(alarm), batch);
+
+		// Then
+		assertThat(results).hasSize(100);
+		for (int i = 0; i < 100; i++) {
+			assertThat(results.get(i)).containsEntry(alarm, i > 50);
+		}
+	}
+
+	@Test
+	public void testFireBatchAppliesRulesOnEachFacts() {
+		// Given
+		final List<Facts> batch = temperatures(100);
+
+		// When
+		new DefaultRulesEngine(new RulesEngineParameters().parallelEvaluation(true)).fireBatch(new Rules(alarm),
+				batch);
+
+		// Then
+		for (int i = 0; i < 100; i++) {
+			assertThat(batch.get(i).has("alarm")).isEqualTo(i > 50);
+		}
+	}
+
+	@Test
+	public void testRulesEngineListenersAreTriggeredOncePerBatch() {
+		// Given
+		final AtomicInteger batches = new AtomicInteger();
+		final AtomicInteger evaluations = new AtomicInteger();
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine();
+		rulesEngine.registerRulesEngineListener(new RulesEngineListener() {
+
+			@Override
+			public void beforeBatch(final Rules rules, final Collection<Facts> factsBatch) {
+				batches.incrementAndGet();
+			}
+		});
+		rulesEngine.registerRulesEngineListener(new RulesEngineListener() {
+
+			@Override
+			public void beforeEvaluate(final Rules rules, final Facts facts) {
+				evaluations.incrementAndGet();
+			}
+		});
+
+		// When
+		rulesEngine.fireBatch(new Rules(alarm), temperatures(10));
+
+		// Then
+		assertThat(batches.get()).isEqualTo(1);
+		// listeners not overriding the batch methods are triggered for each facts
+		assertThat(evaluations.get()).isEqualTo(10);
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.rossonet.ext.rules.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.Rules;
+
+public class ExecutionTraceTest {
+
+	@Test
+	public void firingIsNotTracedByDefault() {
+		// Given
+		final Rule rule = new RuleBuilder().name("rule").when(facts -> true).then(facts -> {
+		}).build();
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine();
+
+		// When
+		rulesEngine.fire(new Rules(rule), new Facts());
+
+		// Then
+		assertThat(rulesEngine.getExecutionTrace().dump()).isEmpty();
+	}
+
+	@Test
+	public void firingIsTracedWhenEnabledOnFacts() {
+		// Given
+		final Rule triggered = new RuleBuilder().name("triggered").priority(1).when(facts -> true).then(facts -> {
+		}).build();
+		final Rule failing = new RuleBuilder().name("failing").priority(2).when(facts -> true).then(facts -> {
+			throw new IllegalStateException("failure");
+		}).build();
+		final Rule notTriggered = new RuleBuilder().name("notTriggered").priority(3).when(facts -> false).build();
+		final Facts facts = new Facts();
+		facts.setTraceEnable(true);
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine();
+
+		// When
+		rulesEngine.fire(new Rules(triggered, failing, notTriggered), facts);
+
+		// Then
+		final List<ExecutionTrace.Entry> entries = rulesEngine.getExecutionTrace().dump();
+		assertThat(entries).hasSize(5);
+		assertThat(entries.get(0).getKind()).isEqualTo(ExecutionTrace.Kind.EVALUATION);
+		assertThat(entries.get(0).getRuleName()).isEqualTo("triggered");
+		assertThat(entries.get(0).isResult()).isTrue();
+		assertThat(entries.get(1).getKind()).isEqualTo(ExecutionTrace.Kind.EXECUTION);
+		assertThat(entries.get(3).getKind()).isEqualTo(ExecutionTrace.Kind.EXECUTION_FAILURE);
+		assertThat(entries.get(3).getRuleName()).isEqualTo("failing");
+		assertThat(entries.get(3).getFailure()).isInstanceOf(IllegalStateException.class);
+		assertThat(entries.get(4).getRuleName()).isEqualTo("notTriggered");
+		assertThat(entries.get(4).isResult()).isFalse();
+	}
+
+	@Test
+	public void invalidParametersAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new ExecutionTrace(0, 1));
+		assertThrows(IllegalArgumentException.class, () -> new ExecutionTrace(16, 0));
+	}
+
+	@Test
+	public void oldestEntriesAreOverwritten() {
+		// Given
+		final ExecutionTrace trace = new ExecutionTrace(3, 1);
+
+		// When
+		for (int i = 0; i < 6; i++) {
+			trace.record(ExecutionTrace.Kind.EVALUATION, "rule" + i, true, 0, null);
+		}
+
+		// Then
+		final List<ExecutionTrace.Entry> entries = trace.dump();
+		assertThat(trace.getCapacity()).isEqualTo(4);
+		assertThat(entries).hasSize(4);
+		assertThat(entries.get(0).getSequence()).isEqualTo(2L);
+		assertThat(entries.get(0).getRuleName()).isEqualTo("rule2");
+		assertThat(entries.get(3).getRuleName()).isEqualTo("rule5");
+		trace.clear();
+		assertThat(trace.dump()).isEmpty();
+	}
+
+	@Test
+	public void onlySampledFiringsAreTraced() {
+		// Given
+		final Rule rule = new RuleBuilder().name("rule").when(facts -> true).build();
+		final Rules rules = new Rules(rule);
+		rules.setTraceEnable(true);
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine();
+		rulesEngine.setExecutionTrace(new ExecutionTrace(16, 3));
+
+		// When
+		for (int i = 0; i < 6; i++) {
+			rulesEngine.fire(rules, new Facts());
+		}
+
+		// Then
+		assertThat(rulesEngine.getExecutionTrace().dump()).hasSize(4);
+	}
+
+}
@@ -24,6 +24,11 @@
 package org.rossonet.ext.rules.core;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 import org.rossonet.ext.rules.annotation.Action;
@@ -31,9 +36,12 @@ import org.rossonet.ext.rules.annotation.Condition;
 import org.rossonet.ext.rules.annotation.Fact;
 import org.rossonet.ext.rules.annotation.Priority;
 import org.rossonet.ext.rules.annotation.Rule;
+import org.rossonet.ext.rules.api.ConflictResolutionStrategy;
 import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.RuleListener;
 import org.rossonet.ext.rules.api.Rules;
 import org.rossonet.ext.rules.api.RulesEngine;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
 import org.rossonet.ext.rules.api.RulesEngineListener;
 
 public class InferenceRulesEngineTest {
@@ -102,6 +110,99 @@ public class InferenceRulesEngineTest {
 		}
 	}
 
+	static class Order {
+
+		private boolean processed;
+
+		public boolean isProcessed() {
+			return processed;
+		}
+
+		public void setProcessed(final boolean processed) {
+			this.processed = processed;
+		}
+	}
+
+	static class RecordingRuleListener implements RuleListener {
+
+		private final List<String> events = new ArrayList<>();
+
+		@Override
+		public void afterEvaluate(final org.rossonet.ext.rules.api.Rule rule, final Facts facts,
+				final boolean evaluationResult) {
+			events.add("afterEvaluate " + rule.getName() + " " + evaluationResult);
+		}
+
+		@Override
+		public boolean beforeEvaluate(final org.rossonet.ext.rules.api.Rule rule, final Facts facts) {
+			events.add("beforeEvaluate " + rule.getName());
+			return true;
+		}
+
+		@Override
+		public void beforeExecute(final org.rossonet.ext.rules.api.Rule rule, final Facts facts) {
+			events.add("beforeExecute " + rule.getName());
+		}
+
+		@Override
+		public void onEvaluationError(final org.rossonet.ext.rules.api.Rule rule, final Facts facts,
+				final Exception exception) {
+			events.add("onEvaluationError " + rule.getName());
+		}
+
+		@Override
+		public void onSuccess(final org.rossonet.ext.rules.api.Rule rule, final Facts facts) {
+			events.add("onSuccess " + rule.getName());
+		}
+	}
+
+	/**
+	 * Fire the rules on new facts, returning the events of the rule listeners.
+	 */
+	private static List<String> fireAndRecord(final AbstractRulesEngine rulesEngine, final Rules rules) {
+		final RecordingRuleListener listener = new RecordingRuleListener();
+		rulesEngine.registerRuleListener(listener);
+		rulesEngine.fire(rules, new Facts());
+		return listener.events;
+	}
+
+	private static Rules listenedRules(final boolean falseFirst) {
+		final Rules rules = new Rules();
+		if (falseFirst) {
+			rules.register(new RuleBuilder().name("idle").priority(1).when(facts -> false).build());
+		} else {
+			rules.register(new RuleBuilder().name("broken").priority(1).when(facts -> {
+				throw new IllegalStateException("broken condition");
+			}).build());
+		}
+		rules.register(new RuleBuilder().name("ready").priority(2).when(facts -> !facts.has("done"))
+				.then(facts -> facts.put("done", true)).build());
+		return rules;
+	}
+
+	@Test
+	public void testActivationIsCancelledWhenItsFactsChange() {
+		// Given
+		final Facts facts = new Facts();
+		facts.put("foo", true);
+		facts.put("bar", true);
+		final List<String> fired = new ArrayList<>();
+		final Rules rules = new Rules(
+				new RuleBuilder().name("first").priority(1).when(f -> f.has("foo")).then(f -> {
+					fired.add("first");
+					f.remove("foo");
+					f.remove("bar");
+				}).build(), new RuleBuilder().name("second").priority(2).when(f -> f.has("bar")).then(f -> {
+					fired.add("second");
+				}).build());
+
+		// When
+		new InferenceRulesEngine().fire(rules, facts);
+
+		// Then
+		assertThat(fired).containsExactly("first");
+	}
+
 	@Test
 	public void testCandidateOrdering() {
 		// Given
@@ -140,6 +241,159 @@ public class InferenceRulesEngineTest {
 		assertThat(anotherDummyRule.isExecuted()).isFalse();
 	}
 
+	@Test
+	public void testConditionsAreEvaluatedOncePerCycle() {
+		// Given
+		final Facts facts = new Facts();
+		facts.put("foo", true);
+		final AtomicInteger evaluations = new AtomicInteger();
+		final Rules rules = new Rules(new RuleBuilder().name("rule").when(f -> {
+			evaluations.incrementAndGet();
+			return f.has("foo");
+		}).then(f -> f.remove("foo")).build());
+
+		// When
+		new InferenceRulesEngine().fire(rules, facts);
+
+		// Then
+		// one evaluation to select the rule and one to find out there is nothing left to fire
+		assertThat(evaluations.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testLifoConflictResolutionStrategy() {
+		// Given
+		final Facts facts = new Facts();
+		facts.put("foo", true);
+		facts.put("bar", true);
+		final List<String> fired = new ArrayList<>();
+		final Rules rules = new Rules(
+				new RuleBuilder().name("first").priority(1).when(f -> f.has("foo")).then(f -> {
+					fired.add("first");
+					f.remove("foo");
+				}).build(), new RuleBuilder().name("second").priority(2).when(f -> f.has("bar")).then(f -> {
+					fired.add("second");
+					f.remove("bar");
+				}).build());
+		final RulesEngineParameters parameters = new RulesEngineParameters()
+				.conflictResolutionStrategy(ConflictResolutionStrategy.LIFO);
+
+		// When
+		new InferenceRulesEngine(parameters).fire(rules, facts);
+
+		// Then
+		assertThat(fired).containsExactly("second", "first");
+	}
+
+	@Test
+	public void testListenersAreCalledAsInTheDefaultEngineOnEvaluationErrors() {
+		// Given
+		final RulesEngineParameters parameters = new RulesEngineParameters();
+
+		// When
+		final List<String> expected = fireAndRecord(new DefaultRulesEngine(parameters), listenedRules(false));
+		final List<String> events = fireAndRecord(new InferenceRulesEngine(parameters), listenedRules(false));
+
+		// Then
+		assertThat(expected).containsExactly("beforeEvaluate broken", "onEvaluationError broken",
+				"afterEvaluate broken false", "beforeEvaluate ready", "afterEvaluate ready true",
+				"beforeExecute ready", "onSuccess ready");
+		// first cycle, then the second cycle selecting no rule
+		assertThat(events.subList(0, expected.size())).isEqualTo(expected);
+		assertThat(events.subList(expected.size(), events.size())).containsExactly("beforeEvaluate broken",
+				"onEvaluationError broken", "afterEvaluate broken false", "beforeEvaluate ready",
+				"afterEvaluate ready false");
+	}
+
+	@Test
+	public void testListenersAreCalledAsInTheDefaultEngineWhenSkippingOnFirstNonTriggeredRule() {
+		// Given
+		final RulesEngineParameters parameters = new RulesEngineParameters().skipOnFirstNonTriggeredRule(true);
+
+		// When
+		final List<String> expectedOnError = fireAndRecord(new DefaultRulesEngine(parameters), listenedRules(false));
+		final List<String> eventsOnError = fireAndRecord(new InferenceRulesEngine(parameters),
+				listenedRules(false));
+		final List<String> expectedOnFalse = fireAndRecord(new DefaultRulesEngine(parameters), listenedRules(true));
+		final List<String> eventsOnFalse = fireAndRecord(new InferenceRulesEngine(parameters), listenedRules(true));
+
+		// Then
+		assertThat(expectedOnError).containsExactly("beforeEvaluate broken", "onEvaluationError broken");
+		assertThat(eventsOnError).isEqualTo(expectedOnError);
+		assertThat(expectedOnFalse).containsExactly("beforeEvaluate idle", "afterEvaluate idle false");
+		assertThat(eventsOnFalse).isEqualTo(expectedOnFalse);
+	}
+
+	@Test
+	public void testMaxCycles() {
+		// Given
+		final Facts facts = new Facts();
+		final AtomicInteger executions = new AtomicInteger();
+		final Rules rules = new Rules(
+				new RuleBuilder().name("rule").when(f -> true).then(f -> executions.incrementAndGet()).build());
+		final RulesEngineParameters parameters = new RulesEngineParameters().maxCycles(3);
+
+		// When
+		new InferenceRulesEngine(parameters).fire(rules, facts);
+
+		// Then
+		assertThat(executions.get()).isEqualTo(3);
+	}
+
+	@Test
+	public void testMaxCyclesBelowOneAreRejected() {
+		final RulesEngineParameters parameters = new RulesEngineParameters();
+
+		assertThatThrownBy(() -> parameters.maxCycles(0)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("maxCycles must be at least 1");
+		assertThatThrownBy(() -> parameters.setMaxCycles(-1)).isInstanceOf(IllegalArgumentException.class);
+		assertThat(parameters.getMaxCycles()).isEqualTo(RulesEngineParameters.DEFAULT_MAX_CYCLES);
+	}
+
+	@Test
+	public void testOnlyRulesWhoseFactsChangedAreEvaluatedAgain() {
+		// Given
+		final Facts facts = new Facts();
+		facts.put("counter", 0);
+		facts.put("temperature", 20);
+		final AtomicInteger temperatureEvaluations = new AtomicInteger();
+		final Rules rules = new Rules(
+				new RuleBuilder().name("counter").priority(1).when(f -> f.<Integer>get("counter") < 3)
+						.then(f -> f.put("counter", f.<Integer>get("counter") + 1)).build(),
+				new RuleBuilder().name("temperature").priority(2).when(f -> {
+					temperatureEvaluations.incrementAndGet();
+					return f.<Integer>get("temperature") > 30;
+				}).build());
+
+		// When
+		new InferenceRulesEngine(new RulesEngineParameters().incrementalEvaluation(true)).fire(rules, facts);
+
+		// Then
+		assertThat(facts.<Integer>get("counter")).isEqualTo(3);
+		assertThat(temperatureEvaluations.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void testRulesAreEvaluatedAgainWhenAFactIsChangedInPlace() {
+		// Given
+		final Facts facts = new Facts();
+		facts.put("order", new Order());
+		final AtomicInteger executions = new AtomicInteger();
+		final Rules rules = new Rules(new RuleBuilder().name("process")
+				.when(f -> !f.<Order>get("order").isProcessed()).then(f -> {
+					executions.incrementAndGet();
+					f.<Order>get("order").setProcessed(true);
+				}).build());
+		final RulesEngineParameters parameters = new RulesEngineParameters().maxCycles(10);
+
+		// When
+		new InferenceRulesEngine(parameters).fire(rules, facts);
+
+		// Then
+		assertThat(executions.get()).isEqualTo(1);
+		assertThat(facts.<Order>get("order").isProcessed()).isTrue();
+	}
+
 	@Test
 	public void testRulesEngineListener() {
 		// Given
@@ -0,0 +1,198 @@
+package org.rossonet.ext.rules.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.RuleListener;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+
+public class ParallelEvaluationTest {
+
+	private final RulesEngineParameters parameters = new RulesEngineParameters().parallelEvaluation(true);
+
+	@Test
+	public void testActionsAreExecutedInPriorityOrder() {
+		// Given
+		final List<String> fired = new ArrayList<>();
+		final Rules rules = new Rules();
+		for (int i = 0; i < 20; i++) {
+			final String name = "rule" + i;
+			rules.register(new RuleBuilder().name(name).priority(i).when(facts -> facts.has("foo"))
+					.then(facts -> fired.add(name)).build());
+		}
+		final Facts facts = new Facts();
+		facts.put("foo", true);
+
+		// When
+		new DefaultRulesEngine(parameters).fire(rules, facts);
+
+		// Then
+		assertThat(fired).hasSize(20);
+		for (int i = 0; i < 20; i++) {
+			assertThat(fired.get(i)).isEqualTo("rule" + i);
+		}
+	}
+
+	@Test
+	public void testCheckEvaluatesAllConditions() {
+		// Given
+		final Rule hot = new RuleBuilder().name("hot").priority(1).when(facts -> facts.<Integer>get("temperature") > 30)
+				.build();
+		final Rule cold = new RuleBuilder().name("cold").priority(2)
+				.when(facts -> facts.<Integer>get("temperature") < 10).build();
+		final Facts facts = new Facts();
+		facts.put("temperature", 35);
+
+		// When
+		final Map<Rule, Boolean> result = new DefaultRulesEngine(parameters).check(new Rules(hot, cold), facts);
+
+		// Then
+		assertThat(result).containsEntry(hot, true).containsEntry(cold, false);
+	}
+
+	@Test
+	public void testConditionsAboveThePriorityThresholdAreNotEvaluated() {
+		// Given
+		final Map<String, Integer> evaluations = new ConcurrentHashMap<>();
+		final Rules rules = new Rules();
+		for (int i = 0; i < 20; i++) {
+			final String name = "rule" + i;
+			rules.register(new RuleBuilder().name(name).priority(i).when(facts -> {
+				evaluations.merge(name, 1, Integer::sum);
+				return false;
+			}).build());
+		}
+
+		// When
+		new DefaultRulesEngine(new RulesEngineParameters().parallelEvaluation(true).priorityThreshold(9))
+				.fire(rules, new Facts());
+
+		// Then
+		assertThat(evaluations).hasSize(10).containsKeys("rule0", "rule9").doesNotContainKey("rule10");
+	}
+
+	@Test
+	public void testConditionsAreEvaluatedAgainWhenFactsChange() {
+		// Given
+		final List<String> fired = new ArrayList<>();
+		final Rule first = new RuleBuilder().name("first").priority(1).when(facts -> true).then(facts -> {
+			fired.add("first");
+			facts.put("bar", true);
+		}).build();
+		final Rule second = new RuleBuilder().name("second").priority(2).when(facts -> facts.has("bar"))
+				.then(facts -> fired.add("second")).build();
+
+		// When
+		new DefaultRulesEngine(parameters).fire(new Rules(first, second), new Facts());
+
+		// Then
+		assertThat(fired).containsExactly("first", "second");
+	}
+
+	@Test
+	public void testConditionsAreEvaluatedAtMostTwice() {
+		// Given
+		final AtomicInteger evaluations = new AtomicInteger();
+		final Rules rules = new Rules();
+		for (int i = 0; i < 20; i++) {
+			final String name = "rule" + i;
+			rules.register(new RuleBuilder().name(name).priority(i).when(facts -> {
+				evaluations.incrementAndGet();
+				return true;
+			}).then(facts -> facts.put(name, true)).build());
+		}
+		final Facts facts = new Facts();
+
+		// When
+		new DefaultRulesEngine(parameters).fire(rules, facts);
+
+		// Then
+		assertThat(facts.size()).isEqualTo(20);
+		assertThat(evaluations.get()).isLessThanOrEqualTo(40);
+	}
+
+	@Test
+	public void testConditionsSeeTheFactsChangedInPlace() {
+		// Given
+		final List<String> fired = new ArrayList<>();
+		final List<String> alarms = new ArrayList<>();
+		final Rule raise = new RuleBuilder().name("raise").priority(1).when(facts -> true)
+				.then(facts -> facts.<List<String>>get("alarms").add("overheat")).build();
+		final Rule notify = new RuleBuilder().name("notify").priority(2)
+				.when(facts -> !facts.<List<String>>get("alarms").isEmpty()).then(facts -> fired.add("notify"))
+				.build();
+		final Facts facts = new Facts();
+		facts.put("alarms", alarms);
+
+		// When
+		new DefaultRulesEngine(parameters).fire(new Rules(raise, notify), facts);
+
+		// Then
+		assertThat(fired).containsExactly("notify");
+	}
+
+	@Test
+	public void testNonParallelizableRulesAreEvaluatedOnTheCallingThread() {
+		// Given
+		final Thread caller = Thread.currentThread();
+		final AtomicInteger otherThreadEvaluations = new AtomicInteger();
+		final Rules rules = new Rules();
+		for (int i = 0; i < 20; i++) {
+			rules.register(new RuleBuilder().name("rule" + i).priority(i).parallelizable(false).when(facts -> {
+				if (Thread.currentThread() != caller) {
+					otherThreadEvaluations.incrementAndGet();
+				}
+				return false;
+			}).build());
+		}
+
+		// When
+		new DefaultRulesEngine(parameters).fire(rules, new Facts());
+
+		// Then
+		assertThat(otherThreadEvaluations.get()).isZero();
+	}
+
+
+	@Test
+	public void testVetoedConditionsAreNotEvaluated() {
+		// Given
+		final Map<String, Integer> evaluations = new ConcurrentHashMap<>();
+		final Map<String, Integer> requests = new ConcurrentHashMap<>();
+		final Rules rules = new Rules();
+		for (int i = 0; i < 20; i++) {
+			final String name = "rule" + i;
+			rules.register(new RuleBuilder().name(name).priority(i).when(facts -> {
+				evaluations.merge(name, 1, Integer::sum);
+				return false;
+			}).build());
+		}
+		final DefaultRulesEngine engine = new DefaultRulesEngine(parameters);
+		engine.registerRuleListener(new RuleListener() {
+
+			@Override
+			public boolean beforeEvaluate(final Rule rule, final Facts facts) {
+				requests.merge(rule.getName(), 1, Integer::sum);
+				return !rule.getName().equals("rule5");
+			}
+		});
+
+		// When
+		engine.fire(rules, new Facts());
+
+		// Then
+		assertThat(evaluations).hasSize(19).doesNotContainKey("rule5");
+		assertThat(requests).hasSize(20);
+		assertThat(requests.values()).containsOnly(1);
+	}
+
+}
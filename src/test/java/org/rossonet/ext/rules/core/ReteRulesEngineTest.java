@@ -0,0 +1,254 @@
+package org.rossonet.ext.rules.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.CompiledRules;
+import org.rossonet.ext.rules.api.ConflictResolutionStrategy;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.RuleListener;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+
+public class ReteRulesEngineTest {
+
+	@Test
+	public void testChainedRulesAreFiredInPriorityOrder() {
+		// Given
+		final List<String> fired = new ArrayList<>();
+		final Rule first = new RuleBuilder().name("first").priority(1).when(facts -> facts.has("start"))
+				.then(facts -> {
+					fired.add("first");
+					facts.put("middle", true);
+				}).build();
+		final Rule second = new RuleBuilder().name("second").priority(2).when(facts -> facts.has("middle"))
+				.then(facts -> {
+					fired.add("second");
+					facts.put("end", true);
+				}).build();
+		final Rules rules = new Rules(second, first);
+		final Facts facts = new Facts();
+		facts.put("start", true);
+
+		// When
+		new ReteRulesEngine().fire(rules, facts);
+
+		// Then
+		assertThat(fired).containsExactly("first", "second");
+		assertThat(facts.has("end")).isTrue();
+	}
+
+	@Test
+	public void testDiscardedCompiledRulesAreGarbageCollected() throws InterruptedException {
+		// Given
+		final ReteRulesEngine engine = new ReteRulesEngine();
+		final AtomicInteger executions = new AtomicInteger();
+		CompiledRules rules = CompiledRules.compile(new Rules(new RuleBuilder().name("rule").when(facts -> true)
+				.then(facts -> executions.incrementAndGet()).build()));
+		engine.fire(rules, new Facts());
+		assertThat(executions.get()).isEqualTo(1);
+		final WeakReference<CompiledRules> reference = new WeakReference<>(rules);
+
+		// When
+		rules = null;
+		for (int i = 0; i < 100 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		// Then
+		assertThat(reference.get()).isNull();
+		Reference.reachabilityFence(engine);
+	}
+
+	@Test
+	public void testLifoConflictResolutionStrategy() {
+		// Given
+		final List<String> fired = new ArrayList<>();
+		final Rule first = new RuleBuilder().name("first").priority(1).when(facts -> facts.has("foo"))
+				.then(facts -> fired.add("first")).build();
+		final Rule second = new RuleBuilder().name("second").priority(2).when(facts -> facts.has("foo"))
+				.then(facts -> fired.add("second")).build();
+		final Facts facts = new Facts();
+		facts.put("foo", true);
+		final RulesEngineParameters parameters = new RulesEngineParameters()
+				.conflictResolutionStrategy(ConflictResolutionStrategy.LIFO);
+
+		// When
+		new ReteRulesEngine(parameters).fire(new Rules(first, second), facts);
+
+		// Then
+		assertThat(fired).containsExactly("second", "first");
+	}
+
+	@Test
+	public void testMaxCycles() {
+		// Given
+		final AtomicInteger counter = new AtomicInteger();
+		final Rule rule = new RuleBuilder().name("counter").when(facts -> facts.has("count"))
+				.then(facts -> facts.put("count", counter.incrementAndGet())).build();
+		final Facts facts = new Facts();
+		facts.put("count", 0);
+		final RulesEngineParameters parameters = new RulesEngineParameters().maxCycles(5);
+
+		// When
+		new ReteRulesEngine(parameters).fire(new Rules(rule), facts);
+
+		// Then
+		assertThat(counter.get()).isEqualTo(5);
+	}
+
+	@Test
+	public void testOnlyRulesReadingChangedFactsAreEvaluatedAgain() {
+		// Given
+		final AtomicInteger temperatureEvaluations = new AtomicInteger();
+		final AtomicInteger pressureEvaluations = new AtomicInteger();
+		final Rule temperature = new RuleBuilder().name("temperature").when(facts -> {
+			temperatureEvaluations.incrementAndGet();
+			return facts.<Integer>get("temperature") > 30;
+		}).build();
+		final Rule pressure = new RuleBuilder().name("pressure").when(facts -> {
+			pressureEvaluations.incrementAndGet();
+			return facts.<Integer>get("pressure") > 2;
+		}).build();
+		final Rules rules = new Rules(temperature, pressure);
+		final Facts facts = new Facts();
+		facts.put("temperature", 20);
+		facts.put("pressure", 1);
+		final ReteRulesEngine rulesEngine = new ReteRulesEngine();
+
+		// When
+		rulesEngine.fire(rules, facts);
+		facts.put("temperature", 35);
+		final Map<Rule, Boolean> result = rulesEngine.check(rules, facts);
+
+		// Then
+		assertThat(result).containsEntry(temperature, true).containsEntry(pressure, false);
+		assertThat(temperatureEvaluations.get()).isEqualTo(2);
+		assertThat(pressureEvaluations.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void testFiredRuleIsNotFiredAgainUntilItsFactsChange() {
+		// Given
+		final AtomicInteger executions = new AtomicInteger();
+		final Rule rule = new RuleBuilder().name("alarm").when(facts -> facts.<Integer>get("temperature") > 30)
+				.then(facts -> executions.incrementAndGet()).build();
+		final Rules rules = new Rules(rule);
+		final Facts facts = new Facts();
+		facts.put("temperature", 35);
+		final ReteRulesEngine rulesEngine = new ReteRulesEngine();
+
+		// When
+		rulesEngine.fire(rules, facts);
+		rulesEngine.fire(rules, facts);
+
+		// Then
+		assertThat(executions.get()).isEqualTo(1);
+
+		// When
+		facts.put("temperature", 40);
+		rulesEngine.fire(rules, facts);
+
+		// Then
+		assertThat(executions.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testRetractionCancelsActivation() {
+		// Given
+		final AtomicInteger executions = new AtomicInteger();
+		final Rule retract = new RuleBuilder().name("retract").priority(1).when(facts -> facts.has("foo"))
+				.then(facts -> facts.remove("bar")).build();
+		final Rule useBar = new RuleBuilder().name("useBar").priority(2).when(facts -> facts.has("bar"))
+				.then(facts -> executions.incrementAndGet()).build();
+		final Rules rules = new Rules(retract, useBar);
+		final Facts facts = new Facts();
+		facts.put("foo", true);
+		facts.put("bar", true);
+
+		// When
+		new ReteRulesEngine().fire(rules, facts);
+
+		// Then
+		assertThat(executions.get()).isZero();
+	}
+
+	@Test
+	public void testRuleListenersAreInvoked() {
+		// Given
+		final List<String> events = new ArrayList<>();
+		final Rule rule = new RuleBuilder().name("rule").when(facts -> facts.has("foo")).then(facts -> {
+		}).build();
+		final ReteRulesEngine rulesEngine = new ReteRulesEngine();
+		rulesEngine.registerRuleListener(new RuleListener() {
+
+			@Override
+			public void afterEvaluate(Rule rule, Facts facts, boolean evaluationResult) {
+				events.add("afterEvaluate:" + evaluationResult);
+			}
+
+			@Override
+			public void beforeExecute(Rule rule, Facts facts) {
+				events.add("beforeExecute");
+			}
+
+			@Override
+			public void onSuccess(Rule rule, Facts facts) {
+				events.add("onSuccess");
+			}
+		});
+		final Facts facts = new Facts();
+		facts.put("foo", true);
+
+		// When
+		rulesEngine.fire(new Rules(rule), facts);
+
+		// Then
+		assertThat(events).containsExactly("afterEvaluate:true", "beforeExecute", "onSuccess");
+	}
+
+	@Test
+	public void testSkipOnFirstAppliedRule() {
+		// Given
+		final List<String> fired = new ArrayList<>();
+		final Rule first = new RuleBuilder().name("first").priority(1).when(facts -> true)
+				.then(facts -> fired.add("first")).build();
+		final Rule second = new RuleBuilder().name("second").priority(2).when(facts -> true)
+				.then(facts -> fired.add("second")).build();
+		final RulesEngineParameters parameters = new RulesEngineParameters().skipOnFirstAppliedRule(true);
+
+		// When
+		new ReteRulesEngine(parameters).fire(new Rules(first, second), new Facts());
+
+		// Then
+		assertThat(fired).containsExactly("first");
+	}
+
+	@Test
+	public void testUpdatesMadeByActionsOutsideTheGivenFactsAreDetected() {
+		// Given
+		final Facts facts = new Facts();
+		facts.put("start", true);
+		final Rule first = new RuleBuilder().name("first").priority(1).when(f -> f.has("start"))
+				.then(f -> facts.put("next", true)).build();
+		final AtomicInteger executions = new AtomicInteger();
+		final Rule second = new RuleBuilder().name("second").priority(2).when(f -> f.has("next"))
+				.then(f -> executions.incrementAndGet()).build();
+
+		// When
+		new ReteRulesEngine().fire(new Rules(first, second), facts);
+
+		// Then
+		assertThat(executions.get()).isEqualTo(1);
+	}
+
+}
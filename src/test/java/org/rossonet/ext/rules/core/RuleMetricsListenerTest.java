@@ -0,0 +1,98 @@
+package org.rossonet.ext.rules.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+
+public class RuleMetricsListenerTest {
+
+	@Test
+	public void latencyPercentilesAreBoundedByTheMaximum() throws Exception {
+		// Given
+		final RuleMetricsListener listener = new RuleMetricsListener();
+		final Rule rule = new RuleBuilder().name("slow").when(facts -> true).then(facts -> Thread.sleep(2)).build();
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine();
+		rulesEngine.registerRuleListener(listener);
+
+		// When
+		rulesEngine.fire(new Rules(rule), new Facts());
+
+		// Then
+		final RuleMetricsListener.Latency latency = listener.getMetrics("slow").getActionLatency();
+		assertThat(latency.getCount()).isEqualTo(1L);
+		assertThat(latency.getMax()).isGreaterThanOrEqualTo(2_000_000L);
+		assertThat(latency.getPercentile(50)).isEqualTo(latency.getMax());
+		assertThat(latency.getPercentile(99)).isEqualTo(latency.getMax());
+		assertThat(latency.getMean()).isEqualTo((double) latency.getMax());
+	}
+
+	@Test
+	public void metricsAreExposedAsFacts() {
+		// Given
+		final RuleMetricsListener listener = new RuleMetricsListener();
+		final Rule rule = new RuleBuilder().name("rule").when(facts -> true).build();
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine();
+		rulesEngine.registerRuleListener(listener);
+		rulesEngine.fire(new Rules(rule), new Facts());
+
+		// When
+		final Facts facts = listener.toFacts();
+
+		// Then
+		final RuleMetricsListener.RuleMetrics metrics = facts.get("rule");
+		assertThat(metrics.getRuleName()).isEqualTo("rule");
+		assertThat(metrics.getEvaluations()).isEqualTo(1L);
+		listener.reset();
+		assertThat(listener.getMetrics()).isEmpty();
+		assertThat(listener.getMetrics("rule")).isNull();
+	}
+
+	@Test
+	public void metricsAreRecordedPerRule() {
+		// Given
+		final RuleMetricsListener listener = new RuleMetricsListener();
+		final AtomicInteger counter = new AtomicInteger();
+		final Rule everyOther = new RuleBuilder().name("everyOther").priority(1)
+				.when(facts -> counter.incrementAndGet() % 2 == 0).then(facts -> {
+				}).build();
+		final Rule failing = new RuleBuilder().name("failing").priority(2).when(facts -> true).then(facts -> {
+			throw new IllegalStateException("failure");
+		}).build();
+		final Rule broken = new RuleBuilder().name("broken").priority(3).when(facts -> {
+			throw new IllegalStateException("error");
+		}).build();
+		final Rules rules = new Rules(everyOther, failing, broken);
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine(
+				new RulesEngineParameters().parallelEvaluation(true));
+		rulesEngine.registerRuleListener(listener);
+
+		// When
+		for (int i = 0; i < 4; i++) {
+			rulesEngine.fire(rules, new Facts());
+		}
+
+		// Then
+		final RuleMetricsListener.RuleMetrics everyOtherMetrics = listener.getMetrics("everyOther");
+		assertThat(everyOtherMetrics.getEvaluations()).isEqualTo(4L);
+		assertThat(everyOtherMetrics.getTriggers()).isEqualTo(2L);
+		assertThat(everyOtherMetrics.getTriggerRatio()).isEqualTo(0.5);
+		assertThat(everyOtherMetrics.getExecutions()).isEqualTo(2L);
+		assertThat(everyOtherMetrics.getEvaluationLatency().getCount()).isEqualTo(4L);
+		assertThat(everyOtherMetrics.getActionLatency().getCount()).isEqualTo(2L);
+		final RuleMetricsListener.RuleMetrics failingMetrics = listener.getMetrics("failing");
+		assertThat(failingMetrics.getExecutions()).isEqualTo(4L);
+		assertThat(failingMetrics.getFailures()).isEqualTo(4L);
+		final RuleMetricsListener.RuleMetrics brokenMetrics = listener.getMetrics("broken");
+		assertThat(brokenMetrics.getEvaluations()).isEqualTo(4L);
+		assertThat(brokenMetrics.getEvaluationErrors()).isEqualTo(4L);
+		assertThat(brokenMetrics.getTriggers()).isEqualTo(0L);
+		assertThat(listener.getMetrics()).containsOnlyKeys("broken", "everyOther", "failing");
+	}
+
+}
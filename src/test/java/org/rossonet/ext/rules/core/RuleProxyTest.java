@@ -24,15 +24,26 @@
 package org.rossonet.ext.rules.core;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.util.Arrays;
+import java.util.HashSet;
+
 import org.junit.jupiter.api.Test;
 import org.rossonet.ext.rules.annotation.Action;
 import org.rossonet.ext.rules.annotation.AnnotatedRuleWithMetaRuleAnnotation;
 import org.rossonet.ext.rules.annotation.Condition;
+import org.rossonet.ext.rules.annotation.Fact;
 import org.rossonet.ext.rules.annotation.Priority;
+import org.rossonet.ext.rules.api.FactDependent;
+import org.rossonet.ext.rules.api.Facts;
 import org.rossonet.ext.rules.api.Rule;
 import org.rossonet.ext.rules.api.Rules;
 
@@ -152,6 +163,16 @@ public class RuleProxyTest {
 		assertNotNull(proxy.getName());
 	}
 
+	@Test
+	public void testAdapterIsBuiltOncePerClass() {
+		final RuleProxy proxy1 = (RuleProxy) RuleProxy.asRule(new DummyRule());
+		final RuleProxy proxy2 = (RuleProxy) RuleProxy.asRule(new DummyRule());
+
+		assertSame(RuleAdapter.of(DummyRule.class), RuleAdapter.of(DummyRule.class));
+		assertNotSame(proxy1.getTarget(), proxy2.getTarget());
+		assertEquals(proxy1, proxy2);
+	}
+
 	@Test
 	public void testCompareTo() {
 
@@ -228,6 +249,64 @@ public class RuleProxyTest {
 		rules.register(rule);
 	}
 
+	@Test
+	public void testFactDependencies() {
+
+		@org.rossonet.ext.rules.annotation.Rule
+		class MyRule {
+			@Action
+			public void then(Facts facts) {
+			}
+
+			@Condition
+			public boolean when(@Fact("temperature") int temperature, @Fact("pressure") int pressure) {
+				return temperature > 30 && pressure > 2;
+			}
+		}
+
+		@org.rossonet.ext.rules.annotation.Rule
+		class MyRuleReadingAllFacts {
+			@Action
+			public void then() {
+			}
+
+			@Condition
+			public boolean when(Facts facts) {
+				return true;
+			}
+		}
+
+		final Rule proxy = RuleProxy.asRule(new MyRule());
+		assertEquals(new HashSet<>(Arrays.asList("temperature", "pressure")),
+				((FactDependent) proxy).getFactDependencies());
+		assertNull(((FactDependent) RuleProxy.asRule(new MyRuleReadingAllFacts())).getFactDependencies());
+	}
+
+	@Test
+	public void testFactsAreInjectedWithWideningConversion() {
+
+		@org.rossonet.ext.rules.annotation.Rule
+		class MyRule {
+			@Action
+			public void then() {
+			}
+
+			@Condition
+			public boolean when(@Fact("temperature") long temperature, @Fact("unit") String unit) {
+				return temperature > 30 && "C".equals(unit);
+			}
+		}
+
+		final Rule proxy = RuleProxy.asRule(new MyRule());
+		final Facts facts = new Facts();
+		facts.put("temperature", 35);
+		facts.put("unit", "C");
+		assertTrue(proxy.evaluate(facts));
+
+		facts.put("unit", 'C');
+		assertFalse(proxy.evaluate(facts));
+	}
+
 	@Test
 	public void testDefaultPriority() {
 
@@ -248,6 +327,25 @@ public class RuleProxyTest {
 		assertEquals(Rule.DEFAULT_PRIORITY, proxy.getPriority());
 	}
 
+	@Test
+	public void testParallelizableFromAnnotation() {
+
+		@org.rossonet.ext.rules.annotation.Rule(parallelizable = false)
+		class MyRule {
+			@Action
+			public void then() {
+			}
+
+			@Condition
+			public boolean when() {
+				return true;
+			}
+		}
+
+		assertTrue(RuleProxy.asRule(new DummyRule()).isParallelizable());
+		assertFalse(RuleProxy.asRule(new MyRule()).isParallelizable());
+	}
+
 	@Test
 	public void testPriorityFromAnnotation() {
 
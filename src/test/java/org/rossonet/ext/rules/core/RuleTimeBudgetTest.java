@@ -0,0 +1,194 @@
+package org.rossonet.ext.rules.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.RuleListener;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.rules.api.RulesEngine;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+
+public class RuleTimeBudgetTest {
+
+	/**
+	 * Listener collecting the time budget violations.
+	 */
+	private static final class ViolationListener implements RuleListener {
+
+		private final List<RuleTimeBudgetExceededException> violations = new ArrayList<>();
+
+		@Override
+		public void onEvaluationError(final Rule rule, final Facts facts, final Exception exception) {
+			if (exception instanceof RuleTimeBudgetExceededException) {
+				violations.add((RuleTimeBudgetExceededException) exception);
+			}
+		}
+
+		@Override
+		public void onFailure(final Rule rule, final Facts facts, final Exception exception) {
+			if (exception instanceof RuleTimeBudgetExceededException) {
+				violations.add((RuleTimeBudgetExceededException) exception);
+			}
+		}
+	}
+
+	private static void sleep() {
+		try {
+			Thread.sleep(5);
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void breakerIsHalfOpenAfterTheResetTimeout() throws Exception {
+		// Given
+		final AtomicInteger evaluations = new AtomicInteger();
+		final Rule rule = new RuleBuilder().name("slow").when(facts -> {
+			if (evaluations.incrementAndGet() == 1) {
+				sleep();
+			}
+			return false;
+		}).build();
+		final ViolationListener listener = new ViolationListener();
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine(new RulesEngineParameters()
+				.ruleTimeBudget(Duration.ofMillis(1)).circuitBreakerThreshold(1)
+				.circuitBreakerResetTimeout(Duration.ofMillis(10)));
+		rulesEngine.registerRuleListener(listener);
+		rulesEngine.fire(new Rules(rule), new Facts());
+		assertThat(listener.violations.get(0).isCircuitOpen()).isTrue();
+
+		// When
+		Thread.sleep(20);
+		rulesEngine.fire(new Rules(rule), new Facts());
+		rulesEngine.fire(new Rules(rule), new Facts());
+
+		// Then
+		assertThat(evaluations.get()).isEqualTo(3);
+		assertThat(rulesEngine.circuitBreakers.isOpen("slow")).isFalse();
+		assertThat(listener.violations).hasSize(1);
+	}
+
+	@Test
+	public void invalidParametersAreRejected() {
+		final RulesEngineParameters parameters = new RulesEngineParameters();
+		assertThrows(IllegalArgumentException.class, () -> parameters.setRuleTimeBudget(Duration.ZERO));
+		assertThrows(IllegalArgumentException.class, () -> parameters.setCircuitBreakerThreshold(0));
+		assertThrows(IllegalArgumentException.class,
+				() -> parameters.setCircuitBreakerResetTimeout(Duration.ofSeconds(-1)));
+	}
+
+	@Test
+	public void rulesWithinBudgetAreNotAffected() {
+		// Given
+		final AtomicInteger executions = new AtomicInteger();
+		final Rule rule = new RuleBuilder().name("fast").when(facts -> true)
+				.then(facts -> executions.incrementAndGet()).build();
+		final ViolationListener listener = new ViolationListener();
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine(
+				new RulesEngineParameters().ruleTimeBudget(Duration.ofSeconds(10)).parallelEvaluation(true));
+		rulesEngine.registerRuleListener(listener);
+
+		// When
+		rulesEngine.fire(new Rules(rule), new Facts());
+
+		// Then
+		assertThat(executions.get()).isEqualTo(1);
+		assertThat(listener.violations).isEmpty();
+	}
+
+	@Test
+	public void slowActionsOpenTheBreakerInTheInferenceEngine() {
+		// Given
+		final AtomicInteger executions = new AtomicInteger();
+		final Rule rule = new RuleBuilder().name("slow").when(facts -> true).then(facts -> {
+			executions.incrementAndGet();
+			sleep();
+		}).build();
+		final ViolationListener listener = new ViolationListener();
+		final InferenceRulesEngine rulesEngine = new InferenceRulesEngine(new RulesEngineParameters()
+				.ruleTimeBudget(Duration.ofMillis(1)).circuitBreakerThreshold(1).maxCycles(10));
+		rulesEngine.registerRuleListener(listener);
+
+		// When
+		rulesEngine.fire(new Rules(rule), new Facts());
+		rulesEngine.fire(new Rules(rule), new Facts());
+
+		// Then
+		assertThat(executions.get()).isEqualTo(1);
+		assertThat(listener.violations).hasSize(1);
+		assertThat(listener.violations.get(0).getRuleName()).isEqualTo("slow");
+		assertThat(listener.violations.get(0).isCircuitOpen()).isTrue();
+	}
+
+	@Test
+	public void slowConditionsOpenTheBreakerAfterTheThreshold() {
+		// Given
+		final AtomicInteger evaluations = new AtomicInteger();
+		final AtomicInteger executions = new AtomicInteger();
+		final Rule rule = new RuleBuilder().name("slow").when(facts -> {
+			evaluations.incrementAndGet();
+			sleep();
+			return true;
+		}).then(facts -> executions.incrementAndGet()).build();
+		final ViolationListener listener = new ViolationListener();
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine(new RulesEngineParameters()
+				.ruleTimeBudget(Duration.ofMillis(1)).circuitBreakerThreshold(2)
+				.circuitBreakerResetTimeout(Duration.ofHours(1)));
+		rulesEngine.registerRuleListener(listener);
+
+		// When
+		for (int i = 0; i < 4; i++) {
+			rulesEngine.fire(new Rules(rule), new Facts());
+		}
+
+		// Then
+		assertThat(evaluations.get()).isEqualTo(2);
+		assertThat(executions.get()).isEqualTo(0);
+		assertThat(listener.violations).hasSize(2);
+		final RuleTimeBudgetExceededException violation = listener.violations.get(1);
+		assertThat(violation.getRuleName()).isEqualTo("slow");
+		assertThat(violation.getDuration()).isGreaterThan(violation.getBudget());
+		assertThat(listener.violations.get(0).isCircuitOpen()).isFalse();
+		assertThat(violation.isCircuitOpen()).isTrue();
+
+		// When
+		rulesEngine.resetCircuitBreakers();
+		rulesEngine.fire(new Rules(rule), new Facts());
+
+		// Then
+		assertThat(evaluations.get()).isEqualTo(3);
+	}
+
+	@Test
+	public void slowConditionsOpenTheBreakerInTheReteEngine() {
+		// Given
+		final AtomicInteger evaluations = new AtomicInteger();
+		final Rule rule = new RuleBuilder().name("slow").when(facts -> {
+			evaluations.incrementAndGet();
+			sleep();
+			return facts.get("value") != null;
+		}).build();
+		final Rules rules = new Rules(rule);
+		final Facts facts = new Facts();
+		final RulesEngine rulesEngine = new ReteRulesEngine(new RulesEngineParameters()
+				.ruleTimeBudget(Duration.ofMillis(1)).circuitBreakerThreshold(1));
+
+		// When
+		rulesEngine.fire(rules, facts);
+		facts.put("value", 1);
+		rulesEngine.fire(rules, facts);
+
+		// Then
+		assertThat(evaluations.get()).isEqualTo(1);
+	}
+
+}
@@ -83,6 +83,22 @@ public class JexlActionTest {
 		System.setOut(originalStream);
 	}
 
+	@Test
+	public void testJexlActionExecutionWritesVariablesAsFacts() throws Exception {
+		// given
+		final Action action = new JexlAction("adult = person.age > 18; counter = counter + 1;");
+		final Facts facts = new Facts();
+		facts.put("person", new Person("foo", 20));
+		facts.put("counter", 1);
+
+		// when
+		action.execute(facts);
+
+		// then
+		assertThat(facts.<Boolean>get("adult")).isTrue();
+		assertThat(facts.<Integer>get("counter")).isEqualTo(2);
+	}
+
 	@Test
 	public void testJexlActionExecutionWithFailure() {
 		// given
@@ -25,9 +25,12 @@ package org.rossonet.ext.rules.jexl;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import org.apache.commons.jexl3.JexlBuilder;
 import org.apache.commons.jexl3.JexlEngine;
@@ -71,6 +74,50 @@ public class JexlConditionTest {
 		assertThat(evaluationResult).isTrue();
 	}
 
+	@Test
+	public void testJexlConditionDoesNotChangeFacts() {
+		// given
+		final Condition condition = new JexlCondition("threshold = 18; person.age > threshold");
+		final Facts facts = new Facts();
+		facts.put("person", new Person("foo", 20));
+
+		// when
+		final boolean evaluationResult = condition.evaluate(facts);
+
+		// then
+		assertThat(evaluationResult).isTrue();
+		assertThat(facts.has("threshold")).isFalse();
+		assertThat(facts.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void testJexlConditionWithFactAsNamespace() {
+		// given
+		final Condition condition = new JexlCondition("people:contains('foo')");
+		final Facts facts = new Facts();
+		facts.put("people", new HashSet<>(Arrays.asList("foo", "bar")));
+
+		// when
+		final boolean evaluationResult = condition.evaluate(facts);
+
+		// then
+		assertThat(evaluationResult).isTrue();
+	}
+
+	@Test
+	public void testJexlConditionFactDependencies() {
+		// given
+		final JexlCondition condition = new JexlCondition("var threshold = 18; person.age > threshold && active");
+		final JexlCondition conditionWithNamespace = new JexlCondition("people:contains('foo')");
+
+		// when
+		final Set<String> factDependencies = condition.getFactDependencies();
+
+		// then
+		assertThat(factDependencies).containsExactlyInAnyOrder("person", "person.age", "active");
+		assertThat(conditionWithNamespace.getFactDependencies()).isNull();
+	}
+
 	// Note this behaviour is different in SpEL, where a missing fact is silently
 	// ignored and returns false
 	// This behaviour is similar to MVEL though, where a missing fact results in an
@@ -47,6 +47,22 @@ public class MVELActionTest {
 		assertThat(foo.isAdult()).isTrue();
 	}
 
+	@Test
+	public void testMVELActionExecutionWritesNewVariablesAsFacts() throws Exception {
+		// given
+		final Action action = new MVELAction("adult = person.age > 18; counter = counter + 1;");
+		final Facts facts = new Facts();
+		facts.put("person", new Person("foo", 20));
+		facts.put("counter", 1);
+
+		// when
+		action.execute(facts);
+
+		// then
+		assertThat(facts.<Boolean>get("adult")).isTrue();
+		assertThat(facts.<Integer>get("counter")).isEqualTo(2);
+	}
+
 	@Test
 	public void testMVELActionExecutionWithFailure() {
 		// given
@@ -25,6 +25,8 @@ package org.rossonet.ext.rules.mvel;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Set;
+
 import org.junit.jupiter.api.Test;
 import org.mvel2.ParserContext;
 import org.rossonet.ext.rules.api.Condition;
@@ -60,6 +62,34 @@ public class MVELConditionTest {
 		assertThat(evaluationResult).isTrue();
 	}
 
+	@Test
+	public void testMVELConditionDoesNotChangeFacts() {
+		// given
+		final Condition condition = new MVELCondition("threshold = 18; person.age > threshold");
+		final Facts facts = new Facts();
+		facts.put("person", new Person("foo", 20));
+
+		// when
+		final boolean evaluationResult = condition.evaluate(facts);
+
+		// then
+		assertThat(evaluationResult).isTrue();
+		assertThat(facts.has("threshold")).isFalse();
+		assertThat(facts.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void testMVELConditionFactDependencies() {
+		// given
+		final MVELCondition condition = new MVELCondition("threshold = 18; person.age > threshold && active");
+
+		// when
+		final Set<String> factDependencies = condition.getFactDependencies();
+
+		// then
+		assertThat(factDependencies).containsExactlyInAnyOrder("person", "active");
+	}
+
 	// Note this behaviour is different in SpEL, where a missing fact is silently
 	// ignored and returns false
 	@Test // (expected = RuntimeException.class)
@@ -0,0 +1,111 @@
+package org.rossonet.ext.rules.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.core.GeneratedRule;
+import org.rossonet.ext.rules.core.RuleProxy;
+
+public class RuleProcessorTest {
+
+	private static final String VALID_RULE = String.join("\n", "package sample;",
+			"import org.rossonet.ext.rules.annotation.*;", "@Rule(name = \"adult\", priority = 2)",
+			"public class AgeRule {", "  public long age;",
+			"  @Condition public boolean when(@Fact(\"age\") long age) { return age >= 18; }",
+			"  @Action public void then(@Fact(\"age\") long age) { this.age = age; }", "}");
+
+	private static final String INVALID_RULE = String.join("\n", "package sample;",
+			"import org.rossonet.ext.rules.annotation.*;", "@Rule", "public class NoActionRule {",
+			"  @Condition public boolean when() { return true; }", "}");
+
+	private Path directory;
+
+	private boolean compile(final String className, final String source, final StringWriter output)
+			throws IOException {
+		final Path sourceFile = directory.resolve(className + ".java");
+		Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+			return compiler
+					.getTask(output, fileManager, null,
+							Arrays.asList("-classpath", System.getProperty("java.class.path"), "-processor",
+									RuleProcessor.class.getName(), "-d", directory.toString()),
+							null, fileManager.getJavaFileObjects(sourceFile.toFile()))
+					.call();
+		}
+	}
+
+	@BeforeEach
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("rules");
+	}
+
+	@AfterEach
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	@Test
+	public void generatedRuleIsUsedForAnnotatedRule() throws Exception {
+		// Given
+		final StringWriter output = new StringWriter();
+		assertThat(compile("AgeRule", VALID_RULE, output)).isTrue();
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { directory.toUri().toURL() },
+				getClass().getClassLoader())) {
+			final Object target = classLoader.loadClass("sample.AgeRule").getConstructor().newInstance();
+			final Facts facts = new Facts();
+			facts.put("age", 20);
+
+			// When
+			final Rule rule = RuleProxy.asRule(target);
+
+			// Then
+			assertThat(rule).isInstanceOf(GeneratedRule.class);
+			assertThat(rule.getName()).isEqualTo("adult");
+			assertThat(rule.getDescription()).isEqualTo("when when then then");
+			assertThat(rule.getPriority()).isEqualTo(2);
+			assertThat(rule.evaluate(facts)).isTrue();
+			rule.execute(facts);
+			assertThat(target.getClass().getField("age").getLong(target)).isEqualTo(20L);
+			facts.put("age", "twenty");
+			assertThat(rule.evaluate(facts)).isFalse();
+		}
+	}
+
+	@Test
+	public void invalidRuleDefinitionIsACompilationError() throws Exception {
+		// Given
+		final StringWriter output = new StringWriter();
+
+		// When
+		final boolean compiled = compile("NoActionRule", INVALID_RULE, output);
+
+		// Then
+		assertThat(compiled).isFalse();
+		assertThat(output.toString()).contains("must have at least one public method annotated with");
+	}
+
+}
@@ -0,0 +1,260 @@
+package org.rossonet.ext.rules.support;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.CompiledRules;
+import org.rossonet.ext.rules.api.ConditionExpression;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rule;
+import org.rossonet.ext.rules.api.RuleListener;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+import org.rossonet.ext.rules.core.BasicRule;
+import org.rossonet.ext.rules.core.DefaultRulesEngine;
+
+public class ConditionIndexTest {
+
+	public static class Device {
+
+		private final String type;
+		private final int level;
+
+		public Device(final String type, final int level) {
+			this.type = type;
+			this.level = level;
+		}
+
+		public int getLevel() {
+			return level;
+		}
+
+		public String getType() {
+			return type;
+		}
+	}
+
+	/**
+	 * Rule evaluating its expression with a predicate, recording its evaluations.
+	 */
+	private static final class ExpressionRule extends BasicRule implements ConditionExpression {
+
+		private final String expression;
+		private final Predicate<Facts> predicate;
+		private final List<String> evaluations;
+		private final Runnable action;
+
+		private ExpressionRule(final String name, final int priority, final String expression,
+				final Predicate<Facts> predicate, final List<String> evaluations, final Runnable action) {
+			super(name, Rule.DEFAULT_DESCRIPTION, priority);
+			this.expression = expression;
+			this.predicate = predicate;
+			this.evaluations = evaluations;
+			this.action = action;
+		}
+
+		@Override
+		public boolean evaluate(final Facts facts) {
+			evaluations.add(name);
+			return predicate.test(facts);
+		}
+
+		@Override
+		public void execute(final Facts facts) {
+			action.run();
+		}
+
+		@Override
+		public String getConditionExpression() {
+			return expression;
+		}
+	}
+
+	private final List<String> evaluations = Collections.synchronizedList(new ArrayList<>());
+	private final List<String> executions = new ArrayList<>();
+	private final Facts facts = new Facts();
+	private final Rules rules = new Rules();
+	private final RulesEngineParameters parameters = new RulesEngineParameters().conditionIndex(true);
+
+	private void addRule(final String name, final int priority, final String expression,
+			final Predicate<Facts> predicate) {
+		rules.register(
+				new ExpressionRule(name, priority, expression, predicate, evaluations, () -> executions.add(name)));
+	}
+
+	private Device device(final Facts facts) {
+		return facts.get("device");
+	}
+
+	@Test
+	public void conditionsAfterANonIndexableConjunctAreNotIndexed() {
+		// Given
+		addRule("r1", 1, "ctx.isPresent('device') && device.type == 'A'", f -> false);
+		addRule("r2", 2, "device.type == 'A' && device.level > 3", f -> false);
+		addRule("r3", 3, "device.getType() == 'A'", f -> false);
+
+		// When
+		final ConditionIndex index = new ConditionIndex(CompiledRules.compile(rules));
+
+		// Then
+		assertThat(index.getIndexedRules()).isEqualTo(1);
+		assertThat(index.isBuiltFor(CompiledRules.compile(rules))).isTrue();
+		addRule("r4", 4, "device.type == 'B'", f -> false);
+		assertThat(index.isBuiltFor(CompiledRules.compile(rules))).isFalse();
+	}
+
+	@Test
+	public void discardedRulesAreHandledAsNonTriggeredRules() {
+		// Given
+		addRule("r1", 1, "device.type == 'B'", f -> device(f).getType().equals("B"));
+		addRule("r2", 2, "device.type == 'A'", f -> device(f).getType().equals("A"));
+		facts.put("device", new Device("A", 1));
+		final Map<String, Boolean> results = new HashMap<>();
+		final DefaultRulesEngine rulesEngine = new DefaultRulesEngine(parameters.skipOnFirstNonTriggeredRule(true));
+		rulesEngine.registerRuleListener(new RuleListener() {
+
+			@Override
+			public void afterEvaluate(final Rule rule, final Facts facts, final boolean evaluationResult) {
+				results.put(rule.getName(), evaluationResult);
+			}
+		});
+
+		// When
+		rulesEngine.fire(rules, facts);
+
+		// Then
+		assertThat(evaluations).isEmpty();
+		assertThat(executions).isEmpty();
+		assertThat(results).containsOnlyKeys("r1");
+		assertThat(results).containsEntry("r1", false);
+	}
+
+	@Test
+	public void equalityTestsSelectTheRules() {
+		// Given
+		addRule("a", 1, "device.type == 'A'", f -> device(f).getType().equals("A"));
+		addRule("b", 2, "device.type == \"B\" && device.level > 0", f -> device(f).getType().equals("B"));
+		addRule("notA", 3, "device.type != 'A'", f -> !device(f).getType().equals("A"));
+		addRule("c", 4, "'C' == device.type", f -> device(f).getType().equals("C"));
+		addRule("level", 5, "device.level == 2.0", f -> device(f).getLevel() == 2);
+		facts.put("device", new Device("B", 2));
+
+		// When
+		new DefaultRulesEngine(parameters).fire(rules, facts);
+
+		// Then
+		assertThat(evaluations).containsExactly("b", "notA", "level");
+		assertThat(executions).containsExactly("b", "notA", "level");
+	}
+
+	@Test
+	public void indexFollowsTheChangesOfTheFacts() {
+		// Given
+		rules.register(new ExpressionRule("heat", 1, "temperature < 10", f -> f.<Integer>get("temperature") < 10,
+				evaluations, () -> facts.put("temperature", 20)));
+		addRule("warm", 2, "temperature >= 20", f -> f.<Integer>get("temperature") >= 20);
+		facts.put("temperature", 5);
+
+		// When
+		new DefaultRulesEngine(parameters).fire(rules, facts);
+
+		// Then
+		assertThat(evaluations).containsExactly("heat", "warm");
+		assertThat(executions).containsExactly("warm");
+	}
+
+	@Test
+	public void indexFollowsTheFactsChangedInPlaceByTheActions() {
+		// Given
+		final Map<String, Object> plc = new HashMap<>();
+		plc.put("status", "STOP");
+		rules.register(new ExpressionRule("start", 1, "plc.status == 'STOP'", f -> "STOP".equals(plc.get("status")),
+				evaluations, () -> plc.put("status", "RUN")));
+		addRule("run", 2, "plc.status == 'RUN'", f -> "RUN".equals(plc.get("status")));
+		facts.put("plc", plc);
+
+		// When
+		new DefaultRulesEngine(parameters).fire(rules, facts);
+
+		// Then
+		assertThat(evaluations).containsExactly("start", "run");
+		assertThat(executions).containsExactly("run");
+	}
+
+	@Test
+	public void parallelEvaluationSkipsDiscardedRules() {
+		// Given
+		for (int i = 0; i < 100; i++) {
+			final String type = "T" + i;
+			addRule(type, i, "device.type == '" + type + "'", f -> device(f).getType().equals(type));
+		}
+		facts.put("device", new Device("T42", 1));
+
+		// When
+		new DefaultRulesEngine(parameters.parallelEvaluation(true)).fire(rules, facts);
+
+		// Then
+		assertThat(evaluations).containsExactly("T42");
+		assertThat(executions).containsExactly("T42");
+	}
+
+	@Test
+	public void propertiesAreReadFromMaps() {
+		// Given
+		final Map<String, Object> plc = new HashMap<>();
+		plc.put("status", "RUN");
+		addRule("run", 1, "plc.status == 'RUN'", f -> true);
+		addRule("stop", 2, "plc.status == 'STOP'", f -> true);
+		addRule("mode", 3, "plc.mode == 'AUTO'", f -> true);
+		facts.put("plc", plc);
+
+		// When
+		new DefaultRulesEngine(parameters).fire(rules, facts);
+
+		// Then: mode is not in the map, its condition reports the error
+		assertThat(evaluations).containsExactly("run", "mode");
+	}
+
+	@Test
+	public void rangeTestsSelectTheRules() {
+		// Given
+		addRule("hot", 1, "temperature > 30", f -> false);
+		addRule("cold", 2, "temperature <= 10", f -> false);
+		addRule("mild", 3, "5 < temperature && temperature <= 20", f -> true);
+		addRule("limit", 4, "temperature >= 20.5", f -> false);
+		addRule("upper", 5, "temperature < 20", f -> false);
+		facts.put("temperature", 20);
+
+		// When
+		new DefaultRulesEngine(parameters).fire(rules, facts);
+
+		// Then
+		assertThat(evaluations).containsExactly("mild");
+		assertThat(executions).containsExactly("mild");
+	}
+
+	@Test
+	public void undecidedTestsAreEvaluated() {
+		// Given
+		addRule("missing", 1, "pressure > 3 && temperature > 30", f -> false);
+		addRule("text", 2, "temperature == 'hot'", f -> false);
+		addRule("float", 3, "humidity == 0.1", f -> false);
+		addRule("hot", 4, "temperature > 30", f -> false);
+		facts.put("temperature", 20);
+		facts.put("humidity", 0.2f);
+
+		// When
+		new DefaultRulesEngine(parameters).fire(rules, facts);
+
+		// Then
+		assertThat(evaluations).containsExactly("missing", "text", "float");
+	}
+
+}
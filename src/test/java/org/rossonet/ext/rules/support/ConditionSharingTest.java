@@ -0,0 +1,248 @@
+package org.rossonet.ext.rules.support;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Condition;
+import org.rossonet.ext.rules.api.FactDependent;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+import org.rossonet.ext.rules.api.WorkingMemory;
+import org.rossonet.ext.rules.core.DefaultRulesEngine;
+import org.rossonet.ext.rules.core.InferenceRulesEngine;
+import org.rossonet.ext.rules.core.RuleBuilder;
+
+public class ConditionSharingTest {
+
+	/**
+	 * Conjunction of the conditions registered by the test for the parts of an
+	 * expression, depending on the facts like the conditions of the MVEL rules.
+	 */
+	private static final class RegisteredCondition implements Condition, FactDependent {
+
+		private final List<Condition> parts = new ArrayList<>();
+
+		@Override
+		public boolean evaluate(final Facts facts) {
+			return parts.stream().allMatch(part -> part.evaluate(facts));
+		}
+
+		@Override
+		public Set<String> getFactDependencies() {
+			return Set.of();
+		}
+	}
+
+	private final Map<String, Integer> evaluations = new HashMap<>();
+	private final Map<String, Condition> conditions = new HashMap<>();
+
+	@Test
+	public void actionsChangingSharedFactsInPlaceAreSeenByTheNextRules() {
+		// Given
+		final AtomicReference<String> status = new AtomicReference<>("RUN");
+		final List<String> fired = new ArrayList<>();
+		conditions.put("running", facts -> facts.<AtomicReference<String>>get("status").get().equals("RUN"));
+		conditions.put("first", facts -> true);
+		conditions.put("second", facts -> true);
+		final RuleDefinition stop = rule("running && first");
+		final RuleDefinition alarm = rule("running && second");
+		new ConditionSharing(this::compileRegistered).share(Arrays.asList(stop, alarm));
+		final Rules rules = new Rules(new RuleBuilder().name("stop").priority(1).when(stop.getSharedCondition())
+				.then(facts -> {
+					fired.add("stop");
+					status.set("STOP");
+				}).build(),
+				new RuleBuilder().name("alarm").priority(2).when(alarm.getSharedCondition())
+						.then(facts -> fired.add("alarm")).build());
+		final Facts facts = new Facts();
+		facts.put("status", status);
+		final DefaultRulesEngine engine = new DefaultRulesEngine();
+
+		// When
+		engine.fire(rules, facts);
+
+		// Then
+		assertThat(fired).containsExactly("stop");
+
+		// When
+		status.set("RUN");
+		engine.fire(rules, facts);
+
+		// Then
+		assertThat(fired).containsExactly("stop", "stop");
+	}
+
+	/**
+	 * Compile expressions made of the conditions registered by the test joined
+	 * by &&.
+	 */
+	private Condition compileRegistered(final String expression) {
+		final RegisteredCondition condition = new RegisteredCondition();
+		for (final String part : expression.split(" && ")) {
+			condition.parts.add(conditions.get(part));
+		}
+		return condition;
+	}
+
+	/**
+	 * Compile expressions made of boolean facts joined by &&, counting the
+	 * evaluations of each expression.
+	 */
+	private Condition compile(final String expression) {
+		return facts -> {
+			evaluations.merge(expression, 1, Integer::sum);
+			return Arrays.stream(expression.split(" && ")).allMatch(fact -> facts.<Boolean>get(fact));
+		};
+	}
+
+	@Test
+	public void conditionsAreNotSharedWhenTheFactoryDoesNotCompileConditions() {
+		final RuleDefinition first = rule("a && b");
+		final RuleDefinition second = rule("a && c");
+
+		new ConditionSharing(expression -> null).share(Arrays.asList(first, second));
+
+		assertThat(first.getSharedCondition()).isNull();
+		assertThat(second.getSharedCondition()).isNull();
+	}
+
+	@Test
+	public void conditionsAreSplitOnTopLevelConjunctions() {
+		assertThat(ConditionSharing.conjuncts("ctx.isPresent(\"plc1\")  &&\tplc1.status == 'RUN'"))
+				.containsExactly("ctx.isPresent(\"plc1\")", "plc1.status == 'RUN'");
+		assertThat(ConditionSharing.conjuncts("(a && b) && c['x&&y'] >= 2")).containsExactly("(a && b)",
+				"c['x&&y'] >= 2");
+		assertThat(ConditionSharing.conjuncts("a")).containsExactly("a");
+	}
+
+	@Test
+	public void conditionsWithLowerPrecedenceOperatorsAreNotSplit() {
+		assertThat(ConditionSharing.conjuncts("a && b || c")).isNull();
+		assertThat(ConditionSharing.conjuncts("a && b or c")).isNull();
+		assertThat(ConditionSharing.conjuncts("a && b ? c : d")).isNull();
+		assertThat(ConditionSharing.conjuncts("x = a; x && b")).isNull();
+		assertThat(ConditionSharing.conjuncts("a && ")).isNull();
+	}
+
+	@Test
+	public void inferenceStopsWhenAnActionChangesASharedFactInPlace() {
+		// Given
+		final AtomicInteger counter = new AtomicInteger();
+		conditions.put("below", facts -> facts.<AtomicInteger>get("counter").get() < 3);
+		conditions.put("counting", facts -> true);
+		conditions.put("never", facts -> false);
+		final RuleDefinition increment = rule("below && counting");
+		final RuleDefinition other = rule("below && never");
+		new ConditionSharing(this::compileRegistered).share(Arrays.asList(increment, other));
+		final Rules rules = new Rules(
+				new RuleBuilder().name("increment").when(increment.getSharedCondition())
+						.then(facts -> counter.incrementAndGet()).build(),
+				new RuleBuilder().name("other").when(other.getSharedCondition()).then(facts -> {
+				}).build());
+		final Facts facts = new Facts();
+		facts.put("counter", counter);
+		final InferenceRulesEngine engine = new InferenceRulesEngine(new RulesEngineParameters().maxCycles(10));
+
+		// When
+		engine.fire(rules, facts);
+
+		// Then
+		assertThat(counter.get()).isEqualTo(3);
+	}
+
+	private RuleDefinition rule(final String condition) {
+		final RuleDefinition ruleDefinition = new RuleDefinition();
+		ruleDefinition.setCondition(condition);
+		return ruleDefinition;
+	}
+
+	@Test
+	public void sharedConjunctsAreEvaluatedAgainAfterAnInvalidation() {
+		// Given
+		final AtomicInteger level = new AtomicInteger(3);
+		conditions.put("high", facts -> facts.<AtomicInteger>get("level").get() > 2);
+		conditions.put("first", facts -> true);
+		conditions.put("second", facts -> true);
+		final RuleDefinition first = rule("high && first");
+		final RuleDefinition second = rule("high && second");
+		new ConditionSharing(this::compileRegistered).share(Arrays.asList(first, second));
+		final Facts facts = new Facts();
+		facts.put("level", level);
+		assertThat(first.getSharedCondition().evaluate(facts)).isTrue();
+
+		// When
+		level.set(1);
+		ConditionSharing.invalidate();
+
+		// Then
+		assertThat(second.getSharedCondition().evaluate(facts)).isFalse();
+	}
+
+	@Test
+	public void sharedConjunctsAreEvaluatedOncePerFactsVersion() {
+		// Given
+		final RuleDefinition first = rule("a && b");
+		final RuleDefinition second = rule("a  &&  c && d");
+		final RuleDefinition third = rule("e");
+		final RuleDefinition sideEffects = rule("a && e");
+		sideEffects.setParallelizable(false);
+		new ConditionSharing(this::compile).share(Arrays.asList(first, second, third, sideEffects));
+		final Facts facts = new Facts();
+		facts.put("a", true);
+		facts.put("b", true);
+		facts.put("c", true);
+		facts.put("d", false);
+
+		// When
+		final boolean firstResult = first.getSharedCondition().evaluate(facts);
+		final boolean secondResult = second.getSharedCondition().evaluate(facts);
+
+		// Then
+		assertThat(firstResult).isTrue();
+		assertThat(secondResult).isFalse();
+		assertThat(third.getSharedCondition()).isNull();
+		assertThat(sideEffects.getSharedCondition()).isNull();
+		assertThat(evaluations).containsEntry("a", 1).containsEntry("b", 1).containsEntry("c && d", 1);
+
+		// When
+		facts.put("a", false);
+
+		// Then
+		assertThat(first.getSharedCondition().evaluate(facts)).isFalse();
+		assertThat(second.getSharedCondition().evaluate(facts)).isFalse();
+		assertThat(evaluations).containsEntry("a", 2).containsEntry("b", 1).containsEntry("c && d", 1);
+	}
+
+	@Test
+	public void sharedConjunctsAreEvaluatedOncePerWorkingMemoryCycle() {
+		// Given
+		final RuleDefinition first = rule("a && b");
+		final RuleDefinition second = rule("a && c");
+		new ConditionSharing(this::compile).share(Arrays.asList(first, second));
+		final WorkingMemory memory = new WorkingMemory();
+		final Facts facts = memory.begin();
+		facts.put("a", true);
+		facts.put("b", true);
+		facts.put("c", true);
+
+		// When
+		final boolean firstResult = first.getSharedCondition().evaluate(facts);
+		final boolean secondResult = second.getSharedCondition().evaluate(facts);
+
+		// Then
+		assertThat(firstResult).isTrue();
+		assertThat(secondResult).isTrue();
+		assertThat(evaluations).containsEntry("a", 1).containsEntry("b", 1).containsEntry("c", 1);
+	}
+
+}
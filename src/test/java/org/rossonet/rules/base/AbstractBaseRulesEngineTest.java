@@ -0,0 +1,287 @@
+package org.rossonet.rules.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.ext.rules.api.Rules;
+import org.rossonet.ext.rules.api.RulesEngine;
+import org.rossonet.ext.rules.api.RulesEngineParameters;
+
+public class AbstractBaseRulesEngineTest {
+
+	public static class Counter {
+
+		private int evaluations;
+
+		public boolean check() {
+			evaluations++;
+			return true;
+		}
+
+		public int getEvaluations() {
+			return evaluations;
+		}
+	}
+
+	/**
+	 * Provider pushing the facts given by the test to its listener.
+	 */
+	private static class PushingProvider implements IncrementalFactProvider {
+
+		private FactDeltaListener listener;
+
+		@Override
+		public Facts getFacts() {
+			return new Facts();
+		}
+
+		@Override
+		public void subscribe(final FactDeltaListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void unsubscribe(final FactDeltaListener listener) {
+			this.listener = null;
+		}
+	}
+
+	/**
+	 * Rules engine recording the level and the rules context of each firing.
+	 */
+	private static class RecordingRulesEngine implements RulesEngine {
+
+		private final List<Integer> levels = new ArrayList<>();
+		private final List<RulesContext> contexts = new ArrayList<>();
+
+		@Override
+		public void fire(final Rules rules, final Facts facts) {
+			levels.add(facts.get("level"));
+			contexts.add(facts.get(AbstractBaseRulesEngine.CTX));
+		}
+
+		@Override
+		public RulesEngineParameters getParameters() {
+			return new RulesEngineParameters();
+		}
+	}
+
+	/**
+	 * Provider of the rules given by the test, with the version given by the
+	 * test.
+	 */
+	private static class VersionedProvider implements RuleProvider {
+
+		private JSONArray rules;
+		private long version;
+
+		@Override
+		public JSONArray getRules() {
+			return rules;
+		}
+
+		@Override
+		public long getRulesVersion() {
+			return version;
+		}
+	}
+
+	private static JSONObject rule(final String name, final String condition) {
+		return new JSONObject().put("name", name).put("condition", condition).put("actions",
+				new JSONArray().put("fired.add('" + name + "');"));
+	}
+
+	@Test
+	public void closeCancelsThePendingRefreshes() throws Exception {
+		// Given
+		final AbstractBaseRulesEngine engine = new AbstractBaseRulesEngine() {
+		};
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		engine.addFactProvider(() -> {
+			started.countDown();
+			try {
+				Thread.sleep(60_000);
+			} catch (final InterruptedException e) {
+				interrupted.countDown();
+			}
+			return new Facts();
+		}, Duration.ofMillis(20));
+		engine.fireRules();
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+		// When
+		engine.close();
+
+		// Then
+		assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThatThrownBy(engine::fireRules).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	public void compiledRulesAreReusedUntilTheVersionChanges() {
+		// Given
+		final AbstractBaseRulesEngine engine = new AbstractBaseRulesEngine() {
+		};
+		final List<String> fired = new ArrayList<>();
+		final Facts facts = new Facts();
+		facts.put("fired", fired);
+		engine.addFactProvider(() -> facts);
+		final VersionedProvider provider = new VersionedProvider();
+		provider.rules = new JSONArray().put(rule("first", "true"));
+		provider.version = 1;
+		engine.addRulesProvider(provider);
+
+		// When
+		engine.fireRules();
+		engine.fireRules();
+
+		// Then
+		assertThat(fired).containsExactly("first", "first");
+		assertThat(engine.getCompiledRulesStats().missCount()).isEqualTo(1);
+		assertThat(engine.getCompiledRulesStats().hitCount()).isEqualTo(1);
+
+		// When
+		provider.rules = new JSONArray().put(rule("second", "true"));
+		engine.fireRules();
+
+		// Then
+		assertThat(fired).containsExactly("first", "first", "first");
+		assertThat(engine.getCompiledRulesStats().missCount()).isEqualTo(1);
+		assertThat(engine.getCompiledRulesStats().hitCount()).isEqualTo(2);
+
+		// When
+		provider.version = 2;
+		engine.fireRules();
+
+		// Then
+		assertThat(fired).containsExactly("first", "first", "first", "second");
+		assertThat(engine.getCompiledRulesStats().missCount()).isEqualTo(2);
+		assertThat(engine.getCompiledRulesStats().hitCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void factsAreRetractedOnlyByTheProviderOwningThem() {
+		// Given
+		final AbstractBaseRulesEngine engine = new AbstractBaseRulesEngine() {
+		};
+		final List<String> fired = new ArrayList<>();
+		final Facts facts = new Facts();
+		facts.put("fired", fired);
+		engine.addFactProvider(() -> facts);
+		final PushingProvider first = new PushingProvider();
+		final PushingProvider second = new PushingProvider();
+		engine.addFactProvider(first);
+		engine.addFactProvider(second);
+		engine.addRulesProvider(() -> new JSONArray().put(rule("shared", "shared == 'second'")));
+		first.listener.insert(new Fact<>("shared", "first"));
+		second.listener.insert(new Fact<>("shared", "second"));
+
+		// When
+		first.listener.retract("shared");
+		engine.fireRules();
+
+		// Then
+		assertThat(fired).containsExactly("shared");
+
+		// When
+		second.listener.retract("shared");
+		engine.fireRules();
+
+		// Then
+		assertThat(fired).containsExactly("shared");
+	}
+
+	@Test
+	public void lateProvidersKeepTheirLastFactsAsStale() throws Exception {
+		// Given
+		final RecordingRulesEngine rulesEngine = new RecordingRulesEngine();
+		final AbstractBaseRulesEngine engine = new AbstractBaseRulesEngine() {
+		};
+		engine.resetAndInitialize(rulesEngine);
+		final AtomicInteger level = new AtomicInteger(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch refreshed = new CountDownLatch(1);
+		engine.addFactProvider(() -> {
+			final Facts facts = new Facts();
+			if (level.get() > 1) {
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			facts.put("level", level.get());
+			if (level.get() > 1) {
+				refreshed.countDown();
+			}
+			return facts;
+		}, Duration.ofMillis(50));
+		engine.fireRules();
+		level.set(2);
+
+		// When
+		final long start = System.nanoTime();
+		engine.fireRules();
+		final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		// Then
+		assertThat(elapsedMs).isLessThan(5_000);
+		assertThat(rulesEngine.levels).containsExactly(1, 1);
+		assertThat(rulesEngine.contexts.get(0).isStale("level")).isFalse();
+		assertThat(rulesEngine.contexts.get(1).isStale("level")).isTrue();
+		assertThat(rulesEngine.contexts.get(1).hasStaleFacts()).isTrue();
+
+		// When
+		release.countDown();
+		assertThat(refreshed.await(5, TimeUnit.SECONDS)).isTrue();
+		engine.fireRules();
+
+		// Then
+		assertThat(rulesEngine.levels).containsExactly(1, 1, 2);
+		assertThat(rulesEngine.contexts.get(2).isStale("level")).isFalse();
+		engine.close();
+	}
+
+	@Test
+	public void sharedConditionsAreEvaluatedOncePerFiring() {
+		// Given
+		final AbstractBaseRulesEngine engine = new AbstractBaseRulesEngine() {
+		};
+		final Counter counter = new Counter();
+		final List<String> fired = new ArrayList<>();
+		final Facts facts = new Facts();
+		facts.put("counter", counter);
+		facts.put("fired", fired);
+		facts.put("level", 3);
+		engine.addFactProvider(() -> facts);
+		engine.addRulesProvider(() -> new JSONArray().put(rule("high", "counter.check() && level > 2"))
+				.put(rule("low", "counter.check()  &&  level > 1")));
+
+		// When
+		engine.fireRules();
+
+		// Then
+		assertThat(fired).containsExactlyInAnyOrder("high", "low");
+		assertThat(counter.getEvaluations()).isEqualTo(1);
+
+		// When
+		engine.fireRules();
+
+		// Then
+		assertThat(counter.getEvaluations()).isEqualTo(2);
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.rossonet.rules.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Fact;
+
+public class BaseCachedMemoryTest {
+
+	@Test
+	public void factsExpireInTheBackground() throws Exception {
+		try (BaseCachedMemory memory = new BaseCachedMemory()) {
+			// Given
+			memory.save("expiring", "value", -1, 50);
+			memory.save("permanent", "value");
+
+			// When
+			final long deadline = System.currentTimeMillis() + 5_000;
+			while (memory.getFacts().has("expiring") && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+
+			// Then
+			assertThat(memory.getFacts().has("expiring")).isFalse();
+			assertThat(memory.getFacts().has("permanent")).isTrue();
+			assertThat(memory.size()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	public void savedFactsAreCreatedAtTheTimeOfTheirMemory() throws Exception {
+		// Given
+		final LongSupplier clock = Fact.getClock();
+		final AtomicLong time = new AtomicLong();
+		// every read of the clock returns a later time
+		Fact.setClock(time::incrementAndGet);
+		try (BaseCachedMemory memory = new BaseCachedMemory()) {
+			// When
+			memory.save("fact", "value", -1, 1_000);
+
+			// Then
+			final BaseCachedMemory.TimerCachedMemory memoryFact = memory.getMemoryFacts().get(0);
+			assertThat(memoryFact.getFact().getCreatedAt()).isEqualTo(memoryFact.getCreatedAt());
+		} finally {
+			Fact.setClock(clock);
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.rossonet.rules.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+
+public class EventWindowTest {
+
+	@Test
+	public void countWindowEvictsTheOldestEvents() {
+		// Given
+		final EventWindow window = EventWindow.ofCount(3);
+
+		// When
+		for (final double value : new double[] { 9, 1, 5, 7, 3 }) {
+			window.add(value);
+		}
+
+		// Then
+		final WindowAggregates aggregates = window.getAggregates();
+		assertThat(aggregates.getCount()).isEqualTo(3);
+		assertThat(aggregates.getSum()).isEqualTo(15.0);
+		assertThat(aggregates.getMin()).isEqualTo(3.0);
+		assertThat(aggregates.getMax()).isEqualTo(7.0);
+	}
+
+	@Test
+	public void eventsOutOfTheTimeWindowAreDropped() {
+		// Given
+		final EventWindow window = EventWindow.ofTime(Duration.ofMillis(100),
+				Clock.fixed(Instant.ofEpochMilli(1_000), ZoneOffset.UTC));
+		window.add(1_000, 5);
+
+		// When
+		final boolean late = window.add(950, 8);
+		final boolean tooLate = window.add(900, 1);
+
+		// Then
+		assertThat(late).isTrue();
+		assertThat(tooLate).isFalse();
+		final WindowAggregates aggregates = window.getAggregates();
+		assertThat(aggregates.getCount()).isEqualTo(2);
+		assertThat(aggregates.getMin()).isEqualTo(5.0);
+		assertThat(aggregates.getMax()).isEqualTo(8.0);
+	}
+
+	@Test
+	public void minimumAndMaximumFollowTheEvictions() {
+		// Given
+		final EventWindow window = EventWindow.ofCount(2);
+		window.add(1);
+		window.add(10);
+		window.add(5);
+
+		// Then
+		assertThat(window.getAggregates().getMin()).isEqualTo(5.0);
+		assertThat(window.getAggregates().getMax()).isEqualTo(10.0);
+
+		// When
+		window.add(7);
+
+		// Then
+		assertThat(window.getAggregates().getMin()).isEqualTo(5.0);
+		assertThat(window.getAggregates().getMax()).isEqualTo(7.0);
+
+		// When
+		window.clear();
+
+		// Then
+		assertThat(window.getAggregates().isEmpty()).isTrue();
+	}
+
+	@Test
+	public void timeWindowEvictsTheEventsOlderThanItsDuration() {
+		// Given
+		final EventWindow window = EventWindow.ofTime(Duration.ofMillis(100),
+				Clock.fixed(Instant.ofEpochMilli(1_250), ZoneOffset.UTC));
+		window.add(1_000, 2);
+		window.add(1_100, 9);
+		window.add(1_160, 4);
+		window.add(1_200, 6);
+
+		// When
+		final WindowAggregates aggregates = window.getAggregates();
+
+		// Then: the clock evicts the events up to 1 150
+		assertThat(aggregates.getCount()).isEqualTo(2);
+		assertThat(aggregates.getSum()).isEqualTo(10.0);
+		assertThat(aggregates.getMin()).isEqualTo(4.0);
+		assertThat(aggregates.getMax()).isEqualTo(6.0);
+	}
+
+}
@@ -0,0 +1,85 @@
+package org.rossonet.rules.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Fact;
+import org.rossonet.ext.rules.api.Facts;
+import org.rossonet.rules.base.BaseCachedMemory.EvictionPolicy;
+import org.rossonet.rules.base.PersistentCachedMemory.SyncPolicy;
+
+public class PersistentCachedMemoryTest {
+
+	private static PersistentCachedMemory open(final Path directory) throws Exception {
+		return new PersistentCachedMemory(directory, new SerializableValueCodec(), SyncPolicy.NEVER, 50, 4096, 0,
+				EvictionPolicy.OLDEST);
+	}
+
+	@Test
+	public void factsAreRestoredAfterARestart() throws Exception {
+		// Given
+		final Path directory = Files.createTempDirectory("persistent-memory");
+		try (PersistentCachedMemory memory = open(directory)) {
+			memory.save("kept", "value");
+			memory.save("replaced", 1);
+			memory.save("replaced", 2);
+			memory.save("removed", true);
+			memory.remove("removed");
+			assertThat(memory.getSyncPeriodMs()).isEqualTo(50);
+		}
+
+		// When
+		try (PersistentCachedMemory memory = open(directory)) {
+			final Facts facts = memory.getFacts();
+
+			// Then
+			assertThat(memory.size()).isEqualTo(2);
+			assertThat(facts.<String>get("kept")).isEqualTo("value");
+			assertThat(facts.<Integer>get("replaced")).isEqualTo(2);
+			assertThat(facts.has("removed")).isFalse();
+		}
+	}
+
+	@Test
+	public void factsExpiredWhileStoppedAreNotRestored() throws Exception {
+		// Given
+		final LongSupplier clock = Fact.getClock();
+		final AtomicLong time = new AtomicLong(1_000);
+		Fact.setClock(time::get);
+		try {
+			final Path directory = Files.createTempDirectory("persistent-memory");
+			try (PersistentCachedMemory memory = open(directory)) {
+				memory.save("expiring", "value", -1, 100);
+				memory.save("delayed", "value", 500, 1_000);
+				memory.save("permanent", "value");
+			}
+			time.set(1_200);
+
+			// When
+			try (PersistentCachedMemory memory = open(directory)) {
+				final Facts facts = memory.getFacts();
+
+				// Then
+				assertThat(memory.size()).isEqualTo(2);
+				assertThat(facts.has("expiring")).isFalse();
+				assertThat(facts.has("delayed")).isFalse();
+				assertThat(facts.has("permanent")).isTrue();
+
+				// When
+				time.set(1_600);
+				memory.refresh();
+
+				// Then
+				assertThat(memory.getFacts().has("delayed")).isTrue();
+			}
+		} finally {
+			Fact.setClock(clock);
+		}
+	}
+
+}
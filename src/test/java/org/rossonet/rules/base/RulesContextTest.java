@@ -0,0 +1,31 @@
+package org.rossonet.rules.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.rossonet.ext.rules.api.Facts;
+
+public class RulesContextTest {
+
+	@Test
+	public void cachedMemoryIsPresentForSubclassesOfTheBaseMemory() throws Exception {
+		// Given
+		final Facts facts = new Facts();
+		final RulesContext context = new RulesContext(new CommandQueue(), facts);
+
+		// Then
+		assertThat(context.isCachedMemoryPresent()).isFalse();
+
+		try (PersistentCachedMemory memory = new PersistentCachedMemory(
+				Files.createTempDirectory("rules-context"))) {
+			// When
+			facts.put(AbstractBaseRulesEngine.MEM, memory);
+
+			// Then
+			assertThat(context.isCachedMemoryPresent()).isTrue();
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+package org.rossonet.rules.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+public class SegmentLogTest {
+
+	private static final int SEGMENT_SIZE = 4096;
+
+	private static List<String> files(final Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Open the log, collecting the values of the facts recovered as strings.
+	 */
+	private static SegmentLog open(final Path directory, final Map<String, String> recovered) throws IOException {
+		return SegmentLog.open(directory, SEGMENT_SIZE,
+				entry -> recovered.put(entry.getName(), new String(entry.getValue(), StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Return the positions of the records of a segment, reading their lengths.
+	 */
+	private static int[] recordStarts(final Path segment) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+		int[] starts = new int[0];
+		int position = 0;
+		int length;
+		while (position + 8 <= buffer.limit() && (length = buffer.getInt(position)) > 0) {
+			starts = Arrays.copyOf(starts, starts.length + 1);
+			starts[starts.length - 1] = position;
+			position += 8 + length;
+		}
+		return starts;
+	}
+
+	private static void save(final SegmentLog log, final String name, final String value) {
+		assertThat(log.appendSave(name, 0, -1, -1, value.getBytes(StandardCharsets.UTF_8))).isTrue();
+	}
+
+	private static Path segment(final Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().startsWith("segment-")).findFirst()
+					.orElseThrow();
+		}
+	}
+
+	@Test
+	public void recordsAfterACrcMismatchAreNotRecovered() throws IOException {
+		// Given
+		final Path directory = Files.createTempDirectory("segment-log");
+		try (SegmentLog log = open(directory, new LinkedHashMap<>())) {
+			save(log, "first", "1");
+			save(log, "second", "2");
+			save(log, "third", "3");
+		}
+		final Path segment = segment(directory);
+		final int[] starts = recordStarts(segment);
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			// last byte of the value of the second record
+			channel.write(ByteBuffer.wrap(new byte[] { 'x' }), starts[2] - 1);
+		}
+		final Map<String, String> recovered = new LinkedHashMap<>();
+
+		// When
+		try (SegmentLog log = open(directory, recovered)) {
+			save(log, "fourth", "4");
+		}
+
+		// Then
+		assertThat(recovered).containsOnlyKeys("first");
+		final Map<String, String> reopened = new LinkedHashMap<>();
+		open(directory, reopened).close();
+		assertThat(reopened).containsOnlyKeys("first", "fourth");
+	}
+
+	@Test
+	public void segmentsCompactedInASnapshotAreNotReplayedAfterACrash() throws IOException {
+		// Given
+		final Path directory = Files.createTempDirectory("segment-log");
+		final Path backup = Files.createTempDirectory("segment-log-backup");
+		final SegmentLog log = open(directory, new LinkedHashMap<>());
+		save(log, "removed", "1");
+		save(log, "kept", "2");
+		assertThat(log.appendRemove("removed")).isTrue();
+		log.sync();
+		final Path oldSegment = segment(directory);
+		Files.copy(oldSegment, backup.resolve(oldSegment.getFileName()));
+		log.compact(List.of(new SegmentLog.Entry("kept", 0, -1, -1, "2".getBytes(StandardCharsets.UTF_8))));
+		save(log, "added", "3");
+		log.close();
+		// crash after the snapshot has been written, before the old segment is
+		// deleted
+		Files.copy(backup.resolve(oldSegment.getFileName()), oldSegment, StandardCopyOption.REPLACE_EXISTING);
+		final Map<String, String> recovered = new LinkedHashMap<>();
+
+		// When
+		open(directory, recovered).close();
+
+		// Then
+		assertThat(recovered).containsOnlyKeys("kept", "added");
+		assertThat(recovered).containsEntry("kept", "2").containsEntry("added", "3");
+		assertThat(files(directory)).doesNotContain(oldSegment.getFileName().toString());
+	}
+
+	@Test
+	public void tornTrailingRecordIsNotRecovered() throws IOException {
+		// Given
+		final Path directory = Files.createTempDirectory("segment-log");
+		try (SegmentLog log = open(directory, new LinkedHashMap<>())) {
+			save(log, "first", "1");
+			save(log, "second", "2");
+		}
+		final Path segment = segment(directory);
+		final int[] starts = recordStarts(segment);
+		// the file ends in the middle of the last record
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.truncate(starts[1] + 10);
+		}
+		final Map<String, String> recovered = new LinkedHashMap<>();
+
+		// When
+		try (SegmentLog log = open(directory, recovered)) {
+			save(log, "third", "3");
+		}
+
+		// Then
+		assertThat(recovered).containsOnlyKeys("first");
+		final Map<String, String> reopened = new LinkedHashMap<>();
+		open(directory, reopened).close();
+		assertThat(reopened).containsOnlyKeys("first", "third");
+	}
+
+}
@@ -0,0 +1,112 @@
+package org.rossonet.rules.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TimerWheelTest {
+
+	private final TimerWheel<String> wheel = new TimerWheel<>(0);
+	private final List<String> expired = new ArrayList<>();
+
+	@Test
+	public void cancelledTimersDoNotExpire() {
+		// Given
+		final TimerWheel.Timer<String> cancelled = wheel.schedule("cancelled", 100);
+		final TimerWheel.Timer<String> far = wheel.schedule("far", 100_000);
+		wheel.schedule("kept", 100);
+
+		// When
+		wheel.cancel(cancelled);
+		wheel.cancel(far);
+		wheel.cancel(far);
+		wheel.advance(200_000, expired::add);
+
+		// Then
+		assertThat(expired).containsExactly("kept");
+		assertThat(wheel.size()).isEqualTo(0);
+		assertThat(wheel.nextDeadline()).isEqualTo(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void nextDeadlineIsNotAfterTheEarliestDeadline() {
+		// Given
+		final TimerWheel<String> wheel = new TimerWheel<>(15);
+		// in the current bucket of the first wheel, a whole wheel later
+		wheel.schedule("wrapped", 1_038);
+		wheel.schedule("early", 100);
+
+		// Then
+		assertThat(wheel.nextDeadline()).isEqualTo(100);
+
+		// When
+		wheel.advance(100, expired::add);
+
+		// Then
+		assertThat(expired).containsExactly("early");
+		assertThat(wheel.nextDeadline()).isEqualTo(1_038);
+	}
+
+	@Test
+	public void timersOfTheWiderWheelsAreCascaded() {
+		// Given
+		wheel.schedule("second", 2_000);
+		wheel.schedule("minute", 60_000);
+		wheel.schedule("hour", 3_600_000);
+		wheel.schedule("first", 20);
+
+		// Then
+		assertThat(wheel.size()).isEqualTo(4);
+		assertThat(wheel.nextDeadline()).isEqualTo(20);
+
+		// When
+		wheel.advance(1_999, expired::add);
+
+		// Then
+		assertThat(expired).containsExactly("first");
+		assertThat(wheel.nextDeadline()).isLessThanOrEqualTo(2_000);
+
+		// When
+		wheel.advance(2_000, expired::add);
+		wheel.advance(59_999, expired::add);
+
+		// Then
+		assertThat(expired).containsExactly("first", "second");
+		assertThat(wheel.nextDeadline()).isGreaterThan(2_000).isLessThanOrEqualTo(60_000);
+
+		// When
+		for (long time = 60_000; time <= 3_600_000; time += 7_919) {
+			wheel.advance(time, expired::add);
+		}
+		wheel.advance(3_600_000, expired::add);
+
+		// Then
+		assertThat(expired).containsExactly("first", "second", "minute", "hour");
+		assertThat(wheel.size()).isEqualTo(0);
+		assertThat(wheel.getTime()).isEqualTo(3_600_000);
+	}
+
+	@Test
+	public void timersExpireAtTheirDeadline() {
+		// Given
+		wheel.schedule("late", 1_000);
+		wheel.schedule("early", 10);
+
+		// When
+		wheel.advance(9, expired::add);
+
+		// Then
+		assertThat(expired).isEmpty();
+
+		// When
+		wheel.advance(10, expired::add);
+
+		// Then
+		assertThat(expired).containsExactly("early");
+		assertThat(wheel.nextDeadline()).isLessThanOrEqualTo(1_000);
+	}
+
+}